@@ -1,6 +1,7 @@
 plugins {
     id("java")
     kotlin("jvm")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "org.example"
@@ -16,8 +17,18 @@ dependencies {
     implementation(kotlin("stdlib-jdk8"))
 }
 
+// The lexer scans bytes with the incubating Vector API when it is available.
+tasks.withType<JavaCompile> {
+    options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
+}
+
 tasks.test {
     useJUnitPlatform()
+    jvmArgs("--add-modules", "jdk.incubator.vector")
+}
+
+jmh {
+    jvmArgsAppend.add("--add-modules=jdk.incubator.vector")
 }
 kotlin {
     jvmToolchain(21)
@@ -0,0 +1,105 @@
+package plc.project;
+
+/**
+ * Generates synthetic PLC programs for the benchmarks, similar in shape to the
+ * generated rule files we lex and parse in production.
+ */
+final class BenchmarkSources {
+
+    private BenchmarkSources() {}
+
+    /**
+     * Returns a program of at least the given size in characters, made of
+     * globals followed by functions and ending with {@code main}.
+     */
+    static String program(int size) {
+        StringBuilder builder = new StringBuilder(size + 256);
+        int globals = Math.max(1, size / 4096);
+        for (int i = 0; i < globals; i++) {
+            builder.append("VAR global").append(i).append(": Integer = ").append(i).append(";\n");
+            builder.append("LIST table").append(i).append(": Integer = [1, 2, 3, 5, 8, 13, 21, 34];\n");
+        }
+        for (int i = 0; builder.length() < size; i++) {
+            function(builder, i);
+        }
+        builder.append("FUN main(): Integer DO\n    RETURN 0;\nEND\n");
+        return builder.toString();
+    }
+
+    /**
+     * Returns a program whose {@code main} sums the numbers below the given
+     * count in a loop, for the benchmarks of execution.
+     */
+    static String loop(int count) {
+        return "FUN main(): Integer DO\n" +
+                "    LET i = 0;\n" +
+                "    LET total = 0;\n" +
+                "    WHILE i < " + count + " DO\n" +
+                "        IF i > 5 DO\n" +
+                "            total = total + i;\n" +
+                "        END\n" +
+                "        i = i + 1;\n" +
+                "    END\n" +
+                "    RETURN total;\n" +
+                "END\n";
+    }
+
+    /**
+     * Returns a program whose {@code main} computes the given Fibonacci
+     * number by recursion, for the benchmarks of calls.
+     */
+    static String fib(int n) {
+        return "FUN fib(n: Integer): Integer DO\n" +
+                "    IF n < 2 DO\n" +
+                "        RETURN n;\n" +
+                "    END\n" +
+                "    RETURN fib(n - 1) + fib(n - 2);\n" +
+                "END\n" +
+                "FUN main(): Integer DO\n" +
+                "    RETURN fib(" + n + ");\n" +
+                "END\n";
+    }
+
+    /**
+     * Returns a program whose {@code main} counts the primes below the given
+     * limit with a sieve in a global list, for the benchmarks of lists.
+     */
+    static String sieve(int limit) {
+        return "LIST flags: Integer = [" + "0, ".repeat(limit - 1) + "0];\n" +
+                "FUN main(): Integer DO\n" +
+                "    LET count = 0;\n" +
+                "    LET i = 2;\n" +
+                "    WHILE i < " + limit + " DO\n" +
+                "        IF flags[i] == 0 DO\n" +
+                "            count = count + 1;\n" +
+                "            LET j = i * i;\n" +
+                "            WHILE j < " + limit + " DO\n" +
+                "                flags[j] = 1;\n" +
+                "                j = j + i;\n" +
+                "            END\n" +
+                "        END\n" +
+                "        i = i + 1;\n" +
+                "    END\n" +
+                "    RETURN count;\n" +
+                "END\n";
+    }
+
+    private static void function(StringBuilder builder, int i) {
+        builder.append("FUN rule").append(i).append("(value: Integer, name: String): Integer DO\n")
+                .append("    LET total: Integer = 1 + 2 * 3 - 4 / 2;\n")
+                .append("    LET ratio: Decimal = 0.75;\n")
+                .append("    LET flag: Character = 'y';\n")
+                .append("    IF total > 10 && total != -3 || total == 42 DO\n")
+                .append("        total = total - 1;\n")
+                .append("    ELSE\n")
+                .append("        total = total + 1;\n")
+                .append("    END\n")
+                .append("    WHILE total < 100 DO\n")
+                .append("        total = total + 7;\n")
+                .append("    END\n")
+                .append("    print(\"rule ").append(i).append(" matched:\\t\" + total);\n")
+                .append("    RETURN total;\n")
+                .append("END\n");
+    }
+
+}
@@ -0,0 +1,59 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency from a single character edit in the middle of a large
+ * source to its new AST, parsing from scratch compared to
+ * {@link IncrementalParser}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EditBenchmark {
+
+    // About 50,000 lines.
+    @Param({"1500000"})
+    public int size;
+
+    private String source;
+    private int offset;
+    private IncrementalParser parser;
+    private boolean inserted = false;
+
+    @Setup
+    public void setup() {
+        source = BenchmarkSources.program(size);
+        // Edit the name of a local variable in the middle of the source.
+        offset = source.indexOf("total", source.length() / 2) + 2;
+        parser = new IncrementalParser(source);
+    }
+
+    @Benchmark
+    public Ast.Source parseSource() {
+        String edited = source.substring(0, offset) + "x" + source.substring(offset);
+        return new Parser(new Lexer(edited).lex()).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source incremental() {
+        inserted = !inserted;
+        return inserted ? parser.edit(offset, 0, "x") : parser.edit(offset, 1, "");
+    }
+
+}
@@ -0,0 +1,86 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures running programs with the {@link Interpreter}, the
+ * {@link NodeInterpreter} and the {@link VirtualMachine}, on a loop, on
+ * recursive calls and on a sieve. The programs are parsed once, and each run
+ * includes compiling them for the node engine and the virtual machine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBenchmark {
+
+    private Ast.Source loop;
+    private Ast.Source fib;
+    private Ast.Source sieve;
+
+    @Setup
+    public void setup() {
+        loop = new Parser(new Lexer(BenchmarkSources.loop(1_000_000)).lex()).parseSource();
+        fib = new Parser(new Lexer(BenchmarkSources.fib(25)).lex()).parseSource();
+        sieve = new Parser(new Lexer(BenchmarkSources.sieve(100_000)).lex()).parseSource();
+    }
+
+    @Benchmark
+    public Object loopInterpreter() {
+        return new Interpreter(new plc.project.Scope(null)).visit(loop);
+    }
+
+    @Benchmark
+    public Object loopNodes() {
+        return new NodeInterpreter(new plc.project.Scope(null)).execute(loop);
+    }
+
+    @Benchmark
+    public Object fibInterpreter() {
+        return new Interpreter(new plc.project.Scope(null)).visit(fib);
+    }
+
+    @Benchmark
+    public Object fibNodes() {
+        return new NodeInterpreter(new plc.project.Scope(null)).execute(fib);
+    }
+
+    @Benchmark
+    public Object loopMachine() {
+        return new VirtualMachine(new plc.project.Scope(null)).execute(loop);
+    }
+
+    @Benchmark
+    public Object fibMachine() {
+        return new VirtualMachine(new plc.project.Scope(null)).execute(fib);
+    }
+
+    @Benchmark
+    public Object sieveInterpreter() {
+        return new Interpreter(new plc.project.Scope(null)).visit(sieve);
+    }
+
+    @Benchmark
+    public Object sieveNodes() {
+        return new NodeInterpreter(new plc.project.Scope(null)).execute(sieve);
+    }
+
+    @Benchmark
+    public Object sieveMachine() {
+        return new VirtualMachine(new plc.project.Scope(null)).execute(sieve);
+    }
+
+}
@@ -0,0 +1,92 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of {@link Lexer} and {@link DfaLexer}. Dividing the
+ * {@code size} parameter by the reported time per operation gives MB/s.
+ *
+ * {@code scalarScanner} and {@code vectorScanner} lex UTF-8 bytes in a heap
+ * array, skipping runs with {@link ByteScanner} and {@link VectorByteScanner}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LexerBenchmark {
+
+    @Param({"100000", "5000000"})
+    public int size;
+
+    private String source;
+    private ByteBuffer bytes;
+    private byte[] array;
+
+    @Setup
+    public void setup() {
+        source = BenchmarkSources.program(size);
+        array = source.getBytes(StandardCharsets.UTF_8);
+        bytes = ByteBuffer.allocateDirect(array.length).put(array).flip();
+    }
+
+    @Benchmark
+    public List<Token> regexLexer() {
+        return new Lexer(source).lex();
+    }
+
+    @Benchmark
+    public List<Token> dfaLexer() {
+        return new DfaLexer(source).lex();
+    }
+
+    @Benchmark
+    public List<Token> parallelLexer() {
+        return new ParallelLexer(source).lex();
+    }
+
+    @Benchmark
+    public TokenBuffer tokenBuffer() {
+        return TokenBuffer.lex(source);
+    }
+
+    @Benchmark
+    public TokenBuffer byteTokenBuffer() {
+        return TokenBuffer.lex(bytes.duplicate());
+    }
+
+    @Benchmark
+    public int scalarScanner() {
+        return count(new DfaLexer(new ByteSequence(ByteBuffer.wrap(array)), new ByteScanner()));
+    }
+
+    @Benchmark
+    public int vectorScanner() {
+        return count(new DfaLexer(new ByteSequence(ByteBuffer.wrap(array)), new VectorByteScanner()));
+    }
+
+    private static int count(DfaLexer lexer) {
+        int tokens = 0;
+        while (lexer.next() != DfaLexer.EOF) {
+            tokens++;
+        }
+        return tokens;
+    }
+
+}
@@ -0,0 +1,70 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures lexing and parsing together for the different token
+ * representations, and parsing alone from already lexed tokens. Run with
+ * {@code -prof gc} to compare allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"100000", "5000000"})
+    public int size;
+
+    private String source;
+    private List<Token> tokens;
+    private TokenBuffer buffer;
+
+    @Setup
+    public void setup() {
+        source = BenchmarkSources.program(size);
+        tokens = new DfaLexer(source).lex();
+        buffer = TokenBuffer.lex(source);
+    }
+
+    @Benchmark
+    public Ast.Source tokenList() {
+        return new Parser(new DfaLexer(source).lex()).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source tokenSource() {
+        return new Parser(new DfaLexer(source).tokens()).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source tokenBuffer() {
+        return new Parser(TokenBuffer.lex(source)).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source parseTokenList() {
+        return new Parser(tokens).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source parseTokenBuffer() {
+        return new Parser(buffer).parseSource();
+    }
+
+}
@@ -0,0 +1,150 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of {@link Ast.Visitor#visit(Ast)} per node, through
+ * {@link Ast#accept(Ast.Visitor)} and through the chain of {@code instanceof}
+ * checks it replaced. The nodes are shuffled so neither call site can
+ * specialize for one type, as in the interpreter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VisitorBenchmark {
+
+    private static final int SIZE = 100_000;
+
+    private Ast[] nodes;
+    private final Ast.Visitor<Integer> visitor = new KindVisitor();
+
+    @Setup
+    public void setup() {
+        Ast.Expression literal = new Ast.Expression.Literal(BigInteger.ONE);
+        Ast.Expression access = new Ast.Expression.Access(Optional.empty(), "x");
+        Ast[] kinds = {
+                literal,
+                access,
+                new Ast.Expression.Binary("+", literal, access),
+                new Ast.Expression.Group(literal),
+                new Ast.Expression.Function("f", List.of(literal)),
+                new Ast.Statement.Expression(literal),
+                new Ast.Statement.Assignment(access, literal),
+                new Ast.Statement.Return(literal),
+        };
+        Random random = new Random(0);
+        nodes = new Ast[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            nodes[i] = kinds[random.nextInt(kinds.length)];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public int accept() {
+        int sum = 0;
+        for (Ast node : nodes) {
+            sum += visitor.visit(node);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public int instanceofChain() {
+        int sum = 0;
+        for (Ast node : nodes) {
+            sum += instanceofVisit(visitor, node);
+        }
+        return sum;
+    }
+
+    /**
+     * The dispatch {@link Ast.Visitor#visit(Ast)} used before
+     * {@link Ast#accept(Ast.Visitor)}.
+     */
+    private static <T> T instanceofVisit(Ast.Visitor<T> visitor, Ast ast) {
+        if (ast instanceof Ast.Source) {
+            return visitor.visit((Ast.Source) ast);
+        } else if (ast instanceof Ast.Global) {
+            return visitor.visit((Ast.Global) ast);
+        } else if (ast instanceof Ast.Function) {
+            return visitor.visit((Ast.Function) ast);
+        } else if (ast instanceof Ast.Statement.Expression) {
+            return visitor.visit((Ast.Statement.Expression) ast);
+        } else if (ast instanceof Ast.Statement.Declaration) {
+            return visitor.visit((Ast.Statement.Declaration) ast);
+        } else if (ast instanceof Ast.Statement.Assignment) {
+            return visitor.visit((Ast.Statement.Assignment) ast);
+        } else if (ast instanceof Ast.Statement.If) {
+            return visitor.visit((Ast.Statement.If) ast);
+        } else if (ast instanceof Ast.Statement.Switch) {
+            return visitor.visit((Ast.Statement.Switch) ast);
+        } else if (ast instanceof Ast.Statement.Case) {
+            return visitor.visit((Ast.Statement.Case) ast);
+        } else if (ast instanceof Ast.Statement.While) {
+            return visitor.visit((Ast.Statement.While) ast);
+        } else if (ast instanceof Ast.Statement.Return) {
+            return visitor.visit((Ast.Statement.Return) ast);
+        } else if (ast instanceof Ast.Expression.Literal) {
+            return visitor.visit((Ast.Expression.Literal) ast);
+        } else if (ast instanceof Ast.Expression.Group) {
+            return visitor.visit((Ast.Expression.Group) ast);
+        } else if (ast instanceof Ast.Expression.Binary) {
+            return visitor.visit((Ast.Expression.Binary) ast);
+        } else if (ast instanceof Ast.Expression.Access) {
+            return visitor.visit((Ast.Expression.Access) ast);
+        } else if (ast instanceof Ast.Expression.Function) {
+            return visitor.visit((Ast.Expression.Function) ast);
+        } else if (ast instanceof Ast.Expression.PlcList) {
+            return visitor.visit((Ast.Expression.PlcList) ast);
+        } else {
+            throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+        }
+    }
+
+    /**
+     * Returns a number for each type of node, so only the dispatch is measured.
+     */
+    private static final class KindVisitor implements Ast.Visitor<Integer> {
+
+        @Override public Integer visit(Ast.Source ast) { return 0; }
+        @Override public Integer visit(Ast.Global ast) { return 1; }
+        @Override public Integer visit(Ast.Function ast) { return 2; }
+        @Override public Integer visit(Ast.Statement.Expression ast) { return 3; }
+        @Override public Integer visit(Ast.Statement.Declaration ast) { return 4; }
+        @Override public Integer visit(Ast.Statement.Assignment ast) { return 5; }
+        @Override public Integer visit(Ast.Statement.If ast) { return 6; }
+        @Override public Integer visit(Ast.Statement.Switch ast) { return 7; }
+        @Override public Integer visit(Ast.Statement.Case ast) { return 8; }
+        @Override public Integer visit(Ast.Statement.While ast) { return 9; }
+        @Override public Integer visit(Ast.Statement.Return ast) { return 10; }
+        @Override public Integer visit(Ast.Expression.Literal ast) { return 11; }
+        @Override public Integer visit(Ast.Expression.Group ast) { return 12; }
+        @Override public Integer visit(Ast.Expression.Binary ast) { return 13; }
+        @Override public Integer visit(Ast.Expression.Access ast) { return 14; }
+        @Override public Integer visit(Ast.Expression.Function ast) { return 15; }
+        @Override public Integer visit(Ast.Expression.PlcList ast) { return 16; }
+
+    }
+
+}
@@ -6,9 +6,13 @@ import plc.project.Scope;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -19,6 +23,10 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
     public Scope scope;
     private Ast.Function function;
+    // Slots of the globals, and of the parameters and variables of the
+    // function being analyzed, from which accesses get their address.
+    private final Map<Environment.Variable, Integer> globalSlots = new IdentityHashMap<>();
+    private Map<Environment.Variable, Integer> localSlots = null;
 
     public Analyzer(Scope parent) {
         scope = new Scope(parent);
@@ -87,6 +95,8 @@ public Void visit(Ast.Source ast) {
         // Define the variable with NIL initially
         Environment.Variable variable = scope.defineVariable(ast.getName(), ast.getName(), globalType, ast.getMutable(), Environment.NIL);
         ast.setVariable(variable);
+        ast.setSlot(globalSlots.size());
+        globalSlots.put(variable, ast.getSlot());
 
         if (ast.getValue().isPresent()) {
             Environment.Type valueType = ast.getValue().get().getType();
@@ -95,10 +105,18 @@ public Void visit(Ast.Source ast) {
             if (ast.getValue().get() instanceof Ast.Expression.PlcList) {
                 // When the global variable is a list, ensure each item matches the expected type
                 Ast.Expression.PlcList list = (Ast.Expression.PlcList) ast.getValue().get();
-                for (Ast.Expression expr : list.getValues()) {
-                    if (!isAssignable(globalType, expr.getType())) {
+                if (list.getArray().isPresent()) {
+                    // Every value of a list backed by an array has the same type.
+                    Environment.Type elementType = list.getArray().get() instanceof double[] ? Environment.Type.DECIMAL : Environment.Type.INTEGER;
+                    if (list.size() > 0 && !isAssignable(globalType, elementType)) {
                         throw new RuntimeException("The elements in the list are not assignable to the declared global variable type '" + ast.getName() + "'. Expected type: " + globalType.getName());
                     }
+                } else {
+                    for (Ast.Expression expr : list.getValues()) {
+                        if (!isAssignable(globalType, expr.getType())) {
+                            throw new RuntimeException("The elements in the list are not assignable to the declared global variable type '" + ast.getName() + "'. Expected type: " + globalType.getName());
+                        }
+                    }
                 }
             } else if (!isAssignable(globalType, valueType)) {
                 // Regular assignment type checking
@@ -165,19 +183,23 @@ public Void visit(Ast.Source ast) {
         // Create a new scope for the function body
         this.scope = new Scope(previousScope);
 
+        // The parameters take the first slots of the frame
+        Map<Environment.Variable, Integer> previousSlots = this.localSlots;
+        this.localSlots = new IdentityHashMap<>();
         for (String parameterName : ast.getParameters()) {
-            this.scope.defineVariable(parameterName, parameterName, Environment.Type.ANY, true, Environment.NIL);
+            Environment.Variable parameter = this.scope.defineVariable(parameterName, parameterName, Environment.Type.ANY, true, Environment.NIL);
+            localSlots.put(parameter, localSlots.size());
         }
 
         try {
             // Visit all statements within the new scope
-            for (Ast.Statement statement : ast.getStatements()) {
-                visit(statement);
-            }
+            analyze(ast.getStatements(), this.scope);
+            ast.setFrameSize(localSlots.size());
         } finally {
             // Restore the previous function context and scope
             this.function = previousFunction;
             this.scope = previousScope;
+            this.localSlots = previousSlots;
         }
 
         return null;
@@ -227,6 +249,12 @@ public Void visit(Ast.Source ast) {
         // Set the variable in the AST for further use.
         ast.setVariable(variable);
 
+        // Every variable of a function has its own slot, even in blocks which don't overlap.
+        if (localSlots != null) {
+            ast.setSlot(localSlots.size());
+            localSlots.put(variable, ast.getSlot());
+        }
+
         // If an initial value is provided, ensure it is assignable to the type of the variable.
         if (ast.getValue().isPresent()) {
             Environment.Type valueType = ast.getValue().get().getType();
@@ -264,40 +292,7 @@ public Void visit(Ast.Source ast) {
 
     @Override
     public Void visit(Ast.Statement.If ast) {
-        // Visit and check the condition's type
-        visit(ast.getCondition());
-        if (!ast.getCondition().getType().equals(Environment.Type.BOOLEAN)) {
-            throw new RuntimeException("The condition expression must be a Boolean.");
-        }
-
-        // Check that the then block is not empty
-        if (ast.getThenStatements().isEmpty()) {
-            throw new RuntimeException("The then statements cannot be empty.");
-        }
-
-        // Visit the then statements in a new scope
-        Scope parentScope = this.scope;
-        try {
-            this.scope = new Scope(parentScope);
-            for (Ast.Statement thenStmt : ast.getThenStatements()) {
-                visit(thenStmt);
-            }
-        } finally {
-            this.scope = parentScope;
-        }
-
-        // Visit the else statements in a new scope if they exist
-        if (!ast.getElseStatements().isEmpty()) {
-            try {
-                this.scope = new Scope(parentScope);
-                for (Ast.Statement elseStmt : ast.getElseStatements()) {
-                    visit(elseStmt);
-                }
-            } finally {
-                this.scope = parentScope;
-            }
-        }
-
+        analyze(List.of(ast), this.scope);
         return null;
     }
 
@@ -308,86 +303,132 @@ public Void visit(Ast.Source ast) {
 //    }
     @Override
     public Void visit(Ast.Statement.Switch ast) {
-        // Visit and check the condition's type
-        visit(ast.getCondition());
-        Environment.Type conditionType = ast.getCondition().getType();
-
-        // Initialize scope for cases
-        Scope parentScope = this.scope;
-
-        // Iterate over cases
-        for (Ast.Statement.Case caseStmt : ast.getCases()) {
-            // Each case starts with a new scope
-            this.scope = new Scope(parentScope);
-
-            // Visit the case expression, if it exists
-            if (caseStmt.getValue().isPresent()) {
-                visit(caseStmt.getValue().get());
-                Environment.Type caseValueType = caseStmt.getValue().get().getType();
-
-                // Check if the case value matches the condition type
-                if (!caseValueType.equals(conditionType)) {
-                    throw new RuntimeException("Case value type does not match the type of the condition.");
-                }
-            } else if (!caseStmt.equals(ast.getCases().get(ast.getCases().size() - 1))) {
-                // If it's not the last case (which is DEFAULT), it must have a value
-                throw new RuntimeException("Non-default cases must have a value.");
-            }
-
-            // Visit the case's statements
-            for (Ast.Statement statement : caseStmt.getStatements()) {
-                visit(statement);
-            }
-
-            // Restore parent scope after each case
-            this.scope = parentScope;
-        }
-
+        analyze(List.of(ast), this.scope);
         return null;
     }
 
 
     @Override
     public Void visit(Ast.Statement.Case ast) {
-        // Create a new scope for the case
-        Scope parentScope = this.scope;
-        this.scope = new Scope(parentScope);
-
-        // Visit each statement within the case under the new scope
-        for (Ast.Statement statement : ast.getStatements()) {
-            visit(statement);
-        }
-
-        // Restore the parent scope after visiting the case
-        this.scope = parentScope;
-
+        // Visit each statement within the case under a new scope
+        analyze(ast.getStatements(), new Scope(this.scope));
         return null;
     }
 
 
     @Override
     public Void visit(Ast.Statement.While ast) {
-        // Visit and check the condition's type
-        visit(ast.getCondition());
-        if (!ast.getCondition().getType().equals(Environment.Type.BOOLEAN)) {
-            throw new RuntimeException("The condition of a while statement must be a Boolean.");
-        }
+        analyze(List.of(ast), this.scope);
+        return null;
+    }
 
-        // Create a new scope for the body of the while loop
-        Scope parentScope = this.scope;
-        this.scope = new Scope(parentScope);
 
+    /**
+     * Visits a list of statements in the given scope. The blocks of if,
+     * switch and while statements are kept on an explicit stack instead of
+     * recursing into them, so blocks can be nested to any depth without
+     * overflowing the stack. Each block is visited in its own scope.
+     */
+    private void analyze(List<Ast.Statement> statements, Scope blockScope) {
+        Scope parentScope = this.scope;
+        Deque<Block> blocks = new ArrayDeque<>();
+        blocks.push(new Block(statements, blockScope));
         try {
-            // Visit all statements in the while loop under the new scope
-            for (Ast.Statement statement : ast.getStatements()) {
-                visit(statement);
+            while (!blocks.isEmpty()) {
+                Block block = blocks.peek();
+                this.scope = block.scope;
+                if (block.caseStatement != null) {
+                    checkCase(block.switchStatement, block.caseStatement);
+                    block.caseStatement = null;
+                }
+                if (block.index == block.statements.size()) {
+                    blocks.pop();
+                    continue;
+                }
+                Ast.Statement statement = block.statements.get(block.index++);
+                if (statement instanceof Ast.Statement.If) {
+                    Ast.Statement.If ast = (Ast.Statement.If) statement;
+                    // Visit and check the condition's type
+                    visit(ast.getCondition());
+                    if (!ast.getCondition().getType().equals(Environment.Type.BOOLEAN)) {
+                        throw new RuntimeException("The condition expression must be a Boolean.");
+                    }
+
+                    // Check that the then block is not empty
+                    if (ast.getThenStatements().isEmpty()) {
+                        throw new RuntimeException("The then statements cannot be empty.");
+                    }
+
+                    // Visit the then statements and then the else statements, each in a new scope
+                    if (!ast.getElseStatements().isEmpty()) {
+                        blocks.push(new Block(ast.getElseStatements(), new Scope(this.scope)));
+                    }
+                    blocks.push(new Block(ast.getThenStatements(), new Scope(this.scope)));
+                } else if (statement instanceof Ast.Statement.Switch) {
+                    Ast.Statement.Switch ast = (Ast.Statement.Switch) statement;
+                    // Visit and check the condition's type
+                    visit(ast.getCondition());
+
+                    // Each case starts with a new scope, and its value is checked right before its statements
+                    for (int i = ast.getCases().size() - 1; i >= 0; i--) {
+                        Block caseBlock = new Block(ast.getCases().get(i).getStatements(), new Scope(this.scope));
+                        caseBlock.switchStatement = ast;
+                        caseBlock.caseStatement = ast.getCases().get(i);
+                        blocks.push(caseBlock);
+                    }
+                } else if (statement instanceof Ast.Statement.While) {
+                    Ast.Statement.While ast = (Ast.Statement.While) statement;
+                    // Visit and check the condition's type
+                    visit(ast.getCondition());
+                    if (!ast.getCondition().getType().equals(Environment.Type.BOOLEAN)) {
+                        throw new RuntimeException("The condition of a while statement must be a Boolean.");
+                    }
+
+                    // Visit all statements in the while loop under a new scope
+                    blocks.push(new Block(ast.getStatements(), new Scope(this.scope)));
+                } else {
+                    visit(statement);
+                }
             }
         } finally {
-            // Restore the original scope after processing the while loop
+            // Restore the parent scope, including after an exception
             this.scope = parentScope;
         }
+    }
+
+    private void checkCase(Ast.Statement.Switch ast, Ast.Statement.Case caseStmt) {
+        // Visit the case expression, if it exists
+        if (caseStmt.getValue().isPresent()) {
+            visit(caseStmt.getValue().get());
+            Environment.Type caseValueType = caseStmt.getValue().get().getType();
+
+            // Check if the case value matches the condition type
+            if (!caseValueType.equals(ast.getCondition().getType())) {
+                throw new RuntimeException("Case value type does not match the type of the condition.");
+            }
+        } else if (!caseStmt.equals(ast.getCases().get(ast.getCases().size() - 1))) {
+            // If it's not the last case (which is DEFAULT), it must have a value
+            throw new RuntimeException("Non-default cases must have a value.");
+        }
+    }
+
+    /**
+     * A block of statements being visited in its scope. The block of a case
+     * also has the case (until its value has been checked) and its switch.
+     */
+    private static final class Block {
+
+        private final List<Ast.Statement> statements;
+        private final Scope scope;
+        private Ast.Statement.Switch switchStatement;
+        private Ast.Statement.Case caseStatement;
+        private int index = 0;
+
+        private Block(List<Ast.Statement> statements, Scope scope) {
+            this.statements = statements;
+            this.scope = scope;
+        }
 
-        return null;
     }
 
 
@@ -450,8 +491,11 @@ public Void visit(Ast.Source ast) {
     @Override
     public Void visit(Ast.Expression.Group ast) {
         // Visit the contained expression to ensure it is evaluated and its type is determined
-        visit(ast.getExpression());
+        analyzeExpression(ast);
+        return null;
+    }
 
+    private void checkGroup(Ast.Expression.Group ast) {
         // Check if the contained expression is a binary expression
         if (!(ast.getExpression() instanceof Ast.Expression.Binary)) {
             throw new RuntimeException("The contained expression must be a binary expression.");
@@ -459,8 +503,6 @@ public Void visit(Ast.Source ast) {
 
         // Set the type of the group expression to be the type of the contained expression
         ast.setType(ast.getExpression().getType());
-
-        return null;
     }
 
 
@@ -470,10 +512,39 @@ public Void visit(Ast.Source ast) {
 //    }
 @Override
 public Void visit(Ast.Expression.Binary ast) {
-    // First, visit the left and right operands to evaluate their types
-    visit(ast.getLeft());
-    visit(ast.getRight());
+    analyzeExpression(ast);
+    return null;
+}
 
+/**
+ * Visits binary and group expressions with an explicit stack of work instead
+ * of recursing into their operands, so expressions of any length and nesting
+ * depth (as in generated code) don't overflow the stack. Each binary and
+ * group is still checked right after visiting its operands.
+ */
+private void analyzeExpression(Ast.Expression ast) {
+    Deque<Object> work = new ArrayDeque<>();
+    work.push(ast);
+    while (!work.isEmpty()) {
+        Object next = work.pop();
+        if (next instanceof Ast.Expression.Binary) {
+            Ast.Expression.Binary binary = (Ast.Expression.Binary) next;
+            work.push((Runnable) () -> checkBinary(binary));
+            work.push(binary.getRight());
+            work.push(binary.getLeft());
+        } else if (next instanceof Ast.Expression.Group) {
+            Ast.Expression.Group group = (Ast.Expression.Group) next;
+            work.push((Runnable) () -> checkGroup(group));
+            work.push(group.getExpression());
+        } else if (next instanceof Runnable) {
+            ((Runnable) next).run();
+        } else {
+            visit((Ast.Expression) next);
+        }
+    }
+}
+
+private void checkBinary(Ast.Expression.Binary ast) {
     // Retrieve the types of the left and right operands
     Environment.Type leftType = ast.getLeft().getType();
     Environment.Type rightType = ast.getRight().getType();
@@ -526,8 +597,6 @@ public Void visit(Ast.Expression.Binary ast) {
         default:
             throw new RuntimeException("Unsupported binary operator: " + ast.getOperator());
     }
-
-    return null;
 }
 
 
@@ -552,12 +621,20 @@ public Void visit(Ast.Expression.Binary ast) {
             variable = scope.lookupVariable(ast.getName() + "[]");
         } else {
             // Lookup the variable by name in the scope
-            variable = scope.lookupVariable(ast.getName());
+            variable = scope.lookupVariable(ast.getSymbol(scope.getSymbols()));
         }
 
         // Set the variable on the access expression, which also sets the type
         ast.setVariable(variable);
 
+        // Resolve the address of the variable, so the Interpreter doesn't look it up by name
+        Integer slot = localSlots != null ? localSlots.get(variable) : null;
+        if (slot != null) {
+            ast.setSlot(Ast.Expression.Access.LOCAL, slot);
+        } else if ((slot = globalSlots.get(variable)) != null) {
+            ast.setSlot(Ast.Expression.Access.GLOBAL, slot);
+        }
+
         return null;
     }
 
@@ -569,7 +646,7 @@ public Void visit(Ast.Expression.Binary ast) {
 
     @Override
     public Void visit(Ast.Expression.Function ast) {
-        Environment.Function function = scope.lookupFunction(ast.getName(), ast.getArguments().size());
+        Environment.Function function = scope.lookupFunction(ast.getSymbol(scope.getSymbols()), ast.getArguments().size());
 
         // Visit all arguments to evaluate their types
         for (int i = 0; i < ast.getArguments().size(); i++) {
@@ -600,6 +677,19 @@ public Void visit(Ast.Expression.Binary ast) {
         String listTypeName = "List<" + elementType.getName() + ">";
         ast.setType(new Environment.Type(listTypeName, listTypeName, null)); // Pass null or a valid Scope if needed
 
+        if (ast.getArray().isPresent()) {
+            // There are no literals to visit, but a long[] may have values
+            // which are out of range.
+            if (ast.getArray().get() instanceof long[]) {
+                for (long value : (long[]) ast.getArray().get()) {
+                    if (value != (int) value) {
+                        throw new RuntimeException("The integer literal is out of the range of an int.");
+                    }
+                }
+            }
+            return null;
+        }
+
         // Visit each value to ensure their types are set
         for (Ast.Expression value : ast.getValues()) {
             visit(value);
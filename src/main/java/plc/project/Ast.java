@@ -1,9 +1,12 @@
 package plc.project;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * See the Parser assignment specification for specific notes on each AST class
@@ -11,6 +14,31 @@ import java.util.Optional;
  */
 public abstract class Ast {
 
+    /**
+     * Calls the {@link Visitor} method for the type of this node, which
+     * dispatches in constant time through the virtual call rather than
+     * testing each type in turn.
+     */
+    public abstract <T> T accept(Visitor<T> visitor);
+
+    /**
+     * The id of a name in a {@link Symbols} table, which a node keeps along
+     * with the table so it's only looked up again if it's used with another.
+     * Both are replaced together, so threads sharing a node never see an id
+     * from the wrong table.
+     */
+    private static final class Symbol {
+
+        private final Symbols symbols;
+        private final int id;
+
+        private Symbol(Symbols symbols, int id) {
+            this.symbols = symbols;
+            this.id = id;
+        }
+
+    }
+
     public static final class Source extends Ast {
 
         private final List<Global> globals;
@@ -29,6 +57,11 @@ public abstract class Ast {
             return functions;
         }
 
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Source &&
@@ -49,10 +82,12 @@ public abstract class Ast {
     public static final class Global extends Ast {
 
         private final String name;
+        private Symbol symbol = null;
         private final String typeName;
         private final boolean mutable;
         private final Optional<Ast.Expression> value;
         private Environment.Variable variable = null;
+        private int slot = -1;
 
         public Global(String name, boolean mutable, Optional<Expression> value) {
             this(name, "Any", mutable, value);
@@ -70,6 +105,14 @@ public abstract class Ast {
             return name;
         }
 
+        public int getSymbol(Symbols symbols) {
+            Symbol symbol = this.symbol;
+            if (symbol == null || symbol.symbols != symbols) {
+                this.symbol = symbol = new Symbol(symbols, symbols.intern(name));
+            }
+            return symbol.id;
+        }
+
         public String getTypeName() {
             return typeName;
         }
@@ -93,6 +136,23 @@ public abstract class Ast {
             this.variable = variable;
         }
 
+        /**
+         * Returns the index of the global among the globals of the source, set
+         * by the {@link Analyzer}, or -1.
+         */
+        public int getSlot() {
+            return slot;
+        }
+
+        public void setSlot(int slot) {
+            this.slot = slot;
+        }
+
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
 
         @Override
         public boolean equals(Object obj) {
@@ -120,11 +180,14 @@ public abstract class Ast {
     public static final class Function extends Ast {
 
         private final String name;
+        private Symbol symbol = null;
         private final List<String> parameters;
         private final List<String> parameterTypeNames;
         private final Optional<String> returnTypeName;
-        private final List<Statement> statements;
+        private volatile List<Statement> statements;
+        private Supplier<List<Statement>> body;
         private Environment.Function function = null;
+        private int frameSize = -1;
         
         public Function(String name, List<String> parameters, List<Statement> statements) {
             this(name, parameters, new ArrayList<>(), Optional.of("Any"), statements);
@@ -142,10 +205,27 @@ public abstract class Ast {
             this.statements = statements;
         }
 
+        /**
+         * Creates a function whose statements are parsed by {@code body} the
+         * first time they're needed, see {@link Parser#parseSource(boolean)}.
+         */
+        public Function(String name, List<String> parameters, List<String> parameterTypeNames, Optional<String> returnTypeName, Supplier<List<Statement>> body) {
+            this(name, parameters, parameterTypeNames, returnTypeName, (List<Statement>) null);
+            this.body = body;
+        }
+
         public String getName() {
             return name;
         }
 
+        public int getSymbol(Symbols symbols) {
+            Symbol symbol = this.symbol;
+            if (symbol == null || symbol.symbols != symbols) {
+                this.symbol = symbol = new Symbol(symbols, symbols.intern(name));
+            }
+            return symbol.id;
+        }
+
         public List<String> getParameters() {
             return parameters;
         }
@@ -159,6 +239,23 @@ public abstract class Ast {
         }
 
         public List<Statement> getStatements() {
+            List<Statement> statements = this.statements;
+            return statements != null ? statements : parseStatements();
+        }
+
+        /**
+         * Returns true if the statements have been parsed, which is only false
+         * for a lazily parsed function which hasn't been used yet.
+         */
+        public boolean isParsed() {
+            return statements != null;
+        }
+
+        private synchronized List<Statement> parseStatements() {
+            if (statements == null) {
+                statements = body.get();
+                body = null;
+            }
             return statements;
         }
 
@@ -173,6 +270,24 @@ public abstract class Ast {
             this.function = function;
         }
 
+        /**
+         * Returns the number of slots for the parameters and variables of the
+         * function, set by the {@link Analyzer}, or -1. The parameters are in
+         * the first slots.
+         */
+        public int getFrameSize() {
+            return frameSize;
+        }
+
+        public void setFrameSize(int frameSize) {
+            this.frameSize = frameSize;
+        }
+
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
 
         @Override
         public boolean equals(Object obj) {
@@ -181,7 +296,7 @@ public abstract class Ast {
                     parameters.equals(((Ast.Function) obj).parameters) &&
                     parameterTypeNames.equals(((Ast.Function) obj).parameterTypeNames) &&
                     returnTypeName.equals(((Ast.Function) obj).returnTypeName) &&
-                    statements.equals(((Ast.Function) obj).statements) &&
+                    getStatements().equals(((Ast.Function) obj).getStatements()) &&
                     Objects.equals(function, ((Ast.Function) obj).function);
         }
 
@@ -193,7 +308,7 @@ public abstract class Ast {
                     ", parameters=" + parameters +
                     ", parameterTypeNames=" + parameterTypeNames +
                     ", returnTypeName='" + returnTypeName + '\'' +
-                    ", statements=" + statements +
+                    ", statements=" + (isParsed() ? statements : "<unparsed>") +
                     ", function=" + function +
                     '}';
         }
@@ -214,6 +329,11 @@ public abstract class Ast {
                 return expression;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Ast.Statement.Expression &&
@@ -232,9 +352,11 @@ public abstract class Ast {
         public static final class Declaration extends Statement {
 
             private String name;
+            private Symbol symbol = null;
             private final Optional<String> typeName;
             private Optional<Ast.Expression> value;
             private Environment.Variable variable = null;
+            private int slot = -1;
 
             public Declaration(String name, Optional<Ast.Expression> value) {
                 this(name, Optional.empty(), value);
@@ -250,6 +372,14 @@ public abstract class Ast {
                 return name;
             }
 
+            public int getSymbol(Symbols symbols) {
+                Symbol symbol = this.symbol;
+                if (symbol == null || symbol.symbols != symbols) {
+                    this.symbol = symbol = new Symbol(symbols, symbols.intern(name));
+                }
+                return symbol.id;
+            }
+
             public Optional<String> getTypeName() {
                 return typeName;
             }
@@ -268,8 +398,25 @@ public abstract class Ast {
             public void setVariable(Environment.Variable variable) {
                 this.variable = variable;
             }
+
+            /**
+             * Returns the slot of the variable in the frame of its function,
+             * set by the {@link Analyzer}, or -1.
+             */
+            public int getSlot() {
+                return slot;
+            }
+
+            public void setSlot(int slot) {
+                this.slot = slot;
+            }
             
             
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Declaration &&
@@ -309,6 +456,11 @@ public abstract class Ast {
                 return value;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Assignment &&
@@ -351,6 +503,11 @@ public abstract class Ast {
                 return elseStatements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof If &&
@@ -386,6 +543,11 @@ public abstract class Ast {
 
             public List<Ast.Statement.Case> getCases() { return cases; }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Switch &&
@@ -421,6 +583,11 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Case &&
@@ -456,6 +623,11 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof While &&
@@ -485,6 +657,11 @@ public abstract class Ast {
                 return value;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Return &&
@@ -509,16 +686,38 @@ public abstract class Ast {
         public static final class Literal extends Ast.Expression {
 
             private final Object literal;
+            private final Environment.PlcObject constant;
             private Environment.Type type = null;
             
             public Literal(Object literal) {
+                this(literal, null);
+            }
+
+            private Literal(Object literal, Environment.PlcObject constant) {
                 this.literal = literal;
+                this.constant = constant;
+            }
+
+            /**
+             * Creates a literal for a value from a {@link ConstantPool}, which
+             * the {@link Interpreter} evaluates to without creating anything.
+             */
+            public static Literal of(Environment.PlcObject constant) {
+                return new Literal(constant == Environment.NIL ? null : constant.getValue(), constant);
             }
 
             public Object getLiteral() {
                 return literal;
             }
 
+            /**
+             * Returns the pooled runtime value of the literal, if it was
+             * created from a {@link ConstantPool}.
+             */
+            public Optional<Environment.PlcObject> getConstant() {
+                return Optional.ofNullable(constant);
+            }
+
             @Override
             public Environment.Type getType() {
                 if (type == null) {
@@ -533,6 +732,11 @@ public abstract class Ast {
 
 
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Literal &&
@@ -576,6 +780,11 @@ public abstract class Ast {
             }
 
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Group &&
@@ -631,13 +840,28 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Binary &&
-                        operator.equals(((Binary) obj).operator) &&
-                        left.equals(((Binary) obj).left) &&
-                        right.equals(((Binary) obj).right) &&
-                        Objects.equals(type, ((Binary) obj).type);
+                // Compares chains of binaries (such as a + b + c ...) down
+                // their left operands in a loop, rather than recursing.
+                Ast.Expression expression = this;
+                while (expression instanceof Binary) {
+                    Binary binary = (Binary) expression;
+                    if (!(obj instanceof Binary) ||
+                            !binary.operator.equals(((Binary) obj).operator) ||
+                            !binary.right.equals(((Binary) obj).right) ||
+                            !Objects.equals(binary.type, ((Binary) obj).type)) {
+                        return false;
+                    }
+                    expression = binary.left;
+                    obj = ((Binary) obj).left;
+                }
+                return expression.equals(obj);
             }
 
             @Override
@@ -655,9 +879,15 @@ public abstract class Ast {
 
         public static final class Access extends Ast.Expression {
 
+            public static final int LOCAL = 0;
+            public static final int GLOBAL = 1;
+
             private final Optional<Ast.Expression> offset;
             private final String name;
+            private Symbol symbol = null;
             private Environment.Variable variable = null;
+            private int depth = -1;
+            private int slot = -1;
 
             public Access(Optional<Ast.Expression> offset, String name) {
                 this.offset = offset;
@@ -672,6 +902,14 @@ public abstract class Ast {
                 return name;
             }
 
+            public int getSymbol(Symbols symbols) {
+                Symbol symbol = this.symbol;
+                if (symbol == null || symbol.symbols != symbols) {
+                    this.symbol = symbol = new Symbol(symbols, symbols.intern(name));
+                }
+                return symbol.id;
+            }
+
             public Environment.Variable getVariable() {
                 if (variable == null) {
                     throw new IllegalStateException("variable is uninitialized");
@@ -683,11 +921,40 @@ public abstract class Ast {
                 this.variable = variable;
             }
 
+            /**
+             * Returns where the variable is, set by the {@link Analyzer}:
+             * {@link #LOCAL} for the frame of the enclosing function,
+             * {@link #GLOBAL} for the globals (as functions are only defined
+             * at the top level), or -1 if it wasn't resolved.
+             */
+            public int getDepth() {
+                return depth;
+            }
+
+            /**
+             * Returns the slot of the variable at its depth, see
+             * {@link Ast.Function#getFrameSize()} and
+             * {@link Ast.Global#getSlot()}.
+             */
+            public int getSlot() {
+                return slot;
+            }
+
+            public void setSlot(int depth, int slot) {
+                this.depth = depth;
+                this.slot = slot;
+            }
+
             @Override
             public Environment.Type getType() {
                 return getVariable().getType();
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Access &&
@@ -711,6 +978,7 @@ public abstract class Ast {
         public static final class Function extends Ast.Expression {
 
             private final String name;
+            private Symbol symbol = null;
             private final List<Ast.Expression> arguments;
             private Environment.Function function = null;
 
@@ -723,6 +991,14 @@ public abstract class Ast {
                 return name;
             }
 
+            public int getSymbol(Symbols symbols) {
+                Symbol symbol = this.symbol;
+                if (symbol == null || symbol.symbols != symbols) {
+                    this.symbol = symbol = new Symbol(symbols, symbols.intern(name));
+                }
+                return symbol.id;
+            }
+
             public List<Ast.Expression> getArguments() {
                 return arguments;
             }
@@ -743,6 +1019,11 @@ public abstract class Ast {
                 return getFunction().getReturnType();
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Ast.Expression.Function &&
@@ -764,18 +1045,101 @@ public abstract class Ast {
 
         public static final class PlcList extends Ast.Expression {
 
-            private final List<Ast.Expression> values;
+            private List<Ast.Expression> values;
+            private final Object array;
             private Environment.Type type = null;
 
 
             public PlcList(List<Ast.Expression> values) {
                 this.values = values;
+                this.array = null;
             }
 
+            /**
+             * Creates a list of integer literals backed by the array, instead
+             * of a {@link Literal} with its own {@link BigInteger} per value.
+             */
+            public PlcList(int[] values) {
+                this.array = values;
+            }
+
+            /**
+             * Creates a list of integer literals backed by the array.
+             */
+            public PlcList(long[] values) {
+                this.array = values;
+            }
+
+            /**
+             * Creates a list of decimal literals backed by the array. Every
+             * value must be written in the source exactly as
+             * {@link Double#toString(double)} would, so the
+             * {@link BigDecimal} literal it stands for can be recovered.
+             */
+            public PlcList(double[] values) {
+                this.array = values;
+            }
+
+            /**
+             * Returns the values of the list. For a list backed by an array,
+             * this creates a literal for every value the first time it's
+             * called, so code which cares about large lists should check
+             * {@link #getArray()} first.
+             */
             public List<Ast.Expression> getValues() {
+                if (values == null) {
+                    List<Ast.Expression> literals = new ArrayList<>(size());
+                    for (int i = 0; i < size(); i++) {
+                        literals.add(new Literal(getLiteral(i)));
+                    }
+                    values = literals;
+                }
                 return values;
             }
 
+            public int size() {
+                if (array instanceof int[]) {
+                    return ((int[]) array).length;
+                } else if (array instanceof long[]) {
+                    return ((long[]) array).length;
+                } else if (array instanceof double[]) {
+                    return ((double[]) array).length;
+                }
+                return values.size();
+            }
+
+            /**
+             * Returns the {@code int[]}, {@code long[]} or {@code double[]}
+             * backing the list, if it was created from one.
+             */
+            public Optional<Object> getArray() {
+                return Optional.ofNullable(array);
+            }
+
+            /**
+             * Returns the literal of the value at the given index of a list
+             * backed by an array, as a {@link BigInteger} or
+             * {@link BigDecimal}.
+             */
+            public Object getLiteral(int index) {
+                return literal(array, index);
+            }
+
+            /**
+             * Returns the value at an index of an array backing a list, see
+             * {@link #getLiteral(int)}.
+             */
+            static Object literal(Object array, int index) {
+                if (array instanceof int[]) {
+                    return BigInteger.valueOf(((int[]) array)[index]);
+                } else if (array instanceof long[]) {
+                    return BigInteger.valueOf(((long[]) array)[index]);
+                } else if (array instanceof double[]) {
+                    return new BigDecimal(Double.toString(((double[]) array)[index]));
+                }
+                throw new IllegalStateException("list is not backed by an array");
+            }
+
             @Override
             public Environment.Type getType() {
                 if (type == null) {
@@ -788,17 +1152,27 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Ast.Expression.PlcList &&
-                        values.equals(((Ast.Expression.PlcList) obj).values) &&
-                        Objects.equals(type, ((Ast.Expression.PlcList) obj).type);
+                if (!(obj instanceof Ast.Expression.PlcList) || !Objects.equals(type, ((Ast.Expression.PlcList) obj).type)) {
+                    return false;
+                }
+                Object other = ((Ast.Expression.PlcList) obj).array;
+                if (array != null && other != null && array.getClass() == other.getClass()) {
+                    return Objects.deepEquals(array, other);
+                }
+                return getValues().equals(((Ast.Expression.PlcList) obj).getValues());
             }
 
             @Override
             public String toString() {
                 return "Ast.Expression.PlcList{" +
-                        "values=[" + values + "]" +
+                        "values=[" + getValues() + "]" +
                         ", type=" + type +
                         '}';
             }
@@ -810,43 +1184,7 @@ public abstract class Ast {
     public interface Visitor<T> {
 
         default T visit(Ast ast) {
-            if (ast instanceof Ast.Source) {
-                return visit((Ast.Source) ast);
-            } else if (ast instanceof Ast.Global) {
-                return visit((Ast.Global) ast);
-            } else if (ast instanceof Ast.Function) {
-                return visit((Ast.Function) ast);
-            } else if (ast instanceof Ast.Statement.Expression) {
-                return visit((Ast.Statement.Expression) ast);
-            } else if (ast instanceof Ast.Statement.Declaration) {
-                return visit((Ast.Statement.Declaration) ast);
-            } else if (ast instanceof Ast.Statement.Assignment) {
-                return visit((Ast.Statement.Assignment) ast);
-            } else if (ast instanceof Ast.Statement.If) {
-                return visit((Ast.Statement.If) ast);
-            } else if (ast instanceof Ast.Statement.Switch) {
-                return visit((Ast.Statement.Switch) ast);
-            } else if (ast instanceof Ast.Statement.Case) {
-                return visit((Ast.Statement.Case) ast);
-            } else if (ast instanceof Ast.Statement.While) {
-                return visit((Ast.Statement.While) ast);
-            } else if (ast instanceof Ast.Statement.Return) {
-                return visit((Ast.Statement.Return) ast);
-            } else if (ast instanceof Ast.Expression.Literal) {
-                return visit((Ast.Expression.Literal) ast);
-            } else if (ast instanceof Ast.Expression.Group) {
-                return visit((Ast.Expression.Group) ast);
-            } else if (ast instanceof Ast.Expression.Binary) {
-                return visit((Ast.Expression.Binary) ast);
-            } else if (ast instanceof Ast.Expression.Access) {
-                return visit((Ast.Expression.Access) ast);
-            } else if (ast instanceof Ast.Expression.Function) {
-                return visit((Ast.Expression.Function) ast);
-            } else if (ast instanceof Ast.Expression.PlcList) {
-                return visit((Ast.Expression.PlcList) ast);
-            } else {
-                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
-            }
+            return ast.accept(this);
         }
 
         T visit(Ast.Source ast);
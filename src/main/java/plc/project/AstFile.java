@@ -0,0 +1,365 @@
+package plc.project;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Saves a {@link FlatAst} in a compact binary file and loads it back, so a
+ * program which was already parsed and analyzed can be run (with
+ * {@link FlatAst#toAst()}) without going through the {@link Lexer},
+ * {@link Parser} and {@link Analyzer} again.
+ *
+ * The file starts with a magic number and a version, which is checked on
+ * load: a file written by another version is rejected rather than
+ * misread. The arrays of the flat AST follow as they are in memory, so they
+ * are copied straight out of the memory mapped file, followed by the
+ * symbols, constants, variables and functions.
+ *
+ * Types are saved by name and looked up with
+ * {@link Environment#getType(String)} when the file is loaded, except for
+ * types which aren't registered (such as the types of lists), which are
+ * created again. Loaded functions return {@link Environment#NIL}, like the
+ * ones the {@link Analyzer} defines, since the {@link Interpreter} defines its
+ * own.
+ */
+public final class AstFile {
+
+    /**
+     * "PLCA", the first four bytes of every file.
+     */
+    static final int MAGIC = 0x504C4341;
+    static final int VERSION = 2;
+
+    private static final int ANALYZED = 1;
+
+    // Tags of the constants.
+    private static final byte NIL = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte INTEGER = 2;
+    private static final byte DECIMAL = 3;
+    private static final byte CHARACTER = 4;
+    private static final byte STRING = 5;
+    private static final byte INT_ARRAY = 6;
+    private static final byte LONG_ARRAY = 7;
+    private static final byte DOUBLE_ARRAY = 8;
+
+    private AstFile() {}
+
+    /**
+     * Writes the flat AST to the file, replacing it if it exists.
+     */
+    public static void write(FlatAst ast, Path path) throws IOException {
+        Writer writer = new Writer(16 + 21 * ast.size + 4 * ast.childrenSize);
+        writer.buffer.putInt(MAGIC).putInt(VERSION).putInt(ast.isAnalyzed() ? ANALYZED : 0);
+        writer.buffer.putInt(ast.size).putInt(ast.childrenSize);
+        writer.buffer.put(ast.kinds, 0, ast.size);
+        writer.putInts(ast.as, ast.size);
+        writer.putInts(ast.bs, ast.size);
+        writer.putInts(ast.firsts, ast.size + 1);
+        writer.putInts(ast.children, ast.childrenSize);
+        writer.putInt(ast.symbols.length);
+        for (String symbol : ast.symbols) {
+            writer.putString(symbol);
+        }
+        writer.putInt(ast.constants.length);
+        for (Object constant : ast.constants) {
+            writer.putConstant(constant);
+        }
+        if (ast.isAnalyzed()) {
+            writer.putInts(ast.types, ast.size);
+            writer.putInts(ast.bindings, ast.size);
+            writer.putInts(ast.slots, ast.size);
+            // The types of the expressions come first, in order, followed by
+            // the other types of the variables and functions.
+            Map<Environment.Type, Integer> types = new IdentityHashMap<>();
+            List<Environment.Type> typeList = new ArrayList<>(Arrays.asList(ast.typeTable));
+            for (Environment.Type type : ast.typeTable) {
+                types.put(type, types.size());
+            }
+            Function<Environment.Type, Integer> type = key -> types.computeIfAbsent(key, added -> {
+                typeList.add(added);
+                return typeList.size() - 1;
+            });
+            Writer bindings = new Writer(64 * (ast.variables.length + ast.functions.length));
+            bindings.putInt(ast.variables.length);
+            for (Environment.Variable variable : ast.variables) {
+                bindings.putString(variable.getName());
+                bindings.putString(variable.getJvmName());
+                bindings.putInt(type.apply(variable.getType()));
+                bindings.put(variable.getMutable() ? 1 : 0);
+            }
+            bindings.putInt(ast.functions.length);
+            for (Environment.Function function : ast.functions) {
+                bindings.putString(function.getName());
+                bindings.putString(function.getJvmName());
+                bindings.putInt(type.apply(function.getReturnType()));
+                bindings.putInt(function.getArity());
+                for (Environment.Type parameterType : function.getParameterTypes()) {
+                    bindings.putInt(type.apply(parameterType));
+                }
+            }
+            writer.putInt(ast.typeTable.length);
+            writer.putInt(typeList.size());
+            for (Environment.Type added : typeList) {
+                writer.putString(added.getName());
+                writer.putString(added.getJvmName());
+            }
+            bindings.buffer.flip();
+            writer.ensure(bindings.buffer.remaining());
+            writer.buffer.put(bindings.buffer);
+        }
+        writer.buffer.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (writer.buffer.hasRemaining()) {
+                channel.write(writer.buffer);
+            }
+        }
+    }
+
+    /**
+     * Loads a flat AST written by {@link #write(FlatAst, Path)}.
+     *
+     * @throws IOException if the file can't be read, or isn't a file of this
+     * version
+     */
+    public static FlatAst read(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                throw new IOException("Not an AST file: " + path + ".");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported AST file version " + version + ", expected " + VERSION + ".");
+            }
+            boolean analyzed = (buffer.getInt() & ANALYZED) != 0;
+            int size = buffer.getInt();
+            int childrenSize = buffer.getInt();
+            FlatAst ast = new FlatAst(0);
+            ast.size = size;
+            ast.childrenSize = childrenSize;
+            ast.kinds = new byte[size];
+            buffer.get(ast.kinds);
+            ast.as = getInts(buffer, size);
+            ast.bs = getInts(buffer, size);
+            ast.firsts = getInts(buffer, size + 1);
+            ast.children = getInts(buffer, childrenSize);
+            ast.symbols = new String[buffer.getInt()];
+            for (int i = 0; i < ast.symbols.length; i++) {
+                ast.symbols[i] = getString(buffer);
+            }
+            ConstantPool pool = new ConstantPool();
+            ast.constants = new Object[buffer.getInt()];
+            for (int i = 0; i < ast.constants.length; i++) {
+                ast.constants[i] = getConstant(buffer, pool);
+            }
+            if (analyzed) {
+                ast.types = getInts(buffer, size);
+                ast.bindings = getInts(buffer, size);
+                ast.slots = getInts(buffer, size);
+                int expressionTypes = buffer.getInt();
+                Environment.Type[] types = new Environment.Type[buffer.getInt()];
+                for (int i = 0; i < types.length; i++) {
+                    String name = getString(buffer);
+                    String jvmName = getString(buffer);
+                    boolean registered = Environment.hasType(name) && Environment.getType(name).getJvmName().equals(jvmName);
+                    types[i] = registered ? Environment.getType(name) : new Environment.Type(name, jvmName, null);
+                }
+                ast.typeTable = Arrays.copyOf(types, expressionTypes);
+                ast.variables = new Environment.Variable[buffer.getInt()];
+                for (int i = 0; i < ast.variables.length; i++) {
+                    String name = getString(buffer);
+                    String jvmName = getString(buffer);
+                    Environment.Type type = types[buffer.getInt()];
+                    ast.variables[i] = new Environment.Variable(name, jvmName, type, buffer.get() != 0, Environment.NIL);
+                }
+                ast.functions = new Environment.Function[buffer.getInt()];
+                for (int i = 0; i < ast.functions.length; i++) {
+                    String name = getString(buffer);
+                    String jvmName = getString(buffer);
+                    Environment.Type returnType = types[buffer.getInt()];
+                    List<Environment.Type> parameterTypes = new ArrayList<>();
+                    for (int arity = buffer.getInt(); arity > 0; arity--) {
+                        parameterTypes.add(types[buffer.getInt()]);
+                    }
+                    ast.functions[i] = new Environment.Function(name, jvmName, parameterTypes, returnType, args -> Environment.NIL);
+                }
+            }
+            return ast;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Malformed AST file: " + path + ".", e);
+        }
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int length) {
+        int[] ints = new int[length];
+        buffer.asIntBuffer().get(ints);
+        buffer.position(buffer.position() + 4 * length);
+        return ints;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Object getConstant(ByteBuffer buffer, ConstantPool pool) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case NIL:
+                return Environment.NIL;
+            case BOOLEAN:
+                return pool.get(buffer.get() != 0);
+            case INTEGER:
+                return pool.get(getInteger(buffer));
+            case DECIMAL:
+                int scale = buffer.getInt();
+                return pool.get(new BigDecimal(getInteger(buffer), scale));
+            case CHARACTER:
+                return pool.get(buffer.getChar());
+            case STRING:
+                return pool.get(getString(buffer));
+            case INT_ARRAY: {
+                int[] array = new int[buffer.getInt()];
+                buffer.asIntBuffer().get(array);
+                buffer.position(buffer.position() + 4 * array.length);
+                return array;
+            }
+            case LONG_ARRAY: {
+                long[] array = new long[buffer.getInt()];
+                buffer.asLongBuffer().get(array);
+                buffer.position(buffer.position() + 8 * array.length);
+                return array;
+            }
+            case DOUBLE_ARRAY: {
+                double[] array = new double[buffer.getInt()];
+                buffer.asDoubleBuffer().get(array);
+                buffer.position(buffer.position() + 8 * array.length);
+                return array;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown constant tag " + tag + ".");
+        }
+    }
+
+    private static BigInteger getInteger(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new BigInteger(bytes);
+    }
+
+    /**
+     * A heap buffer which grows as values are added.
+     */
+    private static final class Writer {
+
+        private ByteBuffer buffer;
+
+        private Writer(int capacity) {
+            buffer = ByteBuffer.allocate(capacity);
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + bytes));
+                buffer.flip();
+                buffer = larger.put(buffer);
+            }
+        }
+
+        private void put(int value) {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        private void putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        private void putInts(int[] values, int length) {
+            ensure(4 * length);
+            buffer.asIntBuffer().put(values, 0, length);
+            buffer.position(buffer.position() + 4 * length);
+        }
+
+        private void putBytes(byte[] bytes) {
+            putInt(bytes.length);
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        private void putString(String value) {
+            putBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void putConstant(Object constant) {
+            if (constant instanceof int[]) {
+                int[] array = (int[]) constant;
+                put(INT_ARRAY);
+                putInt(array.length);
+                putInts(array, array.length);
+                return;
+            } else if (constant instanceof long[]) {
+                long[] array = (long[]) constant;
+                put(LONG_ARRAY);
+                putInt(array.length);
+                ensure(8 * array.length);
+                buffer.asLongBuffer().put(array);
+                buffer.position(buffer.position() + 8 * array.length);
+                return;
+            } else if (constant instanceof double[]) {
+                double[] array = (double[]) constant;
+                put(DOUBLE_ARRAY);
+                putInt(array.length);
+                ensure(8 * array.length);
+                buffer.asDoubleBuffer().put(array);
+                buffer.position(buffer.position() + 8 * array.length);
+                return;
+            }
+            Object value = ((Environment.PlcObject) constant).getValue();
+            if (value == null) {
+                put(NIL);
+            } else if (value instanceof Boolean) {
+                put(BOOLEAN);
+                put((Boolean) value ? 1 : 0);
+            } else if (value instanceof BigInteger) {
+                put(INTEGER);
+                putBytes(((BigInteger) value).toByteArray());
+            } else if (value instanceof BigDecimal) {
+                put(DECIMAL);
+                putInt(((BigDecimal) value).scale());
+                putBytes(((BigDecimal) value).unscaledValue().toByteArray());
+            } else if (value instanceof Character) {
+                put(CHARACTER);
+                ensure(2);
+                buffer.putChar((Character) value);
+            } else if (value instanceof String) {
+                put(STRING);
+                putString((String) value);
+            } else {
+                throw new IllegalArgumentException("Unsupported constant type: " + value.getClass().getName() + ".");
+            }
+        }
+
+    }
+
+}
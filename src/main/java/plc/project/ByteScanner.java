@@ -0,0 +1,87 @@
+package plc.project;
+
+/**
+ * Finds the end of runs of bytes which keep {@link DfaLexer} in the same state
+ * (whitespace, identifiers, digits and the contents of strings), so the lexer
+ * can skip over them instead of looking up a transition for every byte.
+ *
+ * This is the scalar implementation. {@link #INSTANCE} is a
+ * {@link VectorByteScanner} when the {@code jdk.incubator.vector} module is
+ * available (run with {@code --add-modules jdk.incubator.vector}), unless the
+ * {@code plc.vector} system property is {@code false}.
+ *
+ * Every method takes the index of the first byte to check and the end of the
+ * input, and returns the index of the first byte that isn't part of the run.
+ */
+class ByteScanner {
+
+    static final ByteScanner INSTANCE = create();
+
+    private static ByteScanner create() {
+        if (Boolean.parseBoolean(System.getProperty("plc.vector", "true"))
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return new VectorByteScanner();
+            } catch (LinkageError e) {
+                // Fall back to scalar scanning below.
+            }
+        }
+        return new ByteScanner();
+    }
+
+    /**
+     * Skips spaces, tabs, backspaces and line breaks.
+     */
+    int skipWhitespace(byte[] bytes, int from, int to) {
+        while (from < to && isWhitespace(bytes[from])) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Skips the characters allowed after the first character of an
+     * identifier: letters, digits, {@code @}, {@code -} and {@code _}.
+     */
+    int skipIdentifier(byte[] bytes, int from, int to) {
+        while (from < to && isIdentifier(bytes[from])) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Skips ASCII digits.
+     */
+    int skipDigits(byte[] bytes, int from, int to) {
+        while (from < to && bytes[from] >= '0' && bytes[from] <= '9') {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Skips the contents of a string literal up to the closing quote, an
+     * escape, or a character which isn't allowed in a string.
+     */
+    int skipString(byte[] bytes, int from, int to) {
+        while (from < to && isString(bytes[from])) {
+            from++;
+        }
+        return from;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b >= 0 && DfaLexer.TRANSITIONS[DfaLexer.S_START * DfaLexer.CLASS_COUNT + DfaLexer.CLASSES[b]] == DfaLexer.A_SKIP;
+    }
+
+    private static boolean isIdentifier(byte b) {
+        return b >= 0 && DfaLexer.TRANSITIONS[DfaLexer.S_IDENTIFIER * DfaLexer.CLASS_COUNT + DfaLexer.CLASSES[b]] == DfaLexer.S_IDENTIFIER;
+    }
+
+    private static boolean isString(byte b) {
+        // Everything outside of ASCII is part of a string.
+        return b < 0 || DfaLexer.TRANSITIONS[DfaLexer.S_STRING * DfaLexer.CLASS_COUNT + DfaLexer.CLASSES[b]] == DfaLexer.S_STRING;
+    }
+
+}
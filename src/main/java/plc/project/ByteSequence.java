@@ -0,0 +1,84 @@
+package plc.project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link CharSequence} view of UTF-8 encoded source in a {@link ByteBuffer},
+ * where every byte is one char. This lets {@link DfaLexer} scan a mapped file
+ * directly without decoding it onto the heap first: the lexical grammar is
+ * ASCII apart from the contents of literals, and indices stay byte offsets.
+ *
+ * Only {@link #toString()} decodes, so literals are converted from UTF-8 when
+ * they are created.
+ */
+public final class ByteSequence implements CharSequence {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    public ByteSequence(ByteBuffer buffer) {
+        this(buffer, buffer.position(), buffer.remaining());
+    }
+
+    private ByteSequence(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Maps the given file read-only. Files are limited to 2 GB, the same as
+     * the int indices used by {@link Token}.
+     */
+    public static ByteSequence map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ByteSequence(buffer);
+        }
+    }
+
+    /**
+     * Returns the array backing the buffer, or null if the buffer isn't
+     * backed by an accessible array (such as a mapped file).
+     */
+    byte[] array() {
+        return buffer.hasArray() ? buffer.array() : null;
+    }
+
+    /**
+     * Returns the index in {@link #array()} of the first char.
+     */
+    int arrayOffset() {
+        return buffer.arrayOffset() + offset;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (buffer.get(offset + index) & 0xFF);
+    }
+
+    @Override
+    public ByteSequence subSequence(int start, int end) {
+        return new ByteSequence(buffer, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
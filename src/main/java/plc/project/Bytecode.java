@@ -0,0 +1,458 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * The bytecode which the {@link BytecodeCompiler} compiles programs to and
+ * the {@link VirtualMachine} runs, with its disassembler and verifier.
+ *
+ * Each function is compiled to a {@link Chunk} of instructions for a stack
+ * machine. An instruction is a one byte opcode followed by at most one
+ * operand: two bytes (unsigned, big-endian) for an index into a table or a
+ * count, or four for the offset of a jump target in the chunk. A function's
+ * parameters and variables are numbered local slots, the parameters first.
+ * Literals are in the constant pool of the {@link Program}, which also holds
+ * the names of the globals and of the functions the program doesn't define
+ * (such as {@code print}), which are resolved through the scope the first
+ * time they're used.
+ */
+public final class Bytecode {
+
+    /** Pushes the constant at the index. */
+    public static final byte CONST = 0;
+    /** Pushes the value of the local slot. */
+    public static final byte LOAD_LOCAL = 1;
+    /** Pops a value into the local slot. */
+    public static final byte STORE_LOCAL = 2;
+    /** Pushes the value of the global at the index. */
+    public static final byte LOAD_GLOBAL = 3;
+    /** Pops a value into the global at the index, which must be mutable. */
+    public static final byte STORE_GLOBAL = 4;
+    /** Pops a value and defines the global at the index as mutable with it. */
+    public static final byte DEFINE_VAR = 5;
+    /** Pops a value and defines the global at the index as immutable with it. */
+    public static final byte DEFINE_VAL = 6;
+    /** Pops an index and a list and pushes the element at the index. */
+    public static final byte LOAD_ELEMENT = 7;
+    /**
+     * Pops an index, a list and a value, and sets the element at the index
+     * to the value. A list which can't be modified is first copied into the
+     * local slot.
+     */
+    public static final byte STORE_ELEMENT_LOCAL = 8;
+    /** As {@link #STORE_ELEMENT_LOCAL}, copying the list into the global. */
+    public static final byte STORE_ELEMENT_GLOBAL = 9;
+    /** Pops the given count of values and pushes a list of them. */
+    public static final byte LIST = 10;
+    public static final byte POP = 11;
+    public static final byte DUP = 12;
+    public static final byte ADD = 13;
+    public static final byte SUBTRACT = 14;
+    public static final byte MULTIPLY = 15;
+    public static final byte DIVIDE = 16;
+    public static final byte POWER = 17;
+    public static final byte LESS = 18;
+    public static final byte GREATER = 19;
+    public static final byte EQUAL = 20;
+    public static final byte NOT_EQUAL = 21;
+    /** Checks the value on top of the stack is an integer, without popping it. */
+    public static final byte CHECK_INTEGER = 22;
+    /** Checks the value on top of the stack is a boolean, without popping it. */
+    public static final byte CHECK_BOOLEAN = 23;
+    /**
+     * Pops a boolean, and if it's false pushes false and jumps to the target
+     * (the left operand of {@code &&}).
+     */
+    public static final byte AND = 24;
+    /**
+     * Pops a boolean, and if it's true pushes true and jumps to the target
+     * (the left operand of {@code ||}).
+     */
+    public static final byte OR = 25;
+    public static final byte JUMP = 26;
+    /** Pops a boolean and jumps to the target if it's false. */
+    public static final byte JUMP_FALSE = 27;
+    /**
+     * Calls the function of the program at the index, whose arguments are
+     * the values on top of the stack and become its first local slots.
+     */
+    public static final byte CALL = 28;
+    /** Pops the arguments of the native function at the index and calls it. */
+    public static final byte CALL_NATIVE = 29;
+    /** Pops a value and returns it to the caller. */
+    public static final byte RETURN = 30;
+    /**
+     * Pops a value into the local slot, which must not have been declared
+     * since it was last cleared (or the function was called).
+     */
+    public static final byte DECLARE = 31;
+    /**
+     * Clears the local slot, at the end of the block which declares it, so
+     * it can be declared again the next time the block runs.
+     */
+    public static final byte CLEAR = 32;
+    /** Pushes a new list with the values of the list constant at the index. */
+    public static final byte CONST_LIST = 33;
+
+    private static final String[] NAMES = {
+            "CONST", "LOAD_LOCAL", "STORE_LOCAL", "LOAD_GLOBAL", "STORE_GLOBAL", "DEFINE_VAR", "DEFINE_VAL",
+            "LOAD_ELEMENT", "STORE_ELEMENT_LOCAL", "STORE_ELEMENT_GLOBAL", "LIST", "POP", "DUP",
+            "ADD", "SUBTRACT", "MULTIPLY", "DIVIDE", "POWER", "LESS", "GREATER", "EQUAL", "NOT_EQUAL",
+            "CHECK_INTEGER", "CHECK_BOOLEAN", "AND", "OR", "JUMP", "JUMP_FALSE", "CALL", "CALL_NATIVE", "RETURN",
+            "DECLARE", "CLEAR", "CONST_LIST",
+    };
+
+    // What the operand of each opcode is.
+    private static final int NONE = 0;
+    private static final int CONSTANT = 1;
+    private static final int LOCAL = 2;
+    private static final int GLOBAL = 3;
+    private static final int COUNT = 4;
+    private static final int TARGET = 5;
+    private static final int FUNCTION = 6;
+    private static final int NATIVE = 7;
+
+    private static final int[] OPERANDS = {
+            CONSTANT, LOCAL, LOCAL, GLOBAL, GLOBAL, GLOBAL, GLOBAL,
+            NONE, LOCAL, GLOBAL, COUNT, NONE, NONE,
+            NONE, NONE, NONE, NONE, NONE, NONE, NONE, NONE, NONE,
+            NONE, NONE, TARGET, TARGET, TARGET, TARGET, FUNCTION, NATIVE, NONE,
+            LOCAL, LOCAL, CONSTANT,
+    };
+
+    private Bytecode() {}
+
+    /**
+     * Returns the length of an instruction with the given opcode.
+     */
+    static int length(byte opcode) {
+        switch (OPERANDS[opcode]) {
+            case NONE: return 1;
+            case TARGET: return 5;
+            default: return 3;
+        }
+    }
+
+    /**
+     * Reads an unsigned two byte operand.
+     */
+    static int index(byte[] code, int offset) {
+        return (code[offset] & 0xFF) << 8 | code[offset + 1] & 0xFF;
+    }
+
+    /**
+     * Reads a four byte jump target.
+     */
+    static int target(byte[] code, int offset) {
+        return code[offset] << 24 | (code[offset + 1] & 0xFF) << 16 | (code[offset + 2] & 0xFF) << 8 | code[offset + 3] & 0xFF;
+    }
+
+    /**
+     * Returns a listing of the program, one function after another, with one
+     * line for each instruction.
+     */
+    public static String disassemble(Program program) {
+        StringBuilder builder = new StringBuilder();
+        disassemble(program, program.getInitializer(), builder);
+        for (Chunk function : program.getFunctions()) {
+            disassemble(program, function, builder);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns a listing of a function of the program, such as
+     * {@code 4: LOAD_LOCAL 0 (n)}, with the value or name each operand
+     * refers to.
+     */
+    public static String disassemble(Program program, Chunk chunk) {
+        StringBuilder builder = new StringBuilder();
+        disassemble(program, chunk, builder);
+        return builder.toString();
+    }
+
+    private static void disassemble(Program program, Chunk chunk, StringBuilder builder) {
+        builder.append(chunk.getName()).append('/').append(chunk.getArity())
+                .append(" (locals ").append(chunk.getLocals().length)
+                .append(", stack ").append(chunk.getMaxStack()).append(")\n");
+        byte[] code = chunk.getCode();
+        for (int pc = 0; pc < code.length; pc += length(code[pc])) {
+            byte opcode = code[pc];
+            builder.append(String.format("%6d: %s", pc, NAMES[opcode]));
+            switch (OPERANDS[opcode]) {
+                case CONSTANT: {
+                    int index = index(code, pc + 1);
+                    builder.append(' ').append(index).append(" (").append(program.getConstants()[index].getValue()).append(')');
+                    break;
+                }
+                case LOCAL: {
+                    int index = index(code, pc + 1);
+                    builder.append(' ').append(index).append(" (").append(chunk.getLocals()[index]).append(')');
+                    break;
+                }
+                case GLOBAL: {
+                    int index = index(code, pc + 1);
+                    builder.append(' ').append(index).append(" (").append(program.getGlobals()[index]).append(')');
+                    break;
+                }
+                case FUNCTION: {
+                    int index = index(code, pc + 1);
+                    Chunk function = program.getFunctions()[index];
+                    builder.append(' ').append(index).append(" (").append(function.getName()).append('/').append(function.getArity()).append(')');
+                    break;
+                }
+                case NATIVE: {
+                    int index = index(code, pc + 1);
+                    builder.append(' ').append(index).append(" (").append(program.getNatives()[index]).append('/').append(program.getNativeArities()[index]).append(')');
+                    break;
+                }
+                case COUNT:
+                    builder.append(' ').append(index(code, pc + 1));
+                    break;
+                case TARGET:
+                    builder.append(' ').append(target(code, pc + 1));
+                    break;
+                default:
+                    break;
+            }
+            builder.append('\n');
+        }
+    }
+
+    /**
+     * Verifies the functions of a program, so the virtual machine can run
+     * them without checking their instructions. Every instruction must be
+     * complete, refer to entries of the tables which exist, and jump to the
+     * start of an instruction. Every path through a function must end with
+     * a return, and the stack must have the same depth wherever paths meet
+     * and never be popped while empty. The deepest the stack gets is stored
+     * as the maximum stack of each function.
+     */
+    public static void verify(Program program) {
+        for (Chunk function : program.getFunctions()) {
+            verify(program, function);
+        }
+        verify(program, program.getInitializer());
+    }
+
+    private static void verify(Program program, Chunk chunk) {
+        byte[] code = chunk.getCode();
+        if (chunk.getLocals().length < chunk.getArity()) {
+            throw invalid(chunk, 0, "fewer local slots than parameters");
+        }
+        // Finds where the instructions start and checks their operands.
+        boolean[] starts = new boolean[code.length + 1];
+        for (int pc = 0; pc < code.length; ) {
+            byte opcode = code[pc];
+            if (opcode < 0 || opcode >= NAMES.length) {
+                throw invalid(chunk, pc, "unknown opcode " + opcode);
+            } else if (pc + length(opcode) > code.length) {
+                throw invalid(chunk, pc, "incomplete instruction");
+            }
+            starts[pc] = true;
+            int operand = OPERANDS[opcode] == TARGET ? target(code, pc + 1) : OPERANDS[opcode] == NONE ? 0 : index(code, pc + 1);
+            int limit;
+            switch (OPERANDS[opcode]) {
+                case CONSTANT: limit = program.getConstants().length; break;
+                case LOCAL: limit = chunk.getLocals().length; break;
+                case GLOBAL: limit = program.getGlobals().length; break;
+                case FUNCTION: limit = program.getFunctions().length; break;
+                case NATIVE: limit = program.getNatives().length; break;
+                case TARGET: limit = code.length; break;
+                default: limit = Integer.MAX_VALUE; break;
+            }
+            if (operand < 0 || operand >= limit) {
+                throw invalid(chunk, pc, "operand " + operand + " out of range");
+            }
+            pc += length(opcode);
+        }
+        // Follows every path through the function with the depth of the stack.
+        int[] depths = new int[code.length];
+        Arrays.fill(depths, -1);
+        Deque<int[]> paths = new ArrayDeque<>();
+        paths.push(new int[] {0, 0});
+        int maxStack = 0;
+        while (!paths.isEmpty()) {
+            int[] path = paths.pop();
+            int pc = path[0];
+            int depth = path[1];
+            if (pc >= code.length) {
+                throw invalid(chunk, pc, "missing return at the end");
+            } else if (!starts[pc]) {
+                throw invalid(chunk, pc, "jump into the middle of an instruction");
+            } else if (depths[pc] >= 0) {
+                if (depths[pc] != depth) {
+                    throw invalid(chunk, pc, "stack depth " + depth + " differs from " + depths[pc]);
+                }
+                continue;
+            }
+            depths[pc] = depth;
+            byte opcode = code[pc];
+            int pops = pops(program, code, pc);
+            if (depth < pops) {
+                throw invalid(chunk, pc, "stack underflow");
+            }
+            int next = pc + length(opcode);
+            switch (opcode) {
+                case RETURN:
+                    break;
+                case JUMP:
+                    paths.push(new int[] {target(code, pc + 1), depth});
+                    break;
+                case JUMP_FALSE:
+                    paths.push(new int[] {target(code, pc + 1), depth - 1});
+                    paths.push(new int[] {next, depth - 1});
+                    break;
+                case AND:
+                case OR:
+                    // The boolean is pushed back if it jumps.
+                    paths.push(new int[] {target(code, pc + 1), depth});
+                    paths.push(new int[] {next, depth - 1});
+                    break;
+                default:
+                    int pushed = depth - pops + pushes(opcode);
+                    maxStack = Math.max(maxStack, pushed);
+                    paths.push(new int[] {next, pushed});
+                    break;
+            }
+        }
+        chunk.maxStack = maxStack;
+    }
+
+    private static int pops(Program program, byte[] code, int pc) {
+        switch (code[pc]) {
+            case CONST: case LOAD_LOCAL: case LOAD_GLOBAL: case JUMP: case CLEAR: case CONST_LIST:
+                return 0;
+            case STORE_LOCAL: case DECLARE: case STORE_GLOBAL: case DEFINE_VAR: case DEFINE_VAL: case POP: case DUP:
+            case CHECK_INTEGER: case CHECK_BOOLEAN: case AND: case OR: case JUMP_FALSE: case RETURN:
+                return 1;
+            case STORE_ELEMENT_LOCAL: case STORE_ELEMENT_GLOBAL:
+                return 3;
+            case LIST:
+                return index(code, pc + 1);
+            case CALL:
+                return program.getFunctions()[index(code, pc + 1)].getArity();
+            case CALL_NATIVE:
+                return program.getNativeArities()[index(code, pc + 1)];
+            default:
+                // Binary operators and LOAD_ELEMENT
+                return 2;
+        }
+    }
+
+    private static int pushes(byte opcode) {
+        switch (opcode) {
+            case STORE_LOCAL: case DECLARE: case CLEAR: case STORE_GLOBAL: case DEFINE_VAR: case DEFINE_VAL: case POP:
+            case STORE_ELEMENT_LOCAL: case STORE_ELEMENT_GLOBAL: case JUMP_FALSE: case RETURN: case JUMP:
+                return 0;
+            case DUP:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    private static RuntimeException invalid(Chunk chunk, int pc, String message) {
+        return new RuntimeException("Invalid bytecode in " + chunk.getName() + "/" + chunk.getArity() + " at " + pc + ": " + message + ".");
+    }
+
+    /**
+     * The code of a function, or of the initializer of the globals.
+     */
+    public static final class Chunk {
+
+        private final String name;
+        private final int arity;
+        private final String[] locals;
+        private final byte[] code;
+        private int maxStack = -1;
+
+        /**
+         * Creates a chunk with the names of its local slots, the parameters
+         * first. Its maximum stack is set once it's verified.
+         */
+        public Chunk(String name, int arity, String[] locals, byte[] code) {
+            this.name = name;
+            this.arity = arity;
+            this.locals = locals;
+            this.code = code;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getArity() {
+            return arity;
+        }
+
+        public String[] getLocals() {
+            return locals;
+        }
+
+        public byte[] getCode() {
+            return code;
+        }
+
+        /**
+         * Returns the deepest the stack gets above the local slots, or -1 if
+         * the chunk hasn't been verified.
+         */
+        public int getMaxStack() {
+            return maxStack;
+        }
+
+    }
+
+    /**
+     * A compiled program: its constants, the names of its globals and of the
+     * native functions it calls, its functions, and the initializer which
+     * defines its globals.
+     */
+    public static final class Program {
+
+        private final Environment.PlcObject[] constants;
+        private final String[] globals;
+        private final String[] natives;
+        private final int[] nativeArities;
+        private final Chunk[] functions;
+        private final Chunk initializer;
+
+        public Program(Environment.PlcObject[] constants, String[] globals, String[] natives, int[] nativeArities, Chunk[] functions, Chunk initializer) {
+            this.constants = constants;
+            this.globals = globals;
+            this.natives = natives;
+            this.nativeArities = nativeArities;
+            this.functions = functions;
+            this.initializer = initializer;
+        }
+
+        public Environment.PlcObject[] getConstants() {
+            return constants;
+        }
+
+        public String[] getGlobals() {
+            return globals;
+        }
+
+        public String[] getNatives() {
+            return natives;
+        }
+
+        public int[] getNativeArities() {
+            return nativeArities;
+        }
+
+        public Chunk[] getFunctions() {
+            return functions;
+        }
+
+        public Chunk getInitializer() {
+            return initializer;
+        }
+
+    }
+
+}
@@ -0,0 +1,536 @@
+package plc.project;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.RandomAccess;
+
+/**
+ * Compiles a program to {@link Bytecode} for the {@link VirtualMachine}.
+ *
+ * The variables of each function are resolved to local slots, and its other
+ * names to the globals and natives of the program. Calls to functions the
+ * program defines are compiled to {@link Bytecode#CALL}, so they stay in the
+ * virtual machine. Calls in the values of globals go through the scope, as
+ * with the {@link Interpreter} the functions aren't defined yet then.
+ *
+ * Statements and expressions are compiled with an explicit stack of steps
+ * instead of recursing into them, so deeply nested code doesn't overflow the
+ * stack. A step which compiles a statement pushes the steps for its parts,
+ * in order, on top of the steps after it.
+ */
+public final class BytecodeCompiler {
+
+    // The largest index an operand can hold.
+    private static final int LIMIT = 0xFFFF;
+
+    // The ids of the names in the program, which are only used while it's
+    // compiled; the bytecode refers to globals and natives by name.
+    private final Symbols symbols = new Symbols();
+    private final List<Environment.PlcObject> constants = new ArrayList<>();
+    private final Map<Environment.PlcObject, Integer> constantIndices = new IdentityHashMap<>();
+    private final List<String> globals = new ArrayList<>();
+    private final Map<Integer, Integer> globalIndices = new HashMap<>();
+    private final List<String> natives = new ArrayList<>();
+    private final List<Integer> nativeArities = new ArrayList<>();
+    private final Map<Long, Integer> nativeIndices = new HashMap<>();
+    // The functions of the program, by the id of their name and their arity.
+    private final Map<Long, Integer> functions = new HashMap<>();
+
+    // The chunk being compiled, with its variables (null for the initializer
+    // of the globals, which has none).
+    private byte[] code = new byte[256];
+    private int size = 0;
+    private Locals locals;
+    private final Deque<Runnable> steps = new ArrayDeque<>();
+
+    private BytecodeCompiler() {}
+
+    /**
+     * Compiles a program. The bytecode is verified by the virtual machine
+     * before it's run, see {@link Bytecode#verify(Bytecode.Program)}.
+     */
+    public static Bytecode.Program compile(Ast.Source ast) {
+        return new BytecodeCompiler().source(ast);
+    }
+
+    private Bytecode.Program source(Ast.Source ast) {
+        List<Ast.Function> definitions = ast.getFunctions();
+        for (int i = 0; i < definitions.size(); i++) {
+            // A function defined twice fails when it's defined in the scope.
+            functions.putIfAbsent(key(definitions.get(i).getSymbol(symbols), definitions.get(i).getParameters().size()), i);
+        }
+        List<Runnable> initializer = new ArrayList<>();
+        for (Ast.Global global : ast.getGlobals()) {
+            initializer.add(value(global.getValue()));
+            initializer.add(() -> emit(global.getMutable() ? Bytecode.DEFINE_VAR : Bytecode.DEFINE_VAL, global(global.getSymbol(symbols))));
+        }
+        Bytecode.Chunk init = chunk("<init>", 0, initializer);
+
+        Bytecode.Chunk[] chunks = new Bytecode.Chunk[definitions.size()];
+        for (int i = 0; i < chunks.length; i++) {
+            Ast.Function function = definitions.get(i);
+            locals = new Locals(null);
+            List<Runnable> body = new ArrayList<>();
+            for (String parameter : function.getParameters()) {
+                int symbol = symbols.intern(parameter);
+                int first = locals.lookup(symbol);
+                int slot = locals.parameter(symbol);
+                if (first >= 0) {
+                    // Declaring the parameter again fails when the function
+                    // is called, as it does in the interpreter.
+                    body.add(() -> {
+                        emit(Bytecode.LOAD_LOCAL, slot);
+                        emit(Bytecode.DECLARE, first);
+                    });
+                }
+            }
+            body.add(block(function.getStatements(), false));
+            chunks[i] = chunk(function.getName(), function.getParameters().size(), body);
+        }
+        int[] arities = new int[nativeArities.size()];
+        for (int i = 0; i < arities.length; i++) {
+            arities[i] = nativeArities.get(i);
+        }
+        return new Bytecode.Program(constants.toArray(new Environment.PlcObject[0]), globals.toArray(new String[0]),
+                natives.toArray(new String[0]), arities, chunks, init);
+    }
+
+    /**
+     * Runs the steps which compile a chunk, which returns nil if its code
+     * runs to the end.
+     */
+    private Bytecode.Chunk chunk(String name, int arity, List<Runnable> body) {
+        size = 0;
+        then(body.toArray(new Runnable[0]));
+        while (!steps.isEmpty()) {
+            steps.pop().run();
+        }
+        emit(Bytecode.CONST, constant(Environment.NIL));
+        emit(Bytecode.RETURN);
+        String[] names = locals != null ? locals.names.toArray(new String[0]) : new String[0];
+        locals = null;
+        return new Bytecode.Chunk(name, arity, names, Arrays.copyOf(code, size));
+    }
+
+    /**
+     * Pushes steps to run next, in the given order.
+     */
+    private void then(Runnable... next) {
+        for (int i = next.length - 1; i >= 0; i--) {
+            steps.push(next[i]);
+        }
+    }
+
+    /**
+     * Returns the step which compiles a block. Blocks of if and switch
+     * statements have their own variables, whose slots are cleared at the end
+     * of the block, while the body of a while statement (as in the
+     * interpreter) declares them in the enclosing block.
+     */
+    private Runnable block(List<Ast.Statement> statements, boolean scoped) {
+        return () -> {
+            Locals outer = locals;
+            if (scoped) {
+                locals = new Locals(outer);
+            }
+            Runnable[] next = new Runnable[statements.size() + 1];
+            for (int i = 0; i < statements.size(); i++) {
+                next[i] = statement(statements.get(i));
+            }
+            next[statements.size()] = () -> {
+                if (scoped && locals != null) {
+                    for (int slot : locals.slots()) {
+                        emit(Bytecode.CLEAR, slot);
+                    }
+                }
+                locals = outer;
+            };
+            then(next);
+        };
+    }
+
+    private Runnable statement(Ast.Statement ast) {
+        return () -> {
+            if (ast instanceof Ast.Statement.Expression) {
+                then(expression(((Ast.Statement.Expression) ast).getExpression()), () -> emit(Bytecode.POP));
+            } else if (ast instanceof Ast.Statement.Declaration) {
+                Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) ast;
+                // The value is compiled first, as it can't see the new variable.
+                then(value(declaration.getValue()), () -> emit(Bytecode.DECLARE, locals.declare(declaration.getSymbol(symbols))));
+            } else if (ast instanceof Ast.Statement.Assignment) {
+                assignment((Ast.Statement.Assignment) ast);
+            } else if (ast instanceof Ast.Statement.If) {
+                Ast.Statement.If statement = (Ast.Statement.If) ast;
+                boolean otherwise = !statement.getElseStatements().isEmpty();
+                int[] jumps = new int[2];
+                then(expression(statement.getCondition()),
+                        () -> jumps[0] = jump(Bytecode.JUMP_FALSE),
+                        block(statement.getThenStatements(), true),
+                        () -> {
+                            if (otherwise) {
+                                jumps[1] = jump(Bytecode.JUMP);
+                            }
+                            patch(jumps[0]);
+                        },
+                        block(statement.getElseStatements(), true),
+                        () -> {
+                            if (otherwise) {
+                                patch(jumps[1]);
+                            }
+                        });
+            } else if (ast instanceof Ast.Statement.Switch) {
+                switchStatement((Ast.Statement.Switch) ast);
+            } else if (ast instanceof Ast.Statement.While) {
+                Ast.Statement.While statement = (Ast.Statement.While) ast;
+                int[] jumps = new int[2];
+                then(() -> jumps[0] = size,
+                        expression(statement.getCondition()),
+                        () -> jumps[1] = jump(Bytecode.JUMP_FALSE),
+                        block(statement.getStatements(), false),
+                        () -> {
+                            jump(Bytecode.JUMP, jumps[0]);
+                            patch(jumps[1]);
+                        });
+            } else if (ast instanceof Ast.Statement.Return) {
+                then(expression(((Ast.Statement.Return) ast).getValue()), () -> emit(Bytecode.RETURN));
+            } else {
+                throw new AssertionError(ast.getClass().getName());
+            }
+        };
+    }
+
+    private void assignment(Ast.Statement.Assignment ast) {
+        if (!(ast.getReceiver() instanceof Ast.Expression.Access)) {
+            throw new RuntimeException("The receiver must be an Access expression.");
+        }
+        Ast.Expression.Access access = (Ast.Expression.Access) ast.getReceiver();
+        if (access.getOffset().isPresent()) {
+            then(expression(ast.getValue()),
+                    () -> access(access, Bytecode.LOAD_LOCAL, Bytecode.LOAD_GLOBAL),
+                    expression(access.getOffset().get()),
+                    () -> access(access, Bytecode.STORE_ELEMENT_LOCAL, Bytecode.STORE_ELEMENT_GLOBAL));
+        } else {
+            then(expression(ast.getValue()), () -> access(access, Bytecode.STORE_LOCAL, Bytecode.STORE_GLOBAL));
+        }
+    }
+
+    /**
+     * Compiles a switch statement, which keeps the value of its condition on
+     * the stack while its cases are compared to it:
+     *
+     * <pre>
+     *     condition
+     *     DUP, value, EQUAL, JUMP_FALSE next, POP, statements, JUMP end
+     *     next: ... (for each case with a value)
+     *     POP, statements (for the default case, or just POP without one)
+     *     end:
+     * </pre>
+     */
+    private void switchStatement(Ast.Statement.Switch ast) {
+        List<Runnable> next = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        next.add(expression(ast.getCondition()));
+        boolean hasDefault = false;
+        for (Ast.Statement.Case caseStmt : ast.getCases()) {
+            if (!caseStmt.getValue().isPresent()) {
+                // The default case is the last case
+                next.add(() -> emit(Bytecode.POP));
+                next.add(block(caseStmt.getStatements(), true));
+                hasDefault = true;
+                break;
+            }
+            int[] jump = new int[1];
+            next.add(() -> emit(Bytecode.DUP));
+            next.add(expression(caseStmt.getValue().get()));
+            next.add(() -> {
+                emit(Bytecode.EQUAL);
+                jump[0] = jump(Bytecode.JUMP_FALSE);
+                emit(Bytecode.POP);
+            });
+            next.add(block(caseStmt.getStatements(), true));
+            next.add(() -> {
+                ends.add(jump(Bytecode.JUMP));
+                patch(jump[0]);
+            });
+        }
+        if (!hasDefault) {
+            next.add(() -> emit(Bytecode.POP));
+        }
+        next.add(() -> ends.forEach(this::patch));
+        then(next.toArray(new Runnable[0]));
+    }
+
+    private Runnable value(Optional<Ast.Expression> value) {
+        return value.isPresent() ? expression(value.get()) : () -> emit(Bytecode.CONST, constant(Environment.NIL));
+    }
+
+    private Runnable expression(Ast.Expression ast) {
+        return () -> {
+            if (ast instanceof Ast.Expression.Literal) {
+                Ast.Expression.Literal literal = (Ast.Expression.Literal) ast;
+                Environment.PlcObject value = literal.getConstant().orElseGet(() ->
+                        literal.getLiteral() == null ? Environment.NIL : Environment.create(literal.getLiteral()));
+                emit(Bytecode.CONST, constant(value));
+            } else if (ast instanceof Ast.Expression.Group) {
+                then(expression(((Ast.Expression.Group) ast).getExpression()));
+            } else if (ast instanceof Ast.Expression.Binary) {
+                binary((Ast.Expression.Binary) ast);
+            } else if (ast instanceof Ast.Expression.Access) {
+                Ast.Expression.Access access = (Ast.Expression.Access) ast;
+                if (access.getOffset().isPresent()) {
+                    then(() -> access(access, Bytecode.LOAD_LOCAL, Bytecode.LOAD_GLOBAL),
+                            expression(access.getOffset().get()),
+                            () -> emit(Bytecode.LOAD_ELEMENT));
+                } else {
+                    access(access, Bytecode.LOAD_LOCAL, Bytecode.LOAD_GLOBAL);
+                }
+            } else if (ast instanceof Ast.Expression.Function) {
+                Ast.Expression.Function call = (Ast.Expression.Function) ast;
+                int arity = call.getArguments().size();
+                Runnable[] next = new Runnable[arity + 1];
+                for (int i = 0; i < arity; i++) {
+                    next[i] = expression(call.getArguments().get(i));
+                }
+                // The initializer of the globals (without locals) calls through the scope.
+                Integer function = locals != null ? functions.get(key(call.getSymbol(symbols), arity)) : null;
+                next[arity] = function != null
+                        ? () -> emit(Bytecode.CALL, function)
+                        : () -> emit(Bytecode.CALL_NATIVE, nativeFunction(call.getSymbol(symbols), arity));
+                then(next);
+            } else if (ast instanceof Ast.Expression.PlcList) {
+                list((Ast.Expression.PlcList) ast);
+            } else {
+                throw new AssertionError(ast.getClass().getName());
+            }
+        };
+    }
+
+    private void binary(Ast.Expression.Binary ast) {
+        String operator = ast.getOperator();
+        if (operator.equals("&&") || operator.equals("||")) {
+            int[] jump = new int[1];
+            then(expression(ast.getLeft()),
+                    () -> jump[0] = jump(operator.equals("&&") ? Bytecode.AND : Bytecode.OR),
+                    expression(ast.getRight()),
+                    () -> {
+                        emit(Bytecode.CHECK_BOOLEAN);
+                        patch(jump[0]);
+                    });
+            return;
+        }
+        byte opcode;
+        switch (operator) {
+            case "<": opcode = Bytecode.LESS; break;
+            case ">": opcode = Bytecode.GREATER; break;
+            case "==": opcode = Bytecode.EQUAL; break;
+            case "!=": opcode = Bytecode.NOT_EQUAL; break;
+            case "+": opcode = Bytecode.ADD; break;
+            case "-": opcode = Bytecode.SUBTRACT; break;
+            case "*": opcode = Bytecode.MULTIPLY; break;
+            case "/": opcode = Bytecode.DIVIDE; break;
+            case "^": opcode = Bytecode.POWER; break;
+            default: throw new RuntimeException("Unsupported binary operator: " + operator);
+        }
+        if (opcode == Bytecode.SUBTRACT || opcode == Bytecode.POWER) {
+            // As in the interpreter, the left operand is checked before the
+            // right one is evaluated.
+            then(expression(ast.getLeft()), () -> emit(Bytecode.CHECK_INTEGER), expression(ast.getRight()), () -> emit(opcode));
+        } else {
+            then(expression(ast.getLeft()), expression(ast.getRight()), () -> emit(opcode));
+        }
+    }
+
+    private void list(Ast.Expression.PlcList ast) {
+        if (ast.getArray().isPresent()) {
+            emit(Bytecode.CONST_LIST, constant(Environment.create(new LiteralList(ast))));
+            return;
+        }
+        int count = ast.getValues().size();
+        if (count > LIMIT) {
+            throw new RuntimeException("Too many values in a list.");
+        }
+        Runnable[] next = new Runnable[count + 1];
+        for (int i = 0; i < count; i++) {
+            next[i] = expression(ast.getValues().get(i));
+        }
+        next[count] = () -> emit(Bytecode.LIST, count);
+        then(next);
+    }
+
+    /**
+     * Emits the instruction which accesses a variable, in its local slot if
+     * the function declares it or otherwise as a global.
+     */
+    private void access(Ast.Expression.Access access, byte local, byte global) {
+        int slot = locals != null ? locals.lookup(access.getSymbol(symbols)) : -1;
+        if (slot >= 0) {
+            emit(local, slot);
+        } else {
+            emit(global, global(access.getSymbol(symbols)));
+        }
+    }
+
+    private int constant(Environment.PlcObject value) {
+        return constantIndices.computeIfAbsent(value, v -> add(constants, v, "constants"));
+    }
+
+    private int global(int symbol) {
+        return globalIndices.computeIfAbsent(symbol, s -> add(globals, symbols.name(s), "globals"));
+    }
+
+    private int nativeFunction(int symbol, int arity) {
+        return nativeIndices.computeIfAbsent(key(symbol, arity), k -> {
+            nativeArities.add(arity);
+            return add(natives, symbols.name(symbol), "native functions");
+        });
+    }
+
+    private static <T> int add(List<T> table, T entry, String name) {
+        if (table.size() > LIMIT) {
+            throw new RuntimeException("Too many " + name + " in the program.");
+        }
+        table.add(entry);
+        return table.size() - 1;
+    }
+
+    private static long key(int symbol, int arity) {
+        return (long) symbol << 32 | arity;
+    }
+
+    private void emit(byte opcode) {
+        ensure(1);
+        code[size++] = opcode;
+    }
+
+    private void emit(byte opcode, int operand) {
+        ensure(3);
+        code[size++] = opcode;
+        code[size++] = (byte) (operand >> 8);
+        code[size++] = (byte) operand;
+    }
+
+    /**
+     * Emits a jump whose target is patched later, returning the offset of
+     * its operand.
+     */
+    private int jump(byte opcode) {
+        ensure(5);
+        code[size++] = opcode;
+        size += 4;
+        return size - 4;
+    }
+
+    private void jump(byte opcode, int target) {
+        write(jump(opcode), target);
+    }
+
+    /**
+     * Points a jump emitted earlier at the next instruction.
+     */
+    private void patch(int operand) {
+        write(operand, size);
+    }
+
+    private void write(int offset, int value) {
+        code[offset] = (byte) (value >> 24);
+        code[offset + 1] = (byte) (value >> 16);
+        code[offset + 2] = (byte) (value >> 8);
+        code[offset + 3] = (byte) value;
+    }
+
+    private void ensure(int length) {
+        if (size + length > code.length) {
+            code = Arrays.copyOf(code, Math.max(2 * code.length, size + length));
+        }
+    }
+
+    /**
+     * The variables declared in a block of a function, by the ids of their
+     * names. Each variable of a function has its own local slot, so slots
+     * (and their names, for errors and the disassembler) are counted by the
+     * outermost block. A name declared again in the same block keeps its
+     * slot, so {@link Bytecode#DECLARE} fails if it's declared twice in the
+     * same run of the block.
+     */
+    private final class Locals {
+
+        private final Locals parent;
+        private final List<String> names;
+        private final Map<Integer, Integer> slots = new HashMap<>();
+
+        private Locals(Locals parent) {
+            this.parent = parent;
+            this.names = parent == null ? new ArrayList<>() : parent.names;
+        }
+
+        private int declare(int symbol) {
+            Integer slot = slots.get(symbol);
+            if (slot == null) {
+                slot = add(names, symbols.name(symbol), "variables in a function");
+                slots.put(symbol, slot);
+            }
+            return slot;
+        }
+
+        /**
+         * Declares a parameter, which has its own slot even if another
+         * parameter has the same name.
+         */
+        private int parameter(int symbol) {
+            int slot = add(names, symbols.name(symbol), "variables in a function");
+            slots.putIfAbsent(symbol, slot);
+            return slot;
+        }
+
+        private int[] slots() {
+            return slots.values().stream().mapToInt(Integer::intValue).sorted().toArray();
+        }
+
+        private int lookup(int symbol) {
+            for (Locals locals = this; locals != null; locals = locals.parent) {
+                Integer slot = locals.slots.get(symbol);
+                if (slot != null) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+    }
+
+    /**
+     * A read-only view of a list backed by a primitive array, which creates
+     * the values when they're read. It's the constant of
+     * {@link Bytecode#CONST_LIST}, which copies it into a new list.
+     */
+    private static final class LiteralList extends AbstractList<Object> implements RandomAccess {
+
+        private final Ast.Expression.PlcList list;
+
+        private LiteralList(Ast.Expression.PlcList list) {
+            this.list = list;
+        }
+
+        @Override
+        public Object get(int index) {
+            Objects.checkIndex(index, list.size());
+            return list.getLiteral(index);
+        }
+
+        @Override
+        public int size() {
+            return list.size();
+        }
+
+    }
+
+}
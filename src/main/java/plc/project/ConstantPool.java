@@ -0,0 +1,108 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The literal values of a compilation, each stored once with the
+ * {@link Environment.PlcObject} the {@link Interpreter} evaluates it to.
+ *
+ * The {@link Lexer} decodes number, character and string literals while it
+ * scans them and attaches the pooled value to the {@link Token}, so the
+ * {@link Parser} only decodes tokens which come from elsewhere (such as a
+ * {@link TokenBuffer}). Every {@link Ast.Expression.Literal} the parser
+ * creates points at the pooled value, so equal literals share one value and
+ * evaluating a literal doesn't create anything.
+ *
+ * Pools are safe to share between threads, as {@link ParallelParser} does.
+ */
+public final class ConstantPool {
+
+    private final Map<Object, Environment.PlcObject> constants = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the pooled runtime value equal to the given value, which is
+     * added to the pool if it isn't there yet. {@code null} is
+     * {@link Environment#NIL}.
+     */
+    public Environment.PlcObject get(Object value) {
+        if (value == null) {
+            return Environment.NIL;
+        }
+        Environment.PlcObject constant = constants.get(value);
+        return constant != null ? constant : constants.computeIfAbsent(value, Environment::create);
+    }
+
+    /**
+     * Returns the number of distinct values in the pool.
+     */
+    public int size() {
+        return constants.size();
+    }
+
+    /**
+     * Decodes the literal of an {@link Token.Type#INTEGER},
+     * {@link Token.Type#DECIMAL}, {@link Token.Type#CHARACTER} or
+     * {@link Token.Type#STRING} token into its pooled value. A character
+     * literal which doesn't hold exactly one character is decoded as a
+     * string, which the parser reports as malformed.
+     */
+    Environment.PlcObject decode(Token.Type type, String literal) {
+        switch (type) {
+            case INTEGER:
+                return get(new BigInteger(literal));
+            case DECIMAL:
+                return get(new BigDecimal(literal));
+            case CHARACTER:
+                String character = unescape(literal, 1, literal.length() - 1);
+                return get(character.length() == 1 ? (Object) character.charAt(0) : character);
+            case STRING:
+                return get(unescape(literal, 1, literal.length() - 1));
+            default:
+                throw new IllegalArgumentException("Not a literal token type: " + type + ".");
+        }
+    }
+
+    /**
+     * Replaces the escapes ({@code \b \n \r \t \' \" \\}) between
+     * {@code start} and {@code end} with the characters they stand for. Any
+     * other backslash is kept as it is.
+     */
+    static String unescape(CharSequence literal, int start, int end) {
+        StringBuilder builder = null;
+        for (int i = start; i < end; i++) {
+            char c = literal.charAt(i);
+            char escaped = c == '\\' && i + 1 < end ? escape(literal.charAt(i + 1)) : 0;
+            if (escaped != 0) {
+                if (builder == null) {
+                    builder = new StringBuilder(end - start).append(literal, start, i);
+                }
+                builder.append(escaped);
+                i++;
+            } else if (builder != null) {
+                builder.append(c);
+            }
+        }
+        return builder != null ? builder.toString() : literal.subSequence(start, end).toString();
+    }
+
+    /**
+     * Returns the character the escape {@code \c} stands for, or 0 if it isn't
+     * a valid escape.
+     */
+    static char escape(char c) {
+        switch (c) {
+            case 'b': return '\b';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case '\'': return '\'';
+            case '"': return '"';
+            case '\\': return '\\';
+            default: return 0;
+        }
+    }
+
+}
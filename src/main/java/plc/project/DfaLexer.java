@@ -0,0 +1,548 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A table-driven lexer which produces exactly the same tokens (and the same
+ * {@link ParseException}s) as {@link Lexer}, without building any regexes.
+ *
+ * Every input character is mapped to a small character class through the
+ * {@link #CLASSES} table, and the lexer moves between states by looking up
+ * {@code TRANSITIONS[state][class]}. Non-negative entries are the next state
+ * (consuming the character), negative entries are actions such as emitting the
+ * current token or reporting an error.
+ *
+ * The lexer works on any {@link CharSequence}, and {@link #next()} exposes the
+ * current token as a range of the input so callers which don't need a
+ * {@link Token} object can avoid creating one.
+ *
+ * A {@link ByteSequence} is lexed byte by byte, with indices as byte offsets.
+ * A multi-byte UTF-8 character is kept together wherever the grammar allows
+ * an arbitrary character (strings, character literals and single character
+ * operators), so literals decode to the same strings as when lexing the
+ * decoded input. When the bytes are in a heap array, runs of whitespace,
+ * identifier and digit characters and the contents of strings are skipped
+ * with a {@link ByteScanner}, which classifies many bytes at once where the
+ * Vector API is available.
+ *
+ * A lexer created from a {@link Reader} or {@link ReadableByteChannel} reads
+ * the input in chunks into a window which only keeps the current token. The
+ * lexer state lives in {@link #next()}, so a token split across two chunks
+ * (including strings, escapes and operators like {@code ==}) continues where
+ * it left off once the next chunk is read. Memory is bounded by the chunk size
+ * plus the longest token, and indices are still offsets in the whole input.
+ */
+public final class DfaLexer {
+
+    /**
+     * Returned by {@link #next()} once the input is exhausted.
+     */
+    public static final int EOF = -1;
+
+    // Character classes. Everything outside of ASCII is OTHER.
+    static final int C_OTHER = 0;
+    static final int C_LETTER = 1;
+    static final int C_ESCAPE_LETTER = 2; // b, n, r, t
+    static final int C_AT = 3;
+    static final int C_ZERO = 4;
+    static final int C_DIGIT = 5;
+    static final int C_MINUS = 6;
+    static final int C_UNDERSCORE = 7;
+    static final int C_DOT = 8;
+    static final int C_DOUBLE_QUOTE = 9;
+    static final int C_SINGLE_QUOTE = 10;
+    static final int C_BACKSLASH = 11;
+    static final int C_EQUALS = 12;
+    static final int C_BANG = 13;
+    static final int C_AMPERSAND = 14;
+    static final int C_PIPE = 15;
+    static final int C_SPACE = 16;   // ' ', '\t', '\b'
+    static final int C_LINE = 17;    // '\n', '\r'
+    static final int C_CONTROL = 18; // '\f', '\u000B'
+    static final int C_EOF = 19;
+    static final int CLASS_COUNT = 20;
+
+    static final byte[] CLASSES = new byte[128];
+
+    // States. START is the only state where whitespace is skipped.
+    static final int S_START = 0;
+    static final int S_IDENTIFIER = 1;
+    static final int S_MINUS = 2;
+    static final int S_ZERO = 3;
+    static final int S_INTEGER = 4;
+    static final int S_INTEGER_DOT = 5;
+    static final int S_DECIMAL = 6;
+    static final int S_STRING = 7;
+    static final int S_STRING_ESCAPE = 8;
+    static final int S_CHARACTER = 9;
+    static final int S_CHARACTER_ESCAPE = 10;
+    static final int S_CHARACTER_END = 11;
+    static final int S_EQUALS = 12;
+    static final int S_BANG = 13;
+    static final int S_AMPERSAND = 14;
+    static final int S_PIPE = 15;
+    static final int STATE_COUNT = 16;
+
+    // Actions, stored as negative entries in the transition table.
+    static final int A_SKIP = -1;              // whitespace, restart the token
+    static final int A_EMIT = -2;              // emit, current char belongs to the next token
+    static final int A_EMIT_CONSUME = -3;      // consume current char, then emit
+    static final int A_EMIT_BEFORE_DOT = -4;   // `1.` without a digit, give the dot back
+    static final int A_EMIT_ZERO = -5;         // `0` followed by a digit is its own token
+    static final int A_END = -6;               // end of input at a token boundary
+    static final int A_UNTERMINATED_STRING = -7;
+    static final int A_STRING_NEWLINE = -8;
+    static final int A_UNTERMINATED_ESCAPE = -9;
+    static final int A_INVALID_STRING_ESCAPE = -10;
+    static final int A_INVALID_CHARACTER = -11;
+    static final int A_INVALID_CHARACTER_ESCAPE = -12;
+    static final int A_UNTERMINATED_CHARACTER = -13;
+    static final int A_CHARACTER_EOF = -14;
+
+    static final byte[] TRANSITIONS = new byte[STATE_COUNT * CLASS_COUNT];
+
+    /**
+     * The token type emitted when leaving each state, or null if the state
+     * never emits a token directly.
+     */
+    static final Token.Type[] ACCEPTS = new Token.Type[STATE_COUNT];
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    static {
+        for (char c = 'A'; c <= 'Z'; c++) {
+            CLASSES[c] = C_LETTER;
+            CLASSES[Character.toLowerCase(c)] = C_LETTER;
+        }
+        for (char c : "bnrt".toCharArray()) {
+            CLASSES[c] = C_ESCAPE_LETTER;
+        }
+        CLASSES['@'] = C_AT;
+        CLASSES['0'] = C_ZERO;
+        for (char c = '1'; c <= '9'; c++) {
+            CLASSES[c] = C_DIGIT;
+        }
+        CLASSES['-'] = C_MINUS;
+        CLASSES['_'] = C_UNDERSCORE;
+        CLASSES['.'] = C_DOT;
+        CLASSES['"'] = C_DOUBLE_QUOTE;
+        CLASSES['\''] = C_SINGLE_QUOTE;
+        CLASSES['\\'] = C_BACKSLASH;
+        CLASSES['='] = C_EQUALS;
+        CLASSES['!'] = C_BANG;
+        CLASSES['&'] = C_AMPERSAND;
+        CLASSES['|'] = C_PIPE;
+        CLASSES[' '] = C_SPACE;
+        CLASSES['\t'] = C_SPACE;
+        CLASSES['\b'] = C_SPACE;
+        CLASSES['\n'] = C_LINE;
+        CLASSES['\r'] = C_LINE;
+        CLASSES['\f'] = C_CONTROL;
+        CLASSES['\u000B'] = C_CONTROL;
+
+        // Anything not listed below is a single character operator.
+        fill(S_START, A_EMIT_CONSUME);
+        set(S_START, S_IDENTIFIER, C_LETTER, C_ESCAPE_LETTER, C_AT);
+        set(S_START, S_ZERO, C_ZERO);
+        set(S_START, S_INTEGER, C_DIGIT);
+        set(S_START, S_MINUS, C_MINUS);
+        set(S_START, S_STRING, C_DOUBLE_QUOTE);
+        set(S_START, S_CHARACTER, C_SINGLE_QUOTE);
+        set(S_START, S_EQUALS, C_EQUALS);
+        set(S_START, S_BANG, C_BANG);
+        set(S_START, S_AMPERSAND, C_AMPERSAND);
+        set(S_START, S_PIPE, C_PIPE);
+        set(S_START, A_SKIP, C_SPACE, C_LINE);
+        set(S_START, A_END, C_EOF);
+
+        fill(S_IDENTIFIER, A_EMIT);
+        set(S_IDENTIFIER, S_IDENTIFIER, C_LETTER, C_ESCAPE_LETTER, C_AT, C_ZERO, C_DIGIT, C_MINUS, C_UNDERSCORE);
+        ACCEPTS[S_IDENTIFIER] = Token.Type.IDENTIFIER;
+
+        // A minus only starts a number when a digit follows, otherwise it is an operator.
+        fill(S_MINUS, A_EMIT);
+        set(S_MINUS, S_ZERO, C_ZERO);
+        set(S_MINUS, S_INTEGER, C_DIGIT);
+        ACCEPTS[S_MINUS] = Token.Type.OPERATOR;
+
+        fill(S_ZERO, A_EMIT);
+        set(S_ZERO, A_EMIT_ZERO, C_ZERO, C_DIGIT);
+        set(S_ZERO, S_INTEGER_DOT, C_DOT);
+        ACCEPTS[S_ZERO] = Token.Type.INTEGER;
+
+        fill(S_INTEGER, A_EMIT);
+        set(S_INTEGER, S_INTEGER, C_ZERO, C_DIGIT);
+        set(S_INTEGER, S_INTEGER_DOT, C_DOT);
+        ACCEPTS[S_INTEGER] = Token.Type.INTEGER;
+
+        fill(S_INTEGER_DOT, A_EMIT_BEFORE_DOT);
+        set(S_INTEGER_DOT, S_DECIMAL, C_ZERO, C_DIGIT);
+        ACCEPTS[S_INTEGER_DOT] = Token.Type.INTEGER;
+
+        fill(S_DECIMAL, A_EMIT);
+        set(S_DECIMAL, S_DECIMAL, C_ZERO, C_DIGIT);
+        ACCEPTS[S_DECIMAL] = Token.Type.DECIMAL;
+
+        fill(S_STRING, S_STRING);
+        set(S_STRING, A_EMIT_CONSUME, C_DOUBLE_QUOTE);
+        set(S_STRING, S_STRING_ESCAPE, C_BACKSLASH);
+        set(S_STRING, A_STRING_NEWLINE, C_LINE, C_CONTROL);
+        set(S_STRING, A_UNTERMINATED_STRING, C_EOF);
+        ACCEPTS[S_STRING] = Token.Type.STRING;
+
+        fill(S_STRING_ESCAPE, A_INVALID_STRING_ESCAPE);
+        set(S_STRING_ESCAPE, S_STRING, C_ESCAPE_LETTER, C_SINGLE_QUOTE, C_DOUBLE_QUOTE, C_BACKSLASH);
+        set(S_STRING_ESCAPE, A_UNTERMINATED_ESCAPE, C_EOF);
+
+        fill(S_CHARACTER, S_CHARACTER_END);
+        set(S_CHARACTER, S_CHARACTER_ESCAPE, C_BACKSLASH);
+        set(S_CHARACTER, A_INVALID_CHARACTER, C_SINGLE_QUOTE, C_LINE, C_CONTROL);
+        set(S_CHARACTER, A_CHARACTER_EOF, C_EOF);
+
+        fill(S_CHARACTER_ESCAPE, A_INVALID_CHARACTER_ESCAPE);
+        set(S_CHARACTER_ESCAPE, S_CHARACTER_END, C_ESCAPE_LETTER, C_SINGLE_QUOTE, C_DOUBLE_QUOTE, C_BACKSLASH);
+
+        fill(S_CHARACTER_END, A_UNTERMINATED_CHARACTER);
+        set(S_CHARACTER_END, A_EMIT_CONSUME, C_SINGLE_QUOTE);
+        ACCEPTS[S_CHARACTER_END] = Token.Type.CHARACTER;
+
+        // Compound operators: ==, !=, &&, ||
+        fill(S_EQUALS, A_EMIT);
+        set(S_EQUALS, A_EMIT_CONSUME, C_EQUALS);
+        fill(S_BANG, A_EMIT);
+        set(S_BANG, A_EMIT_CONSUME, C_EQUALS);
+        fill(S_AMPERSAND, A_EMIT);
+        set(S_AMPERSAND, A_EMIT_CONSUME, C_AMPERSAND);
+        fill(S_PIPE, A_EMIT);
+        set(S_PIPE, A_EMIT_CONSUME, C_PIPE);
+        ACCEPTS[S_EQUALS] = ACCEPTS[S_BANG] = ACCEPTS[S_AMPERSAND] = ACCEPTS[S_PIPE] = Token.Type.OPERATOR;
+        ACCEPTS[S_START] = Token.Type.OPERATOR;
+    }
+
+    private static void fill(int state, int target) {
+        for (int c = 0; c < CLASS_COUNT; c++) {
+            TRANSITIONS[state * CLASS_COUNT + c] = (byte) target;
+        }
+    }
+
+    private static void set(int state, int target, int... classes) {
+        for (int c : classes) {
+            TRANSITIONS[state * CLASS_COUNT + c] = (byte) target;
+        }
+    }
+
+    /**
+     * Returns the character class of the given character.
+     */
+    static int classOf(char c) {
+        return c < 128 ? CLASSES[c] : C_OTHER;
+    }
+
+    private CharSequence input;
+    private int length;
+    private final boolean utf8;
+    private int index = 0;
+
+    // The array backing a ByteSequence, which is scanned directly for long runs.
+    private final byte[] bytes;
+    private final int bytesOffset;
+    private final ByteScanner scanner;
+
+    // Streaming input. The window holds the input from offset onwards.
+    private final Reader reader;
+    private final int chunkSize;
+    private char[] window;
+    private int offset = 0;
+
+    private int tokenType;
+    private int tokenStart;
+    private int tokenEnd;
+    private int literalStart;
+
+    // Every occurrence of a name shares the first string for it.
+    private final Map<String, String> names = new HashMap<>();
+
+    public DfaLexer(CharSequence input) {
+        this(input, ByteScanner.INSTANCE);
+    }
+
+    DfaLexer(CharSequence input, ByteScanner scanner) {
+        this.input = input;
+        this.length = input.length();
+        this.utf8 = input instanceof ByteSequence;
+        this.bytes = utf8 ? ((ByteSequence) input).array() : null;
+        this.bytesOffset = bytes != null ? ((ByteSequence) input).arrayOffset() : 0;
+        this.scanner = scanner;
+        this.reader = null;
+        this.chunkSize = 0;
+    }
+
+    /**
+     * Creates a lexer over the input between {@code start} and {@code end},
+     * which must be a token boundary. Indices are still indices in the whole
+     * input, and {@code end} is treated as the end of the input.
+     */
+    DfaLexer(CharSequence input, int start, int end) {
+        this(input);
+        this.index = start;
+        this.length = end;
+    }
+
+    /**
+     * Creates a lexer over UTF-8 encoded source, such as a buffer from
+     * {@link java.nio.channels.FileChannel#map}.
+     */
+    public DfaLexer(ByteBuffer input) {
+        this(new ByteSequence(input));
+    }
+
+    /**
+     * Creates a lexer which reads the input from the given reader in chunks
+     * of {@code chunkSize} characters. Read errors are thrown as an
+     * {@link UncheckedIOException}.
+     */
+    public DfaLexer(Reader reader, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size " + chunkSize + ".");
+        }
+        this.reader = reader;
+        this.chunkSize = chunkSize;
+        this.window = new char[chunkSize];
+        this.input = CharBuffer.wrap(window);
+        this.length = 0;
+        this.utf8 = false;
+        this.bytes = null;
+        this.bytesOffset = 0;
+        this.scanner = null;
+    }
+
+    /**
+     * Creates a lexer which reads UTF-8 encoded input from the given channel
+     * in chunks, such as a pipe or a decompressing stream. Unlike lexing a
+     * {@link ByteBuffer}, indices are character offsets in the decoded input.
+     */
+    public DfaLexer(ReadableByteChannel channel, int chunkSize) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), chunkSize), chunkSize);
+    }
+
+    /**
+     * Lexes the entire input, equivalent to {@link Lexer#lex()}.
+     */
+    public List<Token> lex() {
+        List<Token> tokens = new ArrayList<>();
+        while (next() != EOF) {
+            tokens.add(token());
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns a {@link TokenSource} which lexes the input one token at a time
+     * as the parser asks for it.
+     */
+    public TokenSource tokens() {
+        return () -> next() == EOF ? null : token();
+    }
+
+    /**
+     * Advances to the next token, returning the {@link Token.Type#ordinal()}
+     * of its type or {@link #EOF} at the end of the input. The token itself is
+     * described by {@link #start()}, {@link #end()} and {@link #literal()}.
+     */
+    public int next() {
+        int state = S_START;
+        tokenStart = index;
+        while (true) {
+            int c = index < length || fill() ? classOf(input.charAt(index)) : C_EOF;
+            int action = TRANSITIONS[state * CLASS_COUNT + c];
+            if (action >= 0) {
+                state = action;
+                index++;
+                if (utf8 && c == C_OTHER) {
+                    skipContinuationBytes();
+                }
+                if (bytes != null) {
+                    skipRun(state);
+                }
+                continue;
+            }
+            switch (action) {
+                case A_SKIP:
+                    tokenStart = ++index;
+                    if (bytes != null) {
+                        tokenStart = index = scanner.skipWhitespace(bytes, bytesOffset + index, bytesOffset + length) - bytesOffset;
+                    }
+                    break;
+                case A_EMIT:
+                    if (state == S_MINUS && index < length && Character.isDigit(input.charAt(index))) {
+                        // Lexer checks for a negative number with Character.isDigit, which
+                        // includes non-ASCII digits that lexNumber then rejects.
+                        throw new ParseException("Expected a digit.", offset + index);
+                    }
+                    return emit(state, tokenStart, index);
+                case A_EMIT_CONSUME:
+                    index++;
+                    if (utf8 && c == C_OTHER) {
+                        skipContinuationBytes();
+                    }
+                    return emit(state, tokenStart, index);
+                case A_EMIT_BEFORE_DOT:
+                    return emit(state, tokenStart, --index);
+                case A_EMIT_ZERO:
+                    // `0` followed by another digit ends the token, and only the zero
+                    // itself (not a leading minus) is part of the literal.
+                    emit(state, tokenStart, index);
+                    literalStart = index - 1;
+                    return tokenType;
+                case A_END:
+                    return EOF;
+                case A_UNTERMINATED_STRING:
+                    throw new ParseException("Unterminated string literal.", offset + index);
+                case A_STRING_NEWLINE:
+                    throw new ParseException("Newline or illegal control character in unescaped string literal.", offset + index);
+                case A_UNTERMINATED_ESCAPE:
+                    throw new ParseException("Unterminated escape sequence.", offset + index);
+                case A_INVALID_STRING_ESCAPE:
+                    throw new ParseException("Invalid escape sequence in string literal.", offset + index);
+                case A_INVALID_CHARACTER:
+                    throw new ParseException("Invalid character in character literal.", offset + index);
+                case A_INVALID_CHARACTER_ESCAPE:
+                    throw new ParseException("Invalid escape sequence in character literal.", offset + index);
+                case A_UNTERMINATED_CHARACTER:
+                    throw new ParseException("Expected a single quote to end a character literal.", offset + index);
+                case A_CHARACTER_EOF:
+                    // Lexer advances past the missing character before checking for the quote.
+                    throw new ParseException("Expected a single quote to end a character literal.", offset + index + 1);
+                default:
+                    throw new AssertionError("Invalid lexer action: " + action);
+            }
+        }
+    }
+
+    /**
+     * Reads the next chunk of a streaming input into the window, returning
+     * false at the end of the input. Everything before the current token is
+     * discarded first, and the window only grows when a single token doesn't
+     * fit alongside a chunk.
+     */
+    private boolean fill() {
+        if (reader == null) {
+            return false;
+        }
+        int kept = length - tokenStart;
+        if (kept + chunkSize > window.length) {
+            char[] grown = new char[kept + chunkSize];
+            System.arraycopy(window, tokenStart, grown, 0, kept);
+            window = grown;
+            input = CharBuffer.wrap(window);
+        } else {
+            System.arraycopy(window, tokenStart, window, 0, kept);
+        }
+        offset += tokenStart;
+        index -= tokenStart;
+        literalStart -= tokenStart;
+        tokenStart = 0;
+        length = kept;
+        try {
+            int read;
+            do {
+                read = reader.read(window, length, chunkSize);
+            } while (read == 0);
+            if (read < 0) {
+                return false;
+            }
+            length += read;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Advances past the bytes after the current one which leave the lexer in
+     * the same state.
+     */
+    private void skipRun(int state) {
+        switch (state) {
+            case S_IDENTIFIER:
+                index = scanner.skipIdentifier(bytes, bytesOffset + index, bytesOffset + length) - bytesOffset;
+                break;
+            case S_INTEGER:
+            case S_DECIMAL:
+                index = scanner.skipDigits(bytes, bytesOffset + index, bytesOffset + length) - bytesOffset;
+                break;
+            case S_STRING:
+                index = scanner.skipString(bytes, bytesOffset + index, bytesOffset + length) - bytesOffset;
+                break;
+        }
+    }
+
+    /**
+     * Advances past the remaining bytes of a UTF-8 character.
+     */
+    private void skipContinuationBytes() {
+        while (index < length && (input.charAt(index) & 0xC0) == 0x80) {
+            index++;
+        }
+    }
+
+    private int emit(int state, int start, int end) {
+        tokenType = ACCEPTS[state].ordinal();
+        tokenStart = start;
+        tokenEnd = end;
+        literalStart = start;
+        return tokenType;
+    }
+
+    /**
+     * Returns the type of the current token.
+     */
+    public Token.Type type() {
+        return TYPES[tokenType];
+    }
+
+    /**
+     * Returns the index of the first character of the current token.
+     */
+    public int start() {
+        return offset + tokenStart;
+    }
+
+    /**
+     * Returns the index after the last character of the current token.
+     */
+    public int end() {
+        return offset + tokenEnd;
+    }
+
+    /**
+     * Returns the literal of the current token. This is the input between
+     * {@link #start()} and {@link #end()}, apart from a zero which is directly
+     * followed by another digit (such as {@code -01}), where the literal is
+     * only the zero as in {@link Lexer#lexNumber()}.
+     */
+    public String literal() {
+        return input.subSequence(literalStart, tokenEnd).toString();
+    }
+
+    /**
+     * Creates a {@link Token} for the current token.
+     */
+    public Token token() {
+        Token.Type type = TYPES[tokenType];
+        String literal = type == Token.Type.IDENTIFIER ? names.computeIfAbsent(literal(), name -> name) : literal();
+        return new Token(type, literal, offset + tokenStart);
+    }
+
+}
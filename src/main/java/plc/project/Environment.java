@@ -1,5 +1,7 @@
 package plc.project;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -8,11 +10,7 @@ import java.util.Map;
 
 public final class Environment {
 
-    public static PlcObject create(Object value) {
-        return new PlcObject(new Scope(null), value);
-    }
-
-    public static final PlcObject NIL = new PlcObject(Type.NIL, new Scope(null), new Object() {
+    public static final PlcObject NIL = new PlcObject(Type.NIL, new Object() {
 
         @Override
         public String toString() {
@@ -21,6 +19,69 @@ public final class Environment {
 
     });
 
+    public static final PlcObject TRUE = new PlcObject(Type.BOOLEAN, true);
+    public static final PlcObject FALSE = new PlcObject(Type.BOOLEAN, false);
+
+    // Integers are created for every loop counter, index and comparison, so
+    // the small ones are shared instead of allocated (like Integer.valueOf).
+    private static final int SMALL_MIN = -128;
+    private static final int SMALL_MAX = 1024;
+    private static final PlcObject[] SMALL_INTEGERS = new PlcObject[SMALL_MAX - SMALL_MIN + 1];
+
+    static {
+        for (int i = 0; i < SMALL_INTEGERS.length; i++) {
+            SMALL_INTEGERS[i] = new PlcObject(Type.INTEGER, BigInteger.valueOf(SMALL_MIN + i));
+        }
+    }
+
+    /**
+     * Returns the runtime value of the given value, typed by its class.
+     * Booleans, {@code null} and small integers return a shared instance, so
+     * values must not be compared by identity.
+     */
+    public static PlcObject create(Object value) {
+        if (value == null) {
+            return NIL;
+        } else if (value instanceof Boolean) {
+            return create((boolean) (Boolean) value);
+        } else if (value instanceof BigInteger) {
+            return integer((BigInteger) value);
+        } else if (value instanceof BigDecimal) {
+            return new PlcObject(Type.DECIMAL, value);
+        } else if (value instanceof Character) {
+            return new PlcObject(Type.CHARACTER, value);
+        } else if (value instanceof String) {
+            return new PlcObject(Type.STRING, value);
+        }
+        return new PlcObject(Type.ANY, value);
+    }
+
+    public static PlcObject create(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    /**
+     * Returns the runtime value of an integer computed as a long, which
+     * creates its {@link BigInteger} only if {@link PlcObject#getValue()} is
+     * called, see {@link PlcObject#isLong()}.
+     */
+    public static PlcObject integer(long value) {
+        if (value >= SMALL_MIN && value <= SMALL_MAX) {
+            return SMALL_INTEGERS[(int) value - SMALL_MIN];
+        }
+        return new PlcObject(value);
+    }
+
+    private static PlcObject integer(BigInteger value) {
+        if (value.bitLength() < 32) {
+            int small = value.intValue();
+            if (small >= SMALL_MIN && small <= SMALL_MAX) {
+                return SMALL_INTEGERS[small - SMALL_MIN];
+            }
+        }
+        return new PlcObject(Type.INTEGER, value);
+    }
+
     private static final Map<String, Type> TYPES = new HashMap<>();
 
     public static Type getType(String name) {
@@ -30,6 +91,10 @@ public final class Environment {
         return TYPES.get(name);
     }
 
+    static boolean hasType(String name) {
+        return TYPES.containsKey(name);
+    }
+
     public static void registerType(Type type) {
         if (TYPES.containsKey(type.getName())) {
             throw new IllegalArgumentException("Duplicate registration of type " + type.getName() + ".");
@@ -92,17 +157,40 @@ public final class Environment {
     public static final class PlcObject {
 
         private final Type type;
-        private final Scope scope;
-        private final Object value;
+        // Null for an integer computed as a long, until its value is needed.
+        private Object value;
+        private final boolean isLong;
+        private final long longValue;
 
+        public PlcObject(Type type, Object value) {
+            this.type = type;
+            this.value = value;
+            // Integers which fit hold their value unboxed as well.
+            this.isLong = value instanceof BigInteger && ((BigInteger) value).bitLength() < 64;
+            this.longValue = isLong ? ((BigInteger) value).longValue() : 0;
+        }
+
+        private PlcObject(long value) {
+            this.type = Type.INTEGER;
+            this.value = null;
+            this.isLong = true;
+            this.longValue = value;
+        }
+
+        /**
+         * Values have no scope of their own, their members are those of their
+         * type. The scope is ignored and the type is that of the value, as
+         * with {@link Environment#create(Object)}.
+         */
         public PlcObject(Scope scope, Object value) {
-            this(new Type("Unknown", "Unknown", scope), scope, value);
+            this(create(value).getType(), value);
         }
 
+        /**
+         * As {@link #PlcObject(Type, Object)}, the scope is ignored.
+         */
         public PlcObject(Type type, Scope scope, Object value) {
-            this.type = type;
-            this.scope = scope;
-            this.value = value;
+            this(type, value);
         }
 
         public Type getType() {
@@ -110,15 +198,30 @@ public final class Environment {
         }
 
         public Object getValue() {
+            if (value == null && isLong) {
+                value = BigInteger.valueOf(longValue);
+            }
             return value;
         }
 
+        /**
+         * Returns whether the value is an integer which fits in a long, so the
+         * engines can compute with {@link #getLong()} instead of the
+         * {@link BigInteger} of {@link #getValue()}.
+         */
+        public boolean isLong() {
+            return isLong;
+        }
+
+        public long getLong() {
+            return longValue;
+        }
+
         @Override
         public String toString() {
             return "Object{" +
-                    "type=" + type +
-                    ", scope=" + scope +
-                    ", value=" + value +
+                    "type=" + type.getName() +
+                    ", value=" + getValue() +
                     '}';
         }
 
@@ -217,6 +320,9 @@ public final class Environment {
             return name;
         }
 
+        public String getJvmName() {
+            return jvmName;
+        }
 
         public List<Type> getParameterTypes() {
             return parameterTypes;
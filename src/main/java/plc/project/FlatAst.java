@@ -0,0 +1,787 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A compact, read-only copy of an {@link Ast} stored in a few primitive arrays
+ * instead of an object per node (with its {@link Optional}s, lists and
+ * strings). Nodes are addressed by int handles, starting with the root at
+ * {@code 0}.
+ *
+ * Every node has a kind, two int fields {@code a} and {@code b} whose meaning
+ * depends on the kind (see the kinds below), and a range of child handles.
+ * Names, type names and operators are stored once in a table of symbols and
+ * referred to by their id, and literals are stored once in a table of
+ * constants.
+ *
+ * Nodes are stored in depth-first order, so every node is followed by its
+ * descendants. This lets {@link #toAst(int)} build nodes from the last one
+ * backwards, without recursion, as every child is built before its parent.
+ *
+ * A flat AST created with {@link #of(Ast)} only holds syntax. One created
+ * with {@link #ofAnalyzed(Ast)} also keeps the types, variables and functions
+ * set by the {@link Analyzer}, which are set again by {@link #toAst()}.
+ *
+ * This is mainly a form for keeping and saving programs (see
+ * {@link AstFile}). The {@link Generator} walks it directly with
+ * {@link #accept(int, Visitor)} (see {@link Generator#generate(FlatAst)}), as
+ * can other passes which only read the syntax. The {@link Analyzer} and
+ * {@link Interpreter} only work on {@link Ast} nodes, so they need the tree
+ * rebuilt by {@link #toAst()}, which takes as much memory as the original.
+ */
+public final class FlatAst {
+
+    // Node kinds, with the meaning of a, b and the children of each.
+
+    /** a: number of globals, children: globals then functions. */
+    public static final int SOURCE = 0;
+    /** a: name, b: type name, children: the value, if any. */
+    public static final int GLOBAL = 1;
+    /** A {@link #GLOBAL} which is mutable. */
+    public static final int MUTABLE_GLOBAL = 2;
+    /** a: name, b: return type name or -1, children: parameters then statements. */
+    public static final int FUNCTION = 3;
+    /** a: name, b: type name. Only a child of a {@link #FUNCTION}. */
+    public static final int PARAMETER = 4;
+    /** children: the expression. */
+    public static final int EXPRESSION_STATEMENT = 5;
+    /** a: name, b: type name or -1, children: the value, if any. */
+    public static final int DECLARATION = 6;
+    /** children: receiver, value. */
+    public static final int ASSIGNMENT = 7;
+    /** a: number of then statements, children: condition, then statements, else statements. */
+    public static final int IF = 8;
+    /** children: condition, cases. */
+    public static final int SWITCH = 9;
+    /** a: 1 if the case has a value, children: the value, if any, then statements. */
+    public static final int CASE = 10;
+    /** children: condition, statements. */
+    public static final int WHILE = 11;
+    /** children: the value. */
+    public static final int RETURN = 12;
+    /** a: constant. */
+    public static final int LITERAL = 13;
+    /** children: the expression. */
+    public static final int GROUP = 14;
+    /** a: {@link TokenKind} of the operator, b: operator, children: left, right. */
+    public static final int BINARY = 15;
+    /** a: name, children: the offset, if any. */
+    public static final int ACCESS = 16;
+    /** a: name, children: arguments. */
+    public static final int CALL = 17;
+    /** a: constant holding the array backing the list or -1, children: values. */
+    public static final int LIST = 18;
+
+    byte[] kinds;
+    int[] as;
+    int[] bs;
+    // Index of the first child of each node in children, followed by the
+    // end of the children of the last node.
+    int[] firsts;
+    int[] children;
+    int size = 0;
+    int childrenSize = 0;
+
+    String[] symbols;
+    Object[] constants;
+
+    // Only set for an analyzed AST: the index of the type of each literal,
+    // group, binary and list expression, and of the variable or function of
+    // each node which has one, or -1.
+    int[] types;
+    int[] bindings;
+    // The slot of each analyzed global and declaration, the frame size of
+    // each function, and 2 * slot + depth for each access, or -1.
+    int[] slots;
+    Environment.Type[] typeTable;
+    Environment.Variable[] variables;
+    Environment.Function[] functions;
+
+    FlatAst(int capacity) {
+        kinds = new byte[capacity];
+        as = new int[capacity];
+        bs = new int[capacity];
+        firsts = new int[capacity + 1];
+        children = new int[capacity];
+    }
+
+    /**
+     * Returns the number of nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int kind(int node) {
+        return kinds[node];
+    }
+
+    public int childCount(int node) {
+        return firsts[node + 1] - firsts[node];
+    }
+
+    public int child(int node, int index) {
+        return children[firsts[node] + index];
+    }
+
+    /**
+     * Returns the name of a global, function, parameter, declaration, access
+     * or call.
+     */
+    public String name(int node) {
+        return symbols[as[node]];
+    }
+
+    /**
+     * Returns the id of the name of the node, which is the same for every
+     * node with the same name.
+     */
+    public int symbolId(int node) {
+        return as[node];
+    }
+
+    /**
+     * Returns the type name of a global, parameter or declaration, or the
+     * return type name of a function, if there is one.
+     */
+    public Optional<String> typeName(int node) {
+        return bs[node] >= 0 ? Optional.of(symbols[bs[node]]) : Optional.empty();
+    }
+
+    /**
+     * Returns the {@link TokenKind} of the operator of a binary expression,
+     * which is {@link TokenKind#NONE} for an operator the parser doesn't
+     * produce.
+     */
+    public int operator(int node) {
+        return as[node];
+    }
+
+    public String operatorLiteral(int node) {
+        return symbols[bs[node]];
+    }
+
+    /**
+     * Returns the value of a literal.
+     */
+    public Environment.PlcObject constant(int node) {
+        return (Environment.PlcObject) constants[as[node]];
+    }
+
+    /**
+     * Returns the number of globals of a source.
+     */
+    public int globalCount(int node) {
+        return as[node];
+    }
+
+    /**
+     * Returns the number of statements in the then block of an if statement.
+     */
+    public int thenCount(int node) {
+        return as[node];
+    }
+
+    /**
+     * Returns true if a case (rather than the default case) has a value.
+     */
+    public boolean hasValue(int node) {
+        return as[node] != 0;
+    }
+
+    /**
+     * Returns the number of parameters of a function.
+     */
+    public int parameterCount(int node) {
+        int count = 0;
+        while (count < childCount(node) && kinds[child(node, count)] == PARAMETER) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the array backing a list, see {@link Ast.Expression.PlcList#getArray()}.
+     */
+    public Optional<Object> array(int node) {
+        return as[node] >= 0 ? Optional.of(constants[as[node]]) : Optional.empty();
+    }
+
+    /**
+     * Returns the number of values of a list, whether or not it's backed by
+     * an array.
+     */
+    public int length(int node) {
+        return as[node] >= 0 ? java.lang.reflect.Array.getLength(constants[as[node]]) : childCount(node);
+    }
+
+    /**
+     * Returns a value of a list backed by an array, see
+     * {@link Ast.Expression.PlcList#getLiteral(int)}.
+     */
+    public Object literal(int node, int index) {
+        return Ast.Expression.PlcList.literal(constants[as[node]], index);
+    }
+
+    /**
+     * Returns true if the flat AST holds the types, variables and functions
+     * set by the {@link Analyzer}.
+     */
+    public boolean isAnalyzed() {
+        return types != null;
+    }
+
+    /**
+     * Returns the type of an expression of an analyzed AST.
+     */
+    public Environment.Type type(int node) {
+        switch (kinds[node]) {
+            case ACCESS: return variable(node).getType();
+            case CALL: return function(node).getReturnType();
+            default: return typeTable[types[node]];
+        }
+    }
+
+    /**
+     * Returns the variable of a global, declaration or access of an analyzed
+     * AST.
+     */
+    public Environment.Variable variable(int node) {
+        return variables[bindings[node]];
+    }
+
+    /**
+     * Returns the function of a function or call of an analyzed AST.
+     */
+    public Environment.Function function(int node) {
+        return functions[bindings[node]];
+    }
+
+    /**
+     * Calls the method of the visitor for the kind of the node.
+     */
+    public <T> T accept(int node, Visitor<T> visitor) {
+        switch (kinds[node]) {
+            case SOURCE: return visitor.visitSource(node);
+            case GLOBAL:
+            case MUTABLE_GLOBAL: return visitor.visitGlobal(node);
+            case FUNCTION: return visitor.visitFunction(node);
+            case EXPRESSION_STATEMENT: return visitor.visitExpressionStatement(node);
+            case DECLARATION: return visitor.visitDeclaration(node);
+            case ASSIGNMENT: return visitor.visitAssignment(node);
+            case IF: return visitor.visitIf(node);
+            case SWITCH: return visitor.visitSwitch(node);
+            case CASE: return visitor.visitCase(node);
+            case WHILE: return visitor.visitWhile(node);
+            case RETURN: return visitor.visitReturn(node);
+            case LITERAL: return visitor.visitLiteral(node);
+            case GROUP: return visitor.visitGroup(node);
+            case BINARY: return visitor.visitBinary(node);
+            case ACCESS: return visitor.visitAccess(node);
+            case CALL: return visitor.visitCall(node);
+            case LIST: return visitor.visitList(node);
+            default: throw new AssertionError("Unexpected node kind: " + kinds[node] + ".");
+        }
+    }
+
+    /**
+     * Visits the nodes of a {@link FlatAst} by handle, with a method for each
+     * kind of {@link Ast} node.
+     */
+    public interface Visitor<T> {
+
+        T visitSource(int node);
+
+        T visitGlobal(int node);
+
+        T visitFunction(int node);
+
+        T visitExpressionStatement(int node);
+
+        T visitDeclaration(int node);
+
+        T visitAssignment(int node);
+
+        T visitIf(int node);
+
+        T visitSwitch(int node);
+
+        T visitCase(int node);
+
+        T visitWhile(int node);
+
+        T visitReturn(int node);
+
+        T visitLiteral(int node);
+
+        T visitGroup(int node);
+
+        T visitBinary(int node);
+
+        T visitAccess(int node);
+
+        T visitCall(int node);
+
+        T visitList(int node);
+
+    }
+
+    /**
+     * Creates a flat copy of the given AST. The statements of a lazily parsed
+     * function are parsed first.
+     */
+    public static FlatAst of(Ast ast) {
+        return new Builder(false).build(ast);
+    }
+
+    /**
+     * Creates a flat copy of the given analyzed AST, which also holds the
+     * types, variables and functions set by the {@link Analyzer}.
+     *
+     * @throws IllegalStateException if the AST hasn't been analyzed
+     */
+    public static FlatAst ofAnalyzed(Ast ast) {
+        return new Builder(true).build(ast);
+    }
+
+    /**
+     * Creates the {@link Ast} of the root node.
+     */
+    public Ast toAst() {
+        return toAst(0);
+    }
+
+    /**
+     * Creates the {@link Ast} of the given node. Literals share the constants
+     * of the flat AST.
+     */
+    public Ast toAst(int node) {
+        // The last node of the subtree is at the end of its last children.
+        int last = node;
+        while (childCount(last) > 0) {
+            last = child(last, childCount(last) - 1);
+        }
+        Ast[] built = new Ast[last - node + 1];
+        for (int current = last; current >= node; current--) {
+            built[current - node] = build(current, built, node);
+            if (types != null) {
+                bind(current, built[current - node]);
+            }
+        }
+        return built[0];
+    }
+
+    private Ast build(int node, Ast[] built, int base) {
+        int count = childCount(node);
+        int first = firsts[node];
+        switch (kinds[node]) {
+            case SOURCE: {
+                List<Ast.Global> globals = new ArrayList<>(as[node]);
+                List<Ast.Function> functions = new ArrayList<>(count - as[node]);
+                for (int i = 0; i < count; i++) {
+                    Ast child = built[children[first + i] - base];
+                    if (i < as[node]) {
+                        globals.add((Ast.Global) child);
+                    } else {
+                        functions.add((Ast.Function) child);
+                    }
+                }
+                return new Ast.Source(globals, functions);
+            }
+            case GLOBAL:
+            case MUTABLE_GLOBAL:
+                return new Ast.Global(name(node), symbols[bs[node]], kinds[node] == MUTABLE_GLOBAL, optional(node, 0, built, base));
+            case FUNCTION: {
+                int parameters = parameterCount(node);
+                List<String> names = new ArrayList<>(parameters);
+                List<String> types = new ArrayList<>(parameters);
+                for (int i = 0; i < parameters; i++) {
+                    names.add(name(children[first + i]));
+                    types.add(symbols[bs[children[first + i]]]);
+                }
+                return new Ast.Function(name(node), names, types, typeName(node), statements(node, parameters, count, built, base));
+            }
+            case PARAMETER:
+                return null;
+            case EXPRESSION_STATEMENT:
+                return new Ast.Statement.Expression(expression(node, 0, built, base));
+            case DECLARATION:
+                return new Ast.Statement.Declaration(name(node), typeName(node), optional(node, 0, built, base));
+            case ASSIGNMENT:
+                return new Ast.Statement.Assignment(expression(node, 0, built, base), expression(node, 1, built, base));
+            case IF:
+                return new Ast.Statement.If(expression(node, 0, built, base),
+                        statements(node, 1, 1 + as[node], built, base),
+                        statements(node, 1 + as[node], count, built, base));
+            case SWITCH: {
+                List<Ast.Statement.Case> cases = new ArrayList<>(count - 1);
+                for (int i = 1; i < count; i++) {
+                    cases.add((Ast.Statement.Case) built[children[first + i] - base]);
+                }
+                return new Ast.Statement.Switch(expression(node, 0, built, base), cases);
+            }
+            case CASE:
+                return new Ast.Statement.Case(hasValue(node) ? Optional.of(expression(node, 0, built, base)) : Optional.empty(),
+                        statements(node, as[node], count, built, base));
+            case WHILE:
+                return new Ast.Statement.While(expression(node, 0, built, base), statements(node, 1, count, built, base));
+            case RETURN:
+                return new Ast.Statement.Return(expression(node, 0, built, base));
+            case LITERAL:
+                return Ast.Expression.Literal.of(constant(node));
+            case GROUP:
+                return new Ast.Expression.Group(expression(node, 0, built, base));
+            case BINARY:
+                return new Ast.Expression.Binary(operatorLiteral(node), expression(node, 0, built, base), expression(node, 1, built, base));
+            case ACCESS:
+                return new Ast.Expression.Access(optional(node, 0, built, base), name(node));
+            case CALL:
+                return new Ast.Expression.Function(name(node), expressions(node, built, base));
+            case LIST: {
+                Object array = as[node] >= 0 ? constants[as[node]] : null;
+                if (array instanceof int[]) {
+                    return new Ast.Expression.PlcList((int[]) array);
+                } else if (array instanceof long[]) {
+                    return new Ast.Expression.PlcList((long[]) array);
+                } else if (array instanceof double[]) {
+                    return new Ast.Expression.PlcList((double[]) array);
+                }
+                return new Ast.Expression.PlcList(expressions(node, built, base));
+            }
+            default:
+                throw new AssertionError("Unexpected node kind: " + kinds[node] + ".");
+        }
+    }
+
+    /**
+     * Sets the type, variable or function of an analyzed node.
+     */
+    private void bind(int node, Ast ast) {
+        switch (kinds[node]) {
+            case GLOBAL:
+            case MUTABLE_GLOBAL:
+                ((Ast.Global) ast).setVariable(variable(node));
+                ((Ast.Global) ast).setSlot(slots[node]);
+                break;
+            case FUNCTION:
+                ((Ast.Function) ast).setFunction(function(node));
+                ((Ast.Function) ast).setFrameSize(slots[node]);
+                break;
+            case DECLARATION:
+                ((Ast.Statement.Declaration) ast).setVariable(variable(node));
+                ((Ast.Statement.Declaration) ast).setSlot(slots[node]);
+                break;
+            case ACCESS:
+                ((Ast.Expression.Access) ast).setVariable(variable(node));
+                if (slots[node] >= 0) {
+                    ((Ast.Expression.Access) ast).setSlot(slots[node] % 2, slots[node] / 2);
+                }
+                break;
+            case CALL:
+                ((Ast.Expression.Function) ast).setFunction(function(node));
+                break;
+            case LITERAL:
+                ((Ast.Expression.Literal) ast).setType(type(node));
+                break;
+            case GROUP:
+                ((Ast.Expression.Group) ast).setType(type(node));
+                break;
+            case BINARY:
+                ((Ast.Expression.Binary) ast).setType(type(node));
+                break;
+            case LIST:
+                ((Ast.Expression.PlcList) ast).setType(type(node));
+                break;
+        }
+    }
+
+    private Ast.Expression expression(int node, int index, Ast[] built, int base) {
+        return (Ast.Expression) built[child(node, index) - base];
+    }
+
+    private Optional<Ast.Expression> optional(int node, int index, Ast[] built, int base) {
+        return index < childCount(node) ? Optional.of(expression(node, index, built, base)) : Optional.empty();
+    }
+
+    private List<Ast.Expression> expressions(int node, Ast[] built, int base) {
+        List<Ast.Expression> expressions = new ArrayList<>(childCount(node));
+        for (int i = 0; i < childCount(node); i++) {
+            expressions.add(expression(node, i, built, base));
+        }
+        return expressions;
+    }
+
+    private List<Ast.Statement> statements(int node, int from, int to, Ast[] built, int base) {
+        List<Ast.Statement> statements = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            statements.add((Ast.Statement) built[child(node, i) - base]);
+        }
+        return statements;
+    }
+
+    /**
+     * Copies an {@link Ast} in depth-first order with an explicit stack, so
+     * deeply nested expressions don't overflow the thread stack.
+     */
+    private static final class Builder {
+
+        private final FlatAst flat = new FlatAst(64);
+        private final boolean analyzed;
+        private final Map<String, Integer> symbols = new HashMap<>();
+        private final Map<Object, Integer> constants = new HashMap<>();
+        private final List<Object> constantList = new ArrayList<>();
+        // Types, variables and functions are shared by identity, as in the AST.
+        private final Map<Object, Integer> bindings = new IdentityHashMap<>();
+        private final List<Environment.Type> types = new ArrayList<>();
+        private final List<Environment.Variable> variables = new ArrayList<>();
+        private final List<Environment.Function> functions = new ArrayList<>();
+
+        // Nodes waiting to be added, and the slot in children for their handle.
+        private Ast[] pending = new Ast[16];
+        private int[] slots = new int[16];
+        private int depth = 0;
+
+        private Builder(boolean analyzed) {
+            this.analyzed = analyzed;
+            if (analyzed) {
+                flat.types = new int[flat.kinds.length];
+                flat.bindings = new int[flat.kinds.length];
+                flat.slots = new int[flat.kinds.length];
+            }
+        }
+
+        private FlatAst build(Ast ast) {
+            push(ast, -1);
+            while (depth > 0) {
+                depth--;
+                Ast next = pending[depth];
+                pending[depth] = null;
+                int slot = slots[depth];
+                int node = add(next);
+                if (slot >= 0) {
+                    flat.children[slot] = node;
+                }
+                if (analyzed) {
+                    analyze(next, node);
+                }
+            }
+            // The arrays grew by doubling, so up to half of each is unused.
+            flat.kinds = Arrays.copyOf(flat.kinds, flat.size);
+            flat.as = Arrays.copyOf(flat.as, flat.size);
+            flat.bs = Arrays.copyOf(flat.bs, flat.size);
+            flat.firsts = Arrays.copyOf(flat.firsts, flat.size + 1);
+            flat.children = Arrays.copyOf(flat.children, flat.childrenSize);
+            if (analyzed) {
+                flat.types = Arrays.copyOf(flat.types, flat.size);
+                flat.bindings = Arrays.copyOf(flat.bindings, flat.size);
+                flat.slots = Arrays.copyOf(flat.slots, flat.size);
+            }
+            flat.symbols = new String[symbols.size()];
+            symbols.forEach((symbol, id) -> flat.symbols[id] = symbol);
+            flat.constants = constantList.toArray();
+            if (analyzed) {
+                flat.typeTable = types.toArray(new Environment.Type[0]);
+                flat.variables = variables.toArray(new Environment.Variable[0]);
+                flat.functions = functions.toArray(new Environment.Function[0]);
+            }
+            return flat;
+        }
+
+        /**
+         * Records the type, variable or function of the node, if it has one.
+         */
+        private void analyze(Ast ast, int node) {
+            if (ast instanceof Ast.Global) {
+                flat.bindings[node] = binding(((Ast.Global) ast).getVariable(), variables);
+                flat.slots[node] = ((Ast.Global) ast).getSlot();
+            } else if (ast instanceof Ast.Function) {
+                flat.bindings[node] = binding(((Ast.Function) ast).getFunction(), functions);
+                flat.slots[node] = ((Ast.Function) ast).getFrameSize();
+            } else if (ast instanceof Ast.Statement.Declaration) {
+                flat.bindings[node] = binding(((Ast.Statement.Declaration) ast).getVariable(), variables);
+                flat.slots[node] = ((Ast.Statement.Declaration) ast).getSlot();
+            } else if (ast instanceof Ast.Expression.Access) {
+                Ast.Expression.Access access = (Ast.Expression.Access) ast;
+                flat.bindings[node] = binding(access.getVariable(), variables);
+                flat.slots[node] = access.getSlot() >= 0 ? 2 * access.getSlot() + access.getDepth() : -1;
+            } else if (ast instanceof Ast.Expression.Function) {
+                flat.bindings[node] = binding(((Ast.Expression.Function) ast).getFunction(), functions);
+            } else if (ast instanceof Ast.Expression.Literal || ast instanceof Ast.Expression.Group
+                    || ast instanceof Ast.Expression.Binary || ast instanceof Ast.Expression.PlcList) {
+                flat.types[node] = binding(((Ast.Expression) ast).getType(), types);
+            }
+        }
+
+        private <T> int binding(T binding, List<T> list) {
+            return bindings.computeIfAbsent(binding, key -> {
+                list.add(binding);
+                return list.size() - 1;
+            });
+        }
+
+        /**
+         * Adds the node and pushes its children, in reverse so the first child
+         * is added next.
+         */
+        private int add(Ast ast) {
+            if (ast instanceof Ast.Source) {
+                Ast.Source source = (Ast.Source) ast;
+                List<Ast> children = new ArrayList<>(source.getGlobals());
+                children.addAll(source.getFunctions());
+                return node(FlatAst.SOURCE, source.getGlobals().size(), 0, children);
+            } else if (ast instanceof Ast.Global) {
+                Ast.Global global = (Ast.Global) ast;
+                return node(global.getMutable() ? MUTABLE_GLOBAL : GLOBAL, symbol(global.getName()), symbol(global.getTypeName()), optional(global.getValue()));
+            } else if (ast instanceof Ast.Function) {
+                Ast.Function function = (Ast.Function) ast;
+                int parameters = function.getParameters().size();
+                int node = node(FUNCTION, symbol(function.getName()), function.getReturnTypeName().map(this::symbol).orElse(-1), function.getStatements(), parameters);
+                for (int i = 0; i < parameters; i++) {
+                    int parameter = node(PARAMETER, symbol(function.getParameters().get(i)), symbol(function.getParameterTypeNames().get(i)), List.of());
+                    flat.children[flat.firsts[node] + i] = parameter;
+                }
+                return node;
+            } else if (ast instanceof Ast.Statement.Expression) {
+                return node(EXPRESSION_STATEMENT, 0, 0, List.of(((Ast.Statement.Expression) ast).getExpression()));
+            } else if (ast instanceof Ast.Statement.Declaration) {
+                Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) ast;
+                return node(DECLARATION, symbol(declaration.getName()), declaration.getTypeName().map(this::symbol).orElse(-1), optional(declaration.getValue()));
+            } else if (ast instanceof Ast.Statement.Assignment) {
+                Ast.Statement.Assignment assignment = (Ast.Statement.Assignment) ast;
+                return node(ASSIGNMENT, 0, 0, List.of(assignment.getReceiver(), assignment.getValue()));
+            } else if (ast instanceof Ast.Statement.If) {
+                Ast.Statement.If statement = (Ast.Statement.If) ast;
+                List<Ast> children = new ArrayList<>(1 + statement.getThenStatements().size() + statement.getElseStatements().size());
+                children.add(statement.getCondition());
+                children.addAll(statement.getThenStatements());
+                children.addAll(statement.getElseStatements());
+                return node(IF, statement.getThenStatements().size(), 0, children);
+            } else if (ast instanceof Ast.Statement.Switch) {
+                Ast.Statement.Switch statement = (Ast.Statement.Switch) ast;
+                List<Ast> children = new ArrayList<>(1 + statement.getCases().size());
+                children.add(statement.getCondition());
+                children.addAll(statement.getCases());
+                return node(SWITCH, 0, 0, children);
+            } else if (ast instanceof Ast.Statement.Case) {
+                Ast.Statement.Case statement = (Ast.Statement.Case) ast;
+                List<Ast> children = new ArrayList<>(optional(statement.getValue()));
+                children.addAll(statement.getStatements());
+                return node(CASE, statement.getValue().isPresent() ? 1 : 0, 0, children);
+            } else if (ast instanceof Ast.Statement.While) {
+                Ast.Statement.While statement = (Ast.Statement.While) ast;
+                List<Ast> children = new ArrayList<>(1 + statement.getStatements().size());
+                children.add(statement.getCondition());
+                children.addAll(statement.getStatements());
+                return node(WHILE, 0, 0, children);
+            } else if (ast instanceof Ast.Statement.Return) {
+                return node(RETURN, 0, 0, List.of(((Ast.Statement.Return) ast).getValue()));
+            } else if (ast instanceof Ast.Expression.Literal) {
+                Ast.Expression.Literal literal = (Ast.Expression.Literal) ast;
+                Object value = literal.getLiteral();
+                // Pooled constants are already shared, anything else is shared by value.
+                Object key = literal.getConstant().isPresent() ? literal.getConstant().get() : value;
+                return node(LITERAL, constant(key, () -> literal.getConstant().orElseGet(() -> value == null ? Environment.NIL : Environment.create(value))), 0, List.of());
+            } else if (ast instanceof Ast.Expression.Group) {
+                return node(GROUP, 0, 0, List.of(((Ast.Expression.Group) ast).getExpression()));
+            } else if (ast instanceof Ast.Expression.Binary) {
+                Ast.Expression.Binary binary = (Ast.Expression.Binary) ast;
+                return node(BINARY, TokenKind.of(binary.getOperator()), symbol(binary.getOperator()), List.of(binary.getLeft(), binary.getRight()));
+            } else if (ast instanceof Ast.Expression.Access) {
+                Ast.Expression.Access access = (Ast.Expression.Access) ast;
+                return node(ACCESS, symbol(access.getName()), 0, optional(access.getOffset()));
+            } else if (ast instanceof Ast.Expression.Function) {
+                Ast.Expression.Function function = (Ast.Expression.Function) ast;
+                return node(CALL, symbol(function.getName()), 0, function.getArguments());
+            } else if (ast instanceof Ast.Expression.PlcList) {
+                Ast.Expression.PlcList list = (Ast.Expression.PlcList) ast;
+                if (list.getArray().isPresent()) {
+                    Object array = list.getArray().get();
+                    return node(LIST, constant(array, () -> array), 0, List.of());
+                }
+                return node(LIST, -1, 0, list.getValues());
+            } else {
+                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+            }
+        }
+
+        private int node(int kind, int a, int b, List<? extends Ast> children) {
+            return node(kind, a, b, children, 0);
+        }
+
+        /**
+         * Adds a node with room for {@code reserved} children before the
+         * given ones, which are filled in by the caller.
+         */
+        private int node(int kind, int a, int b, List<? extends Ast> children, int reserved) {
+            int node = flat.size;
+            if (node + 1 == flat.kinds.length) {
+                int capacity = 2 * flat.kinds.length;
+                flat.kinds = Arrays.copyOf(flat.kinds, capacity);
+                flat.as = Arrays.copyOf(flat.as, capacity);
+                flat.bs = Arrays.copyOf(flat.bs, capacity);
+                flat.firsts = Arrays.copyOf(flat.firsts, capacity + 1);
+                if (analyzed) {
+                    flat.types = Arrays.copyOf(flat.types, capacity);
+                    flat.bindings = Arrays.copyOf(flat.bindings, capacity);
+                    flat.slots = Arrays.copyOf(flat.slots, capacity);
+                }
+            }
+            int count = reserved + children.size();
+            if (flat.childrenSize + count > flat.children.length) {
+                flat.children = Arrays.copyOf(flat.children, Math.max(2 * flat.children.length, flat.childrenSize + count));
+            }
+            flat.kinds[node] = (byte) kind;
+            flat.as[node] = a;
+            flat.bs[node] = b;
+            if (analyzed) {
+                flat.types[node] = -1;
+                flat.bindings[node] = -1;
+                flat.slots[node] = -1;
+            }
+            flat.firsts[node] = flat.childrenSize;
+            flat.childrenSize += count;
+            flat.firsts[node + 1] = flat.childrenSize;
+            flat.size++;
+            for (int i = children.size() - 1; i >= 0; i--) {
+                push(children.get(i), flat.firsts[node] + reserved + i);
+            }
+            return node;
+        }
+
+        private void push(Ast ast, int slot) {
+            if (depth == pending.length) {
+                pending = Arrays.copyOf(pending, 2 * depth);
+                slots = Arrays.copyOf(slots, 2 * depth);
+            }
+            pending[depth] = ast;
+            slots[depth] = slot;
+            depth++;
+        }
+
+        private List<Ast.Expression> optional(Optional<Ast.Expression> value) {
+            return value.isPresent() ? List.of(value.get()) : List.of();
+        }
+
+        private int symbol(String symbol) {
+            return symbols.computeIfAbsent(symbol, key -> symbols.size());
+        }
+
+        private int constant(Object key, java.util.function.Supplier<Object> value) {
+            Integer index = constants.get(key);
+            if (index == null) {
+                index = constantList.size();
+                constants.put(key, index);
+                constantList.add(value.get());
+            }
+            return index;
+        }
+
+    }
+
+}
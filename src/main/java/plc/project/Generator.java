@@ -3,6 +3,9 @@ package plc.project;
 import java.io.PrintWriter;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 
 public final class Generator implements Ast.Visitor<Void> {
@@ -14,6 +17,15 @@ public final class Generator implements Ast.Visitor<Void> {
         this.writer = writer;
     }
 
+    /**
+     * Generates the root node of a flat AST by walking its handles with a
+     * {@link FlatAst.Visitor}, without rebuilding the {@link Ast} with
+     * {@link FlatAst#toAst()}. The output is the same as for the rebuilt AST.
+     */
+    public void generate(FlatAst ast) {
+        ast.accept(0, new FlatGenerator(ast));
+    }
+
     private void print(Object... objects) {
         for (Object object : objects) {
             if (object instanceof Ast) {
@@ -124,7 +136,7 @@ public final class Generator implements Ast.Visitor<Void> {
 
         // Adjust the type if the variable is a list
         if (ast.getValue().isPresent() && ast.getValue().get() instanceof Ast.Expression.PlcList) {
-            type = inferArrayType((Ast.Expression.PlcList) ast.getValue().get(), type); // Infers the correct array type
+            type = inferArrayType(type); // Infers the correct array type
         }
 
         // For immutable variables, prepend 'final' keyword
@@ -148,7 +160,7 @@ public final class Generator implements Ast.Visitor<Void> {
         return null;
     }
 
-    private String inferArrayType(Ast.Expression.PlcList list, String baseType) {
+    private String inferArrayType(String baseType) {
 //        // Determine if all elements are integers
 //        boolean allIntegers = list.getValues().stream()
 //                .allMatch(v -> v instanceof Ast.Expression.Literal && ((Ast.Expression.Literal)v).getLiteral() instanceof Integer);
@@ -270,17 +282,18 @@ public final class Generator implements Ast.Visitor<Void> {
     }
 
     private String inferType(Ast.Expression value) {
-        if (value instanceof Ast.Expression.Literal) {
-            Object literal = ((Ast.Expression.Literal)value).getLiteral();
-            if (literal instanceof Integer) {
-                return "int";
-            } else if (literal instanceof BigDecimal) {
-                return "double";
-            } else if (literal instanceof String) {
-                return "String";
-            }
-            // Add more type inferences here if necessary
+        return value instanceof Ast.Expression.Literal ? literalType(((Ast.Expression.Literal) value).getLiteral()) : "";
+    }
+
+    private String literalType(Object literal) {
+        if (literal instanceof Integer) {
+            return "int";
+        } else if (literal instanceof BigDecimal) {
+            return "double";
+        } else if (literal instanceof String) {
+            return "String";
         }
+        // Add more type inferences here if necessary
         return ""; // Default or unknown type
     }
 
@@ -362,47 +375,7 @@ public final class Generator implements Ast.Visitor<Void> {
 //    }
 @Override
 public Void visit(Ast.Statement.If ast) {
-    // Start the if statement with the condition
-    print("if (");
-    visit(ast.getCondition()); // Visit the condition expression
-    print(") {");
-    indent++; // Increase indentation for the 'then' block
-    newline(indent);
-
-    // Visit and generate each statement in the 'then' block
-    for (int i = 0; i < ast.getThenStatements().size(); i++) {
-        visit(ast.getThenStatements().get(i));
-        if (i < ast.getThenStatements().size() - 1) {
-            newline(indent); // Continue with the same indentation for the next statement
-        }
-    }
-
-    // Close the 'then' block
-    indent--; // Decrease indentation before closing the block
-    newline(indent);
-    print("}");
-
-    // Check for an else block
-    if (!ast.getElseStatements().isEmpty()) {
-        print(" else {");
-        indent++; // Increase indentation for the 'else' block
-        newline(indent);
-
-        // Visit and generate each statement in the 'else' block
-        for (int i = 0; i < ast.getElseStatements().size(); i++) {
-            visit(ast.getElseStatements().get(i));
-            if (i < ast.getElseStatements().size() - 1) {
-                newline(indent); // Continue with the same indentation for the next statement
-            }
-        }
-
-        // Close the 'else' block
-        indent--; // Decrease indentation before closing the block
-        newline(indent);
-        print("}");
-    }
-
-    //newline(indent); // Ensure a newline after closing the if-else block, maintaining the current indent
+    generateStatement(ast);
     return null;
 }
 
@@ -415,65 +388,13 @@ public Void visit(Ast.Statement.If ast) {
 //    }
     @Override
     public Void visit(Ast.Statement.Switch ast) {
-        // Start the switch statement with the condition
-        print("switch (");
-        visit(ast.getCondition()); // Visit the condition of the switch
-        print(") {");
-        int savedIndentation = indent;
-        indent++;
-        newline(indent); // Increase the indentation level for the cases
-
-        // Generate each case in the switch
-        for (Ast.Statement.Case caseStmt : ast.getCases()) {
-            visit(caseStmt); // Visit each case which should handle the case statement generation
-            // No need to increase indentation here because visit(caseStmt) should handle it
-        }
-
-//        // Generate the default case, if present
-//        if (!ast.getCases().isEmpty() && ast.getCases().get(ast.getCases().size() - 1).getValue().isEmpty()) {
-//            visit(ast.getCases().get(ast.getCases().size() - 1));
-//        }
-        // Close the switch statement
-        newline(savedIndentation); // Decrease the indentation level back to what it was
-        print("}");
-        //newline(0); // Move to the next line after the switch statement
-
+        generateStatement(ast);
         return null;
     }
 
     @Override
     public Void visit(Ast.Statement.Case ast) {
-        if (ast.getValue().isPresent()) {
-            // This is a case statement.
-            print("case ");
-            visit(ast.getValue().get()); // Assuming a visit method is defined for expression types
-            print(":");
-        } else {
-            // This is the default case.
-            print("default:");
-        }
-
-        indent++; // Increase indentation for the statements within the case or default block
-        newline(indent);
-
-        // Visit and generate each statement in the case or default case
-        for (int i = 0; i < ast.getStatements().size(); i++) {
-            visit(ast.getStatements().get(i)); // Visit and print the statement
-
-            // If this is the last statement, adjust the newline call
-            if (i < ast.getStatements().size() - 1 || (ast.getValue().isPresent() && i == ast.getStatements().size() - 1)) {
-                newline(indent);
-            }
-        }
-
-        if (ast.getValue().isPresent()) {
-            // Add a break statement for cases, but not for the default case
-            print("break;");
-            indent--;
-            newline(indent); // Ensure proper indentation before break
-        }
-
-
+        generateStatement(ast);
         return null;
     }
 
@@ -484,35 +405,145 @@ public Void visit(Ast.Statement.If ast) {
 //    }
     @Override
     public Void visit(Ast.Statement.While ast) {
-        // Begin the while loop with the condition
+        generateStatement(ast);
+        return null;
+    }
 
-        print("while (");
-        visit(ast.getCondition()); // Generate the condition expression
-        print(") {");
-        if (ast.getStatements().isEmpty()) {
-            print("}"); // Closing brace on the same line for an empty loop body
-        } else {
-            // If there are statements, handle each on a new line
-            int tempIndent = indent;
-            indent++;
-            newline(indent); // Increase indentation for the loop body
 
-            List<Ast.Statement> statements = ast.getStatements();
-            for (int i = 0; i < statements.size(); i++) {
+    /**
+     * Generates a statement. The blocks of if, switch and while statements
+     * are kept on an explicit stack of work (statements, and the steps which
+     * close their blocks) instead of recursing into them, so blocks can be
+     * nested to any depth without overflowing the stack.
+     */
+    private void generateStatement(Ast.Statement statement) {
+        Deque<Object> work = new ArrayDeque<>();
+        work.push(statement);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            List<Object> steps = new ArrayList<>();
+            if (next instanceof Runnable) {
+                ((Runnable) next).run();
+            } else if (next instanceof Ast.Statement.If) {
+                Ast.Statement.If ast = (Ast.Statement.If) next;
+                // Start the if statement with the condition
+                print("if (");
+                visit(ast.getCondition()); // Visit the condition expression
+                print(") {");
+                indent++; // Increase indentation for the 'then' block
+                newline(indent);
 
-                visit(statements.get(i)); // Visit the current statement
-                // Add a newline only if this is not the last statement
-                if (i < statements.size() - 1) {
-                    newline(indent);
+                // Generate each statement in the 'then' block, then close it
+                block(steps, ast.getThenStatements());
+                steps.add(closeBlock());
+
+                // Check for an else block
+                if (!ast.getElseStatements().isEmpty()) {
+                    steps.add((Runnable) () -> {
+                        print(" else {");
+                        indent++; // Increase indentation for the 'else' block
+                        newline(indent);
+                    });
+                    block(steps, ast.getElseStatements());
+                    steps.add(closeBlock());
+                }
+            } else if (next instanceof Ast.Statement.Switch) {
+                Ast.Statement.Switch ast = (Ast.Statement.Switch) next;
+                // Start the switch statement with the condition
+                print("switch (");
+                visit(ast.getCondition()); // Visit the condition of the switch
+                print(") {");
+                int savedIndentation = indent;
+                indent++;
+                newline(indent); // Increase the indentation level for the cases
+
+                // Generate each case in the switch, then close the switch statement
+                steps.addAll(ast.getCases());
+                steps.add((Runnable) () -> {
+                    newline(savedIndentation); // Decrease the indentation level back to what it was
+                    print("}");
+                });
+            } else if (next instanceof Ast.Statement.Case) {
+                Ast.Statement.Case ast = (Ast.Statement.Case) next;
+                if (ast.getValue().isPresent()) {
+                    // This is a case statement.
+                    print("case ");
+                    visit(ast.getValue().get());
+                    print(":");
+                } else {
+                    // This is the default case.
+                    print("default:");
+                }
+
+                indent++; // Increase indentation for the statements within the case or default block
+                newline(indent);
+
+                // Generate each statement in the case or default case
+                block(steps, ast.getStatements());
+                if (ast.getValue().isPresent()) {
+                    if (!ast.getStatements().isEmpty()) {
+                        steps.add(newline());
+                    }
+                    // Add a break statement for cases, but not for the default case
+                    steps.add((Runnable) () -> {
+                        print("break;");
+                        indent--;
+                        newline(indent);
+                    });
                 }
+            } else if (next instanceof Ast.Statement.While) {
+                Ast.Statement.While ast = (Ast.Statement.While) next;
+                // Begin the while loop with the condition
+                print("while (");
+                visit(ast.getCondition()); // Generate the condition expression
+                print(") {");
+                if (ast.getStatements().isEmpty()) {
+                    print("}"); // Closing brace on the same line for an empty loop body
+                } else {
+                    // If there are statements, handle each on a new line
+                    int tempIndent = indent;
+                    indent++;
+                    newline(indent); // Increase indentation for the loop body
+
+                    block(steps, ast.getStatements());
+                    steps.add((Runnable) () -> {
+                        indent = tempIndent;
+                        newline(indent); // Adjust the indentation back for the closing brace
+                        print("}");
+                    });
+                }
+            } else {
+                visit((Ast.Statement) next);
+            }
+            for (int i = steps.size() - 1; i >= 0; i--) {
+                work.push(steps.get(i));
             }
+        }
+    }
 
-            indent = tempIndent;
-            newline(indent); // Adjust the indentation back for the closing brace
-            print("}");
+    /**
+     * Adds the statements of a block to the steps, with a newline at the
+     * current indentation between each of them.
+     */
+    private void block(List<Object> steps, List<? extends Ast.Statement> statements) {
+        for (int i = 0; i < statements.size(); i++) {
+            steps.add(statements.get(i));
+            if (i < statements.size() - 1) {
+                steps.add(newline());
+            }
         }
-        //newline(indent); // Ensure a new line after the loop in any case
-        return null;
+    }
+
+    private Runnable newline() {
+        return () -> newline(indent);
+    }
+
+    private Runnable closeBlock() {
+        return () -> {
+            indent--; // Decrease indentation before closing the block
+            newline(indent);
+            print("}");
+        };
     }
 
 
@@ -548,7 +579,11 @@ public Void visit(Ast.Statement.If ast) {
 //    }
 @Override
 public Void visit(Ast.Expression.Literal ast) {
-    Object value = ast.getLiteral();
+    literal(ast.getLiteral());
+    return null;
+}
+
+private void literal(Object value) {
     if (value == null) {
         print("null");
     } else if (value instanceof Boolean) {
@@ -562,7 +597,6 @@ public Void visit(Ast.Expression.Literal ast) {
     } else {
         print(value.toString()); // Safe for all other non-null objects
     }
-    return null;
 }
 
 
@@ -572,12 +606,7 @@ public Void visit(Ast.Expression.Literal ast) {
 //    }
     @Override
     public Void visit(Ast.Expression.Group ast) {
-        // Print the opening parenthesis
-        print("(");
-        // Visit the nested expression
-        visit(ast.getExpression());
-        // Print the closing parenthesis
-        print(")");
+        generateExpression(ast);
         return null;
     }
 
@@ -588,23 +617,46 @@ public Void visit(Ast.Expression.Literal ast) {
 //    }
     @Override
     public Void visit(Ast.Expression.Binary ast) {
-        // Handle the power operator as a special case
-        if ("^".equals(ast.getOperator())) {
-            print("Math.pow(");
-            visit(ast.getLeft());
-            print(", ");
-            visit(ast.getRight());
-            print(")");
-        } else {
-            // Handle all other binary operators
-            String operator = translateOperator(ast.getOperator());
-            visit(ast.getLeft());
-            print(" " + operator + " ");
-            visit(ast.getRight());
-        }
+        generateExpression(ast);
         return null;
     }
 
+    /**
+     * Generates binary and group expressions with an explicit stack of work
+     * (expressions and text to print) instead of recursing into their
+     * operands, so expressions of any length and nesting depth (as in
+     * generated code) don't overflow the stack.
+     */
+    private void generateExpression(Ast.Expression ast) {
+        Deque<Object> work = new ArrayDeque<>();
+        work.push(ast);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next instanceof Ast.Expression.Binary) {
+                Ast.Expression.Binary binary = (Ast.Expression.Binary) next;
+                // Handle the power operator as a special case
+                if ("^".equals(binary.getOperator())) {
+                    print("Math.pow(");
+                    work.push(")");
+                    work.push(binary.getRight());
+                    work.push(", ");
+                } else {
+                    // Handle all other binary operators
+                    work.push(binary.getRight());
+                    work.push(" " + translateOperator(binary.getOperator()) + " ");
+                }
+                work.push(binary.getLeft());
+            } else if (next instanceof Ast.Expression.Group) {
+                // Print the nested expression in parentheses
+                print("(");
+                work.push(")");
+                work.push(((Ast.Expression.Group) next).getExpression());
+            } else {
+                print(next);
+            }
+        }
+    }
+
         private String translateOperator(String operator) {
             switch (operator) {
                 case "AND": return "&&";
@@ -677,6 +729,19 @@ public Void visit(Ast.Expression.Literal ast) {
         // Start the list with an opening brace
         print("{");
 
+        // Print the values of a list backed by an array directly, without
+        // creating an Ast.Expression.Literal for each one
+        if (ast.getArray().isPresent()) {
+            for (int i = 0; i < ast.size(); i++) {
+                if (i > 0) {
+                    print(", ");
+                }
+                print(ast.getLiteral(i));
+            }
+            print("}");
+            return null;
+        }
+
         // Iterate over the expressions in the list to generate a comma-separated sequence
         for (int i = 0; i < ast.getValues().size(); i++) {
             visit(ast.getValues().get(i)); // Visit and generate the expression
@@ -691,4 +756,400 @@ public Void visit(Ast.Expression.Literal ast) {
     }
 
 
+    /**
+     * Generates the nodes of a {@link FlatAst} in the same way as the
+     * visitor methods above do for an {@link Ast}, with the same explicit
+     * stacks for statements and expressions.
+     */
+    private final class FlatGenerator implements FlatAst.Visitor<Void> {
+
+        private final FlatAst ast;
+
+        private FlatGenerator(FlatAst ast) {
+            this.ast = ast;
+        }
+
+        private void visit(int node) {
+            ast.accept(node, this);
+        }
+
+        @Override
+        public Void visitSource(int node) {
+            print("public class Main {");
+            newline(0);
+            newline(++indent);
+
+            int globals = ast.globalCount(node);
+            for (int i = 0; i < globals; i++) {
+                visit(ast.child(node, i));
+                if (i < globals - 1) {
+                    newline(indent);
+                } else {
+                    newline(0);
+                    newline(indent);
+                }
+            }
+
+            print("public static void main(String[] args) {");
+            newline(++indent);
+            print("System.exit(new Main().main());");
+            newline(--indent);
+            print("}");
+            newline(0);
+
+            int temp = indent;
+            for (int i = globals; i < ast.childCount(node); i++) {
+                newline(temp);
+                visit(ast.child(node, i));
+                newline(0);
+            }
+
+            newline(0);
+            print("}");
+            return null;
+        }
+
+        @Override
+        public Void visitGlobal(int node) {
+            String type = convertType(ast.typeName(node).get());
+            boolean hasValue = ast.childCount(node) > 0;
+            if (hasValue && ast.kind(ast.child(node, 0)) == FlatAst.LIST) {
+                type = inferArrayType(type);
+            }
+            if (ast.kind(node) != FlatAst.MUTABLE_GLOBAL) {
+                type = "final " + type;
+            }
+            print(type + " " + ast.name(node));
+            if (hasValue) {
+                print(" = ");
+                visit(ast.child(node, 0));
+            }
+            print(";");
+            return null;
+        }
+
+        @Override
+        public Void visitFunction(int node) {
+            String returnType = ast.typeName(node).map(Generator.this::convertType).orElse("Void");
+            print(returnType + " " + ast.name(node) + "(");
+            int parameters = ast.parameterCount(node);
+            for (int i = 0; i < parameters; i++) {
+                int parameter = ast.child(node, i);
+                print(convertType(ast.typeName(parameter).get()) + " " + ast.name(parameter));
+                if (i < parameters - 1) {
+                    print(", ");
+                }
+            }
+
+            print(") {");
+            if (ast.childCount(node) > parameters) {
+                int tempIndent = indent;
+                newline(++indent);
+                for (int i = parameters; i < ast.childCount(node); i++) {
+                    visit(ast.child(node, i));
+                    if (i < ast.childCount(node) - 1) {
+                        newline(indent);
+                    }
+                }
+                newline(tempIndent);
+                print("}");
+                indent = tempIndent;
+            } else {
+                print("}");
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStatement(int node) {
+            visit(ast.child(node, 0));
+            print(";");
+            return null;
+        }
+
+        @Override
+        public Void visitDeclaration(int node) {
+            boolean hasValue = ast.childCount(node) > 0;
+            String type = ast.typeName(node).map(Generator.this::convertType).orElseGet(() ->
+                    hasValue && ast.kind(ast.child(node, 0)) == FlatAst.LITERAL ? literalType(literal(ast.child(node, 0))) : "");
+            print(type + " " + ast.name(node));
+            if (hasValue) {
+                print(" = ");
+                visit(ast.child(node, 0));
+            }
+            print(";");
+            return null;
+        }
+
+        @Override
+        public Void visitAssignment(int node) {
+            int receiver = ast.child(node, 0);
+            if (ast.kind(receiver) != FlatAst.ACCESS) {
+                throw new UnsupportedOperationException("Unsupported receiver expression of kind " + ast.kind(receiver));
+            }
+            visit(receiver);
+            print(" = ");
+            visit(ast.child(node, 1));
+            print(";");
+            return null;
+        }
+
+        @Override
+        public Void visitIf(int node) {
+            generateStatement(node);
+            return null;
+        }
+
+        @Override
+        public Void visitSwitch(int node) {
+            generateStatement(node);
+            return null;
+        }
+
+        @Override
+        public Void visitCase(int node) {
+            generateStatement(node);
+            return null;
+        }
+
+        @Override
+        public Void visitWhile(int node) {
+            generateStatement(node);
+            return null;
+        }
+
+        /**
+         * Generates a statement with an explicit stack of work, see
+         * {@link Generator#generateStatement(Ast.Statement)}. Handles of
+         * statements are boxed as integers, between the steps which close
+         * their blocks.
+         */
+        private void generateStatement(int statement) {
+            Deque<Object> work = new ArrayDeque<>();
+            work.push(statement);
+            while (!work.isEmpty()) {
+                Object next = work.pop();
+                List<Object> steps = new ArrayList<>();
+                if (next instanceof Runnable) {
+                    ((Runnable) next).run();
+                    continue;
+                }
+                int node = (Integer) next;
+                int count = ast.childCount(node);
+                switch (ast.kind(node)) {
+                    case FlatAst.IF: {
+                        print("if (");
+                        visit(ast.child(node, 0));
+                        print(") {");
+                        indent++;
+                        newline(indent);
+                        int elseStart = 1 + ast.thenCount(node);
+                        block(steps, node, 1, elseStart);
+                        steps.add(closeBlock());
+                        if (elseStart < count) {
+                            steps.add((Runnable) () -> {
+                                print(" else {");
+                                indent++;
+                                newline(indent);
+                            });
+                            block(steps, node, elseStart, count);
+                            steps.add(closeBlock());
+                        }
+                        break;
+                    }
+                    case FlatAst.SWITCH: {
+                        print("switch (");
+                        visit(ast.child(node, 0));
+                        print(") {");
+                        int savedIndentation = indent;
+                        indent++;
+                        newline(indent);
+                        for (int i = 1; i < count; i++) {
+                            steps.add(ast.child(node, i));
+                        }
+                        steps.add((Runnable) () -> {
+                            newline(savedIndentation);
+                            print("}");
+                        });
+                        break;
+                    }
+                    case FlatAst.CASE: {
+                        boolean hasValue = ast.hasValue(node);
+                        if (hasValue) {
+                            print("case ");
+                            visit(ast.child(node, 0));
+                            print(":");
+                        } else {
+                            print("default:");
+                        }
+                        indent++;
+                        newline(indent);
+                        int first = hasValue ? 1 : 0;
+                        block(steps, node, first, count);
+                        if (hasValue) {
+                            if (first < count) {
+                                steps.add(newline());
+                            }
+                            steps.add((Runnable) () -> {
+                                print("break;");
+                                indent--;
+                                newline(indent);
+                            });
+                        }
+                        break;
+                    }
+                    case FlatAst.WHILE: {
+                        print("while (");
+                        visit(ast.child(node, 0));
+                        print(") {");
+                        if (count == 1) {
+                            print("}");
+                        } else {
+                            int tempIndent = indent;
+                            indent++;
+                            newline(indent);
+                            block(steps, node, 1, count);
+                            steps.add((Runnable) () -> {
+                                indent = tempIndent;
+                                newline(indent);
+                                print("}");
+                            });
+                        }
+                        break;
+                    }
+                    default:
+                        visit(node);
+                }
+                for (int i = steps.size() - 1; i >= 0; i--) {
+                    work.push(steps.get(i));
+                }
+            }
+        }
+
+        /**
+         * Adds the children of a node from {@code from} to {@code to} to the
+         * steps, with a newline at the current indentation between each.
+         */
+        private void block(List<Object> steps, int node, int from, int to) {
+            for (int i = from; i < to; i++) {
+                steps.add(ast.child(node, i));
+                if (i < to - 1) {
+                    steps.add(newline());
+                }
+            }
+        }
+
+        @Override
+        public Void visitReturn(int node) {
+            print("return ");
+            visit(ast.child(node, 0));
+            print(";");
+            return null;
+        }
+
+        @Override
+        public Void visitLiteral(int node) {
+            Generator.this.literal(literal(node));
+            return null;
+        }
+
+        private Object literal(int node) {
+            Environment.PlcObject constant = ast.constant(node);
+            return constant == Environment.NIL ? null : constant.getValue();
+        }
+
+        @Override
+        public Void visitGroup(int node) {
+            generateExpression(node);
+            return null;
+        }
+
+        @Override
+        public Void visitBinary(int node) {
+            generateExpression(node);
+            return null;
+        }
+
+        /**
+         * Generates binary and group expressions with an explicit stack of
+         * work, see {@link Generator#generateExpression(Ast.Expression)}.
+         * Handles are boxed as integers, and text to print is a string.
+         */
+        private void generateExpression(int expression) {
+            Deque<Object> work = new ArrayDeque<>();
+            work.push(expression);
+            while (!work.isEmpty()) {
+                Object next = work.pop();
+                if (next instanceof String) {
+                    print(next);
+                    continue;
+                }
+                int node = (Integer) next;
+                if (ast.kind(node) == FlatAst.BINARY) {
+                    String operator = ast.operatorLiteral(node);
+                    if ("^".equals(operator)) {
+                        print("Math.pow(");
+                        work.push(")");
+                        work.push(ast.child(node, 1));
+                        work.push(", ");
+                    } else {
+                        work.push(ast.child(node, 1));
+                        work.push(" " + translateOperator(operator) + " ");
+                    }
+                    work.push(ast.child(node, 0));
+                } else if (ast.kind(node) == FlatAst.GROUP) {
+                    print("(");
+                    work.push(")");
+                    work.push(ast.child(node, 0));
+                } else {
+                    visit(node);
+                }
+            }
+        }
+
+        @Override
+        public Void visitAccess(int node) {
+            if (ast.childCount(node) > 0) {
+                print(ast.name(node) + "[");
+                visit(ast.child(node, 0));
+                print("]");
+            } else {
+                print(ast.name(node));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitCall(int node) {
+            print(translateFunctionName(ast.name(node)) + "(");
+            for (int i = 0; i < ast.childCount(node); i++) {
+                visit(ast.child(node, i));
+                if (i < ast.childCount(node) - 1) {
+                    print(", ");
+                }
+            }
+            print(")");
+            return null;
+        }
+
+        @Override
+        public Void visitList(int node) {
+            print("{");
+            boolean array = ast.array(node).isPresent();
+            for (int i = 0; i < ast.length(node); i++) {
+                if (i > 0) {
+                    print(", ");
+                }
+                if (array) {
+                    print(ast.literal(node, i));
+                } else {
+                    visit(ast.child(node, i));
+                }
+            }
+            print("}");
+            return null;
+        }
+
+    }
+
 }
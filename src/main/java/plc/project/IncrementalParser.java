@@ -0,0 +1,291 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the tokens and AST of a source up to date as it is edited, without
+ * lexing and parsing the entire source again after every edit.
+ *
+ * After an edit, only the tokens from just before the edit are lexed again,
+ * up to the first token which starts at the same (shifted) position as an old
+ * token after the edit. Since the lexer carries no state between tokens, every
+ * token from there on is the same as before and only has its index shifted.
+ * The same is done for the declarations: parsing restarts at the global or
+ * function containing the first changed token and stops once it reaches the
+ * start of an old declaration after the changed tokens, whose AST is reused.
+ *
+ * The result of every edit, including any {@link ParseException}, is the same
+ * as lexing the new source with {@link Lexer} and parsing it with
+ * {@link Parser#parseSource()}. After an exception, {@link #getAst()} is left
+ * at the last successful parse and the next edit lexes and parses the entire
+ * source again.
+ */
+public final class IncrementalParser {
+
+    private String source;
+    private boolean valid = false;
+
+    // Tokens, stored as parallel arrays so shifting them doesn't create new Tokens.
+    private Token.Type[] types;
+    private String[] literals;
+    private int[] starts;
+    private int[] ends;
+    private int size;
+
+    // Globals and functions in source order, and the index of the token each
+    // one starts at followed by the index of the first token after them.
+    private List<Ast> declarations;
+    private int[] boundaries;
+    private Ast.Source ast;
+
+    public IncrementalParser(String source) throws ParseException {
+        this.source = source;
+        parseAll();
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public Ast.Source getAst() {
+        return ast;
+    }
+
+    /**
+     * Returns the tokens of the current source, as {@link Lexer#lex()} would.
+     */
+    public List<Token> getTokens() {
+        List<Token> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tokens.add(new Token(types[i], literals[i], starts[i]));
+        }
+        return tokens;
+    }
+
+    /**
+     * Replaces {@code deleted} characters at {@code offset} with the inserted
+     * text, returning the AST of the new source.
+     */
+    public Ast.Source edit(int offset, int deleted, String inserted) throws ParseException {
+        if (offset < 0 || deleted < 0 || offset + deleted > source.length()) {
+            throw new IndexOutOfBoundsException("Invalid edit of " + deleted + " characters at " + offset + " for length " + source.length() + ".");
+        }
+        source = source.substring(0, offset) + inserted + source.substring(offset + deleted);
+        if (!valid) {
+            parseAll();
+            return ast;
+        }
+        valid = false;
+        int delta = inserted.length() - deleted;
+
+        // The lexer looks at most two characters past the end of a token (for
+        // `1.` followed by a digit), so any token ending within one character
+        // of the edit may change.
+        int first = 0;
+        while (first < size && ends[first] < offset - 1) {
+            first++;
+        }
+        int next = first;
+        while (next < size && starts[next] < offset + deleted) {
+            next++;
+        }
+        DfaLexer lexer = new DfaLexer(source, first > 0 ? ends[first - 1] : 0, source.length());
+        List<Token> lexed = new ArrayList<>();
+        List<Integer> lexedEnds = new ArrayList<>();
+        int type;
+        while ((type = lexer.next()) != DfaLexer.EOF) {
+            while (next < size && starts[next] + delta < lexer.start()) {
+                next++;
+            }
+            if (next < size && starts[next] + delta == lexer.start()) {
+                break;
+            }
+            lexed.add(lexer.token());
+            lexedEnds.add(lexer.end());
+        }
+        if (type == DfaLexer.EOF) {
+            // Every old token after the edit was merged into a new one.
+            next = size;
+        }
+        int unchanged = first + lexed.size();
+        spliceTokens(first, next, lexed, lexedEnds, delta);
+
+        // Parsing restarts at the declaration containing the first changed token.
+        int declaration = 0;
+        while (declaration + 1 < boundaries.length && boundaries[declaration + 1] <= first) {
+            declaration++;
+        }
+        int start = boundaries[declaration];
+        // Old declarations starting at or after the next unchanged token can be reused.
+        int reused = declaration;
+        while (reused < boundaries.length && boundaries[reused] < next) {
+            reused++;
+        }
+        int tokenDelta = unchanged - next;
+        for (int i = reused; i < boundaries.length; i++) {
+            boundaries[i] += tokenDelta;
+        }
+        List<Ast> parsed = new ArrayList<>();
+        List<Integer> parsedBoundaries = new ArrayList<>();
+        boolean function = false;
+        for (int i = 0; i < declaration; i++) {
+            function |= declarations.get(i) instanceof Ast.Function;
+        }
+        int end = parse(start, reused, function, parsed, parsedBoundaries);
+        while (reused < boundaries.length && boundaries[reused] < end) {
+            reused++;
+        }
+        spliceDeclarations(declaration, reused, parsed, parsedBoundaries, end);
+        valid = true;
+        return ast;
+    }
+
+    /**
+     * Lexes and parses the entire source.
+     */
+    private void parseAll() throws ParseException {
+        valid = false;
+        DfaLexer lexer = new DfaLexer(source);
+        int capacity = Math.max(source.length() / 4, 16);
+        types = new Token.Type[capacity];
+        literals = new String[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        size = 0;
+        while (lexer.next() != DfaLexer.EOF) {
+            if (size == types.length) {
+                grow(size + (size >> 1));
+            }
+            types[size] = lexer.type();
+            literals[size] = lexer.literal();
+            starts[size] = lexer.start();
+            ends[size] = lexer.end();
+            size++;
+        }
+        declarations = new ArrayList<>();
+        boundaries = new int[] {size};
+        List<Ast> parsed = new ArrayList<>();
+        List<Integer> parsedBoundaries = new ArrayList<>();
+        int end = parse(0, 1, false, parsed, parsedBoundaries);
+        spliceDeclarations(0, 1, parsed, parsedBoundaries, end);
+        valid = true;
+    }
+
+    /**
+     * Parses declarations starting at the given token, as in
+     * {@link Parser#parseSource()}, until reaching the first token which isn't
+     * part of a declaration or the start of the old declaration at or after
+     * {@code reused}. Returns the index of the token parsing stopped at.
+     */
+    private int parse(int start, int reused, boolean function, List<Ast> parsed, List<Integer> parsedBoundaries) throws ParseException {
+        int[] position = {start};
+        Parser parser = new Parser(() -> position[0] < size ? token(position[0]++) : null);
+        while (true) {
+            int index = start + parser.position();
+            while (reused < boundaries.length && boundaries[reused] < index) {
+                reused++;
+            }
+            if (reused < boundaries.length && boundaries[reused] == index) {
+                if (function && reused < declarations.size() && declarations.get(reused) instanceof Ast.Global) {
+                    throw new ParseException("Global declaration after function declaration is not allowed", starts[index]);
+                }
+                return index;
+            }
+            if (parser.peek("LIST") || parser.peek("VAL") || parser.peek("VAR")) {
+                if (function) {
+                    throw new ParseException("Global declaration after function declaration is not allowed", starts[index]);
+                }
+                parsedBoundaries.add(index);
+                parsed.add(parser.parseGlobal());
+            } else if (parser.peek("FUN")) {
+                parsedBoundaries.add(index);
+                parsed.add(parser.parseFunction());
+                function = true;
+            } else {
+                return index;
+            }
+        }
+    }
+
+    private Token token(int index) {
+        return new Token(types[index], literals[index], starts[index]);
+    }
+
+    /**
+     * Replaces the tokens from {@code first} (inclusive) to {@code next}
+     * (exclusive) with the given ones, shifting the indices of the tokens
+     * after them by {@code delta}.
+     */
+    private void spliceTokens(int first, int next, List<Token> replacement, List<Integer> replacementEnds, int delta) {
+        int newSize = first + replacement.size() + size - next;
+        if (newSize > types.length) {
+            grow(newSize + (newSize >> 1));
+        }
+        int target = first + replacement.size();
+        System.arraycopy(types, next, types, target, size - next);
+        System.arraycopy(literals, next, literals, target, size - next);
+        System.arraycopy(starts, next, starts, target, size - next);
+        System.arraycopy(ends, next, ends, target, size - next);
+        for (int i = target; i < newSize; i++) {
+            starts[i] += delta;
+            ends[i] += delta;
+        }
+        for (int i = 0; i < replacement.size(); i++) {
+            Token token = replacement.get(i);
+            types[first + i] = token.getType();
+            literals[first + i] = token.getLiteral();
+            starts[first + i] = token.getIndex();
+            ends[first + i] = replacementEnds.get(i);
+        }
+        Arrays.fill(literals, newSize, size > newSize ? size : newSize, null);
+        size = newSize;
+    }
+
+    private void grow(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        literals = Arrays.copyOf(literals, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+    }
+
+    /**
+     * Replaces the declarations from {@code first} (inclusive) to
+     * {@code reused} (exclusive) with the parsed ones, and rebuilds the AST.
+     * If parsing stopped before a reused declaration, everything after it is
+     * dropped as {@link Parser#parseSource()} stops there too.
+     */
+    private void spliceDeclarations(int first, int reused, List<Ast> parsed, List<Integer> parsedBoundaries, int end) {
+        boolean stopped = reused >= boundaries.length || boundaries[reused] != end;
+        List<Ast> result = new ArrayList<>(declarations.subList(0, first));
+        result.addAll(parsed);
+        int[] newBoundaries;
+        if (stopped) {
+            newBoundaries = new int[result.size() + 1];
+            newBoundaries[result.size()] = end;
+        } else {
+            result.addAll(declarations.subList(reused, declarations.size()));
+            newBoundaries = new int[result.size() + 1];
+            int suffix = first + parsed.size();
+            System.arraycopy(boundaries, reused, newBoundaries, suffix, boundaries.length - reused);
+        }
+        System.arraycopy(boundaries, 0, newBoundaries, 0, first);
+        for (int i = 0; i < parsedBoundaries.size(); i++) {
+            newBoundaries[first + i] = parsedBoundaries.get(i);
+        }
+        declarations = result;
+        boundaries = newBoundaries;
+        List<Ast.Global> globals = new ArrayList<>();
+        List<Ast.Function> functions = new ArrayList<>();
+        for (Ast declaration : declarations) {
+            if (declaration instanceof Ast.Global) {
+                globals.add((Ast.Global) declaration);
+            } else {
+                functions.add((Ast.Function) declaration);
+            }
+        }
+        ast = new Ast.Source(globals, functions);
+    }
+
+}
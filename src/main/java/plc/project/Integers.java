@@ -0,0 +1,65 @@
+package plc.project;
+
+import java.math.BigInteger;
+
+/**
+ * The arithmetic of the engines on integers which fit in a long (see
+ * {@link Environment.PlcObject#isLong()}), which is tried before computing
+ * with {@link BigInteger}. Each operation returns {@code null} if
+ * its result overflows a long, so the caller computes it with BigInteger
+ * instead, and results are the same either way.
+ */
+final class Integers {
+
+    private Integers() {}
+
+    static Environment.PlcObject add(long left, long right) {
+        try {
+            return Environment.integer(Math.addExact(left, right));
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+
+    static Environment.PlcObject subtract(long left, long right) {
+        try {
+            return Environment.integer(Math.subtractExact(left, right));
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+
+    static Environment.PlcObject multiply(long left, long right) {
+        try {
+            return Environment.integer(Math.multiplyExact(left, right));
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Divides, truncating as {@link BigInteger#divide} does. The
+     * divisor must not be zero.
+     */
+    static Environment.PlcObject divide(long left, long right) {
+        if (left == Long.MIN_VALUE && right == -1) {
+            return null;
+        }
+        return Environment.integer(left / right);
+    }
+
+    /**
+     * Returns an integer as a list index, throwing an
+     * {@link ArithmeticException} if it's out of the range of an int (as
+     * {@link BigInteger#intValueExact()} does).
+     */
+    static int index(Environment.PlcObject value) {
+        if (value.isLong()) {
+            return Math.toIntExact(value.getLong());
+        } else if (!(value.getValue() instanceof BigInteger)) {
+            throw new RuntimeException("Expected type " + BigInteger.class.getName() + ", received " + value.getValue().getClass().getName() + ".");
+        }
+        return ((BigInteger) value.getValue()).intValueExact();
+    }
+
+}
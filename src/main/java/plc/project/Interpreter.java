@@ -7,14 +7,40 @@ import plc.project.Scope;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     private Scope scope = new Scope(null);
 
+    // The variables of analyzed globals by slot, and of the function being
+    // called if it was analyzed, so accesses the Analyzer resolved are an
+    // array load instead of a lookup through the scopes.
+    private Environment.Variable[] globals = new Environment.Variable[16];
+    private Environment.Variable[] frame = null;
+
+    // For analyzed functions, the slots of the variables with the name of
+    // each declaration which are in the same scope when it runs, and the
+    // slots of each if and switch block, which are cleared when it starts.
+    private final Map<Ast.Statement.Declaration, int[]> conflicts = new IdentityHashMap<>();
+    private final Map<List<Ast.Statement>, int[]> blockSlots = new IdentityHashMap<>();
+
+    // Binary expressions waiting for an operand in evaluate, with the value
+    // of their left operand once it's known. Evaluations started while one
+    // is in progress (such as for a function call) use the entries above it.
+    private Ast.Expression.Binary[] binaries = new Ast.Expression.Binary[16];
+    private Environment.PlcObject[] lefts = new Environment.PlcObject[16];
+    private boolean[] hasLeft = new boolean[16];
+    private int pending = 0;
+
     public Interpreter(Scope parent) {
         scope = (parent == null) ? new Scope(null) : parent;
 
@@ -81,7 +107,13 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         // Define the variable in the current scope, respecting the mutability from the AST.
         // The mutability for globals is determined by the 'mutable' field in the Ast.Global node.
         //System.out.println("MUTABLE SHOULD BE FALSE: "+  ast.getMutable());
-        scope.defineVariable(ast.getName(), ast.getMutable(), value);
+        Environment.Variable variable = scope.defineVariable(ast.getName(), ast.getName(), Environment.Type.ANY, ast.getMutable(), value);
+        if (ast.getSlot() >= 0) {
+            if (ast.getSlot() >= globals.length) {
+                globals = Arrays.copyOf(globals, Math.max(2 * globals.length, ast.getSlot() + 1));
+            }
+            globals[ast.getSlot()] = variable;
+        }
 
         // According to the specification, return NIL after defining a global.
         return Environment.NIL;
@@ -93,29 +125,38 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         // Define the function in the current scope.
         // Capture the current scope where the function is defined to be used when the function is called.
         Scope definingScope = this.scope;
+        if (ast.getFrameSize() >= 0) {
+            resolveSlots(ast);
+        }
 
         scope.defineFunction(ast.getName(), ast.getParameters().size(), args -> {
             // Create a new scope for the function call that has the defining scope as its parent.
             Scope functionScope = new Scope(definingScope);
-            // Define parameters in the new scope.
+            // An analyzed function keeps its parameters and variables in a frame instead.
+            Environment.Variable[] functionFrame = ast.getFrameSize() >= 0 ? new Environment.Variable[ast.getFrameSize()] : null;
+            // Define parameters in the new scope or frame.
             for (int i = 0; i < ast.getParameters().size(); i++) {
-                functionScope.defineVariable(ast.getParameters().get(i), true, args.get(i));
+                if (functionFrame != null) {
+                    functionFrame[i] = new Environment.Variable(ast.getParameters().get(i), true, args.get(i));
+                } else {
+                    functionScope.defineVariable(ast.getParameters().get(i), true, args.get(i));
+                }
             }
+            Scope callerScope = this.scope;
+            Environment.Variable[] callerFrame = this.frame;
             try {
                 // Set the current scope to the function's scope.
                 this.scope = functionScope;
-                // Evaluate the function's body.
-                for (Ast.Statement statement : ast.getStatements()) {
-                    visit(statement);
-                }
-                // If the function completes without a return, return NIL.
-                return Environment.NIL;
-            } catch (Return returnValue) {
-                // Catch the Return exception and return its value.
-                return returnValue.value;
+                this.frame = functionFrame;
+                // Evaluate the function's body, which returns NIL if it
+                // completes without a return.
+                Environment.PlcObject value = execute(ast.getStatements());
+                return value != null ? value : Environment.NIL;
             } finally {
-                // Restore the original scope.
-                this.scope = definingScope;
+                // Restore the caller's scope and frame, which are the caller's
+                // own when called from another function.
+                this.scope = callerScope;
+                this.frame = callerFrame;
             }
         });
 
@@ -143,8 +184,17 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         // Check if the declaration has an initial value.
         Environment.PlcObject value = ast.getValue().isPresent() ? visit(ast.getValue().get()) : Environment.NIL;
 
-        // Define the variable in the current scope, local variables are always mutable.
-        scope.defineVariable(ast.getName(), true, value);
+        // Define the variable in the current scope or frame, local variables are always mutable.
+        if (frame != null && ast.getSlot() >= 0) {
+            for (int slot : conflicts.get(ast)) {
+                if (frame[slot] != null) {
+                    throw new RuntimeException("The variable " + ast.getName() + " is already defined in this scope.");
+                }
+            }
+            frame[ast.getSlot()] = new Environment.Variable(ast.getName(), true, value);
+        } else {
+            scope.defineVariable(ast.getName(), true, value);
+        }
 
         // According to the specification, return NIL after a declaration.
         return Environment.NIL;
@@ -163,11 +213,11 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         // Check if the receiver is a list with an index to be accessed
         if (access.getOffset().isPresent()) {
             // This is an assignment to a list element.
-            Environment.Variable listVariable = scope.lookupVariable(access.getName());
+            Environment.Variable listVariable = variable(access);
             // We expect a List here, so we need to cast the raw value to a List of Objects, not PlcObjects.
             List<Object> list = requireType(List.class, listVariable.getValue().getValue());
-            // Get the index as BigInteger after evaluating the offset expression and extracting its raw value.
-            BigInteger index = requireType(BigInteger.class, visit(access.getOffset().get()).getValue());
+            // Get the index after evaluating the offset expression.
+            int index = Integers.index(visit(access.getOffset().get()));
             // Extract the raw value from the Environment.PlcObject to perform the assignment in the list at the specified index.
             Object rawValue = value.getValue();
             // Ensure the list is capable of handling the modification by converting it to an ArrayList if necessary.
@@ -176,10 +226,10 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 // Update the variable with the new list capable of modification.
                 listVariable.setValue(Environment.create(list));
             }
-            list.set(index.intValueExact(), rawValue);
+            list.set(index, rawValue);
         } else {
             // This is a normal variable assignment.
-            Environment.Variable variable = scope.lookupVariable(access.getName());
+            Environment.Variable variable = variable(access);
             if (!variable.getMutable()) {
                 throw new RuntimeException("Assignment to an immutable variable.");
             }
@@ -211,104 +261,195 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Statement.If ast) {
-        // Evaluate the condition of the if statement and ensure it is a Boolean
-        Boolean condition = requireType(Boolean.class, visit(ast.getCondition()).getValue());
+        returned(execute(List.of(ast)));
+        // If statements do not produce a value, so return NIL
+        return Environment.NIL;
+    }
 
-        // Create a new scope for the execution of the statement block
-        Scope originalScope = this.scope;
-        this.scope = new Scope(originalScope);
 
-        try {
-            // Evaluate the appropriate block of statements based on the condition's value
-            if (condition) {
-                for (Ast.Statement statement : ast.getThenStatements()) {
-                    visit(statement);
-                }
-            } else {
-                for (Ast.Statement statement : ast.getElseStatements()) {
-                    visit(statement);
-                }
-            }
-        } finally {
-            // Restore the original scope after executing the block
-            this.scope = originalScope;
-        }
+    @Override
+    public Environment.PlcObject visit(Ast.Statement.Switch ast) {
+        returned(execute(List.of(ast)));
+        return Environment.NIL;
+    }
 
-        // If statements do not produce a value, so return NIL
+
+    @Override
+    public Environment.PlcObject visit(Ast.Statement.Case ast) {
+        // Simply evaluate each statement in the case.
+        returned(execute(ast.getStatements()));
         return Environment.NIL;
     }
 
 
+//    @Override
+//    public Environment.PlcObject visit(Ast.Statement.While ast) {
+//        throw new UnsupportedOperationException(); //TODO (in lecture)
+//    }
 
     @Override
-    public Environment.PlcObject visit(Ast.Statement.Switch ast) {
-        // Evaluate the condition of the switch statement
-        Environment.PlcObject condition = visit(ast.getCondition());
-
-        // Create a new scope for the switch statement block
-        Scope originalScope = this.scope;
-        this.scope = new Scope(originalScope);
+    public Environment.PlcObject visit(Ast.Statement.While ast) {
+        returned(execute(List.of(ast)));
+        // The while statement does not produce a value, so return NIL
+        return Environment.NIL;
+    }
 
-        boolean executedCase = false;
 
+    /**
+     * Executes a list of statements. The blocks of if, switch and while
+     * statements are kept on an explicit stack instead of recursing into
+     * them, so blocks can be nested to any depth without overflowing the
+     * stack. Each block restores the scope it started in once it's done.
+     *
+     * A return statement ends all the blocks, and its value is returned
+     * instead of being thrown to the function, so returning costs no more
+     * than finishing the body. Returns {@code null} if the statements run to
+     * the end.
+     */
+    private Environment.PlcObject execute(List<Ast.Statement> statements) {
+        Scope originalScope = this.scope;
+        Deque<Block> blocks = new ArrayDeque<>();
+        blocks.push(new Block(statements, originalScope, null));
         try {
-            // Iterate through cases to find a match
-            for (Ast.Statement.Case caseStmt : ast.getCases()) {
-                if (!caseStmt.getValue().isPresent()) {
-                    // If no value is present, then it's the default case
-                    if (!executedCase) {
-                        // If no case has been executed, visit the default case
-                        visit(caseStmt);
+            while (!blocks.isEmpty()) {
+                Block block = blocks.peek();
+                if (block.index == block.statements.size()) {
+                    this.scope = block.scope;
+                    // Continuously evaluate the condition and execute the block while the condition is true
+                    if (block.loop != null && requireType(Boolean.class, visit(block.loop.getCondition()).getValue())) {
+                        block.index = 0;
+                    } else {
+                        blocks.pop();
                     }
-                    // Break after visiting the default case since it should be the last case
-                    break;
-                } else {
-                    // Evaluate the case's value
-                    Environment.PlcObject caseValue = visit(caseStmt.getValue().get());
-                    // Check if the case value matches the switch condition
-                    if (condition.getValue().equals(caseValue.getValue())) {
-                        visit(caseStmt);
-                        executedCase = true;
-                        // Exit the loop after executing the matched case
-                        break;
+                    continue;
+                }
+                Ast.Statement statement = block.statements.get(block.index++);
+                if (statement instanceof Ast.Statement.If) {
+                    Ast.Statement.If ast = (Ast.Statement.If) statement;
+                    // Evaluate the condition of the if statement and ensure it is a Boolean
+                    Boolean condition = requireType(Boolean.class, visit(ast.getCondition()).getValue());
+                    // Evaluate the appropriate block of statements in a new scope
+                    List<Ast.Statement> selected = condition ? ast.getThenStatements() : ast.getElseStatements();
+                    clearSlots(selected);
+                    blocks.push(new Block(selected, this.scope, null));
+                    this.scope = new Scope(this.scope);
+                } else if (statement instanceof Ast.Statement.Switch) {
+                    Ast.Statement.Switch ast = (Ast.Statement.Switch) statement;
+                    // Evaluate the condition, and the case values in a new scope until one matches
+                    Environment.PlcObject condition = visit(ast.getCondition());
+                    Scope switchScope = this.scope;
+                    this.scope = new Scope(switchScope);
+                    List<Ast.Statement> caseStatements = List.of();
+                    for (Ast.Statement.Case caseStmt : ast.getCases()) {
+                        // A case without a value is the default case, which is the last case
+                        if (!caseStmt.getValue().isPresent()
+                                || condition.getValue().equals(visit(caseStmt.getValue().get()).getValue())) {
+                            caseStatements = caseStmt.getStatements();
+                            break;
+                        }
+                    }
+                    clearSlots(caseStatements);
+                    blocks.push(new Block(caseStatements, switchScope, null));
+                } else if (statement instanceof Ast.Statement.While) {
+                    Ast.Statement.While ast = (Ast.Statement.While) statement;
+                    if (requireType(Boolean.class, visit(ast.getCondition()).getValue())) {
+                        // The body of a while statement runs in the current scope
+                        blocks.push(new Block(ast.getStatements(), this.scope, ast));
                     }
+                } else if (statement instanceof Ast.Statement.Return) {
+                    return visit(((Ast.Statement.Return) statement).getValue());
+                } else {
+                    visit(statement);
                 }
             }
+            return null;
         } finally {
-            // Restore the original scope
+            // Restore the original scope, including after an exception
             this.scope = originalScope;
         }
-
-        return Environment.NIL;
     }
 
+    /**
+     * Clears the variables of an if or switch block of an analyzed function,
+     * which are still set if it ran before in the same call (in a while
+     * statement), as each run of it has a new scope.
+     */
+    private void clearSlots(List<Ast.Statement> statements) {
+        int[] slots = frame != null ? blockSlots.get(statements) : null;
+        if (slots != null) {
+            for (int slot : slots) {
+                frame[slot] = null;
+            }
+        }
+    }
 
-    @Override
-    public Environment.PlcObject visit(Ast.Statement.Case ast) {
-        // Simply evaluate each statement in the case.
-        for (Ast.Statement stmt : ast.getStatements()) {
-            visit(stmt);
+    /**
+     * Groups the slots of an analyzed function by the scope they're in when
+     * it runs, for {@link #conflicts} and {@link #blockSlots}. The Analyzer
+     * gives the body of a while statement a scope of its own, but it runs in
+     * the scope around it, so a variable it declares is defined again by the
+     * next iteration, and conflicts with a variable of the same name in the
+     * scope around it, just as it does without the Analyzer.
+     */
+    private void resolveSlots(Ast.Function ast) {
+        // The blocks which have their own scope, starting with the body,
+        // whose scope also holds the parameters.
+        Deque<List<Ast.Statement>> scoped = new ArrayDeque<>();
+        scoped.push(ast.getStatements());
+        while (!scoped.isEmpty()) {
+            List<Ast.Statement> root = scoped.pop();
+            Map<String, List<Integer>> slots = new HashMap<>();
+            List<Ast.Statement.Declaration> declarations = new ArrayList<>();
+            if (root == ast.getStatements()) {
+                for (int i = 0; i < ast.getParameters().size(); i++) {
+                    slots.computeIfAbsent(ast.getParameters().get(i), name -> new ArrayList<>()).add(i);
+                }
+            }
+            // The blocks in the same scope, which are the bodies of while statements.
+            Deque<List<Ast.Statement>> blocks = new ArrayDeque<>();
+            blocks.push(root);
+            while (!blocks.isEmpty()) {
+                for (Ast.Statement statement : blocks.pop()) {
+                    if (statement instanceof Ast.Statement.Declaration) {
+                        Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) statement;
+                        slots.computeIfAbsent(declaration.getName(), name -> new ArrayList<>()).add(declaration.getSlot());
+                        declarations.add(declaration);
+                    } else if (statement instanceof Ast.Statement.While) {
+                        blocks.push(((Ast.Statement.While) statement).getStatements());
+                    } else if (statement instanceof Ast.Statement.If) {
+                        scoped.push(((Ast.Statement.If) statement).getThenStatements());
+                        scoped.push(((Ast.Statement.If) statement).getElseStatements());
+                    } else if (statement instanceof Ast.Statement.Switch) {
+                        for (Ast.Statement.Case caseStmt : ((Ast.Statement.Switch) statement).getCases()) {
+                            scoped.push(caseStmt.getStatements());
+                        }
+                    }
+                }
+            }
+            for (Ast.Statement.Declaration declaration : declarations) {
+                conflicts.put(declaration, slots.get(declaration.getName()).stream().mapToInt(Integer::intValue).toArray());
+            }
+            blockSlots.put(root, declarations.stream().mapToInt(Ast.Statement.Declaration::getSlot).toArray());
         }
-        return Environment.NIL;
     }
 
+    /**
+     * A block of statements being executed, with the scope to restore once
+     * it's done and the while statement to repeat it for (if any).
+     */
+    private static final class Block {
 
-//    @Override
-//    public Environment.PlcObject visit(Ast.Statement.While ast) {
-//        throw new UnsupportedOperationException(); //TODO (in lecture)
-//    }
+        private final List<Ast.Statement> statements;
+        private final Scope scope;
+        private final Ast.Statement.While loop;
+        private int index = 0;
 
-    @Override
-    public Environment.PlcObject visit(Ast.Statement.While ast) {
-        // Continuously evaluate the condition and execute the block while the condition is true
-        while (requireType(Boolean.class, visit(ast.getCondition()).getValue())) {
-            // Execute each statement in the block
-            for (Ast.Statement statement : ast.getStatements()) {
-                visit(statement);
-            }
+        private Block(List<Ast.Statement> statements, Scope scope, Ast.Statement.While loop) {
+            this.statements = statements;
+            this.scope = scope;
+            this.loop = loop;
         }
-        // The while statement does not produce a value, so return NIL
-        return Environment.NIL;
+
     }
 
 
@@ -320,11 +461,20 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 //    }
     @Override
     public Environment.PlcObject visit(Ast.Statement.Return ast) {
-        // Evaluate the return value expression
-        Environment.PlcObject value = visit(ast.getValue());
+        // Returns inside a function are run by execute, which returns their
+        // value, so this is only reached for a return visited on its own.
+        returned(visit(ast.getValue()));
+        return Environment.NIL;
+    }
 
-        // Throw the value inside a new Return exception
-        throw new Return(value);
+    /**
+     * Checks a statement visited on its own (outside of a function body)
+     * didn't return, as there's no function to return from.
+     */
+    private static void returned(Environment.PlcObject value) {
+        if (value != null) {
+            throw new RuntimeException("Return outside of a function.");
+        }
     }
 
 
@@ -335,6 +485,10 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.Literal ast) {
+        // Literals from the parser already have their runtime value.
+        if (ast.getConstant().isPresent()) {
+            return ast.getConstant().get();
+        }
         if (ast.getLiteral() == null) {
             return Environment.NIL; // Explicitly return Environment.NIL for null literals
         }
@@ -345,7 +499,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     @Override
     public Environment.PlcObject visit(Ast.Expression.Group ast) {
         // Simply evaluate the contained expression and return its value
-        return visit(ast.getExpression());
+        return evaluate(ast);
     }
 
 
@@ -355,29 +509,135 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.Binary ast) {
+        return evaluate(ast);
+    }
+
+    /**
+     * Evaluates binary and group expressions with an explicit stack instead
+     * of recursing into their operands, so expressions of any length and
+     * nesting depth (as in generated code) don't overflow the stack.
+     * Operands are still evaluated left to right, and the left operand is
+     * checked before evaluating the right one where the operator requires it.
+     */
+    private Environment.PlcObject evaluate(Ast.Expression expression) {
+        int base = pending;
+        try {
+            while (true) {
+                // Groups only affect parsing, so go through them and down the
+                // left operands to the first operand which isn't a binary.
+                while (true) {
+                    if (expression instanceof Ast.Expression.Group) {
+                        expression = ((Ast.Expression.Group) expression).getExpression();
+                    } else if (expression instanceof Ast.Expression.Binary) {
+                        push((Ast.Expression.Binary) expression);
+                        expression = ((Ast.Expression.Binary) expression).getLeft();
+                    } else {
+                        break;
+                    }
+                }
+                Environment.PlcObject value = visit(expression);
+                while (pending > base) {
+                    int top = pending - 1;
+                    Ast.Expression.Binary binary = binaries[top];
+                    if (!hasLeft[top]) {
+                        Environment.PlcObject result = shortCircuit(binary, value);
+                        if (result == null) {
+                            lefts[top] = value;
+                            hasLeft[top] = true;
+                            break;
+                        }
+                        value = result;
+                    } else {
+                        value = apply(binary, lefts[top], value);
+                    }
+                    pop();
+                }
+                if (pending == base) {
+                    return value;
+                }
+                expression = binaries[pending - 1].getRight();
+            }
+        } finally {
+            while (pending > base) {
+                pop();
+            }
+        }
+    }
+
+    private void push(Ast.Expression.Binary binary) {
+        if (pending == binaries.length) {
+            binaries = Arrays.copyOf(binaries, 2 * pending);
+            lefts = Arrays.copyOf(lefts, 2 * pending);
+            hasLeft = Arrays.copyOf(hasLeft, 2 * pending);
+        }
+        binaries[pending] = binary;
+        hasLeft[pending] = false;
+        pending++;
+    }
+
+    private void pop() {
+        pending--;
+        binaries[pending] = null;
+        lefts[pending] = null;
+    }
+
+    /**
+     * Checks the left operand of the operators which require a type before
+     * evaluating their right operand, returning the result if the operator
+     * short circuits (or {@code null} if the right operand is needed).
+     */
+    private Environment.PlcObject shortCircuit(Ast.Expression.Binary ast, Environment.PlcObject left) {
         switch (ast.getOperator()) {
             case "&&":
-                boolean leftValueAnd = requireType(Boolean.class, visit(ast.getLeft()).getValue());
+                // Short-circuit evaluation for AND.
+                return requireType(Boolean.class, left.getValue()) ? null : Environment.create(false);
+            case "||":
+                // Short-circuit evaluation for OR.
+                return requireType(Boolean.class, left.getValue()) ? Environment.create(true) : null;
+            case "-":
+            case "^":
+                if (!left.isLong()) {
+                    requireType(BigInteger.class, left.getValue());
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Applies a binary operator to the values of its operands.
+     */
+    private Environment.PlcObject apply(Ast.Expression.Binary ast, Environment.PlcObject left, Environment.PlcObject right) {
+        if (left.isLong() && right.isLong()) {
+            Environment.PlcObject result = applyLong(ast.getOperator(), left.getLong(), right.getLong());
+            if (result != null) {
+                return result;
+            }
+        }
+        switch (ast.getOperator()) {
+            case "&&":
+                boolean leftValueAnd = requireType(Boolean.class, left.getValue());
                 // Short-circuit evaluation for AND.
                 if (!leftValueAnd) {
                     return Environment.create(false);
                 }
-                boolean rightValueAnd = requireType(Boolean.class, visit(ast.getRight()).getValue());
+                boolean rightValueAnd = requireType(Boolean.class, right.getValue());
                 return Environment.create(leftValueAnd && rightValueAnd);
 
             case "||":
-                boolean leftValueOr = requireType(Boolean.class, visit(ast.getLeft()).getValue());
+                boolean leftValueOr = requireType(Boolean.class, left.getValue());
                 // Short-circuit evaluation for OR.
                 if (leftValueOr) {
                     return Environment.create(true);
                 }
-                boolean rightValueOr = requireType(Boolean.class, visit(ast.getRight()).getValue());
+                boolean rightValueOr = requireType(Boolean.class, right.getValue());
                 return Environment.create(leftValueOr || rightValueOr);
 
             case "<":
                 // Evaluate both operands
-                Environment.PlcObject leftObj = visit(ast.getLeft());
-                Environment.PlcObject rightObj = visit(ast.getRight());
+                Environment.PlcObject leftObj = left;
+                Environment.PlcObject rightObj = right;
                 // Ensure both are of the same type
                 if (leftObj.getValue().getClass() != rightObj.getValue().getClass()) {
                     throw new RuntimeException("Operands must be of the same type for '<' comparison.");
@@ -388,8 +648,8 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 return Environment.create(leftComp.compareTo(rightComp) < 0);
             case ">":
                 // Evaluate both operands
-                Environment.PlcObject leftObjA = visit(ast.getLeft());
-                Environment.PlcObject rightObjA = visit(ast.getRight());
+                Environment.PlcObject leftObjA = left;
+                Environment.PlcObject rightObjA = right;
                 // Ensure both are of the same type
                 if (leftObjA.getValue().getClass() != rightObjA.getValue().getClass()) {
                     throw new RuntimeException("Operands must be of the same type for '>' comparison.");
@@ -400,18 +660,18 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 return Environment.create(leftCompA.compareTo(rightCompA) > 0);
 
             case "==":
-                Object leftValueEq = visit(ast.getLeft()).getValue();
-                Object rightValueEq = visit(ast.getRight()).getValue();
+                Object leftValueEq = left.getValue();
+                Object rightValueEq = right.getValue();
                 return Environment.create(Objects.equals(leftValueEq, rightValueEq));
 
             case "!=":
-                Object leftValueNeq = visit(ast.getLeft()).getValue();
-                Object rightValueNeq = visit(ast.getRight()).getValue();
+                Object leftValueNeq = left.getValue();
+                Object rightValueNeq = right.getValue();
                 return Environment.create(!Objects.equals(leftValueNeq, rightValueNeq));
 
             case "+":
-                Object leftValueAdd = visit(ast.getLeft()).getValue();
-                Object rightValueAdd = visit(ast.getRight()).getValue();
+                Object leftValueAdd = left.getValue();
+                Object rightValueAdd = right.getValue();
                 if (leftValueAdd instanceof String || rightValueAdd instanceof String) {
                     return Environment.create(leftValueAdd.toString() + rightValueAdd.toString());
                 } else if (leftValueAdd instanceof BigInteger && rightValueAdd instanceof BigInteger) {
@@ -421,14 +681,14 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 }
 
             case "-":
-                BigInteger leftValueSub = requireType(BigInteger.class, visit(ast.getLeft()).getValue());
-                BigInteger rightValueSub = requireType(BigInteger.class, visit(ast.getRight()).getValue());
+                BigInteger leftValueSub = requireType(BigInteger.class, left.getValue());
+                BigInteger rightValueSub = requireType(BigInteger.class, right.getValue());
                 return Environment.create(leftValueSub.subtract(rightValueSub));
 
             case "*":
                 // Check if either operand is a BigDecimal, then convert both to BigDecimal for multiplication
-                Object leftValueMul = visit(ast.getLeft()).getValue();
-                Object rightValueMul = visit(ast.getRight()).getValue();
+                Object leftValueMul = left.getValue();
+                Object rightValueMul = right.getValue();
                 if (leftValueMul instanceof BigDecimal || rightValueMul instanceof BigDecimal) {
                     BigDecimal leftDecimal = requireType(BigDecimal.class, leftValueMul);
                     BigDecimal rightDecimal = requireType(BigDecimal.class, rightValueMul);
@@ -440,8 +700,8 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                     return Environment.create(leftBigInteger.multiply(rightBigInteger));
                 }
             case "/":
-                Object leftValueDiv = visit(ast.getLeft()).getValue();
-                Object rightValueDiv = visit(ast.getRight()).getValue();
+                Object leftValueDiv = left.getValue();
+                Object rightValueDiv = right.getValue();
                 if (rightValueDiv.equals(BigInteger.ZERO)) {
                     throw new RuntimeException("Division by zero.");
                 }
@@ -458,8 +718,8 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                     throw new RuntimeException("Incompatible types for division.");
                 }
             case "^":
-                BigInteger leftValueExp = requireType(BigInteger.class, visit(ast.getLeft()).getValue());
-                BigInteger rightValueExp = requireType(BigInteger.class, visit(ast.getRight()).getValue());
+                BigInteger leftValueExp = requireType(BigInteger.class, left.getValue());
+                BigInteger rightValueExp = requireType(BigInteger.class, right.getValue());
                 return Environment.create(leftValueExp.pow(rightValueExp.intValueExact()));
 
             default:
@@ -467,30 +727,67 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         }
     }
 
+    /**
+     * Applies an operator to integers held as longs, returning {@code null}
+     * if the result doesn't fit in a long (or for the other operators), so
+     * it's computed with {@link BigInteger} instead.
+     */
+    private static Environment.PlcObject applyLong(String operator, long left, long right) {
+        switch (operator) {
+            case "<": return Environment.create(left < right);
+            case ">": return Environment.create(left > right);
+            case "==": return Environment.create(left == right);
+            case "!=": return Environment.create(left != right);
+            case "+": return Integers.add(left, right);
+            case "-": return Integers.subtract(left, right);
+            case "*": return Integers.multiply(left, right);
+            // Division by zero is reported by apply.
+            case "/": return right != 0 ? Integers.divide(left, right) : null;
+            default: return null;
+        }
+    }
+
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.Access ast) {
         if (ast.getOffset().isPresent()) {
             // Assuming you've already got the listVariable similar to before
-            Environment.Variable listVariable = scope.lookupVariable(ast.getName());
+            Environment.Variable listVariable = variable(ast);
             List<Object> list = requireType(List.class, listVariable.getValue().getValue());
             // Evaluate the offset to get the index
-            BigInteger index = requireType(BigInteger.class, visit(ast.getOffset().get()).getValue());
+            int index = Integers.index(visit(ast.getOffset().get()));
             // Access the element in the list
-            Object element = list.get(index.intValueExact());
+            Object element = list.get(index);
             // Wrap the element in a PlcObject before returning
             return Environment.create(element);
         } else {
             // Access a non-list variable, presumably already handled correctly
-            return scope.lookupVariable(ast.getName()).getValue();
+            return variable(ast).getValue();
+        }
+    }
+
+    /**
+     * Returns the variable of an access, from its frame or the globals if
+     * the {@link Analyzer} resolved its slot.
+     */
+    private Environment.Variable variable(Ast.Expression.Access ast) {
+        if (ast.getDepth() == Ast.Expression.Access.LOCAL && frame != null) {
+            return frame[ast.getSlot()];
+        } else if (ast.getDepth() == Ast.Expression.Access.GLOBAL && ast.getSlot() < globals.length) {
+            // The slot may belong to a global of another source analyzed separately.
+            Environment.Variable global = globals[ast.getSlot()];
+            if (global != null && global.getName().equals(ast.getName())) {
+                return global;
+            }
         }
+        return scope.lookupVariable(ast.getSymbol(scope.getSymbols()));
     }
 
 
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.Function ast) {
-        Environment.Function function = scope.lookupFunction(ast.getName(), ast.getArguments().size());
+        Environment.Function function = scope.lookupFunction(ast.getSymbol(scope.getSymbols()), ast.getArguments().size());
         List<Environment.PlcObject> evaluatedArgs = new ArrayList<>();
 
         for (Ast.Expression argument : ast.getArguments()) {
@@ -502,6 +799,15 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.PlcList ast) {
+        if (ast.getArray().isPresent()) {
+            // Every evaluation creates a new list, which assignments to its
+            // elements change in place for every reference to it.
+            List<Object> list = new ArrayList<>(ast.size());
+            for (int i = 0; i < ast.size(); i++) {
+                list.add(ast.getLiteral(i));
+            }
+            return Environment.create(list);
+        }
         List<Object> list = new ArrayList<>();
         for (Ast.Expression value : ast.getValues()) {
             Environment.PlcObject plcValue = visit(value);
@@ -525,17 +831,4 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         }
     }
 
-    /**
-     * Exception class for returning values.
-     */
-    private static class Return extends RuntimeException {
-
-        private final Environment.PlcObject value;
-
-        private Return(Environment.PlcObject value) {
-            this.value = value;
-        }
-
-    }
-
 }
@@ -2,8 +2,12 @@ package plc.project;
 
 import java.util.List;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -22,11 +26,27 @@ import java.util.regex.Matcher;
 public final class Lexer {
 
     private final CharStream chars;
+    private final ConstantPool constants;
+    // Every occurrence of a name shares the first string for it.
+    private final Map<String, String> names = new HashMap<>();
 //fixes
     public Lexer(String input) {
         //String processedInput = applyBackspaces(input);
         //this.chars = new CharStream(processedInput);
+        this(input, new ConstantPool());
+    }
+
+    /**
+     * Creates a lexer which decodes literals into the given pool, see
+     * {@link Token#getConstant()}.
+     */
+    public Lexer(String input, ConstantPool constants) {
         this.chars = new CharStream(input);
+        this.constants = constants;
+    }
+
+    public ConstantPool getConstants() {
+        return constants;
     }
 
 
@@ -47,6 +67,19 @@ public final class Lexer {
         return tokens;
     }
 
+    /**
+     * Returns a {@link TokenSource} which lexes one token at a time as the
+     * parser asks for it, skipping whitespace the same way as {@link #lex()}.
+     */
+    public TokenSource tokens() {
+        return () -> {
+            while (chars.has(0) && isWhitespace(chars.get(0))) {
+                chars.advance();
+            }
+            return chars.has(0) ? lexToken() : null;
+        };
+    }
+
    // private boolean isWhitespace(char c) {return Character.isWhitespace(c);}
 
     private boolean isWhitespace(char c) {
@@ -102,7 +135,7 @@ public final class Lexer {
         while (peek("[A-Za-z0-9_-]") || peek("@")) {
             chars.advance();
         }
-        String value = chars.input.substring(startIndex, chars.index);
+        String value = names.computeIfAbsent(chars.input.substring(startIndex, chars.index), name -> name);
         return new Token(Token.Type.IDENTIFIER, value, startIndex);
     }
 
@@ -118,14 +151,21 @@ public final class Lexer {
             throw new ParseException("Expected a digit.", chars.index);
         }
 
+        // The digits are decoded as they're scanned. Up to 18 digits always
+        // fit in a long, anything longer is decoded from the literal.
+        long digits = 0;
+        int count = 0;
+
         // Handle potential leading zero that should not be followed by other digits.
         if (match("0")) {
             if (peek("[0-9]")) {
                 // If another digit follows, end the current token and do not advance.
-                return new Token(Token.Type.INTEGER, "0", startIndex);
+                return new Token(Token.Type.INTEGER, "0", startIndex, constants.get(BigInteger.ZERO));
             }
         } else {
             while (peek("[0-9]")) {
+                digits = 10 * digits + (chars.get(0) - '0');
+                count++;
                 chars.advance();
             }
         }
@@ -135,17 +175,30 @@ public final class Lexer {
             if (!peek("[0-9]")) {
                 // If no digit follows, treat the '.' as a pending operator.
                 chars.retreat();  // Go back to before the '.'
-                return new Token(Token.Type.INTEGER, chars.input.substring(startIndex, chars.index), startIndex);
+                return integer(startIndex, isNegative, digits, count);
             }
             // Continue reading the decimal part.
+            int scale = 0;
             while (peek("[0-9]")) {
+                digits = 10 * digits + (chars.get(0) - '0');
+                scale++;
                 chars.advance();
             }
-            return new Token(Token.Type.DECIMAL, chars.input.substring(startIndex, chars.index), startIndex);
+            String literal = chars.input.substring(startIndex, chars.index);
+            BigDecimal value = count + scale <= 18
+                    ? BigDecimal.valueOf(isNegative ? -digits : digits, scale)
+                    : new BigDecimal(literal);
+            return new Token(Token.Type.DECIMAL, literal, startIndex, constants.get(value));
         }
 
         // If there was no '.', return the integer token.
-        return new Token(Token.Type.INTEGER, chars.input.substring(startIndex, chars.index), startIndex);
+        return integer(startIndex, isNegative, digits, count);
+    }
+
+    private Token integer(int startIndex, boolean isNegative, long digits, int count) {
+        String literal = chars.input.substring(startIndex, chars.index);
+        BigInteger value = count <= 18 ? BigInteger.valueOf(isNegative ? -digits : digits) : new BigInteger(literal);
+        return new Token(Token.Type.INTEGER, literal, startIndex, constants.get(value));
     }
 
 
@@ -155,6 +208,7 @@ public final class Lexer {
             throw new ParseException("Expected a single quote to start a character literal.", chars.index);
         }
         int startIndex = chars.index - 1;
+        char value;
 
         // check if current character is whitespace
 
@@ -166,12 +220,14 @@ public final class Lexer {
             if (!peek("[bnrt'\"\\\\]")) {  // Make sure to check after advancing past the backslash
                 throw new ParseException("Invalid escape sequence in character literal.", chars.index);
             }
+            value = ConstantPool.escape(chars.get(0));
             chars.advance(); // Advance past the escape character
         } else {
             // Check for invalid characters (non-escaped single quote, newline, or carriage return)
             if (peek("['\f\u000B\n\r\\\\]")) {  // Note: Add backslash to the invalid set if not escaped
                 throw new ParseException("Invalid character in character literal.", chars.index);
             }
+            value = chars.has(0) ? chars.get(0) : 0;
             chars.advance(); // Advance past the character if it's valid
         }
 
@@ -181,7 +237,7 @@ public final class Lexer {
         }
         // Get the entire character literal including the surrounding quotes
         String characterLiteral = chars.input.substring(startIndex, chars.index);
-        return new Token(Token.Type.CHARACTER, characterLiteral, startIndex);
+        return new Token(Token.Type.CHARACTER, characterLiteral, startIndex, constants.get(value));
     }
 
 
@@ -195,6 +251,7 @@ public final class Lexer {
         int startIndex = chars.index - 1;
 
         StringBuilder literal = new StringBuilder();
+        StringBuilder value = new StringBuilder();
 
         while (true) {
             if (!chars.has(0)) {
@@ -215,6 +272,7 @@ public final class Lexer {
                 char nextChar = chars.get(0);
                 if ("bnrt'\"\\".indexOf(nextChar) != -1) {
                     literal.append("\\").append(nextChar);
+                    value.append(ConstantPool.escape(nextChar));
                     chars.advance();
                 } else {
                    // System.out.println("Error 3: " + chars.index);
@@ -222,10 +280,11 @@ public final class Lexer {
                 }
             } else {
                 literal.append(chars.get(0));
+                value.append(chars.get(0));
                 chars.advance();
             }
         }
-        return new Token(Token.Type.STRING, "\"" + literal.toString() + "\"", startIndex);
+        return new Token(Token.Type.STRING, "\"" + literal.toString() + "\"", startIndex, constants.get(value.toString()));
     }
 
 
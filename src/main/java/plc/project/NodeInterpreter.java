@@ -0,0 +1,1519 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An execution engine which compiles an AST once into a tree of executable
+ * nodes and runs those, instead of walking the AST as the {@link Interpreter}
+ * does. Programs give the same results as with the interpreter, and
+ * {@link #execute(Ast)} can be used in place of {@link Interpreter#visit(Ast)},
+ * including with a scope which already holds variables and functions.
+ *
+ * Each decision the interpreter makes again every time it evaluates a node is
+ * made once while compiling: the operator of a binary expression selects the
+ * class of its node, the variables of a function are resolved to slots of an
+ * array frame, and the other names in a function are resolved the first time
+ * they're used. Functions are compiled the first time they're called.
+ *
+ * As in the interpreter, blocks are run with an explicit stack and deep binary
+ * expressions are evaluated with one, so deeply nested code doesn't overflow
+ * the stack.
+ */
+public final class NodeInterpreter {
+
+    private static final Environment.PlcObject[] NO_FRAME = new Environment.PlcObject[0];
+
+    /**
+     * The height of binary expressions which are evaluated with an explicit
+     * stack instead of recursing into their operands.
+     */
+    private static final int DEEP = 256;
+
+    private Scope scope;
+    // The table of the names in the scopes this engine runs in, which are
+    // all below the same root.
+    private final Symbols symbols;
+
+    // The functions this engine defined, so calls between them pass their
+    // arguments in a frame instead of a list.
+    private final Map<Environment.Function, Function> functions = new IdentityHashMap<>();
+
+    // The blocks being run, with the index of their next statement, the while
+    // statement to repeat them for (if any) and the scope to restore once
+    // they're done. Runs started while one is in progress (such as for a
+    // function call) use the entries above it.
+    private Block[] blocks = new Block[16];
+    private int[] indices = new int[16];
+    private WhileNode[] loops = new WhileNode[16];
+    private Scope[] scopes = new Scope[16];
+    private int depth = 0;
+
+    public NodeInterpreter(Scope parent) {
+        scope = (parent == null) ? new Scope(null) : parent;
+        symbols = scope.getSymbols();
+
+        scope.defineFunction("print", 1, args -> {
+            System.out.println(args.get(0).getValue());
+            return Environment.NIL;
+        });
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * Compiles and runs the given AST, returning the same value as
+     * {@link Interpreter#visit(Ast)} would.
+     */
+    public Environment.PlcObject execute(Ast ast) {
+        Compiler compiler = new Compiler(null, null);
+        if (ast instanceof Ast.Statement) {
+            Block block = compiler.block(List.of((Ast.Statement) ast));
+            if (run(block, NO_FRAME) != null) {
+                throw new RuntimeException("Return outside of a function.");
+            }
+            return Environment.NIL;
+        }
+        return ast.accept(compiler).execute(NO_FRAME);
+    }
+
+    /**
+     * Runs a block, returning the value of the return statement which ended
+     * it or {@code null} if it ran to the end.
+     */
+    private Environment.PlcObject run(Block body, Environment.PlcObject[] frame) {
+        int base = depth;
+        Scope originalScope = scope;
+        push(body, null, scope);
+        try {
+            while (depth > base) {
+                int top = depth - 1;
+                Block block = blocks[top];
+                if (indices[top] == block.statements.length) {
+                    scope = scopes[top];
+                    WhileNode loop = loops[top];
+                    if (loop != null && test(loop.condition, frame)) {
+                        indices[top] = 0;
+                    } else {
+                        pop();
+                    }
+                    continue;
+                }
+                Node statement = block.statements[indices[top]++];
+                if (!(statement instanceof ControlNode)) {
+                    statement.execute(frame);
+                    continue;
+                }
+                switch (((ControlNode) statement).kind) {
+                    case ControlNode.IF: {
+                        IfNode node = (IfNode) statement;
+                        Block selected = test(node.condition, frame) ? node.then : node.otherwise;
+                        clear(selected, frame);
+                        push(selected, null, scope);
+                        if (node.scoped) {
+                            scope = new Scope(scope);
+                        }
+                        break;
+                    }
+                    case ControlNode.SWITCH: {
+                        SwitchNode node = (SwitchNode) statement;
+                        Environment.PlcObject condition = node.condition.execute(frame);
+                        Scope switchScope = scope;
+                        if (node.scoped) {
+                            scope = new Scope(switchScope);
+                        }
+                        Block selected = Block.EMPTY;
+                        for (int i = 0; i < node.values.length; i++) {
+                            // A case without a value is the default case, which is the last case
+                            if (node.values[i] == null
+                                    || condition.getValue().equals(node.values[i].execute(frame).getValue())) {
+                                selected = node.cases[i];
+                                break;
+                            }
+                        }
+                        clear(selected, frame);
+                        push(selected, null, switchScope);
+                        break;
+                    }
+                    case ControlNode.WHILE: {
+                        WhileNode node = (WhileNode) statement;
+                        if (test(node.condition, frame)) {
+                            // The body of a while statement runs in the current scope
+                            push(node.body, node, scope);
+                        }
+                        break;
+                    }
+                    case ControlNode.RETURN:
+                        return ((ReturnNode) statement).value.execute(frame);
+                    default:
+                        throw new AssertionError(statement.getClass().getName());
+                }
+            }
+            return null;
+        } finally {
+            while (depth > base) {
+                pop();
+            }
+            scope = originalScope;
+        }
+    }
+
+    private void push(Block block, WhileNode loop, Scope restore) {
+        if (depth == blocks.length) {
+            blocks = Arrays.copyOf(blocks, 2 * depth);
+            indices = Arrays.copyOf(indices, 2 * depth);
+            loops = Arrays.copyOf(loops, 2 * depth);
+            scopes = Arrays.copyOf(scopes, 2 * depth);
+        }
+        blocks[depth] = block;
+        indices[depth] = 0;
+        loops[depth] = loop;
+        scopes[depth] = restore;
+        depth++;
+    }
+
+    /**
+     * Clears the slots of the variables declared in a block which is being
+     * entered, as each run of it has a new scope in which they aren't
+     * declared yet.
+     */
+    private static void clear(Block block, Environment.PlcObject[] frame) {
+        for (int slot : block.slots) {
+            frame[slot] = null;
+        }
+    }
+
+    private void pop() {
+        depth--;
+        blocks[depth] = null;
+        loops[depth] = null;
+        scopes[depth] = null;
+    }
+
+    private static boolean test(Node condition, Environment.PlcObject[] frame) {
+        Environment.PlcObject value = condition.execute(frame);
+        // Booleans are shared, so most conditions are decided by identity.
+        if (value == Environment.TRUE) {
+            return true;
+        } else if (value == Environment.FALSE) {
+            return false;
+        }
+        return requireType(Boolean.class, value.getValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T requireType(Class<T> type, Object object) {
+        if (type.isInstance(object)) {
+            return (T) object;
+        } else {
+            throw new RuntimeException("Expected type " + type.getName() + ", received " + object.getClass().getName() + ".");
+        }
+    }
+
+    /**
+     * Compiles the AST of the top level (without a scope or locals) or of a
+     * function body into nodes.
+     */
+    private final class Compiler implements Ast.Visitor<Node> {
+
+        // The scope a function was defined in, which its names other than
+        // its variables are resolved through, or null at the top level.
+        private final Scope functionScope;
+        private Locals locals;
+
+        private Compiler(Scope functionScope, Locals locals) {
+            this.functionScope = functionScope;
+            this.locals = locals;
+        }
+
+        /**
+         * Compiles a block with an explicit stack instead of recursing into
+         * nested blocks. The blocks of a control statement are created empty
+         * and filled once the statements before them are compiled, so each
+         * block sees the variables declared before it.
+         */
+        private Block block(List<Ast.Statement> statements) {
+            Locals originalLocals = locals;
+            Block root = new Block(statements.size());
+            Deque<Task> tasks = new ArrayDeque<>();
+            tasks.push(new Task(statements, root, locals, false));
+            while (!tasks.isEmpty()) {
+                Task task = tasks.peek();
+                if (task.index == task.statements.size()) {
+                    tasks.pop();
+                    if (task.scoped && task.locals != null) {
+                        task.block.slots = task.locals.slots();
+                    }
+                    continue;
+                }
+                int index = task.index++;
+                Ast.Statement statement = task.statements.get(index);
+                locals = task.locals;
+                boolean scoped = functionScope == null;
+                if (statement instanceof Ast.Statement.If) {
+                    Ast.Statement.If ast = (Ast.Statement.If) statement;
+                    IfNode node = new IfNode(expression(ast.getCondition()),
+                            new Block(ast.getThenStatements().size()),
+                            new Block(ast.getElseStatements().size()),
+                            scoped);
+                    task.block.statements[index] = node;
+                    tasks.push(new Task(ast.getElseStatements(), node.otherwise, child(locals), true));
+                    tasks.push(new Task(ast.getThenStatements(), node.then, child(locals), true));
+                } else if (statement instanceof Ast.Statement.Switch) {
+                    Ast.Statement.Switch ast = (Ast.Statement.Switch) statement;
+                    int size = ast.getCases().size();
+                    Node[] values = new Node[size];
+                    Block[] cases = new Block[size];
+                    for (int i = 0; i < size; i++) {
+                        Ast.Statement.Case caseStmt = ast.getCases().get(i);
+                        values[i] = caseStmt.getValue().isPresent() ? expression(caseStmt.getValue().get()) : null;
+                        cases[i] = new Block(caseStmt.getStatements().size());
+                    }
+                    task.block.statements[index] = new SwitchNode(expression(ast.getCondition()), values, cases, scoped);
+                    for (int i = size - 1; i >= 0; i--) {
+                        tasks.push(new Task(ast.getCases().get(i).getStatements(), cases[i], child(locals), true));
+                    }
+                } else if (statement instanceof Ast.Statement.While) {
+                    Ast.Statement.While ast = (Ast.Statement.While) statement;
+                    WhileNode node = new WhileNode(expression(ast.getCondition()), new Block(ast.getStatements().size()));
+                    task.block.statements[index] = node;
+                    tasks.push(new Task(ast.getStatements(), node.body, locals, false));
+                } else {
+                    task.block.statements[index] = statement.accept(this);
+                }
+            }
+            locals = originalLocals;
+            return root;
+        }
+
+        private Locals child(Locals locals) {
+            return locals == null ? null : new Locals(locals);
+        }
+
+        /**
+         * Compiles an expression, going through binary and group expressions
+         * with an explicit stack instead of recursing into their operands.
+         * Binary expressions which are too deep to evaluate by recursion are
+         * wrapped in a {@link DeepNode}.
+         */
+        private Node expression(Ast.Expression expression) {
+            if (!(expression instanceof Ast.Expression.Binary) && !(expression instanceof Ast.Expression.Group)) {
+                return expression.accept(this);
+            }
+            // Pushing each binary before its operands onto a second stack
+            // leaves them in post-order, with the operands left to right.
+            Deque<Ast.Expression> expand = new ArrayDeque<>();
+            Deque<Ast.Expression> order = new ArrayDeque<>();
+            expand.push(expression);
+            while (!expand.isEmpty()) {
+                Ast.Expression ast = expand.pop();
+                while (ast instanceof Ast.Expression.Group) {
+                    ast = ((Ast.Expression.Group) ast).getExpression();
+                }
+                order.push(ast);
+                if (ast instanceof Ast.Expression.Binary) {
+                    expand.push(((Ast.Expression.Binary) ast).getLeft());
+                    expand.push(((Ast.Expression.Binary) ast).getRight());
+                }
+            }
+            Deque<Node> operands = new ArrayDeque<>();
+            while (!order.isEmpty()) {
+                Ast.Expression ast = order.pop();
+                if (ast instanceof Ast.Expression.Binary) {
+                    Node right = operands.pop();
+                    Node left = operands.pop();
+                    operands.push(binary(((Ast.Expression.Binary) ast).getOperator(), left, right));
+                } else {
+                    operands.push(ast.accept(this));
+                }
+            }
+            Node node = operands.pop();
+            return node instanceof BinaryNode && ((BinaryNode) node).height > DEEP ? new DeepNode((BinaryNode) node) : node;
+        }
+
+        /**
+         * Returns the node which reads or writes the variable of the given
+         * name: a slot of the frame in a function which declares it, the
+         * variable in the scope of a function, or at the top level the
+         * variable in the current scope when the node is run.
+         */
+        private Reference reference(String name, int symbol) {
+            if (locals != null) {
+                int slot = locals.lookup(symbol);
+                if (slot >= 0) {
+                    return new LocalNode(name, slot);
+                }
+            }
+            return functionScope != null ? new VariableNode(functionScope, symbol) : new ScopeVariableNode(symbol);
+        }
+
+        @Override
+        public Node visit(Ast.Source ast) {
+            List<Node> definitions = new ArrayList<>();
+            for (Ast.Global global : ast.getGlobals()) {
+                definitions.add(visit(global));
+            }
+            for (Ast.Function function : ast.getFunctions()) {
+                definitions.add(visit(function));
+            }
+            return new SourceNode(definitions.toArray(new Node[0]));
+        }
+
+        @Override
+        public Node visit(Ast.Global ast) {
+            return new GlobalNode(ast.getName(), ast.getMutable(), ast.getValue().isPresent() ? expression(ast.getValue().get()) : null);
+        }
+
+        @Override
+        public Node visit(Ast.Function ast) {
+            return new FunctionNode(ast);
+        }
+
+        @Override
+        public Node visit(Ast.Statement.Expression ast) {
+            return expression(ast.getExpression());
+        }
+
+        @Override
+        public Node visit(Ast.Statement.Declaration ast) {
+            // The value is compiled first, as it can't see the new variable.
+            Node value = ast.getValue().isPresent() ? expression(ast.getValue().get()) : null;
+            if (locals != null) {
+                return new DeclarationNode(ast.getName(), locals.declare(ast.getSymbol(symbols)), value);
+            }
+            return new ScopeDeclarationNode(ast.getName(), value);
+        }
+
+        @Override
+        public Node visit(Ast.Statement.Assignment ast) {
+            if (!(ast.getReceiver() instanceof Ast.Expression.Access)) {
+                throw new RuntimeException("The receiver must be an Access expression.");
+            }
+            Ast.Expression.Access access = (Ast.Expression.Access) ast.getReceiver();
+            Node value = expression(ast.getValue());
+            Reference variable = reference(access.getName(), access.getSymbol(symbols));
+            if (access.getOffset().isPresent()) {
+                return new ElementAssignmentNode(variable, expression(access.getOffset().get()), value);
+            }
+            return new AssignmentNode(variable, value);
+        }
+
+        @Override
+        public Node visit(Ast.Statement.If ast) {
+            throw new AssertionError("Compiled by block.");
+        }
+
+        @Override
+        public Node visit(Ast.Statement.Switch ast) {
+            throw new AssertionError("Compiled by block.");
+        }
+
+        @Override
+        public Node visit(Ast.Statement.Case ast) {
+            throw new AssertionError("Compiled by block.");
+        }
+
+        @Override
+        public Node visit(Ast.Statement.While ast) {
+            throw new AssertionError("Compiled by block.");
+        }
+
+        @Override
+        public Node visit(Ast.Statement.Return ast) {
+            return new ReturnNode(expression(ast.getValue()));
+        }
+
+        @Override
+        public Node visit(Ast.Expression.Literal ast) {
+            if (ast.getConstant().isPresent()) {
+                return new ConstantNode(ast.getConstant().get());
+            }
+            return new ConstantNode(ast.getLiteral() == null ? Environment.NIL : Environment.create(ast.getLiteral()));
+        }
+
+        @Override
+        public Node visit(Ast.Expression.Group ast) {
+            return expression(ast);
+        }
+
+        @Override
+        public Node visit(Ast.Expression.Binary ast) {
+            return expression(ast);
+        }
+
+        @Override
+        public Node visit(Ast.Expression.Access ast) {
+            Reference variable = reference(ast.getName(), ast.getSymbol(symbols));
+            if (ast.getOffset().isPresent()) {
+                return new ElementNode(variable, expression(ast.getOffset().get()));
+            }
+            return variable;
+        }
+
+        @Override
+        public Node visit(Ast.Expression.Function ast) {
+            Node[] arguments = new Node[ast.getArguments().size()];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = expression(ast.getArguments().get(i));
+            }
+            return new CallNode(functionScope, ast.getSymbol(symbols), arguments);
+        }
+
+        @Override
+        public Node visit(Ast.Expression.PlcList ast) {
+            if (ast.getArray().isPresent()) {
+                return new LiteralListNode(ast);
+            }
+            Node[] values = new Node[ast.getValues().size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = expression(ast.getValues().get(i));
+            }
+            return new ListNode(values);
+        }
+
+    }
+
+    /**
+     * A block of statements waiting to be compiled into a {@link Block}.
+     */
+    private static final class Task {
+
+        private final List<Ast.Statement> statements;
+        private final Block block;
+        private final Locals locals;
+        // Whether the block has its own scope, rather than the one of the
+        // block it's in (as the body of a while statement does).
+        private final boolean scoped;
+        private int index = 0;
+
+        private Task(List<Ast.Statement> statements, Block block, Locals locals, boolean scoped) {
+            this.statements = statements;
+            this.block = block;
+            this.locals = locals;
+            this.scoped = scoped;
+        }
+
+    }
+
+    /**
+     * The variables declared in a block of a function, by the ids of their
+     * names. Each variable of a function has its own slot in the frame, so
+     * slots are counted by the outermost block. A name declared again in the
+     * same block keeps its slot, so declaring it twice in the same run of the
+     * block fails as it does in a scope.
+     */
+    private static final class Locals {
+
+        private final Locals parent;
+        private final Locals function;
+        private final Map<Integer, Integer> slots = new HashMap<>();
+        private int size = 0;
+
+        private Locals(Locals parent) {
+            this.parent = parent;
+            this.function = parent == null ? this : parent.function;
+        }
+
+        private int declare(int symbol) {
+            Integer slot = slots.get(symbol);
+            if (slot == null) {
+                slot = function.size++;
+                slots.put(symbol, slot);
+            }
+            return slot;
+        }
+
+        private int[] slots() {
+            return slots.values().stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private int lookup(int symbol) {
+            for (Locals locals = this; locals != null; locals = locals.parent) {
+                Integer slot = locals.slots.get(symbol);
+                if (slot != null) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+    }
+
+    /**
+     * A function defined by this engine, which is compiled the first time
+     * it's called. Its parameters are the first slots of its frame.
+     */
+    private final class Function {
+
+        private final Ast.Function ast;
+        private final Scope definingScope;
+        private Block body;
+        private int frameSize;
+
+        private Function(Ast.Function ast, Scope definingScope) {
+            this.ast = ast;
+            this.definingScope = definingScope;
+        }
+
+        private int frameSize() {
+            if (body == null) {
+                Locals locals = new Locals(null);
+                for (String parameter : ast.getParameters()) {
+                    int symbol = symbols.intern(parameter);
+                    if (locals.lookup(symbol) >= 0) {
+                        throw new RuntimeException("The variable " + parameter + " is already defined in this scope.");
+                    }
+                    locals.declare(symbol);
+                }
+                body = new Compiler(definingScope, locals).block(ast.getStatements());
+                frameSize = locals.size;
+            }
+            return frameSize;
+        }
+
+        private Environment.PlcObject call(Environment.PlcObject[] frame) {
+            Environment.PlcObject value = run(body, frame);
+            return value != null ? value : Environment.NIL;
+        }
+
+    }
+
+    /**
+     * A compiled node. Expressions return their value, and statements return
+     * {@link Environment#NIL} (or are a {@link ControlNode}, which is run by
+     * {@link #run(Block, Environment.PlcObject[])}).
+     */
+    private abstract static class Node {
+
+        abstract Environment.PlcObject execute(Environment.PlcObject[] frame);
+
+    }
+
+    private static final class Block {
+
+        private static final Block EMPTY = new Block(0);
+
+        private final Node[] statements;
+        // The slots of the variables declared in the block, which are
+        // cleared when it's entered, see clear.
+        private int[] slots = new int[0];
+
+        private Block(int size) {
+            this.statements = new Node[size];
+        }
+
+    }
+
+    /**
+     * A statement which runs blocks or returns, and so is run by
+     * {@link #run(Block, Environment.PlcObject[])} instead of executed.
+     */
+    private abstract static class ControlNode extends Node {
+
+        private static final int IF = 0;
+        private static final int SWITCH = 1;
+        private static final int WHILE = 2;
+        private static final int RETURN = 3;
+
+        private final int kind;
+
+        private ControlNode(int kind) {
+            this.kind = kind;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            throw new AssertionError("Run by run.");
+        }
+
+    }
+
+    private static final class IfNode extends ControlNode {
+
+        private final Node condition;
+        private final Block then;
+        private final Block otherwise;
+        // Whether the blocks have their own scope, which is only needed at
+        // the top level as functions keep their variables in frames.
+        private final boolean scoped;
+
+        private IfNode(Node condition, Block then, Block otherwise, boolean scoped) {
+            super(ControlNode.IF);
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+            this.scoped = scoped;
+        }
+
+    }
+
+    private static final class SwitchNode extends ControlNode {
+
+        private final Node condition;
+        // The value of each case, or null for the default case.
+        private final Node[] values;
+        private final Block[] cases;
+        private final boolean scoped;
+
+        private SwitchNode(Node condition, Node[] values, Block[] cases, boolean scoped) {
+            super(ControlNode.SWITCH);
+            this.condition = condition;
+            this.values = values;
+            this.cases = cases;
+            this.scoped = scoped;
+        }
+
+    }
+
+    private static final class WhileNode extends ControlNode {
+
+        private final Node condition;
+        private final Block body;
+
+        private WhileNode(Node condition, Block body) {
+            super(ControlNode.WHILE);
+            this.condition = condition;
+            this.body = body;
+        }
+
+    }
+
+    private static final class ReturnNode extends ControlNode {
+
+        private final Node value;
+
+        private ReturnNode(Node value) {
+            super(ControlNode.RETURN);
+            this.value = value;
+        }
+
+    }
+
+    private final class SourceNode extends Node {
+
+        private final Node[] definitions;
+
+        private SourceNode(Node[] definitions) {
+            this.definitions = definitions;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            for (Node definition : definitions) {
+                definition.execute(frame);
+            }
+            return scope.lookupFunction("main", 0).invoke(List.of());
+        }
+
+    }
+
+    private final class GlobalNode extends Node {
+
+        private final String name;
+        private final boolean mutable;
+        private final Node value;
+
+        private GlobalNode(String name, boolean mutable, Node value) {
+            this.name = name;
+            this.mutable = mutable;
+            this.value = value;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            scope.defineVariable(name, name, Environment.Type.ANY, mutable, value != null ? value.execute(frame) : Environment.NIL);
+            return Environment.NIL;
+        }
+
+    }
+
+    private final class FunctionNode extends Node {
+
+        private final Ast.Function ast;
+
+        private FunctionNode(Ast.Function ast) {
+            this.ast = ast;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            Function function = new Function(ast, scope);
+            List<Environment.Type> parameterTypes = new ArrayList<>();
+            for (int i = 0; i < ast.getParameters().size(); i++) {
+                parameterTypes.add(Environment.Type.ANY);
+            }
+            Environment.Function defined = scope.defineFunction(ast.getName(), ast.getName(), parameterTypes, Environment.Type.ANY, args -> {
+                Environment.PlcObject[] arguments = new Environment.PlcObject[function.frameSize()];
+                for (int i = 0; i < args.size(); i++) {
+                    arguments[i] = args.get(i);
+                }
+                return function.call(arguments);
+            });
+            functions.put(defined, function);
+            return Environment.NIL;
+        }
+
+    }
+
+    private static final class DeclarationNode extends Node {
+
+        private final String name;
+        private final int slot;
+        private final Node value;
+
+        private DeclarationNode(String name, int slot, Node value) {
+            this.name = name;
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            Environment.PlcObject result = value != null ? value.execute(frame) : Environment.NIL;
+            if (frame[slot] != null) {
+                throw new RuntimeException("The variable " + name + " is already defined in this scope.");
+            }
+            frame[slot] = result;
+            return Environment.NIL;
+        }
+
+    }
+
+    private final class ScopeDeclarationNode extends Node {
+
+        private final String name;
+        private final Node value;
+
+        private ScopeDeclarationNode(String name, Node value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            scope.defineVariable(name, true, value != null ? value.execute(frame) : Environment.NIL);
+            return Environment.NIL;
+        }
+
+    }
+
+    private static final class AssignmentNode extends Node {
+
+        private final Reference variable;
+        private final Node value;
+
+        private AssignmentNode(Reference variable, Node value) {
+            this.variable = variable;
+            this.value = value;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            variable.assign(frame, value.execute(frame));
+            return Environment.NIL;
+        }
+
+    }
+
+    private static final class ElementAssignmentNode extends Node {
+
+        private final Reference list;
+        private final Node index;
+        private final Node value;
+
+        private ElementAssignmentNode(Reference list, Node index, Node value) {
+            this.list = list;
+            this.index = index;
+            this.value = value;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            Object rawValue = value.execute(frame).getValue();
+            @SuppressWarnings("unchecked")
+            List<Object> values = requireType(List.class, list.execute(frame).getValue());
+            int offset = Integers.index(index.execute(frame));
+            // Lists which can't be modified are copied into an ArrayList first.
+            if (!(values instanceof ArrayList)) {
+                values = new ArrayList<>(values);
+                list.store(frame, Environment.create(values));
+            }
+            values.set(offset, rawValue);
+            return Environment.NIL;
+        }
+
+    }
+
+    private static final class ConstantNode extends Node {
+
+        private final Environment.PlcObject value;
+
+        private ConstantNode(Environment.PlcObject value) {
+            this.value = value;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            return value;
+        }
+
+    }
+
+    /**
+     * A node which reads a variable, and which can be assigned to.
+     */
+    private abstract static class Reference extends Node {
+
+        /**
+         * Assigns the variable, which must be mutable.
+         */
+        abstract void assign(Environment.PlcObject[] frame, Environment.PlcObject value);
+
+        /**
+         * Replaces the value of the variable, such as with a copy of a list.
+         */
+        abstract void store(Environment.PlcObject[] frame, Environment.PlcObject value);
+
+    }
+
+    /**
+     * A variable of a function, which are always mutable.
+     */
+    private static final class LocalNode extends Reference {
+
+        private final String name;
+        private final int slot;
+
+        private LocalNode(String name, int slot) {
+            this.name = name;
+            this.slot = slot;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            Environment.PlcObject value = frame[slot];
+            if (value == null) {
+                // Declared in the body of a while statement which didn't run.
+                throw new RuntimeException("The variable " + name + " is not defined in this scope.");
+            }
+            return value;
+        }
+
+        @Override
+        void assign(Environment.PlcObject[] frame, Environment.PlcObject value) {
+            execute(frame);
+            frame[slot] = value;
+        }
+
+        @Override
+        void store(Environment.PlcObject[] frame, Environment.PlcObject value) {
+            frame[slot] = value;
+        }
+
+    }
+
+    /**
+     * A variable accessed from a function which doesn't declare it, which is
+     * looked up through the scope the function was defined in the first
+     * time the node is run.
+     */
+    private static final class VariableNode extends Reference {
+
+        private final Scope scope;
+        private final int symbol;
+        private Environment.Variable variable;
+
+        private VariableNode(Scope scope, int symbol) {
+            this.scope = scope;
+            this.symbol = symbol;
+        }
+
+        private Environment.Variable variable() {
+            if (variable == null) {
+                variable = scope.lookupVariable(symbol);
+            }
+            return variable;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            return variable().getValue();
+        }
+
+        @Override
+        void assign(Environment.PlcObject[] frame, Environment.PlcObject value) {
+            Environment.Variable variable = variable();
+            if (!variable.getMutable()) {
+                throw new RuntimeException("Assignment to an immutable variable.");
+            }
+            variable.setValue(value);
+        }
+
+        @Override
+        void store(Environment.PlcObject[] frame, Environment.PlcObject value) {
+            variable().setValue(value);
+        }
+
+    }
+
+    /**
+     * A variable accessed at the top level, which is looked up in the current
+     * scope each time, as blocks at the top level have their own scopes.
+     */
+    private final class ScopeVariableNode extends Reference {
+
+        private final int symbol;
+
+        private ScopeVariableNode(int symbol) {
+            this.symbol = symbol;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            return scope.lookupVariable(symbol).getValue();
+        }
+
+        @Override
+        void assign(Environment.PlcObject[] frame, Environment.PlcObject value) {
+            Environment.Variable variable = scope.lookupVariable(symbol);
+            if (!variable.getMutable()) {
+                throw new RuntimeException("Assignment to an immutable variable.");
+            }
+            variable.setValue(value);
+        }
+
+        @Override
+        void store(Environment.PlcObject[] frame, Environment.PlcObject value) {
+            scope.lookupVariable(symbol).setValue(value);
+        }
+
+    }
+
+    private static final class ElementNode extends Node {
+
+        private final Reference list;
+        private final Node index;
+
+        private ElementNode(Reference list, Node index) {
+            this.list = list;
+            this.index = index;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            List<?> values = requireType(List.class, list.execute(frame).getValue());
+            return Environment.create(values.get(Integers.index(index.execute(frame))));
+        }
+
+    }
+
+    /**
+     * A call, which looks up its function the first time it's run in a
+     * function, or each time at the top level. Functions defined by this
+     * engine are called with a frame instead of a list of arguments.
+     */
+    private final class CallNode extends Node {
+
+        // The scope of the function the call is in, or null at the top level.
+        private final Scope functionScope;
+        private final int symbol;
+        private final Node[] arguments;
+        private Environment.Function function;
+        private Function target;
+
+        private CallNode(Scope functionScope, int symbol, Node[] arguments) {
+            this.functionScope = functionScope;
+            this.symbol = symbol;
+            this.arguments = arguments;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            if (function == null || functionScope == null) {
+                function = (functionScope != null ? functionScope : scope).lookupFunction(symbol, arguments.length);
+                target = functions.get(function);
+            }
+            if (target != null) {
+                Environment.PlcObject[] callee = new Environment.PlcObject[target.frameSize()];
+                for (int i = 0; i < arguments.length; i++) {
+                    callee[i] = arguments[i].execute(frame);
+                }
+                return target.call(callee);
+            }
+            List<Environment.PlcObject> values = new ArrayList<>(arguments.length);
+            for (Node argument : arguments) {
+                values.add(argument.execute(frame));
+            }
+            return function.invoke(values);
+        }
+
+    }
+
+    private static final class ListNode extends Node {
+
+        private final Node[] values;
+
+        private ListNode(Node[] values) {
+            this.values = values;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            List<Object> list = new ArrayList<>(values.length);
+            for (Node value : values) {
+                list.add(value.execute(frame).getValue());
+            }
+            return Environment.create(list);
+        }
+
+    }
+
+    /**
+     * A list backed by a primitive array, which creates a new list each time
+     * it's evaluated as a {@link ListNode} does.
+     */
+    private static final class LiteralListNode extends Node {
+
+        private final Ast.Expression.PlcList list;
+
+        private LiteralListNode(Ast.Expression.PlcList list) {
+            this.list = list;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            List<Object> values = new ArrayList<>(list.size());
+            for (int i = 0; i < list.size(); i++) {
+                values.add(list.getLiteral(i));
+            }
+            return Environment.create(values);
+        }
+
+    }
+
+    private static BinaryNode binary(String operator, Node left, Node right) {
+        switch (operator) {
+            case "&&": return new AndNode(left, right);
+            case "||": return new OrNode(left, right);
+            case "<": return new LessNode(left, right);
+            case ">": return new GreaterNode(left, right);
+            case "==": return new EqualNode(left, right);
+            case "!=": return new NotEqualNode(left, right);
+            case "+": return new AddNode(left, right);
+            case "-": return new SubtractNode(left, right);
+            case "*": return new MultiplyNode(left, right);
+            case "/": return new DivideNode(left, right);
+            case "^": return new PowerNode(left, right);
+            default: throw new RuntimeException("Unsupported binary operator: " + operator);
+        }
+    }
+
+    /**
+     * A binary expression, with one class for each operator. Each class
+     * evaluates its operands itself, and also provides its operator to
+     * {@link DeepNode}.
+     */
+    private abstract static class BinaryNode extends Node {
+
+        final Node left;
+        final Node right;
+        // The number of binary expressions down to the deepest operand.
+        final int height;
+
+        private BinaryNode(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+        }
+
+        private static int height(Node node) {
+            return node instanceof BinaryNode ? ((BinaryNode) node).height : 0;
+        }
+
+        /**
+         * Checks the left operand before the right one is evaluated,
+         * returning the result if the operator short circuits (or
+         * {@code null} if the right operand is needed).
+         */
+        Environment.PlcObject shortCircuit(Environment.PlcObject left) {
+            return null;
+        }
+
+        abstract Environment.PlcObject apply(Environment.PlcObject left, Environment.PlcObject right);
+
+    }
+
+    private static final class AndNode extends BinaryNode {
+
+        private AndNode(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            Environment.PlcObject value = shortCircuit(left.execute(frame));
+            return value != null ? value : apply(Environment.TRUE, right.execute(frame));
+        }
+
+        @Override
+        Environment.PlcObject shortCircuit(Environment.PlcObject left) {
+            return requireType(Boolean.class, left.getValue()) ? null : Environment.FALSE;
+        }
+
+        @Override
+        Environment.PlcObject apply(Environment.PlcObject left, Environment.PlcObject right) {
+            return Environment.create(requireType(Boolean.class, right.getValue()));
+        }
+
+    }
+
+    private static final class OrNode extends BinaryNode {
+
+        private OrNode(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            Environment.PlcObject value = shortCircuit(left.execute(frame));
+            return value != null ? value : apply(Environment.FALSE, right.execute(frame));
+        }
+
+        @Override
+        Environment.PlcObject shortCircuit(Environment.PlcObject left) {
+            return requireType(Boolean.class, left.getValue()) ? Environment.TRUE : null;
+        }
+
+        @Override
+        Environment.PlcObject apply(Environment.PlcObject left, Environment.PlcObject right) {
+            return Environment.create(requireType(Boolean.class, right.getValue()));
+        }
+
+    }
+
+    private static final class LessNode extends BinaryNode {
+
+        private LessNode(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            return apply(left.execute(frame), right.execute(frame));
+        }
+
+        @Override
+        Environment.PlcObject apply(Environment.PlcObject left, Environment.PlcObject right) {
+            if (left.isLong() && right.isLong()) {
+                return Environment.create(left.getLong() < right.getLong());
+            }
+            return Environment.create(compare("<", left, right) < 0);
+        }
+
+    }
+
+    private static final class GreaterNode extends BinaryNode {
+
+        private GreaterNode(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            return apply(left.execute(frame), right.execute(frame));
+        }
+
+        @Override
+        Environment.PlcObject apply(Environment.PlcObject left, Environment.PlcObject right) {
+            if (left.isLong() && right.isLong()) {
+                return Environment.create(left.getLong() > right.getLong());
+            }
+            return Environment.create(compare(">", left, right) > 0);
+        }
+
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(String operator, Environment.PlcObject left, Environment.PlcObject right) {
+        Object leftValue = left.getValue();
+        Object rightValue = right.getValue();
+        if (leftValue instanceof BigInteger && rightValue instanceof BigInteger) {
+            return ((BigInteger) leftValue).compareTo((BigInteger) rightValue);
+        } else if (leftValue.getClass() != rightValue.getClass()) {
+            throw new RuntimeException("Operands must be of the same type for '" + operator + "' comparison.");
+        }
+        return requireType(Comparable.class, leftValue).compareTo(requireType(Comparable.class, rightValue));
+    }
+
+    private static final class EqualNode extends BinaryNode {
+
+        private EqualNode(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            return apply(left.execute(frame), right.execute(frame));
+        }
+
+        @Override
+        Environment.PlcObject apply(Environment.PlcObject left, Environment.PlcObject right) {
+            if (left.isLong() && right.isLong()) {
+                return Environment.create(left.getLong() == right.getLong());
+            }
+            return Environment.create(Objects.equals(left.getValue(), right.getValue()));
+        }
+
+    }
+
+    private static final class NotEqualNode extends BinaryNode {
+
+        private NotEqualNode(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            return apply(left.execute(frame), right.execute(frame));
+        }
+
+        @Override
+        Environment.PlcObject apply(Environment.PlcObject left, Environment.PlcObject right) {
+            if (left.isLong() && right.isLong()) {
+                return Environment.create(left.getLong() != right.getLong());
+            }
+            return Environment.create(!Objects.equals(left.getValue(), right.getValue()));
+        }
+
+    }
+
+    private static final class AddNode extends BinaryNode {
+
+        private AddNode(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            return apply(left.execute(frame), right.execute(frame));
+        }
+
+        @Override
+        Environment.PlcObject apply(Environment.PlcObject left, Environment.PlcObject right) {
+            if (left.isLong() && right.isLong()) {
+                Environment.PlcObject result = Integers.add(left.getLong(), right.getLong());
+                if (result != null) {
+                    return result;
+                }
+            }
+            Object leftValue = left.getValue();
+            Object rightValue = right.getValue();
+            if (leftValue instanceof BigInteger && rightValue instanceof BigInteger) {
+                return Environment.create(((BigInteger) leftValue).add((BigInteger) rightValue));
+            } else if (leftValue instanceof String || rightValue instanceof String) {
+                return Environment.create(leftValue.toString() + rightValue.toString());
+            } else {
+                throw new RuntimeException("Incompatible types for addition.");
+            }
+        }
+
+    }
+
+    private static final class SubtractNode extends BinaryNode {
+
+        private SubtractNode(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            Environment.PlcObject value = left.execute(frame);
+            shortCircuit(value);
+            return apply(value, right.execute(frame));
+        }
+
+        @Override
+        Environment.PlcObject shortCircuit(Environment.PlcObject left) {
+            if (!left.isLong()) {
+                requireType(BigInteger.class, left.getValue());
+            }
+            return null;
+        }
+
+        @Override
+        Environment.PlcObject apply(Environment.PlcObject left, Environment.PlcObject right) {
+            if (left.isLong() && right.isLong()) {
+                Environment.PlcObject result = Integers.subtract(left.getLong(), right.getLong());
+                if (result != null) {
+                    return result;
+                }
+            }
+            BigInteger leftValue = requireType(BigInteger.class, left.getValue());
+            BigInteger rightValue = requireType(BigInteger.class, right.getValue());
+            return Environment.create(leftValue.subtract(rightValue));
+        }
+
+    }
+
+    private static final class MultiplyNode extends BinaryNode {
+
+        private MultiplyNode(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            return apply(left.execute(frame), right.execute(frame));
+        }
+
+        @Override
+        Environment.PlcObject apply(Environment.PlcObject left, Environment.PlcObject right) {
+            if (left.isLong() && right.isLong()) {
+                Environment.PlcObject result = Integers.multiply(left.getLong(), right.getLong());
+                if (result != null) {
+                    return result;
+                }
+            }
+            Object leftValue = left.getValue();
+            Object rightValue = right.getValue();
+            if (leftValue instanceof BigDecimal || rightValue instanceof BigDecimal) {
+                return Environment.create(requireType(BigDecimal.class, leftValue).multiply(requireType(BigDecimal.class, rightValue)));
+            }
+            return Environment.create(requireType(BigInteger.class, leftValue).multiply(requireType(BigInteger.class, rightValue)));
+        }
+
+    }
+
+    private static final class DivideNode extends BinaryNode {
+
+        private DivideNode(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            return apply(left.execute(frame), right.execute(frame));
+        }
+
+        @Override
+        Environment.PlcObject apply(Environment.PlcObject left, Environment.PlcObject right) {
+            if (left.isLong() && right.isLong() && right.getLong() != 0) {
+                Environment.PlcObject result = Integers.divide(left.getLong(), right.getLong());
+                if (result != null) {
+                    return result;
+                }
+            }
+            Object leftValue = left.getValue();
+            Object rightValue = right.getValue();
+            if (rightValue.equals(BigInteger.ZERO)) {
+                throw new RuntimeException("Division by zero.");
+            }
+            if (leftValue instanceof BigInteger && rightValue instanceof BigInteger) {
+                return Environment.create(((BigInteger) leftValue).divide((BigInteger) rightValue));
+            } else if (leftValue instanceof BigDecimal && rightValue instanceof BigDecimal) {
+                return Environment.create(((BigDecimal) leftValue).divide((BigDecimal) rightValue, RoundingMode.HALF_EVEN));
+            } else {
+                throw new RuntimeException("Incompatible types for division.");
+            }
+        }
+
+    }
+
+    private static final class PowerNode extends BinaryNode {
+
+        private PowerNode(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            Environment.PlcObject value = left.execute(frame);
+            shortCircuit(value);
+            return apply(value, right.execute(frame));
+        }
+
+        @Override
+        Environment.PlcObject shortCircuit(Environment.PlcObject left) {
+            if (!left.isLong()) {
+                requireType(BigInteger.class, left.getValue());
+            }
+            return null;
+        }
+
+        @Override
+        Environment.PlcObject apply(Environment.PlcObject left, Environment.PlcObject right) {
+            BigInteger leftValue = requireType(BigInteger.class, left.getValue());
+            BigInteger rightValue = requireType(BigInteger.class, right.getValue());
+            return Environment.create(leftValue.pow(rightValue.intValueExact()));
+        }
+
+    }
+
+    /**
+     * Evaluates a binary expression too deep to recurse into (such as a long
+     * chain of additions) with an explicit stack of the binary expressions
+     * waiting for an operand, as {@link Interpreter} does for every binary
+     * expression.
+     */
+    private static final class DeepNode extends Node {
+
+        private final BinaryNode root;
+
+        private DeepNode(BinaryNode root) {
+            this.root = root;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            BinaryNode[] binaries = new BinaryNode[16];
+            // The value of the left operand of each binary, once it's known.
+            Environment.PlcObject[] lefts = new Environment.PlcObject[16];
+            int pending = 0;
+            Node node = root;
+            while (true) {
+                while (node instanceof BinaryNode) {
+                    if (pending == binaries.length) {
+                        binaries = Arrays.copyOf(binaries, 2 * pending);
+                        lefts = Arrays.copyOf(lefts, 2 * pending);
+                    }
+                    binaries[pending++] = (BinaryNode) node;
+                    node = ((BinaryNode) node).left;
+                }
+                Environment.PlcObject value = node.execute(frame);
+                while (pending > 0) {
+                    int top = pending - 1;
+                    if (lefts[top] == null) {
+                        Environment.PlcObject result = binaries[top].shortCircuit(value);
+                        if (result == null) {
+                            lefts[top] = value;
+                            break;
+                        }
+                        value = result;
+                    } else {
+                        value = binaries[top].apply(lefts[top], value);
+                        lefts[top] = null;
+                    }
+                    pending--;
+                }
+                if (pending == 0) {
+                    return value;
+                }
+                node = binaries[pending - 1].right;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,166 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Lexes large inputs in parallel, producing exactly the same tokens (and the
+ * same {@link ParseException}s) as {@link Lexer}.
+ *
+ * The input is split into chunks at whitespace outside of string and
+ * character literals. Literals can't contain a line break, so a short scan of
+ * the quotes on the current line is enough to find such whitespace. Every
+ * chunk is lexed by a {@link DfaLexer} on the pool and the token lists are
+ * joined in order. Chunks are lexed in place, so token indices are already
+ * indices in the whole input.
+ *
+ * A chunk boundary which ends up inside a literal anyway (which only happens
+ * for invalid input, such as a string with an escaped line break) always
+ * leaves the chunk before it in the middle of a token, which {@link DfaLexer}
+ * reports as an error at the end of the chunk. The first chunk with an error
+ * is therefore lexed again together with the rest of the input, which either
+ * reports the same error {@link Lexer} would or finishes the tokens.
+ */
+public final class ParallelLexer {
+
+    /**
+     * Chunks smaller than this aren't worth the overhead of a task.
+     */
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+
+    private final CharSequence input;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public ParallelLexer(CharSequence input) {
+        this(input, ForkJoinPool.commonPool());
+    }
+
+    public ParallelLexer(CharSequence input, ForkJoinPool pool) {
+        // A few chunks per thread keeps the threads busy when chunks differ in cost.
+        this(input, pool, Math.max(MIN_CHUNK_SIZE, input.length() / (4 * pool.getParallelism()) + 1));
+    }
+
+    ParallelLexer(CharSequence input, ForkJoinPool pool, int chunkSize) {
+        this.input = input;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Lexes the entire input, equivalent to {@link Lexer#lex()}.
+     */
+    public List<Token> lex() {
+        int[] boundaries = boundaries();
+        List<ForkJoinTask<List<Token>>> tasks = new ArrayList<>(boundaries.length - 1);
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            int start = boundaries[i];
+            int end = boundaries[i + 1];
+            tasks.add(pool.submit(() -> lexChunk(start, end)));
+        }
+        List<List<Token>> chunks = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            List<Token> chunk = tasks.get(i).join();
+            if (chunk == null) {
+                for (int j = i + 1; j < tasks.size(); j++) {
+                    tasks.get(j).cancel(false);
+                }
+                // Throws the first error in the input, if there is one.
+                chunks.add(lexChunk(boundaries[i], input.length()));
+                break;
+            }
+            chunks.add(chunk);
+        }
+        List<Token> tokens = new ArrayList<>(chunks.stream().mapToInt(List::size).sum());
+        for (List<Token> chunk : chunks) {
+            tokens.addAll(chunk);
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the indices where chunks start, followed by the length of the
+     * input. Every index apart from the first and last is whitespace outside
+     * of any literal (for valid input).
+     */
+    int[] boundaries() {
+        int[] boundaries = new int[16];
+        int count = 1;
+        int start = 0;
+        while (input.length() - start > chunkSize) {
+            int boundary = nextBoundary(start, start + chunkSize);
+            if (boundary < 0) {
+                break;
+            }
+            if (count + 1 == boundaries.length) {
+                boundaries = Arrays.copyOf(boundaries, 2 * boundaries.length);
+            }
+            boundaries[count++] = boundary;
+            start = boundary;
+        }
+        boundaries[count++] = input.length();
+        return Arrays.copyOf(boundaries, count);
+    }
+
+    /**
+     * Returns the index of the first whitespace at or after {@code target}
+     * which is outside of a literal, or -1 if there is none. {@code from} must
+     * be outside of a literal.
+     */
+    private int nextBoundary(int from, int target) {
+        int scan = target;
+        while (scan > from && !isLineBreak(input.charAt(scan - 1))) {
+            scan--;
+        }
+        boolean string = false;
+        boolean character = false;
+        for (int i = scan; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (string || character) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == (string ? '"' : '\'') || isLineBreak(c)) {
+                    string = character = false;
+                }
+            } else if (c == '"') {
+                string = true;
+            } else if (c == '\'') {
+                character = true;
+            } else if (i >= target && (c == ' ' || c == '\t' || isLineBreak(c))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isLineBreak(char c) {
+        return c == '\n' || c == '\r';
+    }
+
+    /**
+     * Lexes the input between {@code start} and {@code end}, returning null if
+     * the chunk has an error. Lexing to the end of the chunk without an error
+     * is what validates the boundary, as it means {@code end} wasn't in the
+     * middle of a token. The error itself is only thrown when the chunk runs
+     * to the end of the input.
+     */
+    private List<Token> lexChunk(int start, int end) {
+        DfaLexer lexer = new DfaLexer(input, start, end);
+        List<Token> tokens = new ArrayList<>((end - start) / 4);
+        try {
+            while (lexer.next() != DfaLexer.EOF) {
+                tokens.add(lexer.token());
+            }
+        } catch (ParseException e) {
+            if (end == input.length()) {
+                throw e;
+            }
+            return null;
+        }
+        return tokens;
+    }
+
+}
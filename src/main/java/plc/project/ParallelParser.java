@@ -0,0 +1,84 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parses the bodies of functions in parallel, producing the same AST as
+ * {@link Parser#parseSource()}.
+ *
+ * The source is scanned on the calling thread with
+ * {@link Parser#parseSource(boolean)} in lazy mode, which parses globals and
+ * function signatures but only skips to the matching {@code END} of each body.
+ * As soon as a function is scanned, its body is parsed by its own
+ * {@link Parser} on the pool, so parsing overlaps with the rest of the scan.
+ * Functions are kept in source order by the scan itself.
+ *
+ * Unlike {@link Parser}, every error is found instead of only the first: the
+ * first error in the source is thrown, with the errors after it (in order)
+ * attached as {@link Throwable#getSuppressed() suppressed} exceptions. The
+ * thrown error is always the one {@link Parser#parseSource()} would throw.
+ */
+public final class ParallelParser {
+
+    private final TokenBuffer tokens;
+    private final ForkJoinPool pool;
+
+    public ParallelParser(TokenBuffer tokens) {
+        this(tokens, ForkJoinPool.commonPool());
+    }
+
+    public ParallelParser(TokenBuffer tokens, ForkJoinPool pool) {
+        this.tokens = tokens;
+        this.pool = pool;
+    }
+
+    /**
+     * Parses the {@code source} rule, equivalent to {@link Parser#parseSource()}.
+     */
+    public Ast.Source parseSource() throws ParseException {
+        List<ForkJoinTask<ParseException>> tasks = new ArrayList<>();
+        Ast.Source ast = null;
+        ParseException scanError = null;
+        try {
+            ast = new Parser(tokens).parseSource(true, function -> tasks.add(pool.submit(() -> parseBody(function))));
+        } catch (ParseException e) {
+            // Every body scanned so far comes before this error in the source.
+            scanError = e;
+        }
+        ParseException error = null;
+        for (ForkJoinTask<ParseException> task : tasks) {
+            error = addError(error, task.join());
+        }
+        error = addError(error, scanError);
+        if (error != null) {
+            throw error;
+        }
+        return ast;
+    }
+
+    /**
+     * Parses the statements of the function, returning the error instead of
+     * throwing it so it's reported in order with the others.
+     */
+    private static ParseException parseBody(Ast.Function function) {
+        try {
+            function.getStatements();
+            return null;
+        } catch (ParseException e) {
+            return e;
+        }
+    }
+
+    private static ParseException addError(ParseException first, ParseException error) {
+        if (first == null) {
+            return error;
+        } else if (error != null) {
+            first.addSuppressed(error);
+        }
+        return first;
+    }
+
+}
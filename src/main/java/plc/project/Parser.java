@@ -5,6 +5,7 @@ import plc.project.Ast;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.function.Consumer;
 
 
 /**
@@ -23,9 +24,38 @@ import java.util.*;
 public final class Parser {
 
     private final TokenStream tokens;
+    private final ConstantPool constants;
 
     public Parser(List<Token> tokens) {
-        this.tokens = new TokenStream(tokens);
+        this(TokenSource.of(tokens));
+    }
+
+    /**
+     * Creates a parser which pulls tokens from the source as they are needed,
+     * such as {@code new Parser(new DfaLexer(input).tokens())}. Only a small
+     * window of tokens is held at once, so the input is never fully lexed into
+     * a list.
+     */
+    public Parser(TokenSource tokens) {
+        this(new SourceTokenStream(tokens), new ConstantPool());
+    }
+
+    /**
+     * Creates a parser which reads directly from the arrays of a
+     * {@link TokenBuffer}, so literals are only created for the tokens that
+     * end up in the AST.
+     */
+    public Parser(TokenBuffer tokens) {
+        this(new BufferTokenStream(tokens, 0, Integer.MAX_VALUE), new ConstantPool());
+    }
+
+    /**
+     * Creates a parser which decodes literals the lexer didn't decode (see
+     * {@link Token#getConstant()}) into the given pool.
+     */
+    private Parser(TokenStream tokens, ConstantPool constants) {
+        this.tokens = tokens;
+        this.constants = constants;
     }
 
 
@@ -52,23 +82,49 @@ public final class Parser {
 //    }
 
     public Ast.Source parseSource() throws ParseException {
+        return parseSource(false);
+    }
+
+    /**
+     * Parses the {@code source} rule. If {@code lazy} is true, the body of
+     * each function is only scanned for its closing {@code END}, and its
+     * statements are parsed the first time {@link Ast.Function#getStatements()}
+     * is called (such as when the function is analyzed or first called).
+     *
+     * A syntax error within a body is then thrown by that call instead of by
+     * this method; only a body without a matching {@code END} is reported
+     * here. The AST of a valid source is the same either way.
+     */
+    public Ast.Source parseSource(boolean lazy) throws ParseException {
+        return parseSource(lazy, function -> {});
+    }
+
+    /**
+     * Parses the {@code source} rule as in {@link #parseSource(boolean)},
+     * passing each function to {@code parsed} as soon as it's parsed (or
+     * scanned, if {@code lazy}). This is how {@link ParallelParser} starts
+     * parsing bodies before the rest of the source is scanned.
+     */
+    Ast.Source parseSource(boolean lazy, Consumer<Ast.Function> parsed) throws ParseException {
         List<Ast.Global> globals = new ArrayList<>();
         List<Ast.Function> functions = new ArrayList<>();
 
         // Initially, allow for global variable declarations only
-        while (peek("LIST") || peek("VAL") || peek("VAR")) {
+        while (peek(TokenKind.LIST) || peek(TokenKind.VAL) || peek(TokenKind.VAR)) {
             globals.add(parseGlobal());
         }
 
         // After globals, allow for function declarations
-        while (peek("FUN")) {
-            functions.add(parseFunction());
+        while (peek(TokenKind.FUN)) {
+            Ast.Function function = parseFunction(lazy);
+            functions.add(function);
+            parsed.accept(function);
         }
 
         // After function declarations, globals should not be allowed.
         // If a global declaration token is found, throw ParseException
-        if (peek("LIST") || peek("VAL") || peek("VAR")) {
-            throw new ParseException("Global declaration after function declaration is not allowed", tokens.get(0).getIndex());
+        if (peek(TokenKind.LIST) || peek(TokenKind.VAL) || peek(TokenKind.VAR)) {
+            throw new ParseException("Global declaration after function declaration is not allowed", tokens.index(0));
         }
 
         return new Ast.Source(globals, functions);
@@ -82,25 +138,20 @@ public final class Parser {
 
     public Ast.Global parseGlobal() throws ParseException {
 
-        Token nameToken = tokens.get(0);
-
-        String name = nameToken.getLiteral();
-
-
         Ast.Global result;
-        if (peek("LIST")) {
+        if (peek(TokenKind.LIST)) {
             result = parseList();
-        } else if (peek("VAR")) {
+        } else if (peek(TokenKind.VAR)) {
             result = parseMutable();
-        } else if (peek("VAL")) {
+        } else if (peek(TokenKind.VAL)) {
             result = parseImmutable();
         } else {
-            throw new ParseException("Expected global declaration", tokens.get(0).getIndex());
+            throw new ParseException("Expected global declaration", tokens.index(0));
         }
 
         // After parsing the global, check for a semicolon - Sashank
-        if (!match(";")) {
-            throw new ParseException("Expected ';' after global declaration", tokens.get(0).getIndex());
+        if (!match(TokenKind.SEMICOLON)) {
+            throw new ParseException("Expected ';' after global declaration", tokens.index(0));
         }
 
         return result;
@@ -114,16 +165,16 @@ public final class Parser {
      */
 
     public Ast.Global parseList() throws ParseException {
-        if (!match("LIST")) {
+        if (!match(TokenKind.LIST)) {
             throw new ParseException("Expected 'LIST'", getNextTokenExpectedIndex());
         }
-        Token nameToken = tokens.get(0); // Get the current token which should be the name identifier
+        int nameIndex = tokens.index(0); // Get the index of the current token which should be the name identifier
         if (!match(Token.Type.IDENTIFIER)) {
-            throw new ParseException("Expected identifier", nameToken.getIndex());
+            throw new ParseException("Expected identifier", nameIndex);
         }
-        String name = nameToken.getLiteral(); // Save the identifier's literal value as name
+        String name = tokens.literal(-1); // Save the identifier's literal value as name
 
-        if (!match(":")) {
+        if (!match(TokenKind.COLON)) {
             throw new ParseException("Expected ':'", getNextTokenExpectedIndex());
         }
 
@@ -131,25 +182,27 @@ public final class Parser {
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected type identifier after ':'", getNextTokenExpectedIndex());
         }
-        String typeName = tokens.get(-1).getLiteral(); // Capture the type identifier
+        String typeName = tokens.literal(-1); // Capture the type identifier
 
-        if (!match("=")) {
+        if (!match(TokenKind.ASSIGN)) {
             throw new ParseException("Expected '='", getNextTokenExpectedIndex());
         }
-        if (!match("[")) {
+        if (!match(TokenKind.OPEN_BRACKET)) {
             throw new ParseException("Expected '['", getNextTokenExpectedIndex());
         }
         List<Ast.Expression> values = new ArrayList<>();
-        if (!peek("]")) { // Check if the list is not empty
-            do {
-                values.add(parseExpression()); // Parse the first expression
-            } while (match(",")); // Continue parsing expressions if there's a comma
-        }
-        if (!match("]")) {
-            throw new ParseException("Expected ']'", getNextTokenExpectedIndex());
+        Ast.Expression listExpression = parseNumberList(values);
+        if (listExpression == null) {
+            if (!peek(TokenKind.CLOSE_BRACKET)) { // Check if the list is not empty
+                do {
+                    values.add(parseExpression()); // Parse the first expression
+                } while (match(TokenKind.COMMA)); // Continue parsing expressions if there's a comma
+            }
+            if (!match(TokenKind.CLOSE_BRACKET)) {
+                throw new ParseException("Expected ']'", getNextTokenExpectedIndex());
+            }
+            listExpression = new Ast.Expression.PlcList(values);
         }
-
-        Ast.Expression listExpression = new Ast.Expression.PlcList(values);
         return new Ast.Global(name, typeName, true, Optional.of(listExpression)); // Lists are always mutable, include typeName
     }
 
@@ -162,17 +215,16 @@ public final class Parser {
      */
 
     public Ast.Global parseMutable() throws ParseException {
-        if (!match("VAR")) {
+        if (!match(TokenKind.VAR)) {
             throw new ParseException("Expected 'VAR'", getNextTokenExpectedIndex());
         }
 
-        Token nameToken = tokens.get(0);
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected identifier", getNextTokenExpectedIndex());
         }
-        String name = nameToken.getLiteral();
+        String name = tokens.literal(-1);
 
-        if (!match(":")) {
+        if (!match(TokenKind.COLON)) {
             throw new ParseException("Expected ':' after identifier", getNextTokenExpectedIndex());
         }
 
@@ -180,10 +232,10 @@ public final class Parser {
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected type identifier after ':'", getNextTokenExpectedIndex());
         }
-        String typeName = tokens.get(-1).getLiteral(); // Capture the type identifier
+        String typeName = tokens.literal(-1); // Capture the type identifier
 
         Optional<Ast.Expression> value = Optional.empty(); // Default to no initializer
-        if (match("=")) {
+        if (match(TokenKind.ASSIGN)) {
             value = Optional.of(parseExpression()); // Parse the initializer expression
         }
 
@@ -199,16 +251,15 @@ public final class Parser {
      * next token declares an immutable global variable, aka {@code VAL}.
      */
     public Ast.Global parseImmutable() throws ParseException {
-        if (!match("VAL")) {
+        if (!match(TokenKind.VAL)) {
             throw new ParseException("Expected 'VAL'", getNextTokenExpectedIndex());
         }
-        Token nameToken = tokens.get(0);
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected identifier", getNextTokenExpectedIndex());
         }
-        String name = nameToken.getLiteral();
+        String name = tokens.literal(-1);
 
-        if (!match(":")) {
+        if (!match(TokenKind.COLON)) {
             throw new ParseException("Expected ':' after identifier", getNextTokenExpectedIndex());
         }
 
@@ -216,9 +267,9 @@ public final class Parser {
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected type identifier after ':'", getNextTokenExpectedIndex());
         }
-        String typeName = tokens.get(-1).getLiteral(); // Capture the type identifier
+        String typeName = tokens.literal(-1); // Capture the type identifier
 
-        if (!match("=")) {
+        if (!match(TokenKind.ASSIGN)) {
             throw new ParseException("Expected '='", getNextTokenExpectedIndex());
         }
 
@@ -231,24 +282,88 @@ public final class Parser {
 
 
 
+    /**
+     * Parses a list of only integer or only decimal literals, up to and
+     * including the closing {@code ]}, into a list backed by a primitive
+     * array. Lookup tables can have hundreds of thousands of values, which
+     * would otherwise each need a {@link Ast.Expression.Literal} and a
+     * {@link BigInteger} or {@link BigDecimal}.
+     *
+     * Returns null if the list is anything else, after adding the numbers
+     * parsed so far to {@code values} as literals; parsing continues from the
+     * first value which didn't fit, exactly as if it had never been tried.
+     */
+    private Ast.Expression.PlcList parseNumberList(List<Ast.Expression> values) throws ParseException {
+        Token.Type type = peek(Token.Type.INTEGER) ? Token.Type.INTEGER : Token.Type.DECIMAL;
+        long[] integers = new long[type == Token.Type.INTEGER ? 16 : 0];
+        double[] decimals = new double[type == Token.Type.DECIMAL ? 16 : 0];
+        boolean ints = true;
+        int size = 0;
+        while (peek(type) && tokens.has(1) && (tokens.kind(1) == TokenKind.COMMA || tokens.kind(1) == TokenKind.CLOSE_BRACKET)) {
+            String literal = tokens.literal(0);
+            if (type == Token.Type.INTEGER) {
+                // Up to 18 digits always fit in a long, anything longer stays a BigInteger.
+                if (literal.length() > 18) {
+                    break;
+                }
+                if (size == integers.length) {
+                    integers = Arrays.copyOf(integers, 2 * size);
+                }
+                long value = Long.parseLong(literal);
+                ints &= value == (int) value;
+                integers[size++] = value;
+            } else {
+                double value = Double.parseDouble(literal);
+                // Otherwise the BigDecimal written in the source (such as 1.50) can't be recovered.
+                if (!Double.toString(value).equals(literal)) {
+                    break;
+                }
+                if (size == decimals.length) {
+                    decimals = Arrays.copyOf(decimals, 2 * size);
+                }
+                decimals[size++] = value;
+            }
+            tokens.advance();
+            if (match(TokenKind.CLOSE_BRACKET)) {
+                if (type == Token.Type.DECIMAL) {
+                    return new Ast.Expression.PlcList(Arrays.copyOf(decimals, size));
+                } else if (!ints) {
+                    return new Ast.Expression.PlcList(Arrays.copyOf(integers, size));
+                }
+                int[] array = new int[size];
+                for (int i = 0; i < size; i++) {
+                    array[i] = (int) integers[i];
+                }
+                return new Ast.Expression.PlcList(array);
+            }
+            tokens.advance();
+        }
+        for (int i = 0; i < size; i++) {
+            values.add(Ast.Expression.Literal.of(constants.get(type == Token.Type.INTEGER ? BigInteger.valueOf(integers[i]) : new BigDecimal(Double.toString(decimals[i])))));
+        }
+        return null;
+    }
+
     /**
      * Parses the {@code function} rule. This method should only be called if the
      * next tokens start a method, aka {@code FUN}.
      */
     public Ast.Function parseFunction() throws ParseException {
-        if (!match("FUN")) {
+        return parseFunction(false);
+    }
+
+    private Ast.Function parseFunction(boolean lazy) throws ParseException {
+        if (!match(TokenKind.FUN)) {
             throw new ParseException("Expected 'FUN'", getNextTokenExpectedIndex());
         }
-        Token nameToken = tokens.get(0);
-
-
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected function name (identifier)", getNextTokenExpectedIndex());
         }
+        String name = tokens.literal(-1);
 
         //System.out.println("name token: " + name);
 
-        if (!match("(")) {
+        if (!match(TokenKind.OPEN_PAREN)) {
             throw new ParseException("Expected '(' after function name", getNextTokenExpectedIndex());
         }
 
@@ -256,60 +371,144 @@ public final class Parser {
         List<String> parameterTypeNames = new ArrayList<>();
 
 
-        while (!peek(")")) {
+        while (!peek(TokenKind.CLOSE_PAREN)) {
             //System.out.println("nothing will run here");
 
             if (!match(Token.Type.IDENTIFIER)) {
                 throw new ParseException("Expected parameter name (identifier)", getNextTokenExpectedIndex());
             }
-            String paramName = tokens.get(-1).getLiteral();
+            String paramName = tokens.literal(-1);
 
-            if (!match(":")) {
+            if (!match(TokenKind.COLON)) {
                 throw new ParseException("Expected ':' after parameter name", getNextTokenExpectedIndex());
             }
             if (!match(Token.Type.IDENTIFIER)) {
                 throw new ParseException("Expected parameter type after ':'", getNextTokenExpectedIndex());
             }
-            String paramType = tokens.get(-1).getLiteral();
+            String paramType = tokens.literal(-1);
 
             parameters.add(paramName);
             parameterTypeNames.add(paramType);
 
-            if (!peek(")")) {
-                if (!match(",")) {
+            if (!peek(TokenKind.CLOSE_PAREN)) {
+                if (!match(TokenKind.COMMA)) {
                     throw new ParseException("Expected ',' between parameters", getNextTokenExpectedIndex());
                 }
             }
         }
 
-        if (!match(")")) {
+        if (!match(TokenKind.CLOSE_PAREN)) {
             throw new ParseException("Expected ')' after parameters", getNextTokenExpectedIndex());
         }
 
         Optional<String> returnType = Optional.empty(); // Default return type
-        if (match(":")) {
+        if (match(TokenKind.COLON)) {
             if (!match(Token.Type.IDENTIFIER)) {
                 throw new ParseException("Expected return type identifier after ':'", getNextTokenExpectedIndex());
             }
-            returnType = Optional.of(tokens.get(-1).getLiteral());
+            returnType = Optional.of(tokens.literal(-1));
         }
 
-        if (!match("DO")) {
+        if (!match(TokenKind.DO)) {
             throw new ParseException("Expected 'DO' after function declaration", getNextTokenExpectedIndex());
         }
 
+        if (lazy) {
+            TokenStream body = skipFunctionBody();
+            return new Ast.Function(name, parameters, parameterTypeNames, returnType, () -> new Parser(body, constants).parseFunctionBody());
+        }
+
         List<Ast.Statement> statements = new ArrayList<>();
-        while (!peek("END")) {
+        while (!peek(TokenKind.END)) {
             statements.add(parseStatement());
             // Optional semicolon handling here if your grammar requires it.
         }
 
-        if (!match("END")) {
+        if (!match(TokenKind.END)) {
             throw new ParseException("Expected 'END' to close function definition", getNextTokenExpectedIndex());
         }
 
         // Use the constructor that accepts parameter types and an optional return type.
-        return new Ast.Function(nameToken.getLiteral(), parameters, parameterTypeNames, returnType, statements);
+        return new Ast.Function(name, parameters, parameterTypeNames, returnType, statements);
+    }
+
+    /**
+     * Skips the statements of a function body up to and including its
+     * closing {@code END}, returning a stream over the skipped tokens.
+     *
+     * Blocks are matched by counting {@code IF}, {@code WHILE} and
+     * {@code SWITCH} against {@code END}, but only where a statement can
+     * start, since elsewhere (such as {@code x = END;}) they're identifiers.
+     */
+    private TokenStream skipFunctionBody() throws ParseException {
+        tokens.mark();
+        int depth = 0;
+        boolean start = true;
+        boolean declaration = false;
+        while (tokens.has(0)) {
+            int kind = tokens.kind(0);
+            tokens.advance();
+            if (start) {
+                switch (kind) {
+                    case TokenKind.IF:
+                    case TokenKind.WHILE:
+                    case TokenKind.SWITCH:
+                        depth++;
+                        break;
+                    case TokenKind.END:
+                        if (depth-- == 0) {
+                            return tokens.slice();
+                        }
+                        break;
+                    case TokenKind.LET:
+                        declaration = true;
+                        break;
+                }
+            }
+            switch (kind) {
+                case TokenKind.SEMICOLON:
+                    declaration = false;
+                    start = true;
+                    break;
+                case TokenKind.DO:
+                case TokenKind.ELSE:
+                case TokenKind.END:
+                case TokenKind.DEFAULT:
+                    start = true;
+                    break;
+                case TokenKind.COLON:
+                    // Either the end of a case value, or a declaration's type.
+                    start = !declaration;
+                    break;
+                default:
+                    start = false;
+            }
+        }
+        // Without a matching END, the error is the one parsing the body
+        // eagerly would find, which may well be before the end.
+        TokenStream body = tokens.slice();
+        if (body.has(0)) {
+            new Parser(body, constants).parseFunctionBody();
+        } else {
+            parseStatement();
+        }
+        throw new ParseException("Expected 'END' to close function definition", getNextTokenExpectedIndex());
+    }
+
+    /**
+     * Parses the statements of a function body skipped by
+     * {@link #skipFunctionBody()}, which must end at the same {@code END}.
+     */
+    private List<Ast.Statement> parseFunctionBody() throws ParseException {
+        List<Ast.Statement> statements = new ArrayList<>();
+        while (!peek(TokenKind.END)) {
+            statements.add(parseStatement());
+        }
+        tokens.advance();
+        if (tokens.has(0)) {
+            throw new ParseException("Expected end of function body", tokens.index(0));
+        }
+        return statements;
     }
 
 
@@ -322,14 +521,16 @@ public final class Parser {
 
     public List<Ast.Statement> parseBlock() throws ParseException {
         List<Ast.Statement> statements = new ArrayList<>();
-        while (!peek("END")) {          //Don't advance "END", done in parseFunction
-            if(peek("CASE"))
-                return statements;
-            else if(peek("DEFAULT"))
-                return statements;
-            else if(peek("ELSE"))
-                return statements;
-            statements.add(parseStatement());
+        while (true) {
+            switch (peekKind()) {
+                case TokenKind.END:     //Don't advance "END", done in parseFunction
+                case TokenKind.CASE:
+                case TokenKind.DEFAULT:
+                case TokenKind.ELSE:
+                    return statements;
+                default:
+                    statements.add(parseStatement());
+            }
 
             // Optionally, ensure each statement is followed by a semicolon if your grammar requires it
             // if (!match(";")) {
@@ -337,8 +538,6 @@ public final class Parser {
             // }
 
         }
-
-        return statements;
     }
 
 
@@ -349,18 +548,20 @@ public final class Parser {
      */
     public Ast.Statement parseStatement() throws ParseException {
         //System.out.println("Debug here: " + peekTokenLiteral());
-        if (peek("LET")) {
-            return parseDeclarationStatement();
-        } else if (peek("IF")) {
-            return parseIfStatement();
-        } else if (peek("WHILE")) {
-            //System.out.println("in while case for parse statement: "+ peekTokenLiteral());
-            return parseWhileStatement();
-        } else if (peek("RETURN")) {
-            return parseReturnStatement();
-        } else if (peek("SWITCH")) {
-            return parseSwitchStatement();
-        } else if (peek(Token.Type.IDENTIFIER)) {
+        switch (peekKind()) {
+            case TokenKind.LET:
+                return parseDeclarationStatement();
+            case TokenKind.IF:
+                return parseIfStatement();
+            case TokenKind.WHILE:
+                //System.out.println("in while case for parse statement: "+ peekTokenLiteral());
+                return parseWhileStatement();
+            case TokenKind.RETURN:
+                return parseReturnStatement();
+            case TokenKind.SWITCH:
+                return parseSwitchStatement();
+        }
+        if (peek(Token.Type.IDENTIFIER)) {
             //System.out.println("stmt is an identifier");
 
             // Use a lookahead approach to distinguish between assignment and expression statement without needing AccessOptional.
@@ -373,11 +574,11 @@ public final class Parser {
     private Ast.Statement parseIdentifierInitiatedStatement() throws ParseException {
         Ast.Expression initialExpression = parseExpression(); // Parse the LHS which might be an Access or Function call.
 
-        if (peek("=")) {
+        if (peek(TokenKind.ASSIGN)) {
             // This confirms it's an assignment statement, so consume '=' and parse the RHS.
-            match("="); // Now we're sure it's an assignment, consume '='.
+            match(TokenKind.ASSIGN); // Now we're sure it's an assignment, consume '='.
             Ast.Expression value = parseExpression(); // Parse the RHS of the assignment.
-            if (!match(";")) {
+            if (!match(TokenKind.SEMICOLON)) {
                 throw new ParseException("Expected ';' at the end of the assignment statement.", getNextTokenExpectedIndex());
             }
             // Ensure the initial expression is a valid target for assignment (Access).
@@ -388,7 +589,7 @@ public final class Parser {
         } else {
             // If not an assignment, it was just a simple expression statement.
             // Confirm that it's properly terminated with a semicolon.
-            if (!match(";")) {
+            if (!match(TokenKind.SEMICOLON)) {
                 throw new ParseException("Expected ';' at the end of the expression statement.", getNextTokenExpectedIndex());
             }
             return new Ast.Statement.Expression(initialExpression);
@@ -400,14 +601,14 @@ public final class Parser {
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected identifier in assignment statement.", getNextTokenExpectedIndex());
         }
-        String name = tokens.get(-1).getLiteral();
-        if (!match("=")) {
+        String name = tokens.literal(-1);
+        if (!match(TokenKind.ASSIGN)) {
             throw new ParseException("Expected '=' in assignment statement.", getNextTokenExpectedIndex());
         }
 
         Ast.Expression value = parseExpression(); // Parse the right-hand side expression
 
-        if (!match(";")) {
+        if (!match(TokenKind.SEMICOLON)) {
             //System.out.println("IN assignement" + getNextTokenExpectedIndex());
 
             throw new ParseException("Expected ';' at the end of the assignment statement.",getNextTokenExpectedIndex());
@@ -419,7 +620,7 @@ public final class Parser {
 
     private Ast.Statement parseExpressionStatement() throws ParseException {
         Ast.Expression expression = parseExpression(); // Parse the expression
-        if (!match(";")) {
+        if (!match(TokenKind.SEMICOLON)) {
             //System.out.println("IN Exp: " + getNextTokenExpectedIndex());
 
             throw new ParseException("Expected ';' at the end of the expression statement.", getNextTokenExpectedIndex());
@@ -435,14 +636,12 @@ public final class Parser {
 
         if (tokens.has(0)) {
             // If there is a next token, we are not at the end, so use the current token's position.
-            Token currentToken = tokens.get(0);
             // Adjust the calculation to return the start index of the next token, which is what we actually want.
-            return currentToken.getIndex();
-        } else if (!tokens.tokens.isEmpty()) {
+            return tokens.index(0);
+        } else if (tokens.index > 0) {
             // If there are no tokens left to process (no next token), calculate based on the last processed token.
-            Token lastToken = tokens.tokens.get(tokens.index - 1);
-            // Return the position immediately after the last token, assuming 'getIndex()' returns the starting index.
-            return lastToken.getIndex() + lastToken.getLiteral().length();
+            // Return the position immediately after the last token, assuming 'index' returns the starting index.
+            return tokens.index(-1) + tokens.length(-1);
         } else {
             // Default to 0 if there are no tokens at all, which should be rare.
             return 0;
@@ -459,26 +658,26 @@ public final class Parser {
      * statement, aka {@code LET}.
      */
     public Ast.Statement parseDeclarationStatement() throws ParseException {
-        if (!match("LET")) {
+        if (!match(TokenKind.LET)) {
             throw new ParseException("Expected 'LET'", getNextTokenExpectedIndex());
         }
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected identifier after 'LET'", getNextTokenExpectedIndex());
         }
-        String name = tokens.get(-1).getLiteral();
+        String name = tokens.literal(-1);
 
         Optional<String> type = Optional.empty();
-        if (match(":")) {
+        if (match(TokenKind.COLON)) {
             if (!match(Token.Type.IDENTIFIER)) {
                 throw new ParseException("Expected type identifier after ':'", getNextTokenExpectedIndex());
             }
-            type = Optional.of(tokens.get(-1).getLiteral());
+            type = Optional.of(tokens.literal(-1));
         }
         Optional<Ast.Expression> initializer = Optional.empty(); // Default to no initializer
-        if (match("=")) {
+        if (match(TokenKind.ASSIGN)) {
             initializer = Optional.of(parseExpression()); // Parse the initializer expression if it exists
         }
-        if (!match(";")) {
+        if (!match(TokenKind.SEMICOLON)) {
             throw new ParseException("Expected ';' at the end of the declaration statement.", getNextTokenExpectedIndex());
         }
         return new Ast.Statement.Declaration(name, type, initializer);
@@ -493,41 +692,10 @@ public final class Parser {
      */
 
     public Ast.Statement.If parseIfStatement() throws ParseException {
-        if (!match("IF")) {
+        if (!peek(TokenKind.IF)) {
             throw new ParseException("Expected 'IF'", getNextTokenExpectedIndex());
         }
-
-        Ast.Expression condition = parseExpression(); // Parse the condition expression
-
-        if (!match("DO")) {
-            throw new ParseException("Expected 'DO' after 'IF' condition", getNextTokenExpectedIndex());
-        }
-
-        List<Ast.Statement> thenStatements = new ArrayList<>();
-        while (!peek("ELSE") && !peek("END")) {
-            thenStatements.add(parseStatement());
-            // Consume semicolon after statement, if present, but not before ELSE or END
-            if (peek(";") && !(peek("ELSE", 1) || peek("END", 1))) {
-                match(";");
-            }
-        }
-
-        List<Ast.Statement> elseStatements = new ArrayList<>();
-        if (match("ELSE")) {
-            while (!peek("END")) {
-                elseStatements.add(parseStatement());
-                // Consume semicolon after statement, if present, but not before END
-                if (peek(";") && !peek("END", 1)) {
-                    match(";");
-                }
-            }
-        }
-
-        if (!match("END")) {
-            throw new ParseException("Expected 'END' to close the 'IF' statement", getNextTokenExpectedIndex());
-        }
-
-        return new Ast.Statement.If(condition, thenStatements, elseStatements);
+        return (Ast.Statement.If) parseBlockStatement();
     }
 
 
@@ -539,40 +707,10 @@ public final class Parser {
      */
 
     public Ast.Statement.Switch parseSwitchStatement() throws ParseException {
-        if (!match("SWITCH")) {
+        if (!peek(TokenKind.SWITCH)) {
             throw new ParseException("Expected 'SWITCH'", getNextTokenExpectedIndex());
         }
-
-        Ast.Expression condition = parseExpression(); // Parse the switch expression
-
-        List<Ast.Statement.Case> cases = new ArrayList<>();
-        boolean foundDefault = false;
-
-        // Loop to process 'CASE' and 'DEFAULT' statements
-        while (peek("CASE") || (peek("DEFAULT") && !foundDefault)) {
-            //System.out.println("Entering parseCase");
-            Ast.Statement.Case caseStatement = parseCaseStatement();
-            if (caseStatement.getValue().isEmpty()) { // Check if it's a DEFAULT case
-                if (foundDefault) {
-                    throw new ParseException("Multiple 'DEFAULT' cases found", getNextTokenExpectedIndex());
-                }
-                foundDefault = true;
-            }
-            //System.out.println(caseStatement.getValue());
-            //System.out.println(caseStatement.getStatements());
-            //System.out.println(peek("DEFAULT"));
-            cases.add(caseStatement);
-        }
-
-        if (!foundDefault) {
-            throw new ParseException("Missing 'DEFAULT' case in switch statement", tokens.get(-1).getIndex());
-        }
-
-        if (!match("END")) {
-            throw new ParseException("Expected 'END' to close the 'SWITCH' statement", getNextTokenExpectedIndex());
-        }
-
-        return new Ast.Statement.Switch(condition, cases);
+        return (Ast.Statement.Switch) parseBlockStatement();
     }
 
 
@@ -586,14 +724,14 @@ public final class Parser {
         Optional<Ast.Expression> caseExpression = Optional.empty(); // Will remain empty for DEFAULT case
 
         // Check if it's a CASE statement
-        if (match("CASE")) {
+        if (match(TokenKind.CASE)) {
             caseExpression = Optional.of(parseExpression()); // Parse the CASE expression
-            if (!match(":")) {
+            if (!match(TokenKind.COLON)) {
                 throw new ParseException("Expected ':' after 'CASE' expression", getNextTokenExpectedIndex());
             }
         }
         // Or check if it's a DEFAULT statement
-        else if (match("DEFAULT")) {
+        else if (match(TokenKind.DEFAULT)) {
             //System.out.println("We made it to Default!!");
         } else {
             // If neither CASE nor DEFAULT, throw an exception
@@ -633,36 +771,206 @@ public final class Parser {
 //    }
 
     public Ast.Statement.While parseWhileStatement() throws ParseException {
-        if (!match("WHILE")) {
+        if (!peek(TokenKind.WHILE)) {
             throw new ParseException("Expected 'WHILE'", getNextTokenExpectedIndex());
         }
+        return (Ast.Statement.While) parseBlockStatement();
+    }
+
 
+    /**
+     * Parses an if, switch or while statement along with every statement
+     * nested in its blocks. Rather than recursing into nested if, switch and
+     * while statements, the unfinished ones are kept on an explicit stack, so
+     * blocks can be nested to any depth without overflowing the call stack.
+     */
+    private Ast.Statement parseBlockStatement() throws ParseException {
+        Deque<BlockStatement> stack = new ArrayDeque<>();
+        BlockStatement statement = openBlockStatement();
+        while (true) {
+            if (!isBlockEnd(statement)) {
+                switch (peekKind()) {
+                    case TokenKind.IF:
+                    case TokenKind.WHILE:
+                    case TokenKind.SWITCH:
+                        stack.push(statement);
+                        statement = openBlockStatement();
+                        break;
+                    default:
+                        addStatement(statement, parseStatement());
+                }
+                continue;
+            }
+            Ast.Statement result = closeBlock(statement);
+            if (result == null) {
+                // The statement continues with another block.
+                continue;
+            }
+            if (stack.isEmpty()) {
+                return result;
+            }
+            statement = stack.pop();
+            addStatement(statement, result);
+        }
+    }
+
+    /**
+     * Parses the keyword and condition of an if, switch or while statement,
+     * up to the start of its first block.
+     */
+    private BlockStatement openBlockStatement() throws ParseException {
+        int kind = peekKind();
+        tokens.advance();
         Ast.Expression condition = parseExpression(); // Parse the condition expression
-        if (!match("DO")) {
+        if (kind == TokenKind.IF && !match(TokenKind.DO)) {
+            throw new ParseException("Expected 'DO' after 'IF' condition", getNextTokenExpectedIndex());
+        } else if (kind == TokenKind.WHILE && !match(TokenKind.DO)) {
             throw new ParseException("Expected 'DO' after 'WHILE' condition", getNextTokenExpectedIndex());
         }
+        return new BlockStatement(kind, condition);
+    }
 
-        List<Ast.Statement> statements = new ArrayList<>();
+    /**
+     * Returns {@code true} if the next token ends the current block of the
+     * statement: {@code ELSE} or {@code END} for the then block of an if,
+     * {@code END} for the else block or a while, and the same tokens as
+     * {@link #parseBlock()} for a case (or always, between cases).
+     */
+    private boolean isBlockEnd(BlockStatement statement) {
+        switch (statement.kind) {
+            case TokenKind.IF:
+                return peek(TokenKind.END) || (statement.thenStatements == null && peek(TokenKind.ELSE));
+            case TokenKind.WHILE:
+                return peek(TokenKind.END);
+            default:
+                if (!statement.inCase) {
+                    return true;
+                }
+                switch (peekKind()) {
+                    case TokenKind.END:
+                    case TokenKind.CASE:
+                    case TokenKind.DEFAULT:
+                    case TokenKind.ELSE:
+                        return true;
+                    default:
+                        return false;
+                }
+        }
+    }
 
-        // Keep parsing statements until "END" is encountered.
-        while (!peek("END")) {
-            statements.add(parseStatement());
-            // If a semicolon is peeked (and not at the end), consume it as part of statement termination.
-            if (peek(";") && !peek("END", 1)) {
-                match(";");
+    /**
+     * Adds a statement to the current block, consuming a semicolon after it
+     * in if and while statements unless it comes right before the end of the
+     * block.
+     */
+    private void addStatement(BlockStatement statement, Ast.Statement child) throws ParseException {
+        statement.statements.add(child);
+        if (statement.kind == TokenKind.IF && statement.thenStatements == null) {
+            // Consume semicolon after statement, if present, but not before ELSE or END
+            if (peek(TokenKind.SEMICOLON) && !(peek("ELSE", 1) || peek("END", 1))) {
+                match(TokenKind.SEMICOLON);
+            }
+        } else if (statement.kind != TokenKind.SWITCH) {
+            // Consume semicolon after statement, if present, but not before END
+            if (peek(TokenKind.SEMICOLON) && !peek("END", 1)) {
+                match(TokenKind.SEMICOLON);
             }
         }
+    }
+
+    /**
+     * Finishes the current block of the statement. Returns the statement once
+     * its {@code END} is reached, or {@code null} if another block follows
+     * (the else block of an if, or the next case of a switch).
+     */
+    private Ast.Statement closeBlock(BlockStatement statement) throws ParseException {
+        switch (statement.kind) {
+            case TokenKind.IF:
+                if (statement.thenStatements == null && match(TokenKind.ELSE)) {
+                    statement.thenStatements = statement.statements;
+                    statement.statements = new ArrayList<>();
+                    return null;
+                }
+                if (!match(TokenKind.END)) {
+                    throw new ParseException("Expected 'END' to close the 'IF' statement", getNextTokenExpectedIndex());
+                }
+                if (statement.thenStatements == null) {
+                    return new Ast.Statement.If(statement.condition, statement.statements, new ArrayList<>());
+                }
+                return new Ast.Statement.If(statement.condition, statement.thenStatements, statement.statements);
+            case TokenKind.WHILE:
+                if (!match(TokenKind.END)) {
+                    throw new ParseException("Expected 'END' to close the 'WHILE' statement", getNextTokenExpectedIndex());
+                }
+                return new Ast.Statement.While(statement.condition, statement.statements);
+            default:
+                if (statement.inCase) {
+                    Ast.Statement.Case caseStatement = new Ast.Statement.Case(statement.caseValue, statement.statements);
+                    if (caseStatement.getValue().isEmpty()) { // Check if it's a DEFAULT case
+                        if (statement.foundDefault) {
+                            throw new ParseException("Multiple 'DEFAULT' cases found", getNextTokenExpectedIndex());
+                        }
+                        statement.foundDefault = true;
+                    }
+                    statement.cases.add(caseStatement);
+                    statement.inCase = false;
+                }
+                // Process 'CASE' and 'DEFAULT' statements as in parseCaseStatement
+                if (peek(TokenKind.CASE) || (peek(TokenKind.DEFAULT) && !statement.foundDefault)) {
+                    if (match(TokenKind.CASE)) {
+                        statement.caseValue = Optional.of(parseExpression()); // Parse the CASE expression
+                        if (!match(TokenKind.COLON)) {
+                            throw new ParseException("Expected ':' after 'CASE' expression", getNextTokenExpectedIndex());
+                        }
+                    } else {
+                        match(TokenKind.DEFAULT);
+                        statement.caseValue = Optional.empty();
+                    }
+                    statement.statements = new ArrayList<>();
+                    statement.inCase = true;
+                    return null;
+                }
+                if (!statement.foundDefault) {
+                    throw new ParseException("Missing 'DEFAULT' case in switch statement", tokens.index(-1));
+                }
+                if (!match(TokenKind.END)) {
+                    throw new ParseException("Expected 'END' to close the 'SWITCH' statement", getNextTokenExpectedIndex());
+                }
+                return new Ast.Statement.Switch(statement.condition, statement.cases);
+        }
+    }
+
+    /**
+     * An if, switch or while statement being parsed by
+     * {@link #parseBlockStatement()}, with the statements of its current block.
+     */
+    private static final class BlockStatement {
+
+        private final int kind;
+        private final Ast.Expression condition;
+        private List<Ast.Statement> statements = new ArrayList<>();
+
+        // If statements: the then statements, once the else block is reached.
+        private List<Ast.Statement> thenStatements;
 
-        if (!match("END")) {
-            throw new ParseException("Expected 'END' to close the 'WHILE' statement", getNextTokenExpectedIndex());
+        // Switch statements: the finished cases, and the value of the case
+        // whose statements are being parsed.
+        private final List<Ast.Statement.Case> cases = new ArrayList<>();
+        private Optional<Ast.Expression> caseValue = Optional.empty();
+        private boolean inCase = false;
+        private boolean foundDefault = false;
+
+        private BlockStatement(int kind, Ast.Expression condition) {
+            this.kind = kind;
+            this.condition = condition;
         }
 
-        return new Ast.Statement.While(condition, statements);
     }
 
 
+
     private String peekTokenLiteral() {
-        return tokens.has(0) ? tokens.get(0).getLiteral() : "No token available";
+        return tokens.has(0) ? tokens.literal(0) : "No token available";
     }
 
 
@@ -673,11 +981,11 @@ public final class Parser {
      */
 
     public Ast.Statement.Return parseReturnStatement() throws ParseException {
-        if (!match("RETURN")) {
+        if (!match(TokenKind.RETURN)) {
             throw new ParseException("Expected 'RETURN'", getNextTokenExpectedIndex());
         }
         Ast.Expression value = parseExpression(); // Parse the expression to be returned
-        if (!match(";")) {
+        if (!match(TokenKind.SEMICOLON)) {
             throw new ParseException("Expected ';' at the end of the return statement.", getNextTokenExpectedIndex());
         }
         return new Ast.Statement.Return(value);
@@ -697,166 +1005,122 @@ public final class Parser {
      * Parses the {@code logical-expression} rule.
      */
     public Ast.Expression parseLogicalExpression() throws ParseException {
-        Ast.Expression result = parseEqualityExpression(); // Start with an equality expression.
-
-        // Process logical operators (both '&&' and '||').
-        while (true) { // Use a loop to handle continuous logical operations
-            if (match("&&")) {
-                String operator = tokens.get(-1).getLiteral(); // Get the matched logical operator.
-                Ast.Expression right = parseEqualityExpression(); // Parse the right-hand side expression.
-
-                // Construct a new binary expression with the operator and both sides.
-                result = new Ast.Expression.Binary(operator, result, right);
-            } else if (match("||")) {
-                String operator = tokens.get(-1).getLiteral(); // Similarly handle the "||" operator
-                Ast.Expression right = parseEqualityExpression(); // Parse the right-hand side expression for "||"
-
-                // Construct a new binary expression for the "||" operator.
-                result = new Ast.Expression.Binary(operator, result, right);
-            } else {
-                break; // Exit the loop if no more logical operations are found
-            }
-        }
-
-        return result;
+        return parseBinaryExpression(LOGICAL);
     }
 
-
-
+    /**
+     * Parses the {@code equality-expression} rule.
+     */
     public Ast.Expression parseEqualityExpression() throws ParseException {
-        Ast.Expression result = parseComparisonExpression(); // Start with comparison expressions
-
-        while (true) { // Loop to handle multiple equality operations
-            if (match("==")) {
-                String operator = "==";
-                Ast.Expression right = parseComparisonExpression();
-                result = new Ast.Expression.Binary(operator, result, right);
-            } else if (match("!=")) {
-                String operator = "!=";
-                Ast.Expression right = parseComparisonExpression();
-                result = new Ast.Expression.Binary(operator, result, right);
-            } else {
-                break; // No more equality operators, exit the loop
-            }
-        }
-
-        return result;
+        return parseBinaryExpression(EQUALITY);
     }
 
-//    public Ast.Expression parseEqualityExpression() throws ParseException {
-//        Ast.Expression result = parseAdditiveExpression();
-//        while (match("==")) {
-//            String operator = tokens.get(-1).getLiteral();
-//            Ast.Expression right = parseAdditiveExpression();
-//            result = new Ast.Expression.Binary(operator, result, right);
-//        }
-//        return result;
-//    }
-
-
-
-
-
     /**
      * Parses the {@code comparison-expression} rule.
      */
-
-
     public Ast.Expression parseComparisonExpression() throws ParseException {
-        Ast.Expression result = parseAdditiveExpression(); // Start with additive expressions
-
-        while (true) { // Loop to handle multiple comparison operations
-            if (match("<")) {
-                String operator = "<";
-                Ast.Expression right = parseAdditiveExpression();
-                result = new Ast.Expression.Binary(operator, result, right);
-            } else if (match(">")) {
-                String operator = ">";
-                Ast.Expression right = parseAdditiveExpression();
-                result = new Ast.Expression.Binary(operator, result, right);
-            } else if (match("<=")) {
-                String operator = "<=";
-                Ast.Expression right = parseAdditiveExpression();
-                result = new Ast.Expression.Binary(operator, result, right);
-            } else if (match(">=")) {
-                String operator = ">=";
-                Ast.Expression right = parseAdditiveExpression();
-                result = new Ast.Expression.Binary(operator, result, right);
-            } else {
-                break; // No more comparison operators, exit the loop
-            }
-        }
-
-        return result;
+        return parseBinaryExpression(COMPARISON);
     }
 
-//    public Ast.Expression parseComparisonExpression() throws ParseException {
-//        Ast.Expression expression = parseAdditiveExpression(); // Start with an additive expression
-//
-//        // Loop as long as there are comparison operators, indicating continuation of the comparison expression
-//        while (match("<", ">", "==", "!=")) {
-//            String operator = tokens.get(-1).getLiteral(); // Get the operator
-//            Ast.Expression right = parseAdditiveExpression(); // Parse the right-hand side additive expression
-//            expression = new Ast.Expression.Binary(operator, expression, right); // Combine into a binary expression
-//        }
-//
-//        return expression; // Return the built expression
-//    }
-
-
     /**
      * Parses the {@code additive-expression} rule.
      */
-//    public Ast.Expression parseAdditiveExpression() throws ParseException {
-//        Ast.Expression result = parseMultiplicativeExpression();
-//        while (match("+")) {
-//            String operator = tokens.get(-1).getLiteral();
-//            Ast.Expression right = parseMultiplicativeExpression();
-//            result = new Ast.Expression.Binary(operator, result, right);
-//        }
-//        return result;
-//    }
-
     public Ast.Expression parseAdditiveExpression() throws ParseException {
-        Ast.Expression result = parseMultiplicativeExpression(); // Start with lower precedence
-        while (peek("+") || peek("-")) { // Check for both '+' and '-' operators
-            boolean matchPlus = match("+");
-            boolean matchMinus = match("-");
-            String operator = matchPlus ? "+" : "-";
-            Ast.Expression right = parseMultiplicativeExpression(); // Parse right-hand side
-            result = new Ast.Expression.Binary(operator, result, right); // Construct binary expression
-        }
-        return result;
+        return parseBinaryExpression(ADDITIVE);
     }
 
-
-
-
     /**
      * Parses the {@code multiplicative-expression} rule.
      */
-
     public Ast.Expression parseMultiplicativeExpression() throws ParseException {
-        Ast.Expression result = parsePrimaryExpression();
-        // Use individual checks for each operator
+        return parseBinaryExpression(MULTIPLICATIVE);
+    }
+
+    // Precedence of the binary operators, all of which are left associative.
+    // Tokens which aren't binary operators have a precedence of zero.
+    private static final int LOGICAL = 1;
+    private static final int EQUALITY = 2;
+    private static final int COMPARISON = 3;
+    private static final int ADDITIVE = 4;
+    private static final int MULTIPLICATIVE = 5;
+
+    private static final int[] PRECEDENCE = new int[TokenKind.LITERALS.length];
+
+    static {
+        PRECEDENCE[TokenKind.AND] = PRECEDENCE[TokenKind.OR] = LOGICAL;
+        PRECEDENCE[TokenKind.EQUAL] = PRECEDENCE[TokenKind.NOT_EQUAL] = EQUALITY;
+        PRECEDENCE[TokenKind.LESS] = PRECEDENCE[TokenKind.GREATER] = COMPARISON;
+        PRECEDENCE[TokenKind.LESS_EQUAL] = PRECEDENCE[TokenKind.GREATER_EQUAL] = COMPARISON;
+        PRECEDENCE[TokenKind.PLUS] = PRECEDENCE[TokenKind.MINUS] = ADDITIVE;
+        PRECEDENCE[TokenKind.TIMES] = PRECEDENCE[TokenKind.DIVIDE] = PRECEDENCE[TokenKind.CARET] = MULTIPLICATIVE;
+    }
+
+    /**
+     * Parses a chain of binary operators with at least the given precedence
+     * by precedence climbing. The right operand of an operator only takes
+     * operators with a higher precedence, so operators of the same precedence
+     * group to the left. This builds the same trees as one method per
+     * precedence level.
+     *
+     * Instead of recursing for every right operand and parenthesized group,
+     * the unfinished ones are kept on an explicit stack, so expressions of any
+     * length and nesting depth are parsed without overflowing the call stack.
+     */
+    private Ast.Expression parseBinaryExpression(int precedence) throws ParseException {
+        Deque<Operand> stack = new ArrayDeque<>();
+        Operand operand = new Operand(precedence, false);
         while (true) {
-            if (match("*")) {
-                String operator = "*";
-                Ast.Expression right = parsePrimaryExpression();
-                result = new Ast.Expression.Binary(operator, result, right);
-            } else if (match("/")) {
-                String operator = "/";
-                Ast.Expression right = parsePrimaryExpression();
-                result = new Ast.Expression.Binary(operator, result, right);
-            } else if (match("^")) {
-                String operator = "^";
-                Ast.Expression right = parsePrimaryExpression();
-                result = new Ast.Expression.Binary(operator, result, right);
-            } else {
-                break; // No more operators to process, exit the loop
+            // A group is parsed the same as recursing into parseExpression.
+            while (match(TokenKind.OPEN_PAREN)) {
+                stack.push(operand);
+                operand = new Operand(LOGICAL, true);
+            }
+            Ast.Expression result = parsePrimaryExpression();
+            while (true) {
+                if (operand.operator != TokenKind.NONE) {
+                    result = new Ast.Expression.Binary(TokenKind.LITERALS[operand.operator], operand.left, result);
+                }
+                int kind = peekKind();
+                int operatorPrecedence = PRECEDENCE[kind];
+                if (operatorPrecedence >= operand.precedence) {
+                    tokens.advance();
+                    operand.left = result;
+                    operand.operator = kind;
+                    stack.push(operand);
+                    operand = new Operand(operatorPrecedence + 1, false);
+                    break;
+                }
+                if (operand.group) {
+                    if (!match(TokenKind.CLOSE_PAREN)) {
+                        throw new ParseException("Expected ')'", getNextTokenExpectedIndex());
+                    }
+                    result = new Ast.Expression.Group(result);
+                }
+                if (stack.isEmpty()) {
+                    return result;
+                }
+                operand = stack.pop();
             }
         }
-        return result;
+    }
+
+    /**
+     * An expression being parsed by {@link #parseBinaryExpression(int)}: the
+     * minimum precedence of its operators, whether it is in parentheses, and
+     * the left operand and operator waiting for a right operand (if any).
+     */
+    private static final class Operand {
+
+        private final int precedence;
+        private final boolean group;
+        private Ast.Expression left;
+        private int operator = TokenKind.NONE;
+
+        private Operand(int precedence, boolean group) {
+            this.precedence = precedence;
+            this.group = group;
+        }
+
     }
 
 
@@ -878,76 +1142,69 @@ public final class Parser {
 //        }
 
         // Print current and next token for immediate context
-        //System.out.println("Current token: " + tokens.get(0).getLiteral() + ", Next token: " + (tokens.has(1) ? tokens.get(1).getLiteral() : "None"));
+        //System.out.println("Current token: " + tokens.literal(0) + ", Next token: " + (tokens.has(1) ? tokens.literal(1) : "None"));
 
 
-        if (match("NIL")) {
+        if (match(TokenKind.NIL)) {
             //System.out.println("parsePrimaryExpression: Matched NIL");
-            return new Ast.Expression.Literal(null);
-        }
-        if (match(Token.Type.INTEGER)) {
-            return new Ast.Expression.Literal(new BigInteger(tokens.get(-1).getLiteral()));
-        } else if (match(Token.Type.DECIMAL)) {
-            return new Ast.Expression.Literal(new BigDecimal(tokens.get(-1).getLiteral()));
-        } else if (match(Token.Type.STRING)) {
-            String stringLiteral = tokens.get(-1).getLiteral();
-            String processedStringLiteral = processEscapeCharacters(stringLiteral.substring(1, stringLiteral.length() - 1));
-            return new Ast.Expression.Literal(processedStringLiteral);
+            return Ast.Expression.Literal.of(Environment.NIL);
+        }
+        if (match(Token.Type.INTEGER) || match(Token.Type.DECIMAL) || match(Token.Type.STRING)) {
+            return Ast.Expression.Literal.of(constant());
         } else if (match(Token.Type.CHARACTER)) {
-            String characterLiteral = tokens.get(-1).getLiteral();
-            String processedCharacterLiteral = processEscapeCharacters(characterLiteral.substring(1, characterLiteral.length() - 1));
-            if (processedCharacterLiteral.length() == 1) {
-                return new Ast.Expression.Literal(processedCharacterLiteral.charAt(0));
+            Environment.PlcObject constant = constant();
+            if (constant.getValue() instanceof Character) {
+                return Ast.Expression.Literal.of(constant);
             } else {
-                throw new ParseException("Malformed character literal", tokens.get(-1).getIndex());
+                throw new ParseException("Malformed character literal", tokens.index(-1));
             }
         } else if (match(Token.Type.IDENTIFIER)) {
-            String identifier = tokens.get(-1).getLiteral();
+            String identifier = tokens.literal(-1);
 
             // Handle NIL literal
             if ("NIL".equals(identifier)) {
-                return new Ast.Expression.Literal(null);
+                return Ast.Expression.Literal.of(Environment.NIL);
             }
 
             // Handle boolean literals
             if ("TRUE".equals(identifier.toUpperCase())) {
-                return new Ast.Expression.Literal(true);
+                return Ast.Expression.Literal.of(constants.get(true));
             } else if ("FALSE".equals(identifier.toUpperCase())) {
-                return new Ast.Expression.Literal(false);
+                return Ast.Expression.Literal.of(constants.get(false));
             }
 
             // Handle function calls or variable access
-            if (match("(")) {
+            if (match(TokenKind.OPEN_PAREN)) {
                 //System.out.println("Detected '(': Starting to parse function call for identifier: " + identifier);
 
                 List<Ast.Expression> arguments = new ArrayList<>();
-                if (!peek(")")) {
+                if (!peek(TokenKind.CLOSE_PAREN)) {
                     //System.out.println("Arguments detected: Parsing arguments for function call.");
                     do {
                         arguments.add(parseExpression());
                         //System.out.println("Parsed argument for function: " + identifier);
 
-                    } while (match(","));
+                    } while (match(TokenKind.COMMA));
                 }else{
                     //System.out.println("No arguments detected for function call.");
                 }
-                if (!match(")")) {
+                if (!match(TokenKind.CLOSE_PAREN)) {
                     throw new ParseException("Expected ')'", getNextTokenExpectedIndex());
                 }
                 //System.out.println("Function call parsed successfully for identifier: " + identifier);
                 return new Ast.Expression.Function(identifier, arguments);
-            } else if (match("[")) {
+            } else if (match(TokenKind.OPEN_BRACKET)) {
                 Ast.Expression index = parseExpression();
-                if (!match("]")) {
+                if (!match(TokenKind.CLOSE_BRACKET)) {
                     throw new ParseException("Expected ']'", getNextTokenExpectedIndex());
                 }
                 return new Ast.Expression.Access(Optional.of(index), identifier);
             } else {
                 return new Ast.Expression.Access(Optional.empty(), identifier);
             }
-        } else if (match("(")) {
+        } else if (match(TokenKind.OPEN_PAREN)) {
             Ast.Expression expression = parseExpression();
-            if (!match(")")) {
+            if (!match(TokenKind.CLOSE_PAREN)) {
                 throw new ParseException("Expected ')'", getNextTokenExpectedIndex());
             }
             return new Ast.Expression.Group(expression);
@@ -957,15 +1214,13 @@ public final class Parser {
     }
 
 
-    private String processEscapeCharacters(String literal) {
-        return literal
-                .replace("\\b", "\b")
-                .replace("\\n", "\n")
-                .replace("\\r", "\r")
-                .replace("\\t", "\t")
-                .replace("\\'", "'")
-                .replace("\\\"", "\"")
-                .replace("\\\\", "\\");
+    /**
+     * Returns the pooled value of the literal token which was just matched,
+     * decoding it only if the lexer didn't.
+     */
+    private Environment.PlcObject constant() {
+        Environment.PlcObject constant = tokens.constant(-1);
+        return constant != null ? constant : constants.decode(tokens.type(-1), tokens.literal(-1));
     }
 
 
@@ -979,6 +1234,54 @@ public final class Parser {
 
 
 
+    /**
+     * Returns the {@link TokenKind} of the next token, or
+     * {@link TokenKind#NONE} if there are no tokens left.
+     */
+    private int peekKind() {
+        return tokens.has(0) ? tokens.kind(0) : TokenKind.NONE;
+    }
+
+    /**
+     * Returns {@code true} if the next token is the keyword or operator with
+     * the given {@link TokenKind}. This is equivalent to peeking its literal,
+     * but compares ints and doesn't allocate an array of patterns.
+     */
+    private boolean peek(int kind) {
+        return tokens.has(0) && tokens.kind(0) == kind;
+    }
+
+    private boolean match(int kind) {
+        boolean peek = peek(kind);
+        if (peek) {
+            tokens.advance();
+        }
+        return peek;
+    }
+
+    /**
+     * Returns {@code true} if the next token has the given type, without
+     * allocating an array of patterns.
+     */
+    private boolean peek(Token.Type type) {
+        return tokens.has(0) && tokens.type(0) == type;
+    }
+
+    private boolean match(Token.Type type) {
+        boolean peek = peek(type);
+        if (peek) {
+            tokens.advance();
+        }
+        return peek;
+    }
+
+    /**
+     * Returns the number of tokens consumed so far.
+     */
+    int position() {
+        return tokens.index;
+    }
+
     /**
      * As in the lexer, returns {@code true} if the current sequence of tokens
      * matches the given patterns. Unlike the lexer, the pattern is not a regex;
@@ -994,11 +1297,11 @@ public final class Parser {
             if (!tokens.has(i)) {
                 return false;
             } else if (patterns[i] instanceof Token.Type) {
-                if (patterns[i] != tokens.get(i).getType()) {
+                if (patterns[i] != tokens.type(i)) {
                     return false;
                 }
             } else if (patterns[i] instanceof String) {
-                if (!patterns[i].equals(tokens.get(i).getLiteral())) {
+                if (!tokens.matches(i, (String) patterns[i])) {
                     return false;
                 }
             } else {
@@ -1025,36 +1328,258 @@ public final class Parser {
     }
 
 
-    private static final class TokenStream {
+    private static abstract class TokenStream {
 
-        private final List<Token> tokens;
-        private int index = 0;
-
-        private TokenStream(List<Token> tokens) {
-            this.tokens = tokens;
-        }
+        int index = 0;
 
         /**
          * Returns true if there is a token at index + offset.
          */
-        public boolean has(int offset) {
-            return index + offset < tokens.size();
-        }
+        abstract boolean has(int offset);
 
         /**
-         * Gets the token at index + offset.
+         * Gets the type of the token at index + offset.
          */
-        public Token get(int offset) {
-            return tokens.get(index + offset);
-        }
+        abstract Token.Type type(int offset);
+
+        /**
+         * Gets the literal of the token at index + offset.
+         */
+        abstract String literal(int offset);
+
+        /**
+         * Gets the {@link TokenKind} of the token at index + offset.
+         */
+        abstract int kind(int offset);
+
+        /**
+         * Returns true if the literal of the token at index + offset is equal
+         * to the given string.
+         */
+        abstract boolean matches(int offset, String literal);
+
+        /**
+         * Gets the input index of the token at index + offset.
+         */
+        abstract int index(int offset);
+
+        /**
+         * Gets the value the lexer decoded for the token at index + offset,
+         * or null if it wasn't decoded.
+         */
+        abstract Environment.PlcObject constant(int offset);
+
+        /**
+         * Gets the length of the token at index + offset.
+         */
+        abstract int length(int offset);
 
         /**
          * Advances to the next token, incrementing the index.
          */
-        public void advance() {
+        void advance() {
             index++;
         }
 
+        /**
+         * Starts keeping the tokens advanced over from here, for
+         * {@link #slice()}.
+         */
+        abstract void mark();
+
+        /**
+         * Returns a new stream over the tokens advanced over since the last
+         * call to {@link #mark()}, and stops keeping them.
+         */
+        abstract TokenStream slice();
+
+    }
+
+    /**
+     * Buffers tokens pulled from a {@link TokenSource} in a ring buffer. The
+     * parser only looks one token back ({@code get(-1)}) and a couple of
+     * tokens ahead ({@code peek(..., 1)}), so older tokens are overwritten as
+     * the stream advances.
+     */
+    private static final class SourceTokenStream extends TokenStream {
+
+        private static final int CAPACITY = 4;
+
+        private final TokenSource source;
+        private final Token[] buffer = new Token[CAPACITY];
+        private final int[] kinds = new int[CAPACITY];
+        private int size = 0;
+        private boolean exhausted = false;
+        private List<Token> marked = null;
+
+        private SourceTokenStream(TokenSource source) {
+            this.source = source;
+        }
+
+        @Override
+        boolean has(int offset) {
+            int target = index + offset;
+            while (size <= target && !exhausted) {
+                Token token = source.next();
+                if (token == null) {
+                    exhausted = true;
+                } else {
+                    kinds[size % CAPACITY] = TokenKind.of(token.getLiteral());
+                    buffer[size++ % CAPACITY] = token;
+                }
+            }
+            return target < size;
+        }
+
+        /**
+         * Gets the token at index + offset.
+         */
+        private Token get(int offset) {
+            int target = index + offset;
+            if (target < 0 || !has(offset)) {
+                throw new IndexOutOfBoundsException("Index " + target + " out of bounds for " + size + " tokens.");
+            } else if (target < size - CAPACITY) {
+                throw new IllegalStateException("Token " + target + " is no longer buffered.");
+            }
+            return buffer[target % CAPACITY];
+        }
+
+        @Override
+        Token.Type type(int offset) {
+            return get(offset).getType();
+        }
+
+        @Override
+        String literal(int offset) {
+            return get(offset).getLiteral();
+        }
+
+        @Override
+        int kind(int offset) {
+            get(offset);
+            return kinds[(index + offset) % CAPACITY];
+        }
+
+        @Override
+        boolean matches(int offset, String literal) {
+            return literal.equals(get(offset).getLiteral());
+        }
+
+        @Override
+        int index(int offset) {
+            return get(offset).getIndex();
+        }
+
+        @Override
+        Environment.PlcObject constant(int offset) {
+            return get(offset).getConstant();
+        }
+
+        @Override
+        int length(int offset) {
+            return get(offset).getLiteral().length();
+        }
+
+        @Override
+        void advance() {
+            if (marked != null) {
+                marked.add(get(0));
+            }
+            super.advance();
+        }
+
+        @Override
+        void mark() {
+            marked = new ArrayList<>();
+        }
+
+        @Override
+        TokenStream slice() {
+            TokenStream slice = new SourceTokenStream(TokenSource.of(marked));
+            marked = null;
+            return slice;
+        }
+
+    }
+
+    /**
+     * Reads tokens from a {@link TokenBuffer} without creating {@link Token}
+     * objects, optionally limited to a range of the buffer.
+     */
+    private static final class BufferTokenStream extends TokenStream {
+
+        private final TokenBuffer buffer;
+        private final int from;
+        private final int to;
+        private int marked = -1;
+
+        private BufferTokenStream(TokenBuffer buffer, int from, int to) {
+            this.buffer = buffer;
+            this.from = from;
+            this.to = Math.min(to, buffer.size());
+        }
+
+        @Override
+        boolean has(int offset) {
+            return from + index + offset < to;
+        }
+
+        private int position(int offset) {
+            int target = from + index + offset;
+            if (target < from || target >= to) {
+                throw new IndexOutOfBoundsException("Index " + (target - from) + " out of bounds for " + (to - from) + " tokens.");
+            }
+            return target;
+        }
+
+        @Override
+        Token.Type type(int offset) {
+            return buffer.type(position(offset));
+        }
+
+        @Override
+        String literal(int offset) {
+            return buffer.literal(position(offset));
+        }
+
+        @Override
+        int kind(int offset) {
+            return buffer.kind(position(offset));
+        }
+
+        @Override
+        boolean matches(int offset, String literal) {
+            return buffer.literalEquals(position(offset), literal);
+        }
+
+        @Override
+        int index(int offset) {
+            return buffer.start(position(offset));
+        }
+
+        @Override
+        Environment.PlcObject constant(int offset) {
+            return null;
+        }
+
+        @Override
+        int length(int offset) {
+            int position = position(offset);
+            return buffer.end(position) - buffer.start(position);
+        }
+
+        @Override
+        void mark() {
+            marked = from + index;
+        }
+
+        @Override
+        TokenStream slice() {
+            TokenStream slice = new BufferTokenStream(buffer, marked, from + index);
+            marked = -1;
+            return slice;
+        }
+
     }
 
 }
@@ -1,47 +1,68 @@
 package plc.project;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Function;
 
 public final class Scope {
 
     private final Scope parent;
-    private final Map<String, Environment.Variable> variables = new HashMap<>();
-    private final Map<String, Environment.Function> functions = new HashMap<>();
+    // Shared with the parent, so a program's ids are valid in every scope below the root.
+    private final Symbols symbols;
+    // Keyed by the ids of the names from symbols, and functions by arity.
+    private final SymbolMap<Environment.Variable> variables = new SymbolMap<>();
+    private final SymbolMap<Environment.Function[]> functions = new SymbolMap<>();
 
     public Scope(Scope parent) {
         this.parent = parent;
+        this.symbols = parent != null ? parent.symbols : new Symbols();
     }
 
     public Scope getParent() {
         return parent;
     }
 
+    public Symbols getSymbols() {
+        return symbols;
+    }
+
     public void defineVariable(String name, boolean mutable, Environment.PlcObject value) {
         defineVariable(name, name, Environment.Type.ANY, mutable, value);
     }
 
     public Environment.Variable defineVariable(String name, String jvmName, Environment.Type type, boolean mutable, Environment.PlcObject value) {
-        if (variables.containsKey(name)) {
+        int symbol = symbols.intern(name);
+        if (variables.get(symbol) != null) {
             throw new RuntimeException("The variable " + name + " is already defined in this scope.");
         } else {
             Environment.Variable variable = new Environment.Variable(name, jvmName, type, mutable, value);
-            variables.put(variable.getName(), variable);
-            return variables.get(name);
+            variables.put(symbol, variable);
+            return variable;
         }
     }
 
     public Environment.Variable lookupVariable(String name) {
-        if (variables.containsKey(name)) {
-            return variables.get(name);
-        } else if (parent != null) {
-            return parent.lookupVariable(name);
-        } else {
+        // A name which isn't in the table isn't defined, and isn't added by looking it up.
+        int symbol = symbols.lookup(name);
+        if (symbol < 0) {
             throw new RuntimeException("The variable " + name + " is not defined in this scope.");
         }
+        return lookupVariable(symbol);
+    }
+
+    /**
+     * Looks up a variable by the id of its name, see {@link Symbols}.
+     */
+    public Environment.Variable lookupVariable(int symbol) {
+        // Walks up the scopes in a loop, so deeply nested blocks can't overflow the stack.
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            Environment.Variable variable = scope.variables.get(symbol);
+            if (variable != null) {
+                return variable;
+            }
+        }
+        throw new RuntimeException("The variable " + symbols.name(symbol) + " is not defined in this scope.");
     }
 
     public void defineFunction(String name, int arity, Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
@@ -53,32 +74,135 @@ public final class Scope {
     }
 
     public Environment.Function defineFunction(String name, String jvmName, List<Environment.Type> parameterTypes, Environment.Type returnType, java.util.function.Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
-        if (functions.containsKey(name + "/" + parameterTypes.size())) {
-            throw new RuntimeException("The function " + name + "/" + parameterTypes.size() + " is already defined in this scope.");
+        int symbol = symbols.intern(name);
+        int arity = parameterTypes.size();
+        Environment.Function[] overloads = functions.get(symbol);
+        if (overloads != null && arity < overloads.length && overloads[arity] != null) {
+            throw new RuntimeException("The function " + name + "/" + arity + " is already defined in this scope.");
         } else {
             Environment.Function func = new Environment.Function(name, jvmName, parameterTypes, returnType, function);
-            functions.put(func.getName() + "/" + func.getParameterTypes().size(), func);
+            if (overloads == null || arity >= overloads.length) {
+                overloads = overloads == null ? new Environment.Function[arity + 1] : Arrays.copyOf(overloads, arity + 1);
+                functions.put(symbol, overloads);
+            }
+            overloads[arity] = func;
             return func;
         }
     }
 
     public Environment.Function lookupFunction(String name, int arity) {
-        if (functions.containsKey(name + "/" + arity)) {
-            return functions.get(name + "/" + arity);
-        } else if (parent != null) {
-            return parent.lookupFunction(name, arity);
-        } else {
+        int symbol = symbols.lookup(name);
+        if (symbol < 0) {
             throw new RuntimeException("The function " + name + "/" + arity + " is not defined in this scope.");
         }
+        return lookupFunction(symbol, arity);
+    }
+
+    /**
+     * Looks up a function by the id of its name, see {@link Symbols}.
+     */
+    public Environment.Function lookupFunction(int symbol, int arity) {
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            Environment.Function[] overloads = scope.functions.get(symbol);
+            if (overloads != null && arity < overloads.length && overloads[arity] != null) {
+                return overloads[arity];
+            }
+        }
+        throw new RuntimeException("The function " + symbols.name(symbol) + "/" + arity + " is not defined in this scope.");
     }
 
     @Override
     public String toString() {
+        List<String> functionNames = new ArrayList<>();
+        functions.forEach((symbol, overloads) -> {
+            for (int arity = 0; arity < overloads.length; arity++) {
+                if (overloads[arity] != null) {
+                    functionNames.add(symbols.name(symbol) + "/" + arity);
+                }
+            }
+        });
+        List<String> variableNames = new ArrayList<>();
+        variables.forEach((symbol, variable) -> variableNames.add(symbols.name(symbol)));
         return "Scope{" +
                 "parent=" + parent +
-                ", variables=" + variables.keySet() +
-                ", functions=" + functions.keySet() +
+                ", variables=" + variableNames +
+                ", functions=" + functionNames +
                 '}';
     }
 
+    /**
+     * A map from symbol ids to values, with open addressing over arrays so
+     * lookups don't box the id. Most scopes hold a handful of names, so the
+     * arrays are only created by the first put.
+     */
+    private static final class SymbolMap<V> {
+
+        private int[] keys;
+        private Object[] values;
+        private int size = 0;
+
+        @SuppressWarnings("unchecked")
+        V get(int symbol) {
+            if (keys == null) {
+                return null;
+            }
+            int mask = keys.length - 1;
+            for (int i = hash(symbol) & mask; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == symbol) {
+                    return (V) values[i];
+                }
+            }
+            return null;
+        }
+
+        void put(int symbol, V value) {
+            if (keys == null) {
+                keys = new int[4];
+                values = new Object[4];
+            } else if (2 * (size + 1) > keys.length) {
+                int[] oldKeys = keys;
+                Object[] oldValues = values;
+                keys = new int[2 * oldKeys.length];
+                values = new Object[2 * oldKeys.length];
+                size = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldValues[i] != null) {
+                        insert(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+            insert(symbol, value);
+        }
+
+        private void insert(int symbol, Object value) {
+            int mask = keys.length - 1;
+            int i = hash(symbol) & mask;
+            while (values[i] != null && keys[i] != symbol) {
+                i = (i + 1) & mask;
+            }
+            if (values[i] == null) {
+                size++;
+            }
+            keys[i] = symbol;
+            values[i] = value;
+        }
+
+        @SuppressWarnings("unchecked")
+        void forEach(java.util.function.BiConsumer<Integer, V> action) {
+            if (keys != null) {
+                for (int i = 0; i < keys.length; i++) {
+                    if (values[i] != null) {
+                        action.accept(keys[i], (V) values[i]);
+                    }
+                }
+            }
+        }
+
+        private static int hash(int symbol) {
+            // Spreads consecutive ids, which are common, over the table.
+            return symbol * 0x9E3779B9 >>> 16 ^ symbol;
+        }
+
+    }
+
 }
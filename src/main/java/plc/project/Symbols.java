@@ -0,0 +1,76 @@
+package plc.project;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A table which interns identifiers as dense int ids, so a {@link Scope} can
+ * look names up by id, without hashing or building strings.
+ *
+ * Each root {@link Scope} owns a table, which the scopes below it share, so
+ * the ids of a program are only valid in the scopes it runs in and are freed
+ * with them. The {@link Ast} nodes which name a variable or function look up
+ * the id of their name in the table they're used with, and keep it until
+ * they're used with another one (see {@link Ast.Expression.Access#getSymbol(Symbols)}).
+ *
+ * Ids start at the scope: the {@link Lexer} only makes every occurrence of a
+ * name share one string, whose hash is computed once for all of them.
+ *
+ * Only distinct names are stored, so a table grows with the vocabulary of the
+ * programs rather than their size. Tables are safe to use from several
+ * threads.
+ */
+public final class Symbols {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private int count = 0;
+
+    /**
+     * Returns the id of the given name, adding it if it's new.
+     */
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : add(name);
+    }
+
+    /**
+     * Returns the id of the given name, or {@code -1} if it isn't in the
+     * table, without adding it.
+     */
+    public int lookup(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Returns the name of the given id.
+     */
+    public String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * Returns the number of names in the table.
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    private synchronized int add(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        // The name is stored before its id is published, so a thread which
+        // finds the id always finds the name.
+        if (count == names.length) {
+            names = Arrays.copyOf(names, 2 * count);
+        }
+        names[count] = name;
+        ids.put(name, count);
+        return count++;
+    }
+
+}
@@ -14,11 +14,22 @@ public final class Token {
     private final Type type;
     private final String literal;
     private final int index;
+    private final Environment.PlcObject constant;
 
     public Token(Type type, String literal, int index) {
+        this(type, literal, index, null);
+    }
+
+    /**
+     * Creates a literal token with its decoded value from a
+     * {@link ConstantPool}, which the {@link Parser} uses instead of decoding
+     * the literal again.
+     */
+    public Token(Type type, String literal, int index, Environment.PlcObject constant) {
         this.type = type;
         this.literal = literal;
         this.index = index;
+        this.constant = constant;
     }
 
     public Type getType() {
@@ -33,6 +44,14 @@ public final class Token {
         return index;
     }
 
+    /**
+     * Returns the decoded value of a literal token, or null if the lexer
+     * didn't decode it.
+     */
+    public Environment.PlcObject getConstant() {
+        return constant;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
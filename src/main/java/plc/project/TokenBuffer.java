@@ -0,0 +1,150 @@
+package plc.project;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact list of tokens stored as parallel arrays over the original input
+ * instead of one {@link Token} object (and literal string) per token. Each
+ * token takes ten bytes: its type and kind, and the start and end of its
+ * literal in the input. Literals are only created when they are asked for
+ * through {@link #literal(int)}. The {@link TokenKind} of every token is
+ * worked out as it is added, so the parser can check for keywords and
+ * operators without looking at the input again.
+ *
+ * Since literals are always a range of the input, a zero directly followed by
+ * another digit after a minus (such as {@code -01}) has the literal {@code -0}
+ * here instead of {@code 0}; both have the same value.
+ */
+public final class TokenBuffer {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private final CharSequence input;
+    private byte[] types;
+    private byte[] kinds;
+    private int[] starts;
+    private int[] ends;
+    private int size = 0;
+
+    public TokenBuffer(CharSequence input, int capacity) {
+        this.input = input;
+        this.types = new byte[Math.max(capacity, 16)];
+        this.kinds = new byte[types.length];
+        this.starts = new int[types.length];
+        this.ends = new int[types.length];
+    }
+
+    /**
+     * Lexes the entire input into a new buffer with {@link DfaLexer}.
+     */
+    public static TokenBuffer lex(CharSequence input) {
+        // Generated sources average a bit over four characters per token,
+        // including whitespace, so this usually avoids growing the arrays.
+        TokenBuffer buffer = new TokenBuffer(input, input.length() / 4);
+        DfaLexer lexer = new DfaLexer(input);
+        int type;
+        while ((type = lexer.next()) != DfaLexer.EOF) {
+            buffer.add(type, lexer.start(), lexer.end());
+        }
+        return buffer;
+    }
+
+    /**
+     * Lexes UTF-8 encoded source, such as a mapped file, into a new buffer.
+     * Token starts and ends are byte offsets.
+     */
+    public static TokenBuffer lex(ByteBuffer input) {
+        return lex(new ByteSequence(input));
+    }
+
+    /**
+     * Appends a token with the given {@link Token.Type#ordinal()}.
+     */
+    public void add(int type, int start, int end) {
+        if (size == types.length) {
+            int capacity = size + (size >> 1);
+            types = Arrays.copyOf(types, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        types[size] = (byte) type;
+        kinds[size] = (byte) TokenKind.of(input, start, end);
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    public CharSequence getInput() {
+        return input;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Token.Type type(int token) {
+        return TYPES[types[token]];
+    }
+
+    /**
+     * Returns the {@link TokenKind} of the token.
+     */
+    int kind(int token) {
+        return kinds[token];
+    }
+
+    public int start(int token) {
+        return starts[token];
+    }
+
+    public int end(int token) {
+        return ends[token];
+    }
+
+    /**
+     * Returns the literal of the token, creating a new string.
+     */
+    public String literal(int token) {
+        return input.subSequence(starts[token], ends[token]).toString();
+    }
+
+    /**
+     * Returns true if the literal of the token is equal to the given string,
+     * without creating the literal.
+     */
+    public boolean literalEquals(int token, String literal) {
+        int start = starts[token];
+        if (ends[token] - start != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (input.charAt(start + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a {@link Token} for the token at the given position.
+     */
+    public Token get(int token) {
+        return new Token(type(token), literal(token), start(token));
+    }
+
+    /**
+     * Creates {@link Token}s for every token in the buffer.
+     */
+    public List<Token> toList() {
+        List<Token> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tokens.add(get(i));
+        }
+        return tokens;
+    }
+
+}
@@ -0,0 +1,127 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * Codes for the keywords and operators the {@link Parser} looks for, so it can
+ * compare and switch on ints instead of comparing literals.
+ *
+ * As with {@link Parser#peek(Object...)}, the kind of a token only depends on
+ * its literal: an identifier which isn't a keyword, a literal or any other
+ * operator is {@link #NONE}.
+ */
+final class TokenKind {
+
+    static final int NONE = 0;
+
+    // Keywords
+    static final int LIST = 1;
+    static final int VAL = 2;
+    static final int VAR = 3;
+    static final int FUN = 4;
+    static final int DO = 5;
+    static final int END = 6;
+    static final int LET = 7;
+    static final int IF = 8;
+    static final int ELSE = 9;
+    static final int SWITCH = 10;
+    static final int CASE = 11;
+    static final int DEFAULT = 12;
+    static final int WHILE = 13;
+    static final int RETURN = 14;
+    static final int NIL = 15;
+
+    // Operators
+    static final int SEMICOLON = 16;
+    static final int COLON = 17;
+    static final int COMMA = 18;
+    static final int ASSIGN = 19;
+    static final int OPEN_PAREN = 20;
+    static final int CLOSE_PAREN = 21;
+    static final int OPEN_BRACKET = 22;
+    static final int CLOSE_BRACKET = 23;
+    static final int EQUAL = 24;
+    static final int NOT_EQUAL = 25;
+    static final int LESS = 26;
+    static final int GREATER = 27;
+    static final int LESS_EQUAL = 28;
+    static final int GREATER_EQUAL = 29;
+    static final int PLUS = 30;
+    static final int MINUS = 31;
+    static final int TIMES = 32;
+    static final int DIVIDE = 33;
+    static final int CARET = 34;
+    static final int AND = 35;
+    static final int OR = 36;
+
+    /**
+     * The literal of each kind, indexed by its code.
+     */
+    static final String[] LITERALS = {
+            null,
+            "LIST", "VAL", "VAR", "FUN", "DO", "END", "LET", "IF", "ELSE",
+            "SWITCH", "CASE", "DEFAULT", "WHILE", "RETURN", "NIL",
+            ";", ":", ",", "=", "(", ")", "[", "]", "==", "!=",
+            "<", ">", "<=", ">=", "+", "-", "*", "/", "^", "&&", "||"
+    };
+
+    private static final int MAX_LENGTH = 7;
+
+    // Kinds of single character literals, and the kinds of every longer
+    // literal grouped by length.
+    private static final byte[] SINGLE = new byte[128];
+    private static final byte[][] BY_LENGTH = new byte[MAX_LENGTH + 1][0];
+
+    static {
+        for (int kind = 1; kind < LITERALS.length; kind++) {
+            String literal = LITERALS[kind];
+            if (literal.length() == 1) {
+                SINGLE[literal.charAt(0)] = (byte) kind;
+            } else {
+                byte[] kinds = BY_LENGTH[literal.length()];
+                kinds = Arrays.copyOf(kinds, kinds.length + 1);
+                kinds[kinds.length - 1] = (byte) kind;
+                BY_LENGTH[literal.length()] = kinds;
+            }
+        }
+    }
+
+    private TokenKind() {}
+
+    /**
+     * Returns the kind of the given literal.
+     */
+    static int of(String literal) {
+        return of(literal, 0, literal.length());
+    }
+
+    /**
+     * Returns the kind of the literal between {@code start} and {@code end},
+     * without creating it.
+     */
+    static int of(CharSequence input, int start, int end) {
+        int length = end - start;
+        if (length == 1) {
+            char c = input.charAt(start);
+            return c < 128 ? SINGLE[c] : NONE;
+        } else if (length < 2 || length > MAX_LENGTH) {
+            return NONE;
+        }
+        char first = input.charAt(start);
+        candidates:
+        for (byte kind : BY_LENGTH[length]) {
+            String literal = LITERALS[kind];
+            if (literal.charAt(0) != first) {
+                continue;
+            }
+            for (int i = 1; i < length; i++) {
+                if (input.charAt(start + i) != literal.charAt(i)) {
+                    continue candidates;
+                }
+            }
+            return kind;
+        }
+        return NONE;
+    }
+
+}
@@ -0,0 +1,28 @@
+package plc.project;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A pull-based stream of tokens, which allows the {@link Parser} to lex the
+ * input on demand instead of requiring the entire token list up front.
+ *
+ * See {@link Lexer#tokens()} and {@link DfaLexer#tokens()}.
+ */
+@FunctionalInterface
+public interface TokenSource {
+
+    /**
+     * Returns the next token, or {@code null} once there are no tokens left.
+     */
+    Token next() throws ParseException;
+
+    /**
+     * Returns a source over an already lexed list of tokens.
+     */
+    static TokenSource of(List<Token> tokens) {
+        Iterator<Token> iterator = tokens.iterator();
+        return () -> iterator.hasNext() ? iterator.next() : null;
+    }
+
+}
@@ -0,0 +1,111 @@
+package plc.project;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@link ByteScanner} which classifies a full vector of bytes (16 to 64
+ * depending on the hardware) at once with {@code jdk.incubator.vector}, and
+ * finishes the last partial vector with the scalar implementation.
+ *
+ * Bytes outside of ASCII are negative, so they never fall in the ASCII ranges
+ * compared against below.
+ */
+final class VectorByteScanner extends ByteScanner {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    // Most runs are short, so the first few bytes are checked one at a time
+    // before loading a vector.
+    private static final int SCALAR_PREFIX = 8;
+
+    @Override
+    int skipWhitespace(byte[] bytes, int from, int to) {
+        int prefix = Math.min(to, from + SCALAR_PREFIX);
+        from = super.skipWhitespace(bytes, from, prefix);
+        if (from < prefix) {
+            return from;
+        }
+        for (int bound = to - SPECIES.length(); from <= bound; from += SPECIES.length()) {
+            ByteVector vector = ByteVector.fromArray(SPECIES, bytes, from);
+            VectorMask<Byte> run = vector.eq((byte) ' ')
+                    .or(vector.eq((byte) '\n'))
+                    .or(vector.eq((byte) '\r'))
+                    .or(vector.eq((byte) '\t'))
+                    .or(vector.eq((byte) '\b'));
+            if (!run.allTrue()) {
+                return from + run.not().firstTrue();
+            }
+        }
+        return super.skipWhitespace(bytes, from, to);
+    }
+
+    @Override
+    int skipIdentifier(byte[] bytes, int from, int to) {
+        int prefix = Math.min(to, from + SCALAR_PREFIX);
+        from = super.skipIdentifier(bytes, from, prefix);
+        if (from < prefix) {
+            return from;
+        }
+        for (int bound = to - SPECIES.length(); from <= bound; from += SPECIES.length()) {
+            ByteVector vector = ByteVector.fromArray(SPECIES, bytes, from);
+            // Setting 0x20 maps upper case letters onto lower case ones, and
+            // nothing else onto a letter.
+            ByteVector lower = vector.or((byte) 0x20);
+            VectorMask<Byte> run = range(lower, 'a', 'z')
+                    .or(range(vector, '0', '9'))
+                    .or(vector.eq((byte) '_'))
+                    .or(vector.eq((byte) '-'))
+                    .or(vector.eq((byte) '@'));
+            if (!run.allTrue()) {
+                return from + run.not().firstTrue();
+            }
+        }
+        return super.skipIdentifier(bytes, from, to);
+    }
+
+    @Override
+    int skipDigits(byte[] bytes, int from, int to) {
+        int prefix = Math.min(to, from + SCALAR_PREFIX);
+        from = super.skipDigits(bytes, from, prefix);
+        if (from < prefix) {
+            return from;
+        }
+        for (int bound = to - SPECIES.length(); from <= bound; from += SPECIES.length()) {
+            VectorMask<Byte> run = range(ByteVector.fromArray(SPECIES, bytes, from), '0', '9');
+            if (!run.allTrue()) {
+                return from + run.not().firstTrue();
+            }
+        }
+        return super.skipDigits(bytes, from, to);
+    }
+
+    @Override
+    int skipString(byte[] bytes, int from, int to) {
+        int prefix = Math.min(to, from + SCALAR_PREFIX);
+        from = super.skipString(bytes, from, prefix);
+        if (from < prefix) {
+            return from;
+        }
+        for (int bound = to - SPECIES.length(); from <= bound; from += SPECIES.length()) {
+            ByteVector vector = ByteVector.fromArray(SPECIES, bytes, from);
+            VectorMask<Byte> end = vector.eq((byte) '"')
+                    .or(vector.eq((byte) '\\'))
+                    .or(vector.eq((byte) '\n'))
+                    .or(vector.eq((byte) '\r'))
+                    .or(vector.eq((byte) '\f'))
+                    .or(vector.eq((byte) 0x0B));
+            if (end.anyTrue()) {
+                return from + end.firstTrue();
+            }
+        }
+        return super.skipString(bytes, from, to);
+    }
+
+    private static VectorMask<Byte> range(ByteVector vector, char min, char max) {
+        return vector.compare(VectorOperators.GE, (byte) min).and(vector.compare(VectorOperators.LE, (byte) max));
+    }
+
+}
@@ -0,0 +1,584 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Runs programs compiled to {@link Bytecode}, giving the same results as the
+ * {@link Interpreter}. {@link #execute(Ast.Source)} can be used in place of
+ * {@link Interpreter#visit(Ast.Source)}, including with a scope which already
+ * holds variables and functions.
+ *
+ * Instructions are run by a single loop which switches on their opcode. The
+ * values of all running functions are kept in one operand stack: the local
+ * slots of a function start at the base of its frame, with the values it's
+ * working on above them. A call takes its arguments from the top of the
+ * caller's stack as the first local slots of the new frame, and a return
+ * leaves its value in their place, so calls between functions of the program
+ * neither recurse in Java nor throw to return.
+ */
+public final class VirtualMachine {
+
+    private Scope scope;
+
+    // The program being run, with its globals and natives once they're
+    // resolved.
+    private Bytecode.Program program;
+    private Environment.Variable[] globals;
+    private Environment.Function[] natives;
+
+    private Environment.PlcObject[] stack = new Environment.PlcObject[1024];
+    private int sp = 0;
+
+    // The values of the slots of the stack which hold UNBOXED, which is
+    // where arithmetic leaves integers which fit in a long, so loops over
+    // them don't allocate. They're boxed when they leave the stack, such as
+    // into a global, a list or the arguments of a native function.
+    private static final Environment.PlcObject UNBOXED = new Environment.PlcObject(Environment.Type.INTEGER, null);
+    private long[] longs = new long[1024];
+
+    // The functions being run, with the offset of the next instruction of
+    // each caller and the base of each frame in the stack. Calls from native
+    // functions back into the program use the frames above the caller's.
+    private Bytecode.Chunk[] chunks = new Bytecode.Chunk[64];
+    private int[] pcs = new int[64];
+    private int[] bases = new int[64];
+    private int frames = 0;
+
+    public VirtualMachine(Scope parent) {
+        scope = (parent == null) ? new Scope(null) : parent;
+
+        scope.defineFunction("print", 1, args -> {
+            System.out.println(args.get(0).getValue());
+            return Environment.NIL;
+        });
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * Compiles and runs a program, returning the value of its {@code main}
+     * function.
+     */
+    public Environment.PlcObject execute(Ast.Source ast) {
+        return run(BytecodeCompiler.compile(ast));
+    }
+
+    /**
+     * Verifies and runs a compiled program: defines its globals and functions
+     * in the scope, and returns the value of its {@code main} function.
+     */
+    public Environment.PlcObject run(Bytecode.Program program) {
+        Bytecode.verify(program);
+        this.program = program;
+        globals = new Environment.Variable[program.getGlobals().length];
+        natives = new Environment.Function[program.getNatives().length];
+        call(program.getInitializer(), List.of());
+        for (Bytecode.Chunk function : program.getFunctions()) {
+            scope.defineFunction(function.getName(), function.getArity(), args -> call(function, args));
+        }
+        return scope.lookupFunction("main", 0).invoke(List.of());
+    }
+
+    /**
+     * Calls a function of the program from outside the dispatch loop (or from
+     * a native function called by it), running until it returns.
+     */
+    private Environment.PlcObject call(Bytecode.Chunk chunk, List<Environment.PlcObject> arguments) {
+        int base = frames;
+        int originalSp = sp;
+        reserve(sp + chunk.getLocals().length + chunk.getMaxStack());
+        for (int i = 0; i < arguments.size(); i++) {
+            stack[sp + i] = arguments.get(i);
+        }
+        Arrays.fill(stack, sp + arguments.size(), sp + chunk.getLocals().length, null);
+        push(chunk, sp);
+        sp += chunk.getLocals().length;
+        try {
+            return run(base);
+        } finally {
+            while (frames > base) {
+                chunks[--frames] = null;
+            }
+            sp = originalSp;
+        }
+    }
+
+    private void push(Bytecode.Chunk chunk, int base) {
+        if (frames == chunks.length) {
+            chunks = Arrays.copyOf(chunks, 2 * frames);
+            pcs = Arrays.copyOf(pcs, 2 * frames);
+            bases = Arrays.copyOf(bases, 2 * frames);
+        }
+        chunks[frames] = chunk;
+        pcs[frames] = 0;
+        bases[frames] = base;
+        frames++;
+    }
+
+    private void reserve(int size) {
+        if (size > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(2 * stack.length, size));
+            longs = Arrays.copyOf(longs, stack.length);
+        }
+    }
+
+    /**
+     * Runs the top frame until it returns to the frame at the given depth,
+     * returning its value. The state of the running function is kept in
+     * locals, and saved to the fields only when another function is called.
+     */
+    private Environment.PlcObject run(int base) {
+        int frame = frames - 1;
+        Bytecode.Chunk chunk = chunks[frame];
+        byte[] code = chunk.getCode();
+        int pc = pcs[frame];
+        int fp = bases[frame];
+        int sp = this.sp;
+        Environment.PlcObject[] stack = this.stack;
+        long[] longs = this.longs;
+        Environment.PlcObject[] constants = program.getConstants();
+        while (true) {
+            switch (code[pc]) {
+                case Bytecode.CONST:
+                    stack[sp++] = constants[Bytecode.index(code, pc + 1)];
+                    pc += 3;
+                    break;
+                case Bytecode.LOAD_LOCAL: {
+                    int slot = fp + Bytecode.index(code, pc + 1);
+                    Environment.PlcObject value = stack[slot];
+                    if (value == null) {
+                        // Declared in the body of a while statement which didn't run.
+                        throw new RuntimeException("The variable " + chunk.getLocals()[slot - fp] + " is not defined in this scope.");
+                    }
+                    stack[sp] = value;
+                    longs[sp++] = longs[slot];
+                    pc += 3;
+                    break;
+                }
+                case Bytecode.STORE_LOCAL: {
+                    int slot = fp + Bytecode.index(code, pc + 1);
+                    stack[slot] = stack[--sp];
+                    longs[slot] = longs[sp];
+                    pc += 3;
+                    break;
+                }
+                case Bytecode.DECLARE: {
+                    int slot = fp + Bytecode.index(code, pc + 1);
+                    if (stack[slot] != null) {
+                        throw new RuntimeException("The variable " + chunk.getLocals()[slot - fp] + " is already defined in this scope.");
+                    }
+                    stack[slot] = stack[--sp];
+                    longs[slot] = longs[sp];
+                    pc += 3;
+                    break;
+                }
+                case Bytecode.CLEAR:
+                    stack[fp + Bytecode.index(code, pc + 1)] = null;
+                    pc += 3;
+                    break;
+                case Bytecode.LOAD_GLOBAL:
+                    stack[sp++] = global(Bytecode.index(code, pc + 1)).getValue();
+                    pc += 3;
+                    break;
+                case Bytecode.STORE_GLOBAL: {
+                    Environment.Variable variable = global(Bytecode.index(code, pc + 1));
+                    if (!variable.getMutable()) {
+                        throw new RuntimeException("Assignment to an immutable variable.");
+                    }
+                    sp--;
+                    variable.setValue(box(stack[sp], longs[sp]));
+                    pc += 3;
+                    break;
+                }
+                case Bytecode.DEFINE_VAR:
+                case Bytecode.DEFINE_VAL: {
+                    int index = Bytecode.index(code, pc + 1);
+                    String name = program.getGlobals()[index];
+                    sp--;
+                    globals[index] = scope.defineVariable(name, name, Environment.Type.ANY, code[pc] == Bytecode.DEFINE_VAR, box(stack[sp], longs[sp]));
+                    pc += 3;
+                    break;
+                }
+                case Bytecode.LOAD_ELEMENT: {
+                    List<?> values = requireType(List.class, box(stack[sp - 2], longs[sp - 2]).getValue());
+                    sp--;
+                    int offset = stack[sp] == UNBOXED ? Math.toIntExact(longs[sp]) : Integers.index(stack[sp]);
+                    stack[sp - 1] = Environment.create(values.get(offset));
+                    pc++;
+                    break;
+                }
+                case Bytecode.STORE_ELEMENT_LOCAL:
+                case Bytecode.STORE_ELEMENT_GLOBAL: {
+                    sp -= 3;
+                    Object value = box(stack[sp], longs[sp]).getValue();
+                    @SuppressWarnings("unchecked")
+                    List<Object> values = requireType(List.class, box(stack[sp + 1], longs[sp + 1]).getValue());
+                    int index = stack[sp + 2] == UNBOXED ? Math.toIntExact(longs[sp + 2]) : Integers.index(stack[sp + 2]);
+                    // Lists which can't be modified are copied into an ArrayList first.
+                    if (!(values instanceof ArrayList)) {
+                        values = new ArrayList<>(values);
+                        int operand = Bytecode.index(code, pc + 1);
+                        if (code[pc] == Bytecode.STORE_ELEMENT_LOCAL) {
+                            stack[fp + operand] = Environment.create(values);
+                        } else {
+                            global(operand).setValue(Environment.create(values));
+                        }
+                    }
+                    values.set(index, value);
+                    pc += 3;
+                    break;
+                }
+                case Bytecode.CONST_LIST: {
+                    List<?> values = requireType(List.class, constants[Bytecode.index(code, pc + 1)].getValue());
+                    stack[sp++] = Environment.create(new ArrayList<>(values));
+                    pc += 3;
+                    break;
+                }
+                case Bytecode.LIST: {
+                    int count = Bytecode.index(code, pc + 1);
+                    List<Object> values = new ArrayList<>(count);
+                    for (int i = sp - count; i < sp; i++) {
+                        values.add(box(stack[i], longs[i]).getValue());
+                    }
+                    sp -= count;
+                    stack[sp++] = Environment.create(values);
+                    pc += 3;
+                    break;
+                }
+                case Bytecode.POP:
+                    sp--;
+                    pc++;
+                    break;
+                case Bytecode.DUP:
+                    stack[sp] = stack[sp - 1];
+                    longs[sp] = longs[sp - 1];
+                    sp++;
+                    pc++;
+                    break;
+                case Bytecode.ADD: {
+                    Environment.PlcObject right = stack[--sp];
+                    Environment.PlcObject left = stack[sp - 1];
+                    if (isLong(left) && isLong(right)) {
+                        try {
+                            longs[sp - 1] = Math.addExact(longValue(left, longs[sp - 1]), longValue(right, longs[sp]));
+                            stack[sp - 1] = UNBOXED;
+                            pc++;
+                            break;
+                        } catch (ArithmeticException e) {
+                            // Added as BigIntegers below.
+                        }
+                    }
+                    stack[sp - 1] = add(box(left, longs[sp - 1]), box(right, longs[sp]));
+                    pc++;
+                    break;
+                }
+                case Bytecode.SUBTRACT: {
+                    Environment.PlcObject right = stack[--sp];
+                    Environment.PlcObject left = stack[sp - 1];
+                    if (isLong(left) && isLong(right)) {
+                        try {
+                            longs[sp - 1] = Math.subtractExact(longValue(left, longs[sp - 1]), longValue(right, longs[sp]));
+                            stack[sp - 1] = UNBOXED;
+                            pc++;
+                            break;
+                        } catch (ArithmeticException e) {
+                            // Subtracted as BigIntegers below.
+                        }
+                    }
+                    stack[sp - 1] = subtract(box(left, longs[sp - 1]), box(right, longs[sp]));
+                    pc++;
+                    break;
+                }
+                case Bytecode.MULTIPLY: {
+                    Environment.PlcObject right = stack[--sp];
+                    Environment.PlcObject left = stack[sp - 1];
+                    if (isLong(left) && isLong(right)) {
+                        try {
+                            longs[sp - 1] = Math.multiplyExact(longValue(left, longs[sp - 1]), longValue(right, longs[sp]));
+                            stack[sp - 1] = UNBOXED;
+                            pc++;
+                            break;
+                        } catch (ArithmeticException e) {
+                            // Multiplied as BigIntegers below.
+                        }
+                    }
+                    stack[sp - 1] = multiply(box(left, longs[sp - 1]), box(right, longs[sp]));
+                    pc++;
+                    break;
+                }
+                case Bytecode.DIVIDE: {
+                    Environment.PlcObject right = stack[--sp];
+                    stack[sp - 1] = divide(box(stack[sp - 1], longs[sp - 1]), box(right, longs[sp]));
+                    pc++;
+                    break;
+                }
+                case Bytecode.POWER: {
+                    BigInteger right = requireType(BigInteger.class, box(stack[--sp], longs[sp]).getValue());
+                    BigInteger left = requireType(BigInteger.class, box(stack[sp - 1], longs[sp - 1]).getValue());
+                    stack[sp - 1] = Environment.create(left.pow(right.intValueExact()));
+                    pc++;
+                    break;
+                }
+                case Bytecode.LESS: {
+                    Environment.PlcObject right = stack[--sp];
+                    Environment.PlcObject left = stack[sp - 1];
+                    stack[sp - 1] = Environment.create(isLong(left) && isLong(right)
+                            ? longValue(left, longs[sp - 1]) < longValue(right, longs[sp])
+                            : compare("<", box(left, longs[sp - 1]).getValue(), box(right, longs[sp]).getValue()) < 0);
+                    pc++;
+                    break;
+                }
+                case Bytecode.GREATER: {
+                    Environment.PlcObject right = stack[--sp];
+                    Environment.PlcObject left = stack[sp - 1];
+                    stack[sp - 1] = Environment.create(isLong(left) && isLong(right)
+                            ? longValue(left, longs[sp - 1]) > longValue(right, longs[sp])
+                            : compare(">", box(left, longs[sp - 1]).getValue(), box(right, longs[sp]).getValue()) > 0);
+                    pc++;
+                    break;
+                }
+                case Bytecode.EQUAL:
+                case Bytecode.NOT_EQUAL: {
+                    Environment.PlcObject right = stack[--sp];
+                    Environment.PlcObject left = stack[sp - 1];
+                    boolean equal = isLong(left) && isLong(right)
+                            ? longValue(left, longs[sp - 1]) == longValue(right, longs[sp])
+                            : Objects.equals(box(left, longs[sp - 1]).getValue(), box(right, longs[sp]).getValue());
+                    stack[sp - 1] = Environment.create(equal == (code[pc] == Bytecode.EQUAL));
+                    pc++;
+                    break;
+                }
+                case Bytecode.CHECK_INTEGER:
+                    if (!isLong(stack[sp - 1])) {
+                        requireType(BigInteger.class, stack[sp - 1].getValue());
+                    }
+                    pc++;
+                    break;
+                case Bytecode.CHECK_BOOLEAN:
+                    requireType(Boolean.class, box(stack[sp - 1], longs[sp - 1]).getValue());
+                    pc++;
+                    break;
+                case Bytecode.AND:
+                    sp--;
+                    if (!test(box(stack[sp], longs[sp]))) {
+                        stack[sp++] = Environment.FALSE;
+                        pc = Bytecode.target(code, pc + 1);
+                    } else {
+                        pc += 5;
+                    }
+                    break;
+                case Bytecode.OR:
+                    sp--;
+                    if (test(box(stack[sp], longs[sp]))) {
+                        stack[sp++] = Environment.TRUE;
+                        pc = Bytecode.target(code, pc + 1);
+                    } else {
+                        pc += 5;
+                    }
+                    break;
+                case Bytecode.JUMP:
+                    pc = Bytecode.target(code, pc + 1);
+                    break;
+                case Bytecode.JUMP_FALSE:
+                    sp--;
+                    pc = test(box(stack[sp], longs[sp])) ? pc + 5 : Bytecode.target(code, pc + 1);
+                    break;
+                case Bytecode.CALL: {
+                    Bytecode.Chunk callee = program.getFunctions()[Bytecode.index(code, pc + 1)];
+                    pcs[frame] = pc + 3;
+                    int calleeFp = sp - callee.getArity();
+                    int locals = callee.getLocals().length;
+                    if (calleeFp + locals + callee.getMaxStack() > stack.length) {
+                        reserve(calleeFp + locals + callee.getMaxStack());
+                        stack = this.stack;
+                        longs = this.longs;
+                    }
+                    Arrays.fill(stack, sp, calleeFp + locals, null);
+                    push(callee, calleeFp);
+                    frame = frames - 1;
+                    chunk = callee;
+                    code = callee.getCode();
+                    pc = 0;
+                    fp = calleeFp;
+                    sp = calleeFp + locals;
+                    break;
+                }
+                case Bytecode.CALL_NATIVE: {
+                    int index = Bytecode.index(code, pc + 1);
+                    Environment.Function function = natives[index];
+                    if (function == null) {
+                        function = natives[index] = scope.lookupFunction(program.getNatives()[index], program.getNativeArities()[index]);
+                    }
+                    int arity = program.getNativeArities()[index];
+                    List<Environment.PlcObject> arguments = new ArrayList<>(arity);
+                    for (int i = sp - arity; i < sp; i++) {
+                        arguments.add(box(stack[i], longs[i]));
+                    }
+                    sp -= arity;
+                    // The function may call back into the program above this frame.
+                    pcs[frame] = pc + 3;
+                    this.sp = sp;
+                    Environment.PlcObject result = function.invoke(arguments);
+                    stack = this.stack;
+                    longs = this.longs;
+                    stack[sp++] = result;
+                    pc += 3;
+                    break;
+                }
+                case Bytecode.RETURN: {
+                    Environment.PlcObject value = stack[--sp];
+                    long longValue = longs[sp];
+                    sp = fp;
+                    chunks[--frames] = null;
+                    if (frames == base) {
+                        this.sp = sp;
+                        return box(value, longValue);
+                    }
+                    frame = frames - 1;
+                    chunk = chunks[frame];
+                    code = chunk.getCode();
+                    pc = pcs[frame];
+                    fp = bases[frame];
+                    stack[sp] = value;
+                    longs[sp++] = longValue;
+                    break;
+                }
+                default:
+                    throw new AssertionError("Unknown opcode " + code[pc]);
+            }
+        }
+    }
+
+    private static boolean isLong(Environment.PlcObject value) {
+        return value == UNBOXED || value.isLong();
+    }
+
+    /**
+     * Returns the value of an integer which is a long, from the slot of
+     * {@link #longs} if it's unboxed.
+     */
+    private static long longValue(Environment.PlcObject value, long unboxed) {
+        return value == UNBOXED ? unboxed : value.getLong();
+    }
+
+    /**
+     * Returns the value of a slot of the stack as an object, boxing it if it's
+     * an unboxed integer.
+     */
+    private static Environment.PlcObject box(Environment.PlcObject value, long unboxed) {
+        return value == UNBOXED ? Environment.integer(unboxed) : value;
+    }
+
+    /**
+     * Returns a global, looking it up in the scope the first time it's used.
+     */
+    private Environment.Variable global(int index) {
+        Environment.Variable variable = globals[index];
+        if (variable == null) {
+            variable = globals[index] = scope.lookupVariable(program.getGlobals()[index]);
+        }
+        return variable;
+    }
+
+    private static boolean test(Environment.PlcObject value) {
+        // Booleans are shared, so most conditions are decided by identity.
+        if (value == Environment.TRUE) {
+            return true;
+        } else if (value == Environment.FALSE) {
+            return false;
+        }
+        return requireType(Boolean.class, value.getValue());
+    }
+
+    // The operators which aren't run inline are kept in small methods, so
+    // the JIT can inline them into the dispatch loop.
+
+    private static Environment.PlcObject add(Environment.PlcObject leftObject, Environment.PlcObject rightObject) {
+        if (leftObject.isLong() && rightObject.isLong()) {
+            Environment.PlcObject result = Integers.add(leftObject.getLong(), rightObject.getLong());
+            if (result != null) {
+                return result;
+            }
+        }
+        Object left = leftObject.getValue();
+        Object right = rightObject.getValue();
+        if (left instanceof BigInteger && right instanceof BigInteger) {
+            return Environment.create(((BigInteger) left).add((BigInteger) right));
+        } else if (left instanceof String || right instanceof String) {
+            return Environment.create(left.toString() + right.toString());
+        }
+        throw new RuntimeException("Incompatible types for addition.");
+    }
+
+    private static Environment.PlcObject subtract(Environment.PlcObject left, Environment.PlcObject right) {
+        if (left.isLong() && right.isLong()) {
+            Environment.PlcObject result = Integers.subtract(left.getLong(), right.getLong());
+            if (result != null) {
+                return result;
+            }
+        }
+        return Environment.create(requireType(BigInteger.class, left.getValue()).subtract(requireType(BigInteger.class, right.getValue())));
+    }
+
+    private static Environment.PlcObject multiply(Environment.PlcObject leftObject, Environment.PlcObject rightObject) {
+        if (leftObject.isLong() && rightObject.isLong()) {
+            Environment.PlcObject result = Integers.multiply(leftObject.getLong(), rightObject.getLong());
+            if (result != null) {
+                return result;
+            }
+        }
+        Object left = leftObject.getValue();
+        Object right = rightObject.getValue();
+        if (left instanceof BigDecimal || right instanceof BigDecimal) {
+            return Environment.create(requireType(BigDecimal.class, left).multiply(requireType(BigDecimal.class, right)));
+        }
+        return Environment.create(requireType(BigInteger.class, left).multiply(requireType(BigInteger.class, right)));
+    }
+
+    private static Environment.PlcObject divide(Environment.PlcObject leftObject, Environment.PlcObject rightObject) {
+        if (leftObject.isLong() && rightObject.isLong() && rightObject.getLong() != 0) {
+            Environment.PlcObject result = Integers.divide(leftObject.getLong(), rightObject.getLong());
+            if (result != null) {
+                return result;
+            }
+        }
+        Object left = leftObject.getValue();
+        Object right = rightObject.getValue();
+        if (right.equals(BigInteger.ZERO)) {
+            throw new RuntimeException("Division by zero.");
+        } else if (left instanceof BigInteger && right instanceof BigInteger) {
+            return Environment.create(((BigInteger) left).divide((BigInteger) right));
+        } else if (left instanceof BigDecimal && right instanceof BigDecimal) {
+            return Environment.create(((BigDecimal) left).divide((BigDecimal) right, RoundingMode.HALF_EVEN));
+        }
+        throw new RuntimeException("Incompatible types for division.");
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(String operator, Object left, Object right) {
+        if (left instanceof BigInteger && right instanceof BigInteger) {
+            return ((BigInteger) left).compareTo((BigInteger) right);
+        } else if (left.getClass() != right.getClass()) {
+            throw new RuntimeException("Operands must be of the same type for '" + operator + "' comparison.");
+        }
+        return requireType(Comparable.class, left).compareTo(requireType(Comparable.class, right));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T requireType(Class<T> type, Object object) {
+        if (type.isInstance(object)) {
+            return (T) object;
+        } else {
+            throw new RuntimeException("Expected type " + type.getName() + ", received " + object.getClass().getName() + ".");
+        }
+    }
+
+}
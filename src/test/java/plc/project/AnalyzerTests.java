@@ -108,6 +108,16 @@ public final class AnalyzerTests {
                                 ))
                         )),
                         null
+                ),
+                Arguments.of("Primitive Decimal List",
+                        // LIST list: Integer = [1.0, 2.0];
+                        new Ast.Global("list", "Integer", true, Optional.of(new Ast.Expression.PlcList(new double[] {1.0, 2.0}))),
+                        null
+                ),
+                Arguments.of("Primitive List Out Of Range",
+                        // LIST list: Integer = [1, 2147483648];
+                        new Ast.Global("list", "Integer", true, Optional.of(new Ast.Expression.PlcList(new long[] {1, 2147483648L}))),
+                        null
                 )
         );
     }
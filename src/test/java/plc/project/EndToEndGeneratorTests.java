@@ -168,6 +168,32 @@ public class EndToEndGeneratorTests {
         );
     }
 
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testDeepExpression(String test, String input, String expected) {
+        test(input, expected, Parser::parseExpression);
+    }
+
+    private static Stream<Arguments> testDeepExpression() {
+        return Stream.of(
+                Arguments.of("Million Terms",
+                        // 1 + 1 + ... + 1
+                        "1" + " + 1".repeat(999_999),
+                        "1" + " + 1".repeat(999_999)
+                ),
+                Arguments.of("Exponent Chain",
+                        // 2 ^ 2 ^ ... ^ 2
+                        "2" + " ^ 2".repeat(99_999),
+                        "Math.pow(".repeat(99_999) + "2" + ", 2)".repeat(99_999)
+                ),
+                Arguments.of("Nested Groups",
+                        // (1 + (1 + ... (1 + 1)))
+                        "(1 + ".repeat(100_000) + "1" + ")".repeat(100_000),
+                        "(1 + ".repeat(100_000) + "1" + ")".repeat(100_000)
+                )
+        );
+    }
+
     @ParameterizedTest(name = "{0}")
     @MethodSource
     void testFunctionExpression(String test, String input, String expected) {
@@ -198,6 +224,10 @@ public class EndToEndGeneratorTests {
         analyzer.visit(ast);
         new Generator(new PrintWriter(writer)).visit(ast);
         Assertions.assertEquals(expected, writer.toString());
+        // Generating the flat AST directly gives the same code.
+        StringWriter flatWriter = new StringWriter();
+        new Generator(new PrintWriter(flatWriter)).generate(FlatAst.of(ast));
+        Assertions.assertEquals(expected, flatWriter.toString());
     }
 
     /**
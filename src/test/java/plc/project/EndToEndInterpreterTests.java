@@ -7,16 +7,19 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
 import java.util.function.Function;
 
-final class EndToEndInterpreterTests {
+class EndToEndInterpreterTests {
 
     @ParameterizedTest
     @MethodSource
@@ -39,6 +42,141 @@ final class EndToEndInterpreterTests {
         );
     }
 
+    @Test
+    void testLazySource() {
+        String input = "FUN unused() DO x = ; END FUN one(): Integer DO RETURN 1; END FUN main() DO RETURN one() + 1; END";
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource(true);
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        Assertions.assertEquals(BigInteger.valueOf(2), interpreter.visit(ast).getValue());
+        Assertions.assertFalse(ast.getFunctions().get(0).isParsed());
+        Assertions.assertTrue(ast.getFunctions().get(1).isParsed());
+    }
+
+    @Test
+    void testFlatAst() {
+        String input = "VAR x: Integer = 1; FUN main(): Integer DO WHILE x < 10 DO x = x * 2; END RETURN x + 1; END";
+        FlatAst flat = FlatAst.of(new Parser(new Lexer(input).lex()).parseSource());
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        Assertions.assertEquals(BigInteger.valueOf(17), interpreter.visit(flat.toAst()).getValue());
+    }
+
+    @Test
+    void testAstFile() throws IOException {
+        String input = "VAR x: Integer = 1; VAL y: Decimal = 2.5; VAL s: String = \"a\\n\"; " +
+                "FUN step() DO x = x * 2; END " +
+                "FUN main(): Integer DO LET c = 'c'; WHILE x < 10 DO step(); END RETURN x + 1; END";
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Path path = Files.createTempFile("ast", ".plca");
+        try {
+            AstFile.write(FlatAst.ofAnalyzed(ast), path);
+            FlatAst loaded = AstFile.read(path);
+            Assertions.assertTrue(loaded.isAnalyzed());
+            Ast.Source source = (Ast.Source) loaded.toAst();
+            Assertions.assertEquals(ast, source);
+            // Accesses share the variable of their global, as after analysis.
+            Ast.Statement.Assignment assignment = (Ast.Statement.Assignment) source.getFunctions().get(0).getStatements().get(0);
+            Ast.Expression.Access receiver = (Ast.Expression.Access) assignment.getReceiver();
+            Assertions.assertSame(source.getGlobals().get(0).getVariable(), receiver.getVariable());
+            Assertions.assertEquals(Ast.Expression.Access.GLOBAL, receiver.getDepth());
+            Assertions.assertEquals(1, source.getFunctions().get(1).getFrameSize());
+            Interpreter interpreter = new Interpreter(new Scope(null));
+            Assertions.assertEquals(BigInteger.valueOf(17), interpreter.visit(source).getValue());
+            // Lists backed by each kind of array (a list of longs doesn't pass analysis).
+            Ast.Source lists = new Parser(new Lexer("LIST i: Integer = [1, 2, 3]; LIST l: Integer = [10000000000, 2]; " +
+                    "LIST d: Decimal = [0.5, 1.5]; VAR x: Integer = 1;").lex()).parseSource();
+            AstFile.write(FlatAst.of(lists), path);
+            Assertions.assertEquals(lists, AstFile.read(path).toAst());
+            Files.write(path, new byte[] {'P', 'L', 'C', 'A', 0, 0, 0, 99});
+            Assertions.assertThrows(IOException.class, () -> AstFile.read(path));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void testLexicalAddressing() {
+        String input = "VAR calls: Integer = 0; FUN count(n: Integer) DO calls = calls + 1; END " +
+                "FUN main(): Integer DO LET i = 0; LET total = 0; LET square = 0; WHILE i < 10 DO square = i * i; " +
+                "IF i > 4 DO LET extra = 1; total = total + extra; END total = total + square; count(i); i = i + 1; END " +
+                "RETURN total + calls; END";
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Ast.Function main = ast.getFunctions().get(1);
+        Assertions.assertEquals(4, main.getFrameSize());
+        Ast.Statement.Assignment assignment = (Ast.Statement.Assignment) ast.getFunctions().get(0).getStatements().get(0);
+        Ast.Expression.Access calls = (Ast.Expression.Access) assignment.getReceiver();
+        Assertions.assertEquals(Ast.Expression.Access.GLOBAL, calls.getDepth());
+        Assertions.assertEquals(0, calls.getSlot());
+        Ast.Statement.While loop = (Ast.Statement.While) main.getStatements().get(3);
+        Ast.Expression.Access i = (Ast.Expression.Access) ((Ast.Expression.Binary) loop.getCondition()).getLeft();
+        Assertions.assertEquals(Ast.Expression.Access.LOCAL, i.getDepth());
+        Assertions.assertEquals(0, i.getSlot());
+        // 0^2 + ... + 9^2, 5 extras and 10 calls.
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        Assertions.assertEquals(BigInteger.valueOf(300), interpreter.visit(ast).getValue());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testLexicalAddressingScopes(String test, String input, Object expected) {
+        // The body of a while statement runs in the scope around it, whether
+        // or not the program was analyzed.
+        for (boolean analyzed : new boolean[] {false, true}) {
+            Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+            if (analyzed) {
+                new Analyzer(new Scope(null)).visit(ast);
+            }
+            Interpreter interpreter = new Interpreter(new Scope(null));
+            if (expected == null) {
+                Assertions.assertThrows(RuntimeException.class, () -> interpreter.visit(ast), "analyzed=" + analyzed);
+            } else {
+                Assertions.assertEquals(expected, interpreter.visit(ast).getValue(), "analyzed=" + analyzed);
+            }
+        }
+    }
+
+    private static Stream<Arguments> testLexicalAddressingScopes() {
+        return Stream.of(
+                Arguments.of("Redeclaration In Loop",
+                        "FUN main(): Integer DO LET i = 0; WHILE i < 3 DO LET y = i; i = i + 1; END RETURN i; END",
+                        null
+                ),
+                Arguments.of("Shadowing In Loop",
+                        "FUN main(): Integer DO LET x = 1; WHILE x < 2 DO LET x = 5; x = x + 1; END RETURN x; END",
+                        null
+                ),
+                Arguments.of("Parameter In Loop",
+                        "FUN f(y: Integer) DO WHILE y < 2 DO LET y = 5; END END FUN main(): Integer DO f(1); RETURN 0; END",
+                        null
+                ),
+                Arguments.of("Redeclaration After Loop",
+                        "FUN main(): Integer DO LET i = 0; WHILE i < 1 DO LET y = i; i = i + 1; END LET y = 2; RETURN y; END",
+                        null
+                ),
+                Arguments.of("Single Iteration",
+                        "FUN main(): Integer DO LET i = 0; WHILE i < 1 DO LET y = 2; i = i + y; END RETURN i; END",
+                        BigInteger.valueOf(2)
+                ),
+                Arguments.of("Branch In Loop",
+                        "FUN main(): Integer DO LET i = 0; LET total = 0; WHILE i < 3 DO IF i > 0 DO LET y = i; total = total + y; END i = i + 1; END RETURN total; END",
+                        BigInteger.valueOf(3)
+                ),
+                Arguments.of("Case In Loop",
+                        "FUN main(): Integer DO LET i = 0; LET total = 0; WHILE i < 3 DO SWITCH i CASE 0: LET y = 5; total = total + y; DEFAULT LET y = i; total = total + y; END i = i + 1; END RETURN total; END",
+                        BigInteger.valueOf(8)
+                )
+        );
+    }
+
+    @Test
+    void testRecursion() {
+        String input = "FUN fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END LET a = fib(n - 1); RETURN a + fib(n - 2); END " +
+                "FUN main(): Integer DO LET x = 1; RETURN fib(15) + x; END";
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        Assertions.assertEquals(BigInteger.valueOf(611), interpreter.visit(new Parser(new Lexer(input).lex()).parseSource()).getValue());
+    }
+
     @ParameterizedTest
     @MethodSource
     void testGlobal(String test, String input, Object expected, String variableName) {
@@ -74,6 +212,39 @@ final class EndToEndInterpreterTests {
         Assertions.assertEquals(expected, scope.lookupVariable(variableName).getValue().getValue());
     }
 
+    @Test
+    void testNumberList() {
+        // LIST list: Integer = [0, 1, ..., 199999];
+        StringBuilder input = new StringBuilder("LIST list: Integer = [0");
+        for (int i = 1; i < 200_000; i++) {
+            input.append(", ").append(i);
+        }
+        input.append("];");
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        interpreter.visit(new Parser(new Lexer(input.toString()).lex()).parseGlobal());
+        Assertions.assertEquals(BigInteger.valueOf(199_999), interpreter.visit(new Parser(new Lexer("list[199999]").lex()).parseExpression()).getValue());
+        interpreter.visit(new Parser(new Lexer("list[5] = -1;").lex()).parseStatement());
+        Assertions.assertEquals(BigInteger.valueOf(5), interpreter.visit(new Parser(new Lexer("list[5] + list[6]").lex()).parseExpression()).getValue());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testListAliasing(String test, String input) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(BigInteger.valueOf(9), engine(new Scope(null)).apply(ast).getValue());
+    }
+
+    private static Stream<Arguments> testListAliasing() {
+        return Stream.of(
+                Arguments.of("Variable",
+                        "LIST l: Integer = [1, 2, 3]; FUN main(): Any DO LET m = l; m[0] = 9; RETURN l[0]; END"
+                ),
+                Arguments.of("Argument",
+                        "LIST l: Integer = [1, 2, 3]; FUN f(a: Any) DO a[0] = 9; END FUN main(): Any DO f(l); RETURN l[0]; END"
+                )
+        );
+    }
+
     @ParameterizedTest
     @MethodSource
     void testFunction(String test, String input, List<Environment.PlcObject> args, Object expected, String functionName) {
@@ -237,6 +408,16 @@ final class EndToEndInterpreterTests {
         );
     }
 
+    @Test
+    void testLiteralConstant() {
+        Ast.Expression ast = new Parser(new Lexer("1 + 1").lex()).parseExpression();
+        Ast.Expression.Literal left = (Ast.Expression.Literal) ((Ast.Expression.Binary) ast).getLeft();
+        Ast.Expression.Literal right = (Ast.Expression.Literal) ((Ast.Expression.Binary) ast).getRight();
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        Assertions.assertSame(interpreter.visit(left), interpreter.visit(right));
+        Assertions.assertSame(left.getLiteral(), right.getLiteral());
+    }
+
     @ParameterizedTest
     @MethodSource
     void testGroupExpression(String test, String input, Object expected) {
@@ -304,6 +485,40 @@ final class EndToEndInterpreterTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testDeepExpression(String test, String input, Object expected) {
+        test(input, expected, new Scope(null), Parser::parseExpression);
+    }
+
+    private static Stream<Arguments> testDeepExpression() {
+        return Stream.of(
+                // 1 + 1 + ... + 1
+                Arguments.of("Million Terms",
+                        "1" + " + 1".repeat(999_999),
+                        BigInteger.valueOf(1_000_000)
+                ),
+                // FALSE || FALSE || ... || TRUE
+                Arguments.of("Million Terms (Short Circuit)",
+                        "FALSE" + " || FALSE".repeat(999_998) + " || TRUE",
+                        true
+                ),
+                // (1 + (1 + ... (1 + 1)))
+                Arguments.of("Nested Groups",
+                        "(1 + ".repeat(100_000) + "1" + ")".repeat(100_000),
+                        BigInteger.valueOf(100_001)
+                )
+        );
+    }
+
+    @Test
+    void testDeeplyNestedBlocks() {
+        Scope scope = new Scope(null);
+        scope.defineVariable("num", true, Environment.NIL);
+        test("IF TRUE DO ".repeat(100_000) + "num = 1;" + " END".repeat(100_000), Environment.NIL.getValue(), scope, Parser::parseStatement);
+        Assertions.assertEquals(BigInteger.ONE, scope.lookupVariable("num").getValue().getValue());
+    }
+
     @ParameterizedTest
     @MethodSource
     void testAccessExpression(String test, String input, Object expected) {
@@ -355,19 +570,27 @@ final class EndToEndInterpreterTests {
         );
     }
 
-    private static <T extends Ast> Scope test(String input, Object expected, Scope scope, Function<Parser, T> function) {
+    private <T extends Ast> Scope test(String input, Object expected, Scope scope, Function<Parser, T> function) {
         Lexer lexer = new Lexer(input);
         Parser parser = new Parser(lexer.lex());
 
         Ast ast = function.apply(parser);
 
-        Interpreter interpreter = new Interpreter(scope);
+        Function<Ast, Environment.PlcObject> interpreter = engine(scope);
         if (expected != null) {
-            Assertions.assertEquals(expected, interpreter.visit(ast).getValue());
+            Assertions.assertEquals(expected, interpreter.apply(ast).getValue());
         } else {
-            Assertions.assertThrows(RuntimeException.class, () -> interpreter.visit(ast));
+            Assertions.assertThrows(RuntimeException.class, () -> interpreter.apply(ast));
         }
-        return interpreter.getScope();
+        return scope;
+    }
+
+    /**
+     * Returns the engine which runs the inputs of the tests in the given
+     * scope, which {@link EndToEndNodeInterpreterTests} replaces.
+     */
+    Function<Ast, Environment.PlcObject> engine(Scope scope) {
+        return new Interpreter(scope)::visit;
     }
 
 
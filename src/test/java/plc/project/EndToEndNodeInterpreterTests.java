@@ -0,0 +1,127 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Runs the tests of {@link EndToEndInterpreterTests} with the
+ * {@link NodeInterpreter}, and checks the programs it compiles differently
+ * from the top level (which keep their variables in frames) give the same
+ * results as with the {@link Interpreter}.
+ */
+final class EndToEndNodeInterpreterTests extends EndToEndInterpreterTests {
+
+    @Override
+    Function<Ast, Environment.PlcObject> engine(Scope scope) {
+        return new NodeInterpreter(scope)::execute;
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testProgram(String test, String input, Object expected) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        if (expected == null) {
+            Assertions.assertThrows(RuntimeException.class, () -> new Interpreter(new Scope(null)).visit(ast));
+            Assertions.assertThrows(RuntimeException.class, () -> new NodeInterpreter(new Scope(null)).execute(ast));
+            return;
+        }
+        Assertions.assertEquals(expected, new Interpreter(new Scope(null)).visit(ast).getValue());
+        Assertions.assertEquals(expected, new NodeInterpreter(new Scope(null)).execute(ast).getValue());
+    }
+
+    private static Stream<Arguments> testProgram() {
+        return Stream.of(
+                Arguments.of("Loop",
+                        "VAR calls: Integer = 0; FUN count(n: Integer) DO calls = calls + 1; END " +
+                        "FUN main(): Integer DO LET i = 0; LET total = 0; LET square; WHILE i < 10 DO square = i * i; " +
+                        "IF i > 4 DO LET extra = 1; total = total + extra; END total = total + square; count(i); i = i + 1; END " +
+                        "RETURN total + calls; END",
+                        BigInteger.valueOf(300)
+                ),
+                Arguments.of("Recursion",
+                        "FUN fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END LET a = fib(n - 1); RETURN a + fib(n - 2); END " +
+                        "FUN main(): Integer DO LET x = 1; RETURN fib(15) + x; END",
+                        BigInteger.valueOf(611)
+                ),
+                Arguments.of("Shadowing",
+                        "VAR x: Integer = 1; FUN main(): Integer DO LET y = x; IF TRUE DO LET x = 10; y = y + x; END RETURN y + x; END",
+                        BigInteger.valueOf(12)
+                ),
+                Arguments.of("Return From Loop",
+                        "FUN main(): Integer DO LET i = 0; WHILE TRUE DO SWITCH i CASE 3: RETURN i; DEFAULT i = i + 1; END END END",
+                        BigInteger.valueOf(3)
+                ),
+                Arguments.of("Lists",
+                        "LIST list: Integer = [1, 2, 3]; FUN main(): Integer DO list[1] = list[0] + list[2]; RETURN list[1]; END",
+                        BigInteger.valueOf(4)
+                ),
+                Arguments.of("Overflow",
+                        "FUN main(): Integer DO LET x = 1; LET i = 0; WHILE i < 70 DO x = x * 2; i = i + 1; END " +
+                        "LET min = 0 - 9223372036854775807 - 1; RETURN x + min / (0 - 1) - (min - 1); END",
+                        BigInteger.ONE.shiftLeft(70).add(BigInteger.ONE.shiftLeft(64)).add(BigInteger.ONE)
+                ),
+                Arguments.of("Redeclaration In Branch",
+                        "FUN main(): Integer DO LET i = 0; LET total = 0; WHILE i < 3 DO IF TRUE DO LET y = i; total = total + y; END i = i + 1; END " +
+                        "RETURN total; END",
+                        BigInteger.valueOf(3)
+                ),
+                Arguments.of("Redeclaration",
+                        "FUN main(): Integer DO LET x = 1; LET x = 2; RETURN x; END",
+                        null
+                ),
+                Arguments.of("Duplicate Parameter",
+                        "FUN f(a: Integer, a: Integer): Integer DO RETURN a; END FUN main(): Integer DO RETURN f(1, 2); END",
+                        null
+                ),
+                Arguments.of("Parameter Redeclaration",
+                        "FUN f(a: Integer): Integer DO LET a = 5; RETURN a; END FUN main(): Integer DO RETURN f(1); END",
+                        null
+                ),
+                Arguments.of("Redeclaration In Loop",
+                        "FUN main(): Integer DO LET i = 0; WHILE i < 2 DO LET y = i; i = i + 1; END RETURN i; END",
+                        null
+                ),
+                Arguments.of("Redeclaration In Nested Loop",
+                        "FUN main(): Integer DO LET i = 0; WHILE i < 2 DO LET y = i; LET j = 0; WHILE j < 2 DO j = j + 1; END i = i + 1; END " +
+                        "RETURN i; END",
+                        null
+                ),
+                Arguments.of("Shadowing In Loop",
+                        "FUN main(): Integer DO LET x = 1; WHILE x < 2 DO LET x = 5; x = x + 1; END RETURN x; END",
+                        null
+                ),
+                Arguments.of("Deep Blocks",
+                        "FUN main(): Integer DO LET x = 0; " + "IF TRUE DO ".repeat(10_000) + "x = 1;" + " END".repeat(10_000) + " RETURN x; END",
+                        BigInteger.ONE
+                ),
+                Arguments.of("Deep Expression",
+                        "FUN main(): Integer DO LET x = 1; RETURN x" + " + x".repeat(9_999) + "; END",
+                        BigInteger.valueOf(10_000)
+                )
+        );
+    }
+
+    @Test
+    void testImmutableGlobal() {
+        String input = "VAL x: Integer = 1; FUN main() DO x = 2; END";
+        NodeInterpreter interpreter = new NodeInterpreter(new Scope(null));
+        Assertions.assertThrows(RuntimeException.class, () -> interpreter.execute(new Parser(new Lexer(input).lex()).parseSource()));
+    }
+
+    @Test
+    void testFunctionArguments() {
+        NodeInterpreter interpreter = new NodeInterpreter(new Scope(null));
+        interpreter.execute(new Parser(new Lexer("FUN add(x: Integer, y: Integer): Integer DO RETURN x + y; END").lex()).parseFunction());
+        Environment.Function add = interpreter.getScope().lookupFunction("add", 2);
+        Assertions.assertEquals(BigInteger.valueOf(3), add.invoke(List.of(Environment.create(BigInteger.ONE), Environment.create(BigInteger.TWO))).getValue());
+    }
+
+}
@@ -876,6 +876,9 @@ public class GeneratorTests {
         StringWriter writer = new StringWriter();
         new Generator(new PrintWriter(writer)).visit(ast);
         Assertions.assertEquals(expected, writer.toString());
+        StringWriter flatWriter = new StringWriter();
+        new Generator(new PrintWriter(flatWriter)).generate(FlatAst.of(ast));
+        Assertions.assertEquals(expected, flatWriter.toString());
     }
 
     /**
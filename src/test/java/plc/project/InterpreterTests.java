@@ -189,10 +189,31 @@ final class InterpreterTests {
                         )),
                         Arrays.asList(Environment.create(BigInteger.TEN)),
                         BigInteger.valueOf(100)
+                ),
+                // FUN main() DO WHILE TRUE DO IF TRUE DO RETURN 1; END END END
+                Arguments.of("Return From Loop",
+                        new Ast.Function("main", Arrays.asList(), Arrays.asList(
+                                new Ast.Statement.While(new Ast.Expression.Literal(true), Arrays.asList(
+                                        new Ast.Statement.If(new Ast.Expression.Literal(true),
+                                                Arrays.asList(new Ast.Statement.Return(new Ast.Expression.Literal(BigInteger.ONE))),
+                                                Arrays.asList())
+                                )))
+                        ),
+                        Arrays.asList(),
+                        BigInteger.ONE
                 )
         );
     }
 
+    @Test
+    void testReturnOutsideFunction() {
+        // IF TRUE DO RETURN 1; END
+        test(new Ast.Statement.If(new Ast.Expression.Literal(true),
+                Arrays.asList(new Ast.Statement.Return(new Ast.Expression.Literal(BigInteger.ONE))),
+                Arrays.asList()
+        ), null, new Scope(null));
+    }
+
     @Test
     void testExpressionStatement() {
         // print("Hello, World!");
@@ -521,6 +542,60 @@ final class InterpreterTests {
         test(ast, expected, new Scope(null));
     }
 
+    @Test
+    void testScopeSymbols() {
+        Scope parent = new Scope(null);
+        parent.defineFunction("f", 1, args -> Environment.create(BigInteger.ONE));
+        parent.defineVariable("x", true, Environment.create(BigInteger.ONE));
+        Scope scope = new Scope(parent);
+        scope.defineFunction("f", 0, args -> Environment.create(BigInteger.ZERO));
+        for (int i = 0; i < 20; i++) {
+            scope.defineVariable("v" + i, true, Environment.create(BigInteger.valueOf(i)));
+        }
+        // Overloads by arity are found in the scope which defines them.
+        Assertions.assertEquals(BigInteger.ZERO, scope.lookupFunction(scope.getSymbols().intern("f"), 0).invoke(List.of()).getValue());
+        Assertions.assertEquals(BigInteger.ONE, scope.lookupFunction("f", 1).invoke(List.of()).getValue());
+        Assertions.assertEquals(BigInteger.ONE, scope.lookupVariable(scope.getSymbols().intern("x")).getValue().getValue());
+        Assertions.assertEquals(BigInteger.valueOf(19), scope.lookupVariable("v19").getValue().getValue());
+        Assertions.assertThrows(RuntimeException.class, () -> scope.lookupFunction("f", 2));
+        Assertions.assertThrows(RuntimeException.class, () -> scope.defineFunction("f", 0, args -> Environment.NIL));
+        Assertions.assertThrows(RuntimeException.class, () -> scope.defineVariable("v0", true, Environment.NIL));
+        // Scopes share the table of their root, and separate roots have their own.
+        Assertions.assertSame(parent.getSymbols(), scope.getSymbols());
+        Assertions.assertNotSame(parent.getSymbols(), new Scope(null).getSymbols());
+        // Looking up a name which was never defined doesn't add it.
+        int size = scope.getSymbols().size();
+        Assertions.assertThrows(RuntimeException.class, () -> scope.lookupVariable("missing"));
+        Assertions.assertThrows(RuntimeException.class, () -> scope.lookupFunction("missing", 0));
+        Assertions.assertEquals(size, scope.getSymbols().size());
+    }
+
+    @Test
+    void testRuntimeValues() {
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        Environment.PlcObject less = interpreter.visit(new Ast.Expression.Binary("<",
+                new Ast.Expression.Literal(BigInteger.ONE),
+                new Ast.Expression.Literal(BigInteger.TEN)
+        ));
+        Environment.PlcObject sum = interpreter.visit(new Ast.Expression.Binary("+",
+                new Ast.Expression.Literal(BigInteger.ONE),
+                new Ast.Expression.Literal(BigInteger.TEN)
+        ));
+        // Booleans, nil and small integers are shared, and values are typed.
+        Assertions.assertSame(Environment.TRUE, less);
+        Assertions.assertSame(Environment.create(BigInteger.valueOf(11)), sum);
+        Assertions.assertSame(Environment.NIL, Environment.create(null));
+        Assertions.assertSame(Environment.Type.INTEGER, sum.getType());
+        Assertions.assertSame(Environment.Type.STRING, Environment.create("s").getType());
+        Assertions.assertNotSame(Environment.create(BigInteger.ONE.shiftLeft(40)), Environment.create(BigInteger.ONE.shiftLeft(40)));
+        Assertions.assertEquals(BigInteger.ONE.shiftLeft(40), Environment.create(BigInteger.ONE.shiftLeft(40)).getValue());
+        // Integers which fit in a long are kept as one until their value is used.
+        Assertions.assertTrue(sum.isLong());
+        Assertions.assertEquals(Long.MAX_VALUE, Environment.integer(Long.MAX_VALUE).getLong());
+        Assertions.assertEquals(BigInteger.valueOf(Long.MAX_VALUE), Environment.integer(Long.MAX_VALUE).getValue());
+        Assertions.assertFalse(Environment.create(BigInteger.ONE.shiftLeft(63)).isLong());
+    }
+
     private static Scope test(Ast ast, Object expected, Scope scope) {
         Interpreter interpreter = new Interpreter(scope);
         if (expected != null) {
@@ -6,8 +6,20 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 public class LexerTests {
@@ -146,6 +158,51 @@ public class LexerTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testConstant(String test, String input, Object expected) {
+        Token token = new Lexer(input).lexToken();
+        Assertions.assertEquals(expected, token.getConstant().getValue());
+        // Decoding the literal again must give the same value.
+        Assertions.assertEquals(expected, new ConstantPool().decode(token.getType(), token.getLiteral()).getValue());
+    }
+
+    private static Stream<Arguments> testConstant() {
+        return Stream.of(
+                Arguments.of("Integer", "-123", BigInteger.valueOf(-123)),
+                Arguments.of("Zero", "0", BigInteger.ZERO),
+                Arguments.of("Big Integer", "123456789012345678901234", new BigInteger("123456789012345678901234")),
+                Arguments.of("Decimal", "-1.50", new BigDecimal("-1.50")),
+                Arguments.of("Big Decimal", "1234567890.1234567890", new BigDecimal("1234567890.1234567890")),
+                Arguments.of("Character", "'a'", 'a'),
+                Arguments.of("Character Escape", "'\\''", '\''),
+                Arguments.of("String Escapes", "\"a\\tb\\\"c\\\\\"", "a\tb\"c\\"),
+                Arguments.of("Escaped Backslash Before Letter", "\"\\\\n\"", "\\n")
+        );
+    }
+
+    @Test
+    void testConstantPool() {
+        Lexer lexer = new Lexer("x = 1 + 1.0 + \"a\" + 1 + \"a\" + 'a';");
+        List<Token> tokens = lexer.lex();
+        Assertions.assertSame(tokens.get(2).getConstant(), tokens.get(8).getConstant());
+        Assertions.assertSame(tokens.get(6).getConstant(), tokens.get(10).getConstant());
+        Assertions.assertEquals(4, lexer.getConstants().size());
+    }
+
+    @Test
+    void testIdentifierSymbols() {
+        List<Token> tokens = new Lexer("name = name + other;").lex();
+        Assertions.assertSame(tokens.get(0).getLiteral(), tokens.get(2).getLiteral());
+        List<Token> dfaTokens = new DfaLexer("name = name + other;").lex();
+        Assertions.assertSame(dfaTokens.get(0).getLiteral(), dfaTokens.get(2).getLiteral());
+        Symbols symbols = new Symbols();
+        Assertions.assertNotEquals(symbols.intern("name"), symbols.intern("other"));
+        Assertions.assertEquals(symbols.intern("name"), symbols.intern(new String("name")));
+        Assertions.assertEquals("other", symbols.name(symbols.intern("other")));
+        Assertions.assertEquals(2, symbols.size());
+    }
+
     @Test
     void testException() {
         ParseException exception = Assertions.assertThrows(ParseException.class,
@@ -518,6 +575,183 @@ public class LexerTests {
 
 
 
+    @ParameterizedTest
+    @MethodSource
+    void testDfaLexer(String test, String input) {
+        assertSameTokens(input, new DfaLexer(input)::lex);
+    }
+
+    private static Stream<Arguments> testDfaLexer() {
+        return Stream.of(
+                Arguments.of("Identifiers", "getName thelegend27 @at a-b_c -five _abc"),
+                Arguments.of("Numbers", "1 12345 -1 01 -01 0.5 -0.5 123.456 1. 1..0 .5 0 -0"),
+                Arguments.of("Characters", "'c' '\\n' '\\\\' '\\''"),
+                Arguments.of("Strings", "\"\" \"abc\" \"\u03C1\u2605\" \"sq\\'dq\\\"bs\\\\\""),
+                Arguments.of("Operators", "== != && || = ! & | < > ( ) ; \u03C1 \f \u000B"),
+                Arguments.of("Whitespace", "one\btwo 123 \b\n\r\t123"),
+                Arguments.of("Program", "LET x = 5; print(\"Hello, World!\"); IF x != -1 && y DO z = x / 2.0; END"),
+                Arguments.of("Unterminated String", "\"unterminated"),
+                Arguments.of("String Newline", "\"unterminated\n\""),
+                Arguments.of("String Form Feed", "\"Hello,\fWorld\""),
+                Arguments.of("Invalid String Escape", "\"invalid\\escape\""),
+                Arguments.of("Unterminated Escape", "\"abc\\"),
+                Arguments.of("Empty Character", "''"),
+                Arguments.of("Multiple Character", "'abc'"),
+                Arguments.of("Character Newline", "'\r'"),
+                Arguments.of("Invalid Character Escape", "'\\q'"),
+                Arguments.of("Unterminated Character", "'"),
+                Arguments.of("Non-ASCII Digit", "-\u0663"),
+                Arguments.of("Long Runs", "ident_" + "aB9@-_".repeat(20) + " \t\n\r\b".repeat(30) + "12345".repeat(20) + "." +
+                        "67890".repeat(20) + " \"" + "str\\t'".repeat(20) + "\"" + "x".repeat(70) + "\"" + " ".repeat(65))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testTokenBuffer(String test, String input) {
+        assertSameTokens(input, () -> TokenBuffer.lex(input).toList());
+    }
+
+    private static Stream<Arguments> testTokenBuffer() {
+        return Stream.of(
+                Arguments.of("Program", "LET x = 5; print(\"Hello,\\tWorld!\"); IF x != -1 && y DO z = 'c'; END"),
+                Arguments.of("Numbers", "1 -1 0.5 -0.5 1. 1..0 .5 0"),
+                Arguments.of("Empty", " \t\n"),
+                Arguments.of("Unterminated String", "LET x = \"unterminated")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testByteLexer(String test, String input) {
+        assertSameTokens(input, () -> new DfaLexer(ByteBuffer.wrap(input.getBytes(StandardCharsets.US_ASCII))).lex());
+    }
+
+    private static Stream<Arguments> testByteLexer() {
+        // Byte offsets only match char indices for ASCII input, see testByteLexerUtf8.
+        return testDfaLexer().filter(arguments -> ((String) arguments.get()[1]).chars().allMatch(c -> c < 128));
+    }
+
+    @Test
+    void testByteLexerUtf8() {
+        String input = "x = \"\u03C1\u2605\" + '\u00E9' \u03C1 y";
+        List<Token> expected = Arrays.asList(
+                new Token(Token.Type.IDENTIFIER, "x", 0),
+                new Token(Token.Type.OPERATOR, "=", 2),
+                new Token(Token.Type.STRING, "\"\u03C1\u2605\"", 4),
+                new Token(Token.Type.OPERATOR, "+", 12),
+                new Token(Token.Type.CHARACTER, "'\u00E9'", 14),
+                new Token(Token.Type.OPERATOR, "\u03C1", 19),
+                new Token(Token.Type.IDENTIFIER, "y", 22)
+        );
+        Assertions.assertEquals(expected, new DfaLexer(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8))).lex());
+    }
+
+    @Test
+    void testMappedFile() throws IOException {
+        String input = "FUN main(): Integer DO print(\"\u03C1\"); RETURN 0; END";
+        Path path = Files.createTempFile("lexer", ".plc");
+        try {
+            Files.write(path, input.getBytes(StandardCharsets.UTF_8));
+            TokenBuffer tokens = TokenBuffer.lex(ByteSequence.map(path).subSequence(0, input.length() + 1));
+            Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(), new Parser(tokens).parseSource());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void testVectorByteScanner() {
+        ByteScanner scalar = new ByteScanner();
+        ByteScanner vector = new VectorByteScanner();
+        // Every byte value at different positions in runs longer than any vector.
+        for (char run : new char[] {' ', 'a', '7', 'x'}) {
+            for (int value = -128; value < 128; value++) {
+                for (int position = 0; position < 150; position += 13) {
+                    byte[] bytes = new byte[150];
+                    Arrays.fill(bytes, (byte) run);
+                    bytes[position] = (byte) value;
+                    for (int from = 0; from < 3; from++) {
+                        String message = "Run of '" + run + "' with " + value + " at " + position;
+                        Assertions.assertEquals(scalar.skipWhitespace(bytes, from, bytes.length), vector.skipWhitespace(bytes, from, bytes.length), message);
+                        Assertions.assertEquals(scalar.skipIdentifier(bytes, from, bytes.length), vector.skipIdentifier(bytes, from, bytes.length), message);
+                        Assertions.assertEquals(scalar.skipDigits(bytes, from, bytes.length), vector.skipDigits(bytes, from, bytes.length), message);
+                        Assertions.assertEquals(scalar.skipString(bytes, from, bytes.length), vector.skipString(bytes, from, bytes.length), message);
+                    }
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("testDfaLexer")
+    void testStreamingLexer(String test, String input) {
+        // Small chunks split every token, string escape and compound operator.
+        for (int chunkSize : new int[] {1, 2, 3, 5, 64}) {
+            assertSameTokens(input, () -> new DfaLexer(new StringReader(input), chunkSize).lex());
+        }
+    }
+
+    @Test
+    void testStreamingChannel() {
+        String input = "FUN main(): Integer DO print(\"\u03C1\\t\u2605\"); IF a == b && c != d DO RETURN -1.5; END END";
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        assertSameTokens(input, () -> new DfaLexer(Channels.newChannel(new ByteArrayInputStream(bytes)), 4).lex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParallelLexer(String test, String input) {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // Tiny chunks put a boundary at almost every whitespace.
+            for (int chunkSize : new int[] {1, 4, 16}) {
+                ParallelLexer lexer = new ParallelLexer(input, pool, chunkSize);
+                assertSameTokens(input, lexer::lex);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Stream<Arguments> testParallelLexer() {
+        return Stream.concat(testDfaLexer(), Stream.of(
+                Arguments.of("Literal Whitespace", "print(\"a b\tc\", ' ', '\\'', \" \\\" x \"); f(\"\n\")"),
+                Arguments.of("Escaped Newline", "\"a \\\n b\" c d e f"),
+                Arguments.of("Late Error", "LET a = 1; LET b = 2; LET c = 3; LET d = \"\\q\";")
+        ));
+    }
+
+    @Test
+    void testParallelBoundaries() {
+        String input = "print(\"a b c d\"); LET x = ' '; IF x == \"e\\\" f\" DO y = -1.5; END";
+        ParallelLexer lexer = new ParallelLexer(input, ForkJoinPool.commonPool(), 1);
+        List<Token> tokens = new Lexer(input).lex();
+        for (int boundary : lexer.boundaries()) {
+            for (Token token : tokens) {
+                Assertions.assertFalse(token.getIndex() < boundary && boundary < token.getIndex() + token.getLiteral().length(),
+                        "Boundary " + boundary + " splits " + token);
+            }
+        }
+    }
+
+    /**
+     * Asserts that the given lexer produces the same tokens as {@link Lexer},
+     * or throws a {@link ParseException} at the same index.
+     */
+    private static void assertSameTokens(String input, Supplier<List<Token>> lexer) {
+        List<Token> expected;
+        try {
+            expected = new Lexer(input).lex();
+        } catch (ParseException e) {
+            ParseException actual = Assertions.assertThrows(ParseException.class, lexer::get);
+            Assertions.assertEquals(e.getMessage(), actual.getMessage());
+            Assertions.assertEquals(e.getIndex(), actual.getIndex());
+            return;
+        }
+        Assertions.assertEquals(expected, lexer.get());
+    }
+
 }
 
 
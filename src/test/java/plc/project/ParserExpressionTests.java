@@ -1112,6 +1112,46 @@ final class ParserExpressionTests {
 
 
 
+    @ParameterizedTest
+    @MethodSource
+    void testPrecedence(String test, String input, Ast.Expression expected) {
+        test(new Lexer(input).lex(), expected, Parser::parseExpression);
+    }
+
+    private static Stream<Arguments> testPrecedence() {
+        return Stream.of(
+                Arguments.of("Left Associative", "a - b - c",
+                        binary("-", binary("-", access("a"), access("b")), access("c"))),
+                Arguments.of("Multiplicative Before Additive", "a + b * c",
+                        binary("+", access("a"), binary("*", access("b"), access("c")))),
+                Arguments.of("Every Level", "a * b + c < d == e && f",
+                        binary("&&", binary("==", binary("<", binary("+", binary("*", access("a"), access("b")), access("c")), access("d")), access("e")), access("f"))),
+                Arguments.of("Every Level Reversed", "a || b != c > d - e / f",
+                        binary("||", access("a"), binary("!=", access("b"), binary(">", access("c"), binary("-", access("d"), binary("/", access("e"), access("f"))))))),
+                Arguments.of("Same Level", "a && b || c ^ d * e",
+                        binary("||", binary("&&", access("a"), access("b")), binary("*", binary("^", access("c"), access("d")), access("e")))),
+                Arguments.of("Group", "(a + b) * c",
+                        binary("*", new Ast.Expression.Group(binary("+", access("a"), access("b"))), access("c")))
+        );
+    }
+
+    @Test
+    void testMillionTerms() {
+        Ast.Expression expected = access("a");
+        for (int i = 1; i < 1_000_000; i++) {
+            expected = binary("+", expected, binary("*", access("b"), access("c")));
+        }
+        test(new Lexer("a" + " + b * c".repeat(999_999)).lex(), expected, Parser::parseExpression);
+    }
+
+    private static Ast.Expression binary(String operator, Ast.Expression left, Ast.Expression right) {
+        return new Ast.Expression.Binary(operator, left, right);
+    }
+
+    private static Ast.Expression access(String name) {
+        return new Ast.Expression.Access(Optional.empty(), name);
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).
@@ -9,9 +9,11 @@ import plc.project.Ast;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -876,6 +878,153 @@ final class ParserModifiedTests {
     }
 
 
+    @ParameterizedTest
+    @MethodSource
+    void testLazySource(String test, String input) {
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Ast.Source lazy = new Parser(new Lexer(input).lex()).parseSource(true);
+        Ast.Source buffered = new Parser(TokenBuffer.lex(input)).parseSource(true);
+        Assertions.assertFalse(lazy.getFunctions().get(0).isParsed());
+        Assertions.assertEquals(expected, lazy);
+        Assertions.assertEquals(expected, buffered);
+    }
+
+    private static Stream<Arguments> testLazySource() {
+        return Stream.of(
+                Arguments.of("Empty", "FUN f() DO END FUN g() DO END"),
+                Arguments.of("Blocks",
+                        "VAR x: Integer = 1; FUN f(a: Integer): Integer DO " +
+                        "IF a DO WHILE x DO x = x - 1; END ELSE SWITCH a CASE 1: LET y: Integer = 2; DEFAULT RETURN 0; END END " +
+                        "RETURN x; END FUN g() DO print(1); END"),
+                Arguments.of("Keywords As Identifiers", "FUN f() DO x = END; IF IF DO y = WHILE; END END FUN g() DO END")
+        );
+    }
+
+    @Test
+    void testLazyFunctionBodyError() {
+        String input = "FUN f() DO x = ; END FUN main() DO RETURN 1; END";
+        ParseException expected = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(input).lex()).parseSource());
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource(true);
+        Assertions.assertEquals(2, ast.getFunctions().size());
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> ast.getFunctions().get(0).getStatements());
+        Assertions.assertEquals(expected.getIndex(), exception.getIndex());
+        Assertions.assertFalse(ast.getFunctions().get(0).isParsed());
+    }
+
+    @Test
+    void testLazyMissingEnd() {
+        String input = "FUN f() DO IF x DO y; END";
+        ParseException expected = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(input).lex()).parseSource());
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(input).lex()).parseSource(true));
+        Assertions.assertEquals(expected.getIndex(), exception.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource("testLazySource")
+    void testParallelParser(String test, String input) {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+            Ast.Source actual = new ParallelParser(TokenBuffer.lex(input), pool).parseSource();
+            Assertions.assertTrue(actual.getFunctions().get(0).isParsed());
+            Assertions.assertEquals(expected, actual);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testParallelParserErrors() {
+        String input = "FUN f() DO x = ; END FUN g() DO END FUN h() DO RETURN ); END FUN i() DO";
+        ParseException expected = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(input).lex()).parseSource());
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new ParallelParser(TokenBuffer.lex(input)).parseSource());
+        Assertions.assertEquals(expected.getIndex(), exception.getIndex());
+        Assertions.assertEquals(2, exception.getSuppressed().length);
+        Assertions.assertEquals(54, ((ParseException) exception.getSuppressed()[0]).getIndex());
+        Assertions.assertEquals(input.length(), ((ParseException) exception.getSuppressed()[1]).getIndex());
+        // A body without a matching END reports the error in the body, if any.
+        for (String missingEnd : List.of("FUN f() DO x = ; ", "FUN f() DO IF DO y; END", "FUN f() DO")) {
+            ParseException eager = Assertions.assertThrows(ParseException.class,
+                    () -> new Parser(new Lexer(missingEnd).lex()).parseSource());
+            ParseException parallel = Assertions.assertThrows(ParseException.class,
+                    () -> new ParallelParser(TokenBuffer.lex(missingEnd)).parseSource());
+            Assertions.assertEquals(eager.getMessage(), parallel.getMessage());
+            Assertions.assertEquals(eager.getIndex(), parallel.getIndex());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testNumberList(String test, String values, Class<?> arrayType) {
+        String input = "LIST list: Integer = [" + values + "];";
+        Ast.Expression.PlcList list = (Ast.Expression.PlcList) new Parser(TokenBuffer.lex(input)).parseList().getValue().get();
+        Assertions.assertEquals(Optional.ofNullable(arrayType), list.getArray().map(Object::getClass));
+        // Parsing each value as an expression must give the same literals.
+        List<Ast.Expression> expected = new ArrayList<>();
+        for (Token token : new Lexer(values).lex()) {
+            if (!token.getLiteral().equals(",")) {
+                expected.add(new Parser(List.of(token)).parseExpression());
+            }
+        }
+        Assertions.assertEquals(new Ast.Expression.PlcList(expected), list);
+    }
+
+    private static Stream<Arguments> testNumberList() {
+        return Stream.of(
+                Arguments.of("Integers", "1, -2, 3, 2147483647", int[].class),
+                Arguments.of("Longs", "1, 2147483648, -9223372036854775", long[].class),
+                Arguments.of("Decimals", "1.0, -2.5, 0.125", double[].class),
+                Arguments.of("Decimal Scale", "1.0, 1.50", null),
+                Arguments.of("Big Integer", "1, 12345678901234567890", null),
+                Arguments.of("Mixed", "1, 2.0", null),
+                Arguments.of("Expression", "1, 2, x", null)
+        );
+    }
+
+    @Test
+    void testNumberListErrors() {
+        // The missing value after a comma, the missing comma, and the missing ']'.
+        String[] inputs = {"LIST list: Integer = [1, ", "LIST list: Integer = [1 2]", "LIST list: Integer = [1, 2"};
+        int[] indices = {24, 24, 26};
+        for (int i = 0; i < inputs.length; i++) {
+            String input = inputs[i];
+            ParseException exception = Assertions.assertThrows(ParseException.class,
+                    () -> new Parser(TokenBuffer.lex(input)).parseList());
+            Assertions.assertEquals(indices[i], exception.getIndex());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testFlatAst(String test, String input) {
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        FlatAst flat = FlatAst.of(new Parser(new Lexer(input).lex()).parseSource(true));
+        Assertions.assertEquals(FlatAst.SOURCE, flat.kind(0));
+        Assertions.assertEquals(expected, flat.toAst());
+        Assertions.assertEquals(expected.getFunctions().get(0), flat.toAst(flat.child(0, flat.globalCount(0))));
+    }
+
+    private static Stream<Arguments> testFlatAst() {
+        StringBuilder chain = new StringBuilder("FUN f() DO RETURN 0");
+        for (int i = 1; i < 100_000; i++) {
+            chain.append(" + ").append(i);
+        }
+        return Stream.of(
+                Arguments.of("Blocks",
+                        "VAR x: Integer = 1; VAL y: Decimal = 1.0; LIST l: Any = [1, 2.0, 'c', \"s\", NIL, TRUE]; FUN f(a: Integer, b: String): Integer DO " +
+                        "IF a DO WHILE x DO x = x - 1; END ELSE SWITCH a CASE 1: LET y: Integer = 2; DEFAULT RETURN 0; END END " +
+                        "LET z = l; RETURN (g(x, l[0]) + 1.5) * 2; END FUN g() DO print(1); END"),
+                Arguments.of("Primitive Lists", "LIST a: Integer = [1, 2]; LIST b: Decimal = [1.5]; LIST c: Integer = [1, 2]; FUN f() DO END"),
+                Arguments.of("Deep Expression", chain.append("; END").toString())
+        );
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).
@@ -13,6 +13,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Random;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -653,6 +654,135 @@ final class ParserTests {
 
 
 
+    @Test
+    void testTokenSource() {
+        String input = "VAR x: Integer = 1; LIST list: Integer = [1, 2]; " +
+                "FUN main(): Integer DO LET y = x + 2 * 3; " +
+                "IF y > 1 DO print(\"big\"); ELSE y = y - 1; END " +
+                "WHILE y < 10 DO y = y + 1; END " +
+                "SWITCH y CASE 1: print(y); DEFAULT print(0); END " +
+                "RETURN y; END";
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        assertEquals(expected, new Parser(new Lexer(input).tokens()).parseSource());
+        assertEquals(expected, new Parser(new DfaLexer(input).tokens()).parseSource());
+        assertEquals(expected, new Parser(TokenBuffer.lex(input)).parseSource());
+    }
+
+    @Test
+    void testTokenKind() {
+        for (int kind = 1; kind < TokenKind.LITERALS.length; kind++) {
+            assertEquals(kind, TokenKind.of(TokenKind.LITERALS[kind]));
+        }
+        for (String literal : Arrays.asList("", "x", "let", "LETS", "ENDS", "\"LET\"", "'='", "===", "!", "&", "\u03C1")) {
+            assertEquals(TokenKind.NONE, TokenKind.of(literal), literal);
+        }
+        String input = "LET x = y <= 1; IF a != b DO END DEFAULT DEFAULTS";
+        TokenBuffer buffer = TokenBuffer.lex(input);
+        for (int i = 0; i < buffer.size(); i++) {
+            assertEquals(TokenKind.of(buffer.literal(i)), buffer.kind(i), buffer.literal(i));
+        }
+    }
+
+    @Test
+    void testTokenBufferException() {
+        String input = "FUN main() DO RETURN 0;";
+        ParseException expected = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(input).lex()).parseSource());
+        ParseException actual = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(TokenBuffer.lex(input)).parseSource());
+        assertEquals(expected.getIndex(), actual.getIndex());
+    }
+
+    @Test
+    void testTokenSourceIsLazy() {
+        List<Token> tokens = new Lexer("VAR x: Integer = 1; VAR y: Integer = 2;").lex();
+        int[] pulled = {0};
+        TokenSource source = TokenSource.of(tokens);
+        Parser parser = new Parser(() -> {
+            pulled[0]++;
+            return source.next();
+        });
+        parser.parseGlobal();
+        // The parser only looks ahead of the first global far enough to see its semicolon.
+        Assertions.assertTrue(pulled[0] < tokens.size(), "Expected the second global to not be lexed yet.");
+        assertEquals("y", parser.parseGlobal().getName());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIncrementalParser(String test, List<Object[]> edits) {
+        IncrementalParser parser = new IncrementalParser(INCREMENTAL_SOURCE);
+        for (Object[] edit : edits) {
+            assertEdit(parser, (int) edit[0], (int) edit[1], (String) edit[2]);
+        }
+    }
+
+    private static final String INCREMENTAL_SOURCE = "VAR x: Integer = 1;\n" +
+            "LIST list: Integer = [1, 2];\n" +
+            "FUN f(a: Integer): Integer DO\n    RETURN a + 1.5;\nEND\n" +
+            "FUN main(): Integer DO\n    LET y = x == 2 && \"s t\";\n    print(y);\nEND\n" +
+            "FUN g() DO\n    RETURN 0;\nEND\n";
+
+    private static Stream<Arguments> testIncrementalParser() {
+        int body = INCREMENTAL_SOURCE.indexOf("RETURN a");
+        int string = INCREMENTAL_SOURCE.indexOf("s t");
+        int main = INCREMENTAL_SOURCE.indexOf("FUN main");
+        int g = INCREMENTAL_SOURCE.indexOf("FUN g");
+        return Stream.of(
+                Arguments.of("Rename", Arrays.<Object[]>asList(new Object[] {body + 7, 1, "b"}, new Object[] {body + 7, 1, "a"})),
+                Arguments.of("Whitespace", Arrays.<Object[]>asList(new Object[] {0, 0, "\n\n"}, new Object[] {main, 0, "   "})),
+                Arguments.of("Merge Tokens", Arrays.<Object[]>asList(new Object[] {body + 11, 2, ""}, new Object[] {body + 11, 0, "+ "})),
+                Arguments.of("Decimal", Arrays.<Object[]>asList(new Object[] {body + 14, 1, ".."}, new Object[] {body + 15, 1, ""})),
+                Arguments.of("Operator", Arrays.<Object[]>asList(new Object[] {string - 6, 1, ""}, new Object[] {string - 6, 0, "&"})),
+                Arguments.of("Open String", Arrays.<Object[]>asList(new Object[] {string + 3, 1, ""}, new Object[] {string + 3, 0, "\""})),
+                Arguments.of("Split Function", Arrays.<Object[]>asList(new Object[] {body, 0, "END FUN h() DO "})),
+                Arguments.of("Join Functions", Arrays.<Object[]>asList(new Object[] {main - 4, 8, ""}, new Object[] {main - 4, 0, "END\nFUN main"})),
+                Arguments.of("Delete Function", Arrays.<Object[]>asList(new Object[] {main, g - main, ""})),
+                Arguments.of("Global After Function", Arrays.<Object[]>asList(new Object[] {g, 0, "VAL z: Integer = 1; "}, new Object[] {g, 20, ""})),
+                Arguments.of("Trailing Tokens", Arrays.<Object[]>asList(new Object[] {g, 0, "x = 1; "}, new Object[] {g, 7, ""})),
+                Arguments.of("Append", Arrays.<Object[]>asList(new Object[] {INCREMENTAL_SOURCE.length(), 0, "FUN h() DO END"})),
+                Arguments.of("Replace All", Arrays.<Object[]>asList(new Object[] {0, INCREMENTAL_SOURCE.length(), "VAL v: Decimal = 1.0;"}))
+        );
+    }
+
+    @Test
+    void testIncrementalParserRandomEdits() {
+        String[] insertions = {"a", "1", " ", "\n", ".", "\"", "'", "=", "&", "-", ";", "(", ")", "END ", "DO ", "FUN h() DO ", "VAR v: Integer; "};
+        Random random = new Random(0);
+        IncrementalParser parser = new IncrementalParser(INCREMENTAL_SOURCE);
+        for (int i = 0; i < 500; i++) {
+            int length = parser.getSource().length();
+            int offset = random.nextInt(length + 1);
+            int deleted = random.nextInt(3) == 0 ? random.nextInt(Math.min(4, length - offset) + 1) : 0;
+            String inserted = random.nextBoolean() ? insertions[random.nextInt(insertions.length)] : "";
+            assertEdit(parser, offset, deleted, inserted);
+            if (random.nextInt(20) == 0) {
+                parser = new IncrementalParser(INCREMENTAL_SOURCE);
+            }
+        }
+    }
+
+    /**
+     * Applies the edit and asserts that the result is the same as lexing and
+     * parsing the new source from scratch.
+     */
+    private static void assertEdit(IncrementalParser parser, int offset, int deleted, String inserted) {
+        String source = parser.getSource().substring(0, offset) + inserted + parser.getSource().substring(offset + deleted);
+        Ast.Source expected;
+        try {
+            expected = new Parser(new Lexer(source).lex()).parseSource();
+        } catch (RuntimeException e) {
+            RuntimeException actual = Assertions.assertThrows(e.getClass(), () -> parser.edit(offset, deleted, inserted), source);
+            assertEquals(e.getMessage(), actual.getMessage());
+            if (e instanceof ParseException) {
+                assertEquals(((ParseException) e).getIndex(), ((ParseException) actual).getIndex());
+            }
+            return;
+        }
+        assertEquals(expected, parser.edit(offset, deleted, inserted), source);
+        assertEquals(new Lexer(source).lex(), parser.getTokens());
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).
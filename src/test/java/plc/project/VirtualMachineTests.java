@@ -0,0 +1,195 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tests the {@link BytecodeCompiler} and {@link VirtualMachine}, checking
+ * programs give the same results as with the {@link Interpreter}, and the
+ * disassembler and verifier of {@link Bytecode}.
+ */
+final class VirtualMachineTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testProgram(String test, String input, Object expected) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        if (expected == null) {
+            Assertions.assertThrows(RuntimeException.class, () -> new Interpreter(new Scope(null)).visit(ast));
+            Assertions.assertThrows(RuntimeException.class, () -> new VirtualMachine(new Scope(null)).execute(ast));
+            return;
+        }
+        Assertions.assertEquals(expected, new Interpreter(new Scope(null)).visit(ast).getValue());
+        Assertions.assertEquals(expected, new VirtualMachine(new Scope(null)).execute(ast).getValue());
+    }
+
+    private static Stream<Arguments> testProgram() {
+        return Stream.of(
+                Arguments.of("Loop",
+                        "VAR calls: Integer = 0; FUN count(n: Integer) DO calls = calls + 1; END " +
+                        "FUN main(): Integer DO LET i = 0; LET total = 0; LET square; WHILE i < 10 DO square = i * i; " +
+                        "IF i > 4 DO LET extra = 1; total = total + extra; END total = total + square; count(i); i = i + 1; END " +
+                        "RETURN total + calls; END",
+                        BigInteger.valueOf(300)
+                ),
+                Arguments.of("Recursion",
+                        "FUN fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END LET a = fib(n - 1); RETURN a + fib(n - 2); END " +
+                        "FUN main(): Integer DO LET x = 1; RETURN fib(15) + x; END",
+                        BigInteger.valueOf(611)
+                ),
+                Arguments.of("Shadowing",
+                        "VAR x: Integer = 1; FUN main(): Integer DO LET y = x; IF TRUE DO LET x = 10; y = y + x; END RETURN y + x; END",
+                        BigInteger.valueOf(12)
+                ),
+                Arguments.of("Switch",
+                        "FUN name(n: Integer): String DO SWITCH n CASE 1: RETURN \"one\"; CASE 2: RETURN \"two\"; DEFAULT RETURN \"many\"; END END " +
+                        "FUN main(): String DO RETURN name(1) + name(2) + name(3); END",
+                        "onetwomany"
+                ),
+                Arguments.of("Return From Loop",
+                        "FUN main(): Integer DO LET i = 0; WHILE TRUE DO SWITCH i CASE 3: RETURN i; DEFAULT i = i + 1; END END END",
+                        BigInteger.valueOf(3)
+                ),
+                Arguments.of("Short Circuit",
+                        "FUN main(): Boolean DO RETURN (FALSE && undefined()) || (TRUE || undefined()) && 1 < 2; END",
+                        true
+                ),
+                Arguments.of("Lists",
+                        "LIST list: Integer = [1, 2, 3]; FUN main(): Integer DO list[1] = list[0] + list[2]; RETURN list[1]; END",
+                        BigInteger.valueOf(4)
+                ),
+                Arguments.of("Sieve",
+                        "LIST flags: Integer = [" + "0, ".repeat(99) + "0]; " +
+                        "FUN main(): Integer DO LET count = 0; LET i = 2; WHILE i < 100 DO IF flags[i] == 0 DO count = count + 1; " +
+                        "LET j = i * i; WHILE j < 100 DO flags[j] = 1; j = j + i; END END i = i + 1; END RETURN count; END",
+                        BigInteger.valueOf(25)
+                ),
+                Arguments.of("Overflow",
+                        "FUN main(): Integer DO LET x = 1; LET i = 0; WHILE i < 70 DO x = x * 2; i = i + 1; END " +
+                        "LET min = 0 - 9223372036854775807 - 1; RETURN x + min / (0 - 1) - (min - 1); END",
+                        BigInteger.ONE.shiftLeft(70).add(BigInteger.ONE.shiftLeft(64)).add(BigInteger.ONE)
+                ),
+                Arguments.of("List Aliasing",
+                        "LIST l: Integer = [1, 2, 3]; FUN f(a: Any) DO a[1] = 9; END " +
+                        "FUN main(): Any DO LET m = l; m[0] = 9; f(l); RETURN l[0] + l[1]; END",
+                        BigInteger.valueOf(18)
+                ),
+                Arguments.of("Redeclaration In Branch",
+                        "FUN main(): Integer DO LET i = 0; LET total = 0; WHILE i < 3 DO IF TRUE DO LET y = i; total = total + y; END i = i + 1; END " +
+                        "RETURN total; END",
+                        BigInteger.valueOf(3)
+                ),
+                Arguments.of("Redeclaration",
+                        "FUN main(): Integer DO LET x = 1; LET x = 2; RETURN x; END",
+                        null
+                ),
+                Arguments.of("Duplicate Parameter",
+                        "FUN f(a: Integer, a: Integer): Integer DO RETURN a; END FUN main(): Integer DO RETURN f(1, 2); END",
+                        null
+                ),
+                Arguments.of("Parameter Redeclaration",
+                        "FUN f(a: Integer): Integer DO LET a = 5; RETURN a; END FUN main(): Integer DO RETURN f(1); END",
+                        null
+                ),
+                Arguments.of("Redeclaration In Loop",
+                        "FUN main(): Integer DO LET i = 0; WHILE i < 2 DO LET y = i; i = i + 1; END RETURN i; END",
+                        null
+                ),
+                Arguments.of("Redeclaration In Nested Loop",
+                        "FUN main(): Integer DO LET i = 0; WHILE i < 2 DO LET y = i; LET j = 0; WHILE j < 2 DO j = j + 1; END i = i + 1; END " +
+                        "RETURN i; END",
+                        null
+                ),
+                Arguments.of("Shadowing In Loop",
+                        "FUN main(): Integer DO LET x = 1; WHILE x < 2 DO LET x = 5; x = x + 1; END RETURN x; END",
+                        null
+                ),
+                Arguments.of("Deep Blocks",
+                        "FUN main(): Integer DO LET x = 0; " + "IF TRUE DO ".repeat(10_000) + "x = 1;" + " END".repeat(10_000) + " RETURN x; END",
+                        BigInteger.ONE
+                ),
+                Arguments.of("Deep Expression",
+                        "FUN main(): Integer DO LET x = 1; RETURN x" + " + x".repeat(9_999) + "; END",
+                        BigInteger.valueOf(10_000)
+                )
+        );
+    }
+
+    @Test
+    void testImmutableGlobal() {
+        String input = "VAL x: Integer = 1; FUN main() DO x = 2; END";
+        VirtualMachine machine = new VirtualMachine(new Scope(null));
+        Assertions.assertThrows(RuntimeException.class, () -> machine.execute(new Parser(new Lexer(input).lex()).parseSource()));
+    }
+
+    @Test
+    void testNativeCallback() {
+        Scope scope = new Scope(null);
+        scope.defineFunction("twice", 1, args -> {
+            Environment.Function increment = scope.lookupFunction("increment", 1);
+            return increment.invoke(List.of(increment.invoke(args)));
+        });
+        String input = "FUN increment(n: Integer): Integer DO RETURN n + 1; END FUN main(): Integer DO RETURN twice(1) * twice(2); END";
+        Assertions.assertEquals(BigInteger.valueOf(12), new VirtualMachine(scope).execute(new Parser(new Lexer(input).lex()).parseSource()).getValue());
+    }
+
+    @Test
+    void testDisassemble() {
+        Bytecode.Program program = BytecodeCompiler.compile(new Parser(new Lexer("FUN main(): Integer DO LET x = 1; RETURN x + 2; END").lex()).parseSource());
+        Bytecode.verify(program);
+        String expected = "<init>/0 (locals 0, stack 1)\n" +
+                "     0: CONST 0 (nil)\n" +
+                "     3: RETURN\n" +
+                "main/0 (locals 1, stack 2)\n" +
+                "     0: CONST 1 (1)\n" +
+                "     3: DECLARE 0 (x)\n" +
+                "     6: LOAD_LOCAL 0 (x)\n" +
+                "     9: CONST 2 (2)\n" +
+                "    12: ADD\n" +
+                "    13: RETURN\n" +
+                "    14: CONST 0 (nil)\n" +
+                "    17: RETURN\n";
+        Assertions.assertEquals(expected, Bytecode.disassemble(program));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testVerify(String test, byte[] code, boolean valid) {
+        Bytecode.Chunk chunk = new Bytecode.Chunk("main", 0, new String[0], code);
+        Bytecode.Program program = new Bytecode.Program(new Environment.PlcObject[] {Environment.TRUE},
+                new String[0], new String[0], new int[0], new Bytecode.Chunk[] {chunk}, chunk);
+        if (valid) {
+            Bytecode.verify(program);
+            Assertions.assertEquals(2, chunk.getMaxStack());
+        } else {
+            Assertions.assertThrows(RuntimeException.class, () -> Bytecode.verify(program));
+        }
+    }
+
+    private static Stream<Arguments> testVerify() {
+        return Stream.of(
+                Arguments.of("Valid", new byte[] {Bytecode.CONST, 0, 0, Bytecode.CONST, 0, 0, Bytecode.EQUAL, Bytecode.RETURN}, true),
+                Arguments.of("Unknown Opcode", new byte[] {99}, false),
+                Arguments.of("Incomplete Instruction", new byte[] {Bytecode.CONST, 0}, false),
+                Arguments.of("Constant Out Of Range", new byte[] {Bytecode.CONST, 0, 1, Bytecode.RETURN}, false),
+                Arguments.of("Local Out Of Range", new byte[] {Bytecode.LOAD_LOCAL, 0, 0, Bytecode.RETURN}, false),
+                Arguments.of("Stack Underflow", new byte[] {Bytecode.CONST, 0, 0, Bytecode.ADD, Bytecode.RETURN}, false),
+                Arguments.of("Missing Return", new byte[] {Bytecode.CONST, 0, 0, Bytecode.POP}, false),
+                Arguments.of("Jump Into Instruction", new byte[] {Bytecode.JUMP, 0, 0, 0, 7, Bytecode.CONST, 0, 0, Bytecode.RETURN}, false),
+                Arguments.of("Different Depths", new byte[] {
+                        Bytecode.CONST, 0, 0,
+                        Bytecode.JUMP_FALSE, 0, 0, 0, 11,
+                        Bytecode.CONST, 0, 0,
+                        Bytecode.CONST, 0, 0,
+                        Bytecode.RETURN}, false)
+        );
+    }
+
+}